@@ -39,6 +39,10 @@ public class AdapterHelper {
 	public String[] getAdapterSequences() {
 		return adapterSequences.toArray(new String[0]);
 	}
+	@Override
+	public String toString() {
+		return String.join(",", adapterSequences);
+	}
 	public boolean containsAdapter(SAMRecord record) {
 		if (!hasAdapters()) return false;
 		if (record.getReadLength() < k) return false;
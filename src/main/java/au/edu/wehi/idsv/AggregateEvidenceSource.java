@@ -24,6 +24,12 @@ public class AggregateEvidenceSource extends EvidenceSource implements Iterable<
 	public CloseableIterator<DirectedEvidence> iterator(QueryInterval[] intervals) {
 		return SAMEvidenceSource.mergedIterator(all, intervals, eso);
 	}
+	/**
+	 * Evidence overlapping the given intervals, loaded from the per-source evidence cache where available.
+	 */
+	public CloseableIterator<DirectedEvidence> summaryIterator(QueryInterval[] intervals) {
+		return SAMEvidenceSource.mergedSummaryIterator(all, intervals, eso);
+	}
 	@Override
 	public int getMaxConcordantFragmentSize() {
 		return all.stream().mapToInt(source -> source.getMaxConcordantFragmentSize()).max().getAsInt();
@@ -97,11 +97,15 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 				File f = getContext().getFileSystemContext().getAssemblyChunkBam(getFile(), i);
 				int chunkNumber = i;
 				assembledChunk.add(f);
-				if (!f.exists()) {
+				String fingerprint = getChunkFingerprint(chunk);
+				if (!CompletionMarker.isComplete(f, fingerprint)) {
 					tasks.add(threadpool.submit(() -> {
 						assembleChunk(f, chunkNumber, chunk, excludedRegions, safetyRegions, downsampledRegions);
+						CompletionMarker.markComplete(f, fingerprint);
 						return null;
 					}));
+				} else {
+					log.info(String.format("Skipping assembly of chunk %d: already assembled", chunkNumber));
 				}
 			}
 		}
@@ -154,12 +158,26 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 			}
 			for (File f : assembledChunk) {
 				FileHelper.delete(f, true);
+				CompletionMarker.clear(f);
 			}
 			for (File f : deduplicatedChunks) {
 				FileHelper.delete(f, true);
+				CompletionMarker.clear(f);
 			}
 		}
 	}
+	/**
+	 * Fingerprint of the assembly parameters and evidence used to assemble the given chunk
+	 */
+	private String getChunkFingerprint(QueryInterval[] chunk) {
+		return CompletionMarker.fingerprint(
+				getContext().getConfig().getParameters(),
+				getContext().getReferenceFile(),
+				getContext().isFilterDuplicates(),
+				getContext().getBlacklistedRegions().asQueryInterval(),
+				chunk,
+				source.stream().map(ses -> ses.getEvidenceFingerprint()).collect(Collectors.toList()));
+	}
 	private void runTasks(List<Future<Void>> tasks) {
 		// Assemble as much as we can before dying
 		Exception firstException = null;
@@ -280,6 +298,13 @@ public class AssemblyEvidenceSource extends SAMEvidenceSource {
 		}
 		SAMFileUtil.sort(getContext().getFileSystemContext(), withsplitreadsFile, svFile, SortOrder.coordinate);
 	}
+	/**
+	 * Assembly evidence is always loaded from the assembly BAM.
+	 */
+	@Override
+	public File getEvidenceCacheFile() {
+		return null;
+	}
 	@Override
 	public boolean shouldFilter(SAMRecord r) {
 		if (r.hasAttribute("OA") && !SAMRecordUtil.overlapsOriginalAlignment(r)) {
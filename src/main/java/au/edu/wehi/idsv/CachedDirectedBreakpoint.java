@@ -0,0 +1,77 @@
+package au.edu.wehi.idsv;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+/**
+ * Breakpoint evidence reconstituted from an {@link EvidenceCache}.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class CachedDirectedBreakpoint extends CachedDirectedEvidence implements DirectedBreakpoint {
+	private final String remoteEvidenceID;
+	private final float breakpointQual;
+	private final int remoteMapq;
+	private final String untemplatedSequence;
+	private final String homologySequence;
+	private final int homologyAnchoredBaseCount;
+	public CachedDirectedBreakpoint(
+			SAMEvidenceSource source,
+			BreakpointSummary location,
+			String evidenceID,
+			String fragmentID,
+			String associatedAssemblyName,
+			float breakendQual,
+			int localMapq,
+			boolean exact,
+			double strandBias,
+			int constituentReads,
+			byte[] anchorSequence,
+			byte[] breakendSequence,
+			String remoteEvidenceID,
+			float breakpointQual,
+			int remoteMapq,
+			String untemplatedSequence,
+			String homologySequence,
+			int homologyAnchoredBaseCount) {
+		super(source, location, evidenceID, fragmentID, associatedAssemblyName, breakendQual, localMapq, exact, strandBias, constituentReads, anchorSequence, breakendSequence);
+		this.remoteEvidenceID = remoteEvidenceID;
+		this.breakpointQual = breakpointQual;
+		this.remoteMapq = remoteMapq;
+		this.untemplatedSequence = untemplatedSequence;
+		this.homologySequence = homologySequence;
+		this.homologyAnchoredBaseCount = homologyAnchoredBaseCount;
+	}
+	@Override
+	public BreakpointSummary getBreakendSummary() {
+		return (BreakpointSummary)super.getBreakendSummary();
+	}
+	@Override
+	public float getBreakpointQual() {
+		return breakpointQual;
+	}
+	@Override
+	public int getRemoteMapq() {
+		return remoteMapq;
+	}
+	@Override
+	public String getUntemplatedSequence() {
+		return untemplatedSequence;
+	}
+	@Override
+	public String getHomologySequence() {
+		return homologySequence;
+	}
+	@Override
+	public int getHomologyAnchoredBaseCount() {
+		return homologyAnchoredBaseCount;
+	}
+	@Override
+	public DirectedBreakpoint asRemote() {
+		throw new NotImplementedException("asRemote() is not supported for cached evidence");
+	}
+	@Override
+	public String getRemoteEvidenceID() {
+		return remoteEvidenceID;
+	}
+}
@@ -0,0 +1,130 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.SAMRecord;
+
+import java.util.Collection;
+
+/**
+ * Evidence reconstituted from an {@link EvidenceCache} without the underlying read alignment.
+ *
+ * Only the summary fields required by variant calling are retained. Base qualities
+ * and the originating SAM record are not available.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class CachedDirectedEvidence implements DirectedEvidence {
+	protected final SAMEvidenceSource source;
+	private final BreakendSummary location;
+	private final String evidenceID;
+	private final String fragmentID;
+	private final String associatedAssemblyName;
+	private final float breakendQual;
+	private final int localMapq;
+	private final boolean exact;
+	private final double strandBias;
+	private final int constituentReads;
+	private final byte[] anchorSequence;
+	private final byte[] breakendSequence;
+	public CachedDirectedEvidence(
+			SAMEvidenceSource source,
+			BreakendSummary location,
+			String evidenceID,
+			String fragmentID,
+			String associatedAssemblyName,
+			float breakendQual,
+			int localMapq,
+			boolean exact,
+			double strandBias,
+			int constituentReads,
+			byte[] anchorSequence,
+			byte[] breakendSequence) {
+		this.source = source;
+		this.location = location;
+		this.evidenceID = evidenceID;
+		this.fragmentID = fragmentID;
+		this.associatedAssemblyName = associatedAssemblyName;
+		this.breakendQual = breakendQual;
+		this.localMapq = localMapq;
+		this.exact = exact;
+		this.strandBias = strandBias;
+		this.constituentReads = constituentReads;
+		this.anchorSequence = anchorSequence;
+		this.breakendSequence = breakendSequence;
+	}
+	@Override
+	public float getBreakendQual() {
+		return breakendQual;
+	}
+	@Override
+	public BreakendSummary getBreakendSummary() {
+		return location;
+	}
+	@Override
+	public byte[] getBreakendSequence() {
+		return breakendSequence;
+	}
+	@Override
+	public byte[] getBreakendQuality() {
+		return null;
+	}
+	@Override
+	public byte[] getAnchorSequence() {
+		return anchorSequence;
+	}
+	@Override
+	public byte[] getAnchorQuality() {
+		return null;
+	}
+	@Override
+	public String getEvidenceID() {
+		return evidenceID;
+	}
+	/**
+	 * Read name of the read/read pair this evidence was derived from.
+	 */
+	public String getFragmentID() {
+		return fragmentID;
+	}
+	@Override
+	public Collection<String> getOriginatingFragmentID(int category) {
+		return source.getSourceCategory() == category ? ImmutableList.of(fragmentID) : ImmutableList.of();
+	}
+	@Override
+	public SAMEvidenceSource getEvidenceSource() {
+		return source;
+	}
+	@Override
+	public int getLocalMapq() {
+		return localMapq;
+	}
+	@Override
+	public boolean isBreakendExact() {
+		return exact;
+	}
+	@Override
+	public double getStrandBias() {
+		return strandBias;
+	}
+	@Override
+	public int constituentReads() {
+		return constituentReads;
+	}
+	@Override
+	public String getAssociatedAssemblyName() {
+		return associatedAssemblyName;
+	}
+	/**
+	 * Cached evidence does not retain the underlying read alignment.
+	 * @return null
+	 */
+	@Override
+	public SAMRecord getUnderlyingSAMRecord() {
+		return null;
+	}
+	@Override
+	public String toString() {
+		return String.format("%s %s (cached)", getEvidenceID(), getBreakendSummary().toString());
+	}
+}
@@ -0,0 +1,109 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import htsjdk.samtools.QueryInterval;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tracks the completion of intermediate output files.
+ *
+ * A completion marker is written alongside the output file once the output has
+ * been completely written. The marker records a fingerprint of the inputs and
+ * parameters used to generate the output so outputs generated from different
+ * inputs or parameters are not considered complete.
+ *
+ * Input files are fingerprinted by path, size and modification time.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class CompletionMarker {
+	private static final String MARKER_SUFFIX = ".gridss.done";
+	private CompletionMarker() { }
+	public static File getMarkerFile(File output) {
+		return new File(output.getAbsoluteFile().getParentFile(), output.getName() + MARKER_SUFFIX);
+	}
+	/**
+	 * Calculates a fingerprint of the given inputs and parameters
+	 * @param components input files, genomic intervals, parameters
+	 * @return fingerprint
+	 */
+	public static String fingerprint(Object... components) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		append(hasher, components);
+		return hasher.hash().toString();
+	}
+	private static void append(Hasher hasher, Object o) {
+		if (o instanceof Object[]) {
+			Object[] array = (Object[])o;
+			hasher.putInt(array.length);
+			for (Object e : array) {
+				append(hasher, e);
+			}
+		} else if (o instanceof Iterable) {
+			hasher.putChar('[');
+			for (Object e : (Iterable<?>)o) {
+				append(hasher, e);
+			}
+			hasher.putChar(']');
+		} else if (o instanceof File) {
+			File f = (File)o;
+			hasher.putString(f.getAbsolutePath(), StandardCharsets.UTF_8);
+			if (f.exists()) {
+				hasher.putLong(f.length());
+				hasher.putLong(f.lastModified());
+			} else {
+				hasher.putString("missing", StandardCharsets.UTF_8);
+			}
+		} else if (o instanceof QueryInterval) {
+			QueryInterval qi = (QueryInterval)o;
+			hasher.putInt(qi.referenceIndex);
+			hasher.putInt(qi.start);
+			hasher.putInt(qi.end);
+		} else {
+			hasher.putString(String.valueOf(o), StandardCharsets.UTF_8);
+		}
+		// field separator
+		hasher.putByte((byte)0);
+	}
+	/**
+	 * Determines whether the given output was completely generated from inputs matching the given fingerprint.
+	 * @param output output file
+	 * @param fingerprint fingerprint of the inputs and parameters used to generate the output
+	 * @return true if the output exists and was completed with the given fingerprint
+	 */
+	public static boolean isComplete(File output, String fingerprint) {
+		File marker = getMarkerFile(output);
+		if (!output.exists() || !marker.exists()) {
+			return false;
+		}
+		try {
+			return fingerprint.equals(Files.asCharSource(marker, StandardCharsets.UTF_8).read().trim());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	/**
+	 * Records that the given output has been completely generated
+	 * @param output output file
+	 * @param fingerprint fingerprint of the inputs and parameters used to generate the output
+	 */
+	public static void markComplete(File output, String fingerprint) throws IOException {
+		File marker = getMarkerFile(output);
+		File tmp = FileSystemContext.getWorkingFileFor(marker);
+		Files.asCharSink(tmp, StandardCharsets.UTF_8).write(fingerprint);
+		FileHelper.move(tmp, marker, false);
+	}
+	/**
+	 * Removes the completion marker of the given output
+	 */
+	public static void clear(File output) {
+		getMarkerFile(output).delete();
+	}
+}
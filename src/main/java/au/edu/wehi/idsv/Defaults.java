@@ -18,6 +18,11 @@ public class Defaults {
 	public static final boolean ATTEMPT_ASSEMBLY_RECOVERY;
 	public static final boolean USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES;
     public static final boolean EXPORT_INPROCESS_ALIGNMENTS;
+	/**
+	 * Persist a binary summary of the evidence in each .sv.bam and use it instead of
+	 * the BAM during variant calling.
+	 */
+	public static final boolean USE_EVIDENCE_CACHE;
 
     static {
 		SANITY_CHECK_ASSEMBLY_GRAPH = Boolean.valueOf(System.getProperty("sanitycheck.assembly", "false"));
@@ -35,5 +40,6 @@ public class Defaults {
 		ATTEMPT_ASSEMBLY_RECOVERY = Boolean.valueOf(System.getProperty("assembly.recover", "true"));
 		USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES = Boolean.valueOf(System.getProperty("assembly.optimised_data_structures", "true"));
 		EXPORT_INPROCESS_ALIGNMENTS = Boolean.valueOf(System.getProperty("bwa.export", "false"));
+		USE_EVIDENCE_CACHE = Boolean.valueOf(System.getProperty("gridss.evidence_cache", "false"));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,373 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Log;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact block-indexed binary store of the summary fields of the evidence
+ * contained in a .sv.bam.
+ *
+ * Evidence is written in breakend start position order and reconstituted as
+ * {@link CachedDirectedEvidence} without decoding any BAM records. Each block
+ * of records is compressed independently and indexed by the reference index,
+ * first breakend start and maximum breakend end of the records in that block
+ * so region queries only need to decompress overlapping blocks.
+ *
+ * Cached evidence depends on the configuration and inputs used to generate it.
+ * The fingerprint of these is stored in the cache header and caches with a
+ * different fingerprint are rejected.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class EvidenceCache {
+	private static final Log log = Log.getInstance(EvidenceCache.class);
+	private static final long MAGIC = 0x4752494453534556L; // GRIDSSEV
+	private static final int VERSION = 2;
+	private static final int RECORDS_PER_BLOCK = 4096;
+	private static final int FLAG_BREAKPOINT = 1;
+	private static final int FLAG_EXACT = 2;
+	private final SAMEvidenceSource source;
+	private final File file;
+	private final long[] blockOffset;
+	private final int[] blockReferenceIndex;
+	private final int[] blockFirstStart;
+	private final int[] blockMaxEnd;
+	/**
+	 * Opens an existing evidence cache
+	 * @param source evidence source the cache was written from
+	 * @param file evidence cache
+	 * @param fingerprint expected fingerprint of the inputs and configuration used to write the cache
+	 * @throws IOException thrown if the cache could not be read or was written with a different fingerprint
+	 */
+	public EvidenceCache(SAMEvidenceSource source, File file, String fingerprint) throws IOException {
+		this.source = source;
+		this.file = file;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			String cacheFingerprint = readHeader(raf, file);
+			if (!cacheFingerprint.equals(fingerprint)) {
+				throw new IOException(String.format("%s was written using different inputs or configuration", file));
+			}
+			raf.seek(raf.length() - Long.BYTES);
+			raf.seek(raf.readLong());
+			int blocks = raf.readInt();
+			blockOffset = new long[blocks];
+			blockReferenceIndex = new int[blocks];
+			blockFirstStart = new int[blocks];
+			blockMaxEnd = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				blockOffset[i] = raf.readLong();
+				blockReferenceIndex[i] = raf.readInt();
+				blockFirstStart[i] = raf.readInt();
+				blockMaxEnd[i] = raf.readInt();
+			}
+		}
+	}
+	private static String readHeader(DataInput in, File file) throws IOException {
+		if (in.readLong() != MAGIC) {
+			throw new IOException(String.format("%s is not a GRIDSS evidence cache", file));
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException(String.format("%s has unsupported evidence cache version %d", file, version));
+		}
+		return in.readUTF();
+	}
+	/**
+	 * Reads the fingerprint of the inputs and configuration used to write the given evidence cache
+	 * @param file evidence cache
+	 * @return fingerprint, or null if the file is not a readable evidence cache
+	 */
+	public static String readFingerprint(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return readHeader(in, file);
+		} catch (IOException e) {
+			log.debug(e, "Unable to read evidence cache header for ", file);
+			return null;
+		}
+	}
+	/**
+	 * Writes the given evidence to a new evidence cache.
+	 * @param file output file
+	 * @param it evidence in breakend start position order
+	 * @param category evidence source category used to identify originating fragments
+	 * @param fingerprint fingerprint of the inputs and configuration the evidence was generated from
+	 */
+	public static void write(File file, Iterator<DirectedEvidence> it, int category, String fingerprint) throws IOException {
+		File tmp = FileSystemContext.getWorkingFileFor(file, "gridss.tmp.");
+		long records = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(fingerprint);
+			long offset = out.size();
+			ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			DataOutputStream index = new DataOutputStream(indexBytes);
+			int blocks = 0;
+			ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+			DataOutputStream block = new DataOutputStream(blockBytes);
+			Deflater deflater = new Deflater();
+			int blockRecords = 0;
+			int referenceIndex = -1;
+			int firstStart = 0;
+			int maxEnd = 0;
+			while (it.hasNext()) {
+				DirectedEvidence e = it.next();
+				BreakendSummary bs = e.getBreakendSummary();
+				if (blockRecords > 0 && (blockRecords >= RECORDS_PER_BLOCK || bs.referenceIndex != referenceIndex)) {
+					index.writeLong(offset);
+					index.writeInt(referenceIndex);
+					index.writeInt(firstStart);
+					index.writeInt(maxEnd);
+					offset += writeBlock(out, blockBytes, blockRecords, deflater);
+					blocks++;
+					blockRecords = 0;
+				}
+				if (blockRecords == 0) {
+					referenceIndex = bs.referenceIndex;
+					firstStart = bs.start;
+					maxEnd = bs.end;
+				}
+				maxEnd = Math.max(maxEnd, bs.end);
+				writeRecord(block, e, category);
+				blockRecords++;
+				records++;
+			}
+			if (blockRecords > 0) {
+				index.writeLong(offset);
+				index.writeInt(referenceIndex);
+				index.writeInt(firstStart);
+				index.writeInt(maxEnd);
+				offset += writeBlock(out, blockBytes, blockRecords, deflater);
+				blocks++;
+			}
+			deflater.end();
+			out.writeInt(blocks);
+			indexBytes.writeTo(out);
+			out.writeLong(offset);
+		}
+		FileHelper.move(tmp, file, false);
+		log.debug(String.format("Wrote %d evidence records to %s", records, file));
+	}
+	private static int writeBlock(DataOutputStream out, ByteArrayOutputStream blockBytes, int blockRecords, Deflater deflater) throws IOException {
+		byte[] raw = blockBytes.toByteArray();
+		blockBytes.reset();
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+		byte[] buffer = new byte[65536];
+		while (!deflater.finished()) {
+			int n = deflater.deflate(buffer);
+			compressed.write(buffer, 0, n);
+		}
+		out.writeInt(blockRecords);
+		out.writeInt(raw.length);
+		out.writeInt(compressed.size());
+		compressed.writeTo(out);
+		return 3 * Integer.BYTES + compressed.size();
+	}
+	private static void writeRecord(DataOutputStream out, DirectedEvidence e, int category) throws IOException {
+		BreakendSummary bs = e.getBreakendSummary();
+		boolean isBreakpoint = e instanceof DirectedBreakpoint && bs instanceof BreakpointSummary;
+		out.writeByte((isBreakpoint ? FLAG_BREAKPOINT : 0) | (e.isBreakendExact() ? FLAG_EXACT : 0));
+		writeBreakend(out, bs.referenceIndex, bs.direction, bs.nominal, bs.start, bs.end);
+		out.writeUTF(e.getEvidenceID());
+		writeString(out, Iterables.getFirst(e.getOriginatingFragmentID(category), null));
+		writeString(out, e.getAssociatedAssemblyName());
+		out.writeFloat(e.getBreakendQual());
+		out.writeInt(e.getLocalMapq());
+		out.writeDouble(e.getStrandBias());
+		out.writeInt(e.constituentReads());
+		writeBytes(out, e.getAnchorSequence());
+		writeBytes(out, e.getBreakendSequence());
+		if (isBreakpoint) {
+			DirectedBreakpoint bp = (DirectedBreakpoint)e;
+			BreakpointSummary loc = bp.getBreakendSummary();
+			writeBreakend(out, loc.referenceIndex2, loc.direction2, loc.nominal2, loc.start2, loc.end2);
+			writeString(out, bp.getRemoteEvidenceID());
+			out.writeFloat(bp.getBreakpointQual());
+			out.writeInt(bp.getRemoteMapq());
+			writeString(out, bp.getUntemplatedSequence());
+			writeString(out, bp.getHomologySequence());
+			out.writeInt(bp.getHomologyAnchoredBaseCount());
+		}
+	}
+	private static void writeBreakend(DataOutputStream out, int referenceIndex, BreakendDirection direction, int nominal, int start, int end) throws IOException {
+		out.writeInt(referenceIndex);
+		out.writeByte(direction.toChar());
+		out.writeInt(nominal);
+		out.writeInt(start);
+		out.writeInt(end);
+	}
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+	private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+		out.writeInt(b == null ? -1 : b.length);
+		if (b != null) {
+			out.write(b);
+		}
+	}
+	private DirectedEvidence readRecord(DataInputStream in) throws IOException {
+		int flags = in.readByte();
+		BreakendSummary bs = readBreakend(in);
+		String evidenceID = in.readUTF();
+		String fragmentID = readString(in);
+		String associatedAssemblyName = readString(in);
+		float breakendQual = in.readFloat();
+		int localMapq = in.readInt();
+		double strandBias = in.readDouble();
+		int constituentReads = in.readInt();
+		byte[] anchor = readBytes(in);
+		byte[] breakend = readBytes(in);
+		boolean exact = (flags & FLAG_EXACT) != 0;
+		if ((flags & FLAG_BREAKPOINT) == 0) {
+			return new CachedDirectedEvidence(source, bs, evidenceID, fragmentID, associatedAssemblyName, breakendQual,
+					localMapq, exact, strandBias, constituentReads, anchor, breakend);
+		}
+		BreakpointSummary bp = new BreakpointSummary(bs, readBreakend(in));
+		String remoteEvidenceID = readString(in);
+		float breakpointQual = in.readFloat();
+		int remoteMapq = in.readInt();
+		String untemplated = readString(in);
+		String homology = readString(in);
+		int homologyAnchoredBaseCount = in.readInt();
+		return new CachedDirectedBreakpoint(source, bp, evidenceID, fragmentID, associatedAssemblyName, breakendQual,
+				localMapq, exact, strandBias, constituentReads, anchor, breakend,
+				remoteEvidenceID, breakpointQual, remoteMapq, untemplated, homology, homologyAnchoredBaseCount);
+	}
+	private static BreakendSummary readBreakend(DataInputStream in) throws IOException {
+		int referenceIndex = in.readInt();
+		BreakendDirection direction = BreakendDirection.fromChar((char)in.readByte());
+		int nominal = in.readInt();
+		int start = in.readInt();
+		int end = in.readInt();
+		return new BreakendSummary(referenceIndex, direction, nominal, start, end);
+	}
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return b;
+	}
+	/**
+	 * Iterates over all cached evidence
+	 */
+	public CloseableIterator<DirectedEvidence> iterator() throws IOException {
+		int[] blocks = new int[blockOffset.length];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = i;
+		}
+		return new BlockIterator(blocks, null);
+	}
+	/**
+	 * Iterates over the cached evidence with a breakend overlapping the given intervals
+	 * @param intervals query intervals
+	 */
+	public CloseableIterator<DirectedEvidence> query(QueryInterval[] intervals) throws IOException {
+		boolean[] include = new boolean[blockOffset.length];
+		for (QueryInterval qi : intervals) {
+			for (int i = 0; i < include.length; i++) {
+				if (blockReferenceIndex[i] == qi.referenceIndex && blockFirstStart[i] <= qi.end && blockMaxEnd[i] >= qi.start) {
+					include[i] = true;
+				}
+			}
+		}
+		int[] blocks = new int[include.length];
+		int count = 0;
+		for (int i = 0; i < include.length; i++) {
+			if (include[i]) {
+				blocks[count++] = i;
+			}
+		}
+		return new BlockIterator(Arrays.copyOf(blocks, count), intervals);
+	}
+	private class BlockIterator extends AbstractIterator<DirectedEvidence> implements CloseableIterator<DirectedEvidence> {
+		private final RandomAccessFile raf;
+		private final int[] blocks;
+		private final QueryInterval[] intervals;
+		private final Inflater inflater = new Inflater();
+		private int nextBlock = 0;
+		private int remainingInBlock = 0;
+		private DataInputStream current;
+		public BlockIterator(int[] blocks, QueryInterval[] intervals) throws IOException {
+			this.raf = new RandomAccessFile(file, "r");
+			this.blocks = blocks;
+			this.intervals = intervals;
+		}
+		@Override
+		protected DirectedEvidence computeNext() {
+			try {
+				while (true) {
+					while (remainingInBlock == 0) {
+						if (nextBlock >= blocks.length) {
+							close();
+							return endOfData();
+						}
+						loadBlock(blocks[nextBlock++]);
+					}
+					remainingInBlock--;
+					DirectedEvidence e = readRecord(current);
+					if (intervals == null || QueryIntervalUtil.overlaps(intervals, e.getBreakendSummary())) {
+						return e;
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw new RuntimeException(String.format("Error reading evidence cache %s", file), e);
+			}
+		}
+		private void loadBlock(int block) throws IOException {
+			raf.seek(blockOffset[block]);
+			int records = raf.readInt();
+			int rawLength = raf.readInt();
+			int compressedLength = raf.readInt();
+			byte[] compressed = new byte[compressedLength];
+			raf.readFully(compressed);
+			byte[] raw = new byte[rawLength];
+			inflater.reset();
+			inflater.setInput(compressed);
+			try {
+				int n = 0;
+				while (n < rawLength && !inflater.finished()) {
+					n += inflater.inflate(raw, n, rawLength - n);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(String.format("Corrupt block in evidence cache %s", file), e);
+			}
+			current = new DataInputStream(new ByteArrayInputStream(raw));
+			remainingInBlock = records;
+		}
+		@Override
+		public void close() {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				log.debug(e);
+			}
+			inflater.end();
+		}
+	}
+}
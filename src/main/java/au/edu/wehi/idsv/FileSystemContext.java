@@ -52,6 +52,7 @@ public class FileSystemContext {
 	private static final String COMMON_INITIAL_SUFFIX = ".gridss";
 	private static final String INTERMEDIATE_DIR_SUFFIX = COMMON_INITIAL_SUFFIX + ".working";
 	private static final String FORMAT_SV_SAM = "%1$s/%2$s.sv.bam";
+	private static final String FORMAT_SV_EVIDENCE_CACHE = "%1$s/%2$s.sv.evidence";
 	private static final String FORMAT_METRICS_PREFIX = "%1$s/%2$s";
 	private static final String FORMAT_INSERT_SIZE_METRICS = FORMAT_METRICS_PREFIX + ".insert_size_metrics";
 	private static final String FORMAT_IDSV_METRICS = FORMAT_METRICS_PREFIX + CollectIdsvMetrics.METRICS_SUFFIX;
@@ -116,6 +117,9 @@ public class FileSystemContext {
 	public File getSVBam(File input) {
 		return getFile(String.format(FORMAT_SV_SAM, getIntermediateDirectory(input), getSource(input).getName()));
 	}
+	public File getSVEvidenceCache(File input) {
+		return getFile(String.format(FORMAT_SV_EVIDENCE_CACHE, getIntermediateDirectory(input), getSource(input).getName()));
+	}
 	public File getBreakpointVcf(File input) {
 		return getFile(String.format(FORMAT_BREAKPOINT_VCF, getIntermediateDirectory(input), getSource(input).getName()));
 	}
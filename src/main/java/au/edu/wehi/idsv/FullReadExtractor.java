@@ -3,34 +3,59 @@ package au.edu.wehi.idsv;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.FileHelper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.ProgressLogger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FullReadExtractor extends ReadExtractor {
     private static final Log log = Log.getInstance(FullReadExtractor.class);
+    /**
+     * Default size (in bases) of the genomic chunks processed in parallel
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000000;
+    private final int chunkSize;
 
     public FullReadExtractor(LinearGenomicCoordinate lgc, IntervalBed bed, boolean extractMates, boolean extractSplits) {
+        this(lgc, bed, extractMates, extractSplits, DEFAULT_CHUNK_SIZE);
+    }
+
+    public FullReadExtractor(LinearGenomicCoordinate lgc, IntervalBed bed, boolean extractMates, boolean extractSplits, int chunkSize) {
         super(lgc, bed, extractMates, extractSplits);
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive");
+        this.chunkSize = chunkSize;
     }
 
+    /**
+     * Extracts all matching reads from the input file.
+     *
+     * When multiple worker threads are available and the input is an indexed coordinate-sorted file,
+     * the input is partitioned into genomic chunks which are decoded and filtered in parallel.
+     * Output record order matches the input file regardless of the number of worker threads.
+     */
     @Override
     public void extract(File input, File output, int workerThreads) throws IOException {
         File tmpOut = gridss.Defaults.OUTPUT_TO_TEMP_FILE ? FileSystemContext.getWorkingFileFor(output) : output;
         try (SamReader reader = SamReaderFactory.makeDefault().open(input)) {
             SAMFileHeader header = reader.getFileHeader();
-            try (AsyncBufferedIterator<SAMRecord> asyncIt = new AsyncBufferedIterator<>(reader.iterator(), input.getName())) {
-                ProgressLoggingSAMRecordIterator it = new ProgressLoggingSAMRecordIterator(asyncIt, new ProgressLogger(log));
-                try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, true, tmpOut)) {
-                    while (it.hasNext()) {
-                        SAMRecord r = it.next();
-                        if (shouldExtract(r)) {
-                            writer.addAlignment(r);
-                        }
-                    }
+            try (SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, true, tmpOut)) {
+                if (workerThreads > 1 && reader.hasIndex() && header.getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+                    extractParallel(input, header, writer, workerThreads);
+                } else {
+                    extractSequential(reader, input, writer);
                 }
             }
         }
@@ -38,4 +63,105 @@ public class FullReadExtractor extends ReadExtractor {
             FileHelper.move(tmpOut, output, true);
         }
     }
+
+    private void extractSequential(SamReader reader, File input, SAMFileWriter writer) {
+        try (AsyncBufferedIterator<SAMRecord> asyncIt = new AsyncBufferedIterator<>(reader.iterator(), input.getName())) {
+            ProgressLoggingSAMRecordIterator it = new ProgressLoggingSAMRecordIterator(asyncIt, new ProgressLogger(log));
+            while (it.hasNext()) {
+                SAMRecord r = it.next();
+                if (shouldExtract(r)) {
+                    writer.addAlignment(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Partitions the reference into the chunks processed in parallel.
+     * Each mapped or placed record is assigned to the chunk containing its alignment start.
+     * Chunks are returned in reference order with the final chunk of each contig open-ended.
+     */
+    public List<QueryInterval> getChunks(SAMSequenceDictionary dict) {
+        List<QueryInterval> chunks = new ArrayList<>();
+        for (SAMSequenceRecord seq : dict.getSequences()) {
+            int start = 1;
+            while (start + chunkSize <= seq.getSequenceLength()) {
+                chunks.add(new QueryInterval(seq.getSequenceIndex(), start, start + chunkSize - 1));
+                start += chunkSize;
+            }
+            // QueryInterval end of 0 indicates the end of the contig
+            chunks.add(new QueryInterval(seq.getSequenceIndex(), start, 0));
+        }
+        return chunks;
+    }
+
+    private void extractParallel(File input, SAMFileHeader header, SAMFileWriter writer, int workerThreads) throws IOException {
+        List<QueryInterval> chunks = getChunks(header.getSequenceDictionary());
+        // final null chunk contains the unplaced reads
+        chunks.add(null);
+        log.info(String.format("Extracting reads from %s using %d chunks on %d threads.", input.getName(), chunks.size(), workerThreads));
+        ExecutorService threadpool = Executors.newFixedThreadPool(workerThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
+        BlockingQueue<SamReader> readers = new ArrayBlockingQueue<>(workerThreads);
+        // chunks are reassembled in file order as they complete
+        ArrayDeque<CompletableFuture<List<SAMRecord>>> pending = new ArrayDeque<>();
+        try {
+            for (int i = 0; i < workerThreads; i++) {
+                readers.add(SamReaderFactory.makeDefault().open(input));
+            }
+            ProgressLogger progress = new ProgressLogger(log);
+            int nextChunk = 0;
+            while (nextChunk < chunks.size() || !pending.isEmpty()) {
+                while (nextChunk < chunks.size() && pending.size() < 2 * workerThreads) {
+                    QueryInterval chunk = chunks.get(nextChunk++);
+                    pending.add(CompletableFuture.supplyAsync(() -> extractChunk(readers, chunk), threadpool));
+                }
+                List<SAMRecord> extracted;
+                try {
+                    extracted = pending.poll().join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                    if (e.getCause() instanceof Error) throw (Error)e.getCause();
+                    throw e;
+                }
+                for (SAMRecord r : extracted) {
+                    writer.addAlignment(r);
+                    progress.record(r);
+                }
+            }
+        } finally {
+            // don't close readers until all in-flight chunks have completed
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).handle((result, e) -> null).join();
+            threadpool.shutdown();
+            for (SamReader reader : readers) {
+                CloserUtil.close(reader);
+            }
+        }
+    }
+
+    private List<SAMRecord> extractChunk(BlockingQueue<SamReader> readers, QueryInterval chunk) {
+        SamReader reader;
+        try {
+            reader = readers.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            List<SAMRecord> result = new ArrayList<>();
+            try (SAMRecordIterator it = chunk == null ? reader.queryUnmapped() : reader.query(new QueryInterval[] { chunk }, false)) {
+                while (it.hasNext()) {
+                    SAMRecord r = it.next();
+                    // records overlapping the chunk boundary belong to the chunk containing their start
+                    if (chunk != null && (r.getAlignmentStart() < chunk.start || (chunk.end > 0 && r.getAlignmentStart() > chunk.end))) {
+                        continue;
+                    }
+                    if (shouldExtract(r)) {
+                        result.add(r);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            readers.add(reader);
+        }
+    }
 }
@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.picard.TwoBitBufferedReferenceSequenceFile;
 import au.edu.wehi.idsv.util.AutoClosingIterator;
+import au.edu.wehi.idsv.util.ResidentCache;
 import au.edu.wehi.idsv.vcf.GridssVcfConstants;
 import com.google.common.collect.Lists;
 import gridss.cmdline.ReferenceCommandLineProgram;
@@ -92,8 +93,11 @@ public class GenomicProcessingContext implements Closeable {
 	 * @param referenceFile reference genome fasta
 	 * @return reference genome 
 	 */
-	@SuppressWarnings("resource")
 	protected ReferenceLookup LoadSynchronizedReference(File referenceFile) {
+		return ResidentCache.get("reference", referenceFile, () -> LoadReference(referenceFile));
+	}
+	@SuppressWarnings("resource")
+	private static ReferenceLookup LoadReference(File referenceFile) {
 		try {
 			ReferenceSequenceFile underlying = new IndexedFastaSequenceFile(referenceFile);
 			if (referenceFile.length() > Runtime.getRuntime().maxMemory()) {
@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.configuration.GridssConfiguration;
 import au.edu.wehi.idsv.configuration.SoftClipConfiguration;
 import au.edu.wehi.idsv.metrics.IdsvSamFileMetrics;
+import au.edu.wehi.idsv.sam.BAMRecordUtil;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
 import au.edu.wehi.idsv.sam.CigarUtil;
 import au.edu.wehi.idsv.sam.SAMFileUtil;
@@ -146,6 +147,7 @@ public class SAMEvidenceSource extends EvidenceSource {
 		// We want to tag before generating split reads so all splits are guaranteed to
 		// have the same tags
 		if (!svFile.exists()) {
+			FileHelper.delete(getContext().getFileSystemContext().getSVEvidenceCache(getFile()), false);
 			if (!withsplitreadsFile.exists()) {
 				if (!taggedFile.exists()) {
 					if (!querysortedFile.exists()) {
@@ -212,6 +214,58 @@ public class SAMEvidenceSource extends EvidenceSource {
 			FileHelper.delete(withsplitreadsFile, true);
 		}
 	}
+	/**
+	 * Ensures the binary evidence cache for this source has been written.
+	 * The cache is written from the .sv.bam and is regenerated whenever the .sv.bam,
+	 * configuration, or any other input affecting the evidence changes.
+	 */
+	public synchronized void ensureEvidenceCache() throws IOException {
+		File cache = getEvidenceCacheFile();
+		if (cache == null) {
+			return;
+		}
+		String fingerprint = getEvidenceFingerprint();
+		if (cache.exists()) {
+			if (fingerprint.equals(EvidenceCache.readFingerprint(cache))) {
+				return;
+			}
+			log.info("Evidence cache " + cache + " is out of date.");
+		}
+		assertPreprocessingComplete();
+		log.info("Writing evidence cache " + cache);
+		try (CloseableIterator<DirectedEvidence> it = iterator(EvidenceSortOrder.EvidenceStartPosition)) {
+			EvidenceCache.write(cache, it, getSourceCategory(), fingerprint);
+		}
+	}
+	public File getEvidenceCacheFile() {
+		if (getFile() == null) {
+			return null;
+		}
+		return getContext().getFileSystemContext().getSVEvidenceCache(getFile());
+	}
+	/**
+	 * Iterates over evidence overlapping the given intervals.
+	 *
+	 * If evidence caching is enabled and an up to date evidence cache exists, evidence
+	 * is loaded from the cache instead of the .sv.bam.
+	 * Cached evidence retains only the summary fields of the evidence and is only suitable
+	 * for consumers that do not require the underlying read alignment.
+	 */
+	public CloseableIterator<DirectedEvidence> summaryIterator(final QueryInterval[] intervals, EvidenceSortOrder eso) {
+		return summaryIterator(intervals, eso, Defaults.USE_EVIDENCE_CACHE);
+	}
+	// Exposed mostly for testing purposes
+	CloseableIterator<DirectedEvidence> summaryIterator(final QueryInterval[] intervals, EvidenceSortOrder eso, boolean useCache) {
+		File cache = getEvidenceCacheFile();
+		if (useCache && eso == EvidenceSortOrder.EvidenceStartPosition && cache != null && cache.exists()) {
+			try {
+				return new EvidenceCache(this, cache, getEvidenceFingerprint()).query(intervals);
+			} catch (IOException e) {
+				log.warn(e, "Unable to read evidence cache " + cache + ". Falling back to " + getSVFile());
+			}
+		}
+		return iterator(intervals, eso);
+	}
 	public CloseableIterator<DirectedEvidence> iterator(final QueryInterval[] intervals, EvidenceSortOrder eso) {
 		SamReader reader = getReader();
 		// expand query bounds as the alignment for a discordant read pair could fall before or after the breakend interval we are extracting
@@ -276,6 +330,21 @@ public class SAMEvidenceSource extends EvidenceSource {
 		}
 		return getContext().getFileSystemContext().getSVBam(getFile());
 	}
+	/**
+	 * Fingerprint of the inputs and parameters that determine the evidence reported by this source.
+	 * Includes the configuration, reference genome, blacklisted regions and duplicate filtering.
+	 * @return evidence fingerprint
+	 */
+	public String getEvidenceFingerprint() {
+		return CompletionMarker.fingerprint(
+				getContext().getConfig().getParameters(),
+				getContext().getReferenceFile(),
+				getContext().isFilterDuplicates(),
+				getBlacklistedRegions().asQueryInterval(),
+				getSourceCategory(),
+				getFile(),
+				getSVFile());
+	}
 	public void assertPreprocessingComplete() {
 		File svFile = getSVFile();
 		if (svFile != null && !svFile.exists()) {
@@ -400,17 +469,7 @@ public class SAMEvidenceSource extends EvidenceSource {
 		return false;
 	}
 	private boolean isIndelOrClipped(SAMRecord r) {
-		for (CigarElement ce : r.getCigar()) {
-			switch (ce.getOperator()) {
-				case S:
-				case H:
-				case D:
-				case I:
-				case N:
-					return true;
-			}
-		}
-		return false;
+		return (BAMRecordUtil.cigarOperatorMask(r) & (BAMRecordUtil.CLIPPING_OPERATOR_MASK | BAMRecordUtil.INDEL_OPERATOR_MASK)) != 0;
 	}
 	public boolean shouldFilter(SAMRecord r) {
 		if (r == null) {
@@ -435,8 +494,8 @@ public class SAMEvidenceSource extends EvidenceSource {
 	private IntervalBed blacklist = null;
 	public IntervalBed getBlacklistedRegions() {
 		if (blacklist == null) {
-			File coverageBlacklist = getContext().getFileSystemContext().getCoverageBlacklistBed(getFile());
-			if (!coverageBlacklist.exists()) {
+			File coverageBlacklist = getFile() == null ? null : getContext().getFileSystemContext().getCoverageBlacklistBed(getFile());
+			if (coverageBlacklist == null || !coverageBlacklist.exists()) {
 				// Fall back to generic blacklist if we haven't calculated a coverage blacklist yet 
 				blacklist = getContext().getBlacklistedRegions();
 			} else {
@@ -593,6 +652,18 @@ public class SAMEvidenceSource extends EvidenceSource {
 		}
 		return merged;
 	}
+	/**
+	 * Merged evidence from the given sources, using the evidence cache of each source where available.
+	 * @see #summaryIterator(QueryInterval[], EvidenceSortOrder)
+	 */
+	public static CloseableIterator<DirectedEvidence> mergedSummaryIterator(final List<SAMEvidenceSource> source, final QueryInterval[] intervals, EvidenceSortOrder eso) {
+		List<CloseableIterator<DirectedEvidence>> toMerge = Lists.newArrayList();
+		for (SAMEvidenceSource bam : source) {
+			CloseableIterator<DirectedEvidence> it = bam.summaryIterator(intervals, eso);
+			toMerge.add(it);
+		}
+		return new AutoClosingMergedIterator<DirectedEvidence>(toMerge,  eso == EvidenceSortOrder.EvidenceStartPosition ? DirectedEvidenceOrder.ByNatural : DirectedEvidenceOrder.BySAMStart);
+	}
 	/**
 	 * Maximum distance between the SAM alignment location of evidence, and the extrema of the
 	 * breakend position supported by that evidence. 
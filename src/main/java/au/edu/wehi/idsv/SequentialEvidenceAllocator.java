@@ -1,14 +1,14 @@
 package au.edu.wehi.idsv;
 
-import au.edu.wehi.idsv.util.RangeUtil;
+import au.edu.wehi.idsv.util.SlidingWindowBestValueMap;
+import au.edu.wehi.idsv.util.SlidingWindowIntervalIndex;
 import au.edu.wehi.idsv.vcf.VcfSvConstants;
 import au.edu.wehi.idsv.visualisation.TrackedBuffer;
 import com.google.common.collect.*;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.util.IntervalTree;
-import htsjdk.samtools.util.IntervalTree.Node;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.ProgressLogger;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 
@@ -36,8 +36,12 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 	private final OverlapLookup breakpointLookup;
 	private final OverlapLookup breakendLookup;
 	private final ArrayDeque<VariantEvidenceSupport> variantBuffer = new ArrayDeque<VariantEvidenceSupport>();
-	private final Map<String, VariantEvidenceSupport> bufferedVariantId = new HashMap<String, VariantEvidenceSupport>();
-	private final SetMultimap<String, VariantEvidenceSupport> assemblyAllocationLookup = HashMultimap.create();
+	private final Map<String, VariantEvidenceSupport> bufferedVariantId = new Object2ObjectOpenHashMap<String, VariantEvidenceSupport>();
+	/**
+	 * Variants each assembly has been allocated to.
+	 * Assemblies are almost always allocated to a single variant so a small list is used instead of a set.
+	 */
+	private final Map<String, List<VariantEvidenceSupport>> assemblyAllocationLookup = new Object2ObjectOpenHashMap<String, List<VariantEvidenceSupport>>();
 	public class VariantEvidenceSupport {
 		private final String id;
 		private final String mateid;
@@ -100,6 +104,7 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 			return chain.result();
 		}
 	};
+	private static final Comparator<VariantEvidenceSupport> ByScore = (o1, o2) -> o1.score < o2.score ? -1 : (o1.score > o2.score ? 1 : 0);
 	/**
 	 * Creates an evidence allocator
 	 * @param context processing context
@@ -187,13 +192,33 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 		}
 		for (DirectedEvidence ass : variant.support) {
 			if (AssemblyAttributes.isAssembly(ass)) {
-				if (!assemblyAllocationLookup.remove(ass.getAssociatedAssemblyName(), variant) && assignEvidenceToSingleBreakpoint) {
+				if (!removeAssemblyAllocation(ass.getAssociatedAssemblyName(), variant) && assignEvidenceToSingleBreakpoint) {
 					log.debug("Sanity failure: failed to remove assembly from lookup. Multiple evidence from single assembly assigned to this variant?");
 				}
 			}
 		}
 		return variant;
 	}
+	private void addAssemblyAllocation(String assemblyName, VariantEvidenceSupport variant) {
+		List<VariantEvidenceSupport> list = assemblyAllocationLookup.get(assemblyName);
+		if (list == null) {
+			list = new ArrayList<>(1);
+			assemblyAllocationLookup.put(assemblyName, list);
+		}
+		if (!list.contains(variant)) {
+			list.add(variant);
+		}
+	}
+	private boolean removeAssemblyAllocation(String assemblyName, VariantEvidenceSupport variant) {
+		List<VariantEvidenceSupport> list = assemblyAllocationLookup.get(assemblyName);
+		if (list == null || !list.remove(variant)) {
+			return false;
+		}
+		if (list.isEmpty()) {
+			assemblyAllocationLookup.remove(assemblyName);
+		}
+		return true;
+	}
 	private void processEvidenceBefore(PeekingIterator<? extends DirectedEvidence> it, long position) {
 		while (it.hasNext() && context.getLinear().getStartLinearCoordinate(it.peek().getBreakendSummary()) - context.getVariantCallingParameters().breakendMargin <= position) {
 			assignEvidence(it.next());
@@ -227,7 +252,7 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 				assignedTo = assignToBestBreakend(bs, evidence);
 			}
 			if (assignedTo != null) {
-				assemblyAllocationLookup.put(evidence.getAssociatedAssemblyName(), assignedTo);
+				addAssemblyAllocation(evidence.getAssociatedAssemblyName(), assignedTo);
 			}
 		} else {
 			if (evidence instanceof DirectedBreakpoint) {
@@ -344,58 +369,26 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 		public abstract void remove(VariantEvidenceSupport ves);
 		public abstract Iterator<VariantEvidenceSupport> findAllOverlapping(BreakendSummary breakend);
 		public abstract VariantEvidenceSupport findBestOverlapping(BreakendSummary breakend);
-		protected void add(IntervalTree<List<VariantEvidenceSupport>> lookup, int start, int end, VariantEvidenceSupport ves) {
-			Node<List<VariantEvidenceSupport>> node = lookup.find(start, end);
-			if (node != null) {
-				node.getValue().add(ves);
-			} else {
-				ArrayList<VariantEvidenceSupport> list = new ArrayList<>(2);
-				list.add(ves);
-				lookup.put(start, end, list);
-			}
-		}
-		protected void remove(IntervalTree<List<VariantEvidenceSupport>> lookup, int start, int end, VariantEvidenceSupport ves) {
-			Node<List<VariantEvidenceSupport>> node = lookup.find(start, end);
-			if (node != null) {
-				List<VariantEvidenceSupport> list = node.getValue();
-				if (!list.remove(ves)) {
-					String msg = String.format("Attempting to remove %s which does not exist on interval (%d, %d)", ves.location, start, end);
-					throw new IllegalStateException(msg);
-				}
-				node.getValue().remove(ves);
-				if (node.getValue().isEmpty()) {
-					lookup.remove(start, end);
-				}
-			} else {
-				String msg = String.format("Attempting to remove %s from non-existant interval (%d, %d)", ves.location, start, end);
+		protected void remove(SlidingWindowIntervalIndex<VariantEvidenceSupport> lookup, int start, int end, VariantEvidenceSupport ves) {
+			if (!lookup.remove(start, end, ves)) {
+				String msg = String.format("Attempting to remove %s which does not exist on interval (%d, %d)", ves.location, start, end);
 				throw new IllegalStateException(msg);
 			}
 		}
 		/**
-		 * Gets the index of the IntervalTree lookup for this reference contig and direction  
+		 * Gets the index of the interval lookup for this reference contig and direction  
 		 */
 		protected int getIndex(int referenceIndex, BreakendDirection dir) {
 			return 2 * referenceIndex + (dir == BreakendDirection.Forward ? 0 : 1);
 		}
 		/**
-		 * Creates an IntervalTree lookup for each reference contig and direction 
+		 * Creates an interval lookup for each reference contig and direction 
 		 */
-		protected List<IntervalTree<List<VariantEvidenceSupport>>> createByReferenceIndexDirectionLookup(int referenceSequenceCount) {
+		protected List<SlidingWindowIntervalIndex<VariantEvidenceSupport>> createByReferenceIndexDirectionLookup(int referenceSequenceCount) {
 			return IntStream.range(0, referenceSequenceCount * 2)
-					.mapToObj(i -> new IntervalTree<List<VariantEvidenceSupport>>())
+					.mapToObj(i -> new SlidingWindowIntervalIndex<VariantEvidenceSupport>())
 					.collect(Collectors.toList());
 		}
-		protected VariantEvidenceSupport findBestOverlapping(BreakendSummary breakend, Iterator<VariantEvidenceSupport> it) {
-			VariantEvidenceSupport best = null;
-			while (it.hasNext()) {
-				VariantEvidenceSupport v = it.next();
-				assert(v.location.overlaps(breakend));
-				if (best == null || ByScoreAscPositionDesc.compare(v, best) > 0) { 
-					best = v;
-				}
-			}
-			return best;
-		}
 	}
 	/**
 	 * Finds all variant calls overlapping the given evidence 
@@ -403,75 +396,49 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 	 *
 	 */
 	private static class LocalOverlapLookup extends OverlapLookup {
-		List<IntervalTree<List<VariantEvidenceSupport>>> localLookup;
+		List<SlidingWindowIntervalIndex<VariantEvidenceSupport>> localLookup;
 		public LocalOverlapLookup(int referenceSequenceCount) {
 			localLookup = createByReferenceIndexDirectionLookup(referenceSequenceCount);
 		}
 		public void add(VariantEvidenceSupport ves)
 		{
-			add(localLookup.get(getIndex(ves.location.referenceIndex, ves.location.direction)), ves.location.start, ves.location.end, ves);
+			localLookup.get(getIndex(ves.location.referenceIndex, ves.location.direction)).add(ves.location.start, ves.location.end, ves);
 		}
 		public void remove(VariantEvidenceSupport ves)
 		{
 			remove(localLookup.get(getIndex(ves.location.referenceIndex, ves.location.direction)), ves.location.start, ves.location.end, ves);
 		}
 		public Iterator<VariantEvidenceSupport> findAllOverlapping(BreakendSummary breakend) {
-			IntervalTree<List<VariantEvidenceSupport>> tree = localLookup.get(getIndex(breakend.referenceIndex, breakend.direction));
-			Iterator<Node<List<VariantEvidenceSupport>>> nodeit = tree.overlappers(breakend.start, breakend.end);
-			return new VariantEvidenceSupportNodeListIterator(nodeit, breakend);
+			SlidingWindowIntervalIndex<VariantEvidenceSupport> lookup = localLookup.get(getIndex(breakend.referenceIndex, breakend.direction));
+			return Iterators.filter(lookup.findAllOverlapping(breakend.start, breakend.end), ves -> ves.location.overlaps(breakend));
 		}
 		public VariantEvidenceSupport findBestOverlapping(BreakendSummary breakend) {
-			Iterator<VariantEvidenceSupport> it = findAllOverlapping(breakend);
-			return findBestOverlapping(breakend, it);
-		}
-	}
-	private static class VariantEvidenceSupportNodeListIterator extends AbstractIterator<VariantEvidenceSupport> {
-		private final Iterator<Node<List<VariantEvidenceSupport>>> nodeIt;
-		private final BreakendSummary breakend;
-		private Iterator<VariantEvidenceSupport> listIt = Collections.emptyIterator();
-		public VariantEvidenceSupportNodeListIterator(Iterator<Node<List<VariantEvidenceSupport>>> nodeIt, BreakendSummary breakend) {
-			this.nodeIt = nodeIt;
-			this.breakend = breakend;
-		}
-		@Override
-		protected VariantEvidenceSupport computeNext() {
-			while (nodeIt.hasNext() || listIt.hasNext()) {
-				// advance through current list
-				while (listIt.hasNext()) {
-					VariantEvidenceSupport ves = listIt.next();
-					if (ves.location.overlaps(breakend)) {
-						return ves;
-					}
-				}
-				if (nodeIt.hasNext()) {
-					listIt = nodeIt.next().getValue().iterator();
-				}
-			}
-			return endOfData();
+			SlidingWindowIntervalIndex<VariantEvidenceSupport> lookup = localLookup.get(getIndex(breakend.referenceIndex, breakend.direction));
+			return lookup.findBestOverlapping(breakend.start, breakend.end, ves -> ves.location.overlaps(breakend), ByScoreAscPositionDesc);
 		}
 	}
 	/**
-	 * Finds the best overlapping variant call using a 1D interval tree on the remote breakpoint
+	 * Finds the best overlapping variant call using a 1D interval lookup on the remote breakpoint
 	 * This should have better performance as, for repetitive sequence, the remote breakends
 	 * are distributed across all repeats, but the local breakends all map to the same location
 	 * (since we are doing a sequential traversal).
 	 */
 	private static class RemoteOverlapLookup extends OverlapLookup {
-		List<IntervalTree<List<VariantEvidenceSupport>>> remoteLookup;
-		List<RangeMap<Integer, VariantEvidenceSupport>> bestLocal;
+		List<SlidingWindowIntervalIndex<VariantEvidenceSupport>> remoteLookup;
+		List<SlidingWindowBestValueMap<VariantEvidenceSupport>> bestLocal;
 		public RemoteOverlapLookup(int referenceSequenceCount) {
 			this.remoteLookup = createByReferenceIndexDirectionLookup(referenceSequenceCount);
 			this.bestLocal = IntStream.range(0, referenceSequenceCount * 2)
-					.mapToObj(i -> TreeRangeMap.<Integer,VariantEvidenceSupport>create())
+					.mapToObj(i -> new SlidingWindowBestValueMap<VariantEvidenceSupport>())
 					.collect(Collectors.toList());
 		}
 		public void add(VariantEvidenceSupport ves) {
 			assert(ves.location instanceof BreakpointSummary);
 			BreakpointSummary location = (BreakpointSummary)ves.location;
-			add(remoteLookup.get(getIndex(location.referenceIndex2, location.direction2)), location.start2, location.end2, ves);
+			remoteLookup.get(getIndex(location.referenceIndex2, location.direction2)).add(location.start2, location.end2, ves);
 			// need to add over the intervals in which we are the best
-			RangeMap<Integer, VariantEvidenceSupport> rm = bestLocal.get(getIndex(location.referenceIndex, location.direction));
-			RangeUtil.addWhereBest(rm, Range.closedOpen(location.start, location.end + 1), ves, ByScoreAscPositionDesc);
+			SlidingWindowBestValueMap<VariantEvidenceSupport> rm = bestLocal.get(getIndex(location.referenceIndex, location.direction));
+			rm.putWhereBest(location.start, location.end, ves, ByScoreAscPositionDesc);
 		}
 		public void remove(VariantEvidenceSupport ves) {
 			assert(ves.location instanceof BreakpointSummary);
@@ -480,18 +447,16 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 			// we can remove all intervals before our end position as to be removed,
 			// we need to have already added all the potential support for any variant
 			// before our end position
-			RangeMap<Integer, VariantEvidenceSupport> rm = bestLocal.get(getIndex(location.referenceIndex, location.direction));
-			rm.remove(Range.lessThan(location.end + 1));
+			SlidingWindowBestValueMap<VariantEvidenceSupport> rm = bestLocal.get(getIndex(location.referenceIndex, location.direction));
+			rm.removeBefore(location.end + 1);
 		}
 		@Override
 		public Iterator<VariantEvidenceSupport> findAllOverlapping(BreakendSummary breakend) {
 			throw new NotImplementedException("RemoteOverlapLookup requires unique greedy evidence assignment");
 		}
 		public VariantEvidenceSupport findBestOverlapping(BreakpointSummary breakend) {
-			IntervalTree<List<VariantEvidenceSupport>> tree = remoteLookup.get(getIndex(breakend.referenceIndex2, breakend.direction2));
-			Iterator<Node<List<VariantEvidenceSupport>>> nodeit = tree.overlappers(breakend.start2, breakend.end2);
-			Iterator<VariantEvidenceSupport> it = new VariantEvidenceSupportNodeListIterator(nodeit, breakend);
-			return findBestOverlapping(breakend, it);
+			SlidingWindowIntervalIndex<VariantEvidenceSupport> lookup = remoteLookup.get(getIndex(breakend.referenceIndex2, breakend.direction2));
+			return lookup.findBestOverlapping(breakend.start2, breakend.end2, ves -> ves.location.overlaps(breakend), ByScoreAscPositionDesc);
 		}
 		@Override
 		public VariantEvidenceSupport findBestOverlapping(BreakendSummary breakend) {
@@ -499,17 +464,8 @@ public class SequentialEvidenceAllocator implements Iterator<SequentialEvidenceA
 				return findBestOverlapping((BreakpointSummary)breakend);
 			}
 			// lookup bestLocal
-			RangeMap<Integer, VariantEvidenceSupport> rm = bestLocal.get(getIndex(breakend.referenceIndex, breakend.direction));
-			rm = rm.subRangeMap(Range.closedOpen(breakend.start, breakend.end + 1));
-			float bestScore = -1;
-			VariantEvidenceSupport best = null;
-			for (VariantEvidenceSupport entry : rm.asMapOfRanges().values()) {
-				if (entry.score > bestScore) {
-					bestScore =  entry.score;
-					best = entry;
-				}
-			}
-			return best;
+			SlidingWindowBestValueMap<VariantEvidenceSupport> rm = bestLocal.get(getIndex(breakend.referenceIndex, breakend.direction));
+			return rm.findBest(breakend.start, breakend.end, ByScore);
 		}
 	}
 }
@@ -78,7 +78,7 @@ public class VariantCallIterator implements CloseableIterator<VariantContextDire
 	}
 	public VariantCallIterator(AggregateEvidenceSource source, QueryInterval[] interval, int intervalNumber) {
 		this(source.getContext(),
-				source.iterator(QueryIntervalUtil.padIntervals(source.getContext().getDictionary(), interval, source.getMaxConcordantFragmentSize() + 1)),
+				source.summaryIterator(QueryIntervalUtil.padIntervals(source.getContext().getDictionary(), interval, source.getMaxConcordantFragmentSize() + 1)),
 				QueryIntervalUtil.padIntervals(source.getContext().getDictionary(), interval, source.getMaxConcordantFragmentSize() + 1),
 				intervalNumber);
 	}
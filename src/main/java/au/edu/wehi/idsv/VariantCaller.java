@@ -37,6 +37,11 @@ public class VariantCaller {
 		for (AssemblyEvidenceSource aes : assemblyEvidence) {
 			aes.assertPreprocessingComplete();
 		}
+		if (Defaults.USE_EVIDENCE_CACHE) {
+			for (SAMEvidenceSource ses : samEvidence) {
+				ses.ensureEvidenceCache();
+			}
+		}
 		log.info("Identifying Breakpoints");
 		if (threadpool == null) {
 			threadpool = MoreExecutors.newDirectExecutorService();
@@ -51,8 +56,15 @@ public class VariantCaller {
 			File f = processContext.getFileSystemContext().getVariantCallChunkVcf(vcf, i);
 			int chunkNumber = i;
 			calledChunk.add(f);
-			if (!f.exists()) {
-				tasks.add(threadpool.submit(() -> { callChunk(f, es, chunkNumber, chunk); return null; }));
+			String fingerprint = getChunkFingerprint(chunk);
+			if (!CompletionMarker.isComplete(f, fingerprint)) {
+				tasks.add(threadpool.submit(() -> {
+					callChunk(f, es, chunkNumber, chunk);
+					CompletionMarker.markComplete(f, fingerprint);
+					return null;
+				}));
+			} else {
+				log.info(String.format("Skipping variant calling of chunk %d: already called", chunkNumber));
 			}
 		}
 		runTasks(tasks);
@@ -67,10 +79,26 @@ public class VariantCaller {
 		if (gridss.Defaults.DELETE_TEMPORARY_FILES) {
 			for (File f : calledChunk) {
 				FileHelper.delete(f, true);
+				CompletionMarker.clear(f);
 			}
 			FileHelper.delete(mergedOut, true);
 		}
 	}
+	/**
+	 * Fingerprint of the calling parameters and evidence used to call the given chunk
+	 */
+	private String getChunkFingerprint(QueryInterval[] chunk) {
+		List<String> evidence = new ArrayList<>();
+		samEvidence.stream().forEach(ses -> evidence.add(ses.getEvidenceFingerprint()));
+		assemblyEvidence.stream().forEach(aes -> evidence.add(aes.getEvidenceFingerprint()));
+		return CompletionMarker.fingerprint(
+				processContext.getConfig().getParameters(),
+				processContext.getReferenceFile(),
+				processContext.isFilterDuplicates(),
+				processContext.getBlacklistedRegions().asQueryInterval(),
+				chunk,
+				evidence);
+	}
 	private void runTasks(List<Future<Void>> tasks) {
 		// Run as many tasks as we can before dying
 		Exception firstException = null;
@@ -0,0 +1,264 @@
+package au.edu.wehi.idsv.alignment;
+
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Pure Java affine gap Smith-Waterman aligner restricted to a band of diagonals.
+ *
+ * The aligner has no native dependencies and breaks ties deterministically:
+ * the highest scoring cell closest to the start of the sequence is chosen,
+ * and traceback prefers match/mismatch over deletion over insertion.
+ *
+ * A gap of length n is scored as gapOpen + (n - 1) * gapExtend.
+ *
+ * Score and traceback buffers are reused by each thread.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class BandedSmithWatermanAligner implements Aligner {
+	private static final int MATRIX_SIZE = 128;
+	private static final int NEG_INF = Integer.MIN_VALUE / 2;
+	private static final byte FROM_START = 0;
+	private static final byte FROM_DIAGONAL = 1;
+	private static final byte FROM_DELETION = 2;
+	private static final byte FROM_INSERTION = 3;
+	private static final byte SOURCE_MASK = 3;
+	private static final byte DELETION_EXTENDED = 4;
+	private static final byte INSERTION_EXTENDED = 8;
+	private static final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(Workspace::new);
+	private final int[] matrix;
+	private final int ambiguous;
+	private final int gapOpen;
+	private final int gapExtend;
+	public BandedSmithWatermanAligner(int match, int mismatch, int ambiguous, int gapOpen, int gapExtend) {
+		this.matrix = createMatrix(match, mismatch, ambiguous);
+		this.ambiguous = ambiguous;
+		this.gapOpen = gapOpen;
+		this.gapExtend = gapExtend;
+	}
+	private static int[] createMatrix(int match, int mismatch, int ambiguous) {
+		int[] scores = new int[MATRIX_SIZE * MATRIX_SIZE];
+		for (int i = 0; i < MATRIX_SIZE; i++) {
+			for (int j = 0; j < MATRIX_SIZE; j++) {
+				if (Character.toUpperCase(i) == Character.toUpperCase(j)) {
+					scores[i * MATRIX_SIZE + j] = match;
+				} else if (SequenceUtil.isValidBase((byte) i) && SequenceUtil.isValidBase((byte) j)) {
+					scores[i * MATRIX_SIZE + j] = mismatch;
+				} else {
+					scores[i * MATRIX_SIZE + j] = ambiguous;
+				}
+			}
+		}
+		return scores;
+	}
+	private int score(byte a, byte b) {
+		if (a < 0 || b < 0) return ambiguous;
+		return matrix[a * MATRIX_SIZE + b];
+	}
+	/**
+	 * Performs an unbanded Smith-Waterman alignment
+	 */
+	@Override
+	public Alignment align_smith_waterman(byte[] seq, byte[] ref) {
+		return align_smith_waterman(seq, ref, -seq.length, ref.length);
+	}
+	/**
+	 * Performs Smith-Waterman alignment restricted to the given diagonals.
+	 * The diagonal of an aligned base pair is the reference offset minus the sequence offset.
+	 * @param seq sequence to align
+	 * @param ref reference sequence
+	 * @param minDiagonal first diagonal considered
+	 * @param maxDiagonal last diagonal considered
+	 * @return Alignment of sequence relative to reference
+	 */
+	public Alignment align_smith_waterman(byte[] seq, byte[] ref, int minDiagonal, int maxDiagonal) {
+		if (seq == null || seq.length == 0) {
+			throw new IllegalArgumentException("seq must be non-zero size");
+		}
+		if (ref == null || ref.length == 0) {
+			throw new IllegalArgumentException("ref must be non-zero size");
+		}
+		int n = seq.length;
+		int m = ref.length;
+		minDiagonal = Math.max(minDiagonal, -n);
+		maxDiagonal = Math.min(maxDiagonal, m);
+		if (minDiagonal > maxDiagonal) {
+			return unaligned(n);
+		}
+		// cells are indexed by their offset within the band: b = j - i - minDiagonal
+		// for 1-based sequence position i and reference position j
+		int width = maxDiagonal - minDiagonal + 1;
+		Workspace ws = workspace.get();
+		ws.ensureCapacity(n, width);
+		int[] hPrev = ws.hPrev;
+		int[] fPrev = ws.fPrev;
+		int[] h = ws.h;
+		int[] f = ws.f;
+		byte[] trace = ws.trace;
+		for (int b = 0; b <= width; b++) {
+			hPrev[b] = 0;
+			fPrev[b] = NEG_INF;
+		}
+		h[width] = 0;
+		f[width] = NEG_INF;
+		int bestScore = 0;
+		int bestI = 0;
+		int bestB = 0;
+		for (int i = 1; i <= n; i++) {
+			int e = NEG_INF;
+			int rowOffset = (i - 1) * width;
+			byte seqBase = seq[i - 1];
+			for (int b = 0; b < width; b++) {
+				int j = i + minDiagonal + b;
+				if (j < 1 || j > m) {
+					h[b] = 0;
+					f[b] = NEG_INF;
+					e = NEG_INF;
+					trace[rowOffset + b] = FROM_START;
+					continue;
+				}
+				byte t;
+				// deletion: gap in the sequence, extends along the reference
+				int eOpen = b > 0 ? h[b - 1] - gapOpen : NEG_INF;
+				int eExtend = e - gapExtend;
+				if (eExtend > eOpen) {
+					e = eExtend;
+					t = DELETION_EXTENDED;
+				} else {
+					e = eOpen;
+					t = 0;
+				}
+				// insertion: gap in the reference, extends along the sequence
+				int fOpen = hPrev[b + 1] - gapOpen;
+				int fExtend = fPrev[b + 1] - gapExtend;
+				int fScore;
+				if (fExtend > fOpen) {
+					fScore = fExtend;
+					t |= INSERTION_EXTENDED;
+				} else {
+					fScore = fOpen;
+				}
+				int diagonalPrev = hPrev[b];
+				int diagonal = diagonalPrev + score(seqBase, ref[j - 1]);
+				int hScore;
+				if (diagonal >= e && diagonal >= fScore) {
+					hScore = diagonal;
+					t |= diagonalPrev == 0 ? FROM_START : FROM_DIAGONAL;
+				} else if (e >= fScore) {
+					hScore = e;
+					t |= FROM_DELETION;
+				} else {
+					hScore = fScore;
+					t |= FROM_INSERTION;
+				}
+				if (hScore <= 0) {
+					hScore = 0;
+				} else if (hScore > bestScore) {
+					bestScore = hScore;
+					bestI = i;
+					bestB = b;
+				}
+				h[b] = hScore;
+				f[b] = fScore;
+				trace[rowOffset + b] = t;
+			}
+			int[] tmp = hPrev;
+			hPrev = h;
+			h = tmp;
+			tmp = fPrev;
+			fPrev = f;
+			f = tmp;
+			h[width] = 0;
+			f[width] = NEG_INF;
+		}
+		ws.hPrev = hPrev;
+		ws.fPrev = fPrev;
+		ws.h = h;
+		ws.f = f;
+		if (bestScore <= 0) {
+			return unaligned(n);
+		}
+		return traceback(ws, n, width, minDiagonal, bestI, bestB);
+	}
+	private static Alignment unaligned(int seqLength) {
+		return new Alignment(0, Integer.toString(seqLength) + "S");
+	}
+	private static Alignment traceback(Workspace ws, int n, int width, int minDiagonal, int i, int b) {
+		byte[] trace = ws.trace;
+		char[] ops = ws.ops;
+		int opCount = 0;
+		int endClip = n - i;
+		byte state = FROM_DIAGONAL;
+		while (true) {
+			int t = trace[(i - 1) * width + b];
+			if (state == FROM_DIAGONAL) {
+				int source = t & SOURCE_MASK;
+				if (source == FROM_DELETION) {
+					state = FROM_DELETION;
+				} else if (source == FROM_INSERTION) {
+					state = FROM_INSERTION;
+				} else {
+					ops[opCount++] = 'M';
+					if (source == FROM_START) break;
+					i--;
+					continue;
+				}
+			}
+			if (state == FROM_DELETION) {
+				ops[opCount++] = 'D';
+				if ((t & DELETION_EXTENDED) == 0) state = FROM_DIAGONAL;
+				b--;
+			} else {
+				ops[opCount++] = 'I';
+				if ((t & INSERTION_EXTENDED) == 0) state = FROM_DIAGONAL;
+				i--;
+				b++;
+			}
+		}
+		int startClip = i - 1;
+		int refStart = i + minDiagonal + b - 1;
+		StringBuilder sb = new StringBuilder();
+		if (startClip > 0) {
+			sb.append(startClip);
+			sb.append('S');
+		}
+		for (int k = opCount - 1; k >= 0; ) {
+			char op = ops[k];
+			int length = 0;
+			while (k >= 0 && ops[k] == op) {
+				length++;
+				k--;
+			}
+			sb.append(length);
+			sb.append(op);
+		}
+		if (endClip > 0) {
+			sb.append(endClip);
+			sb.append('S');
+		}
+		return new Alignment(refStart, sb.toString());
+	}
+	private static class Workspace {
+		private int[] hPrev = new int[0];
+		private int[] fPrev = new int[0];
+		private int[] h = new int[0];
+		private int[] f = new int[0];
+		private byte[] trace = new byte[0];
+		private char[] ops = new char[0];
+		private void ensureCapacity(int n, int width) {
+			if (h.length < width + 1) {
+				hPrev = new int[width + 1];
+				fPrev = new int[width + 1];
+				h = new int[width + 1];
+				f = new int[width + 1];
+			}
+			if (trace.length < n * width) {
+				trace = new byte[n * width];
+			}
+			if (ops.length < n + n + width) {
+				ops = new char[n + n + width];
+			}
+		}
+	}
+}
@@ -17,6 +17,11 @@ import java.util.List;
  *
  */
 public class BreakpointHomology {
+	/**
+	 * Homology is calculated using a pure Java aligner so results do not depend on
+	 * the availability of native alignment libraries.
+	 */
+	private static final BandedSmithWatermanAligner aligner = new BandedSmithWatermanAligner(1, -4, -4, 6, 1); // bwa mem defaults
 	private final int localHomologyLength;
 	private final int remoteHomologyLength;
 	public BreakpointHomology(int local, int remote) {
@@ -58,28 +63,30 @@ public class BreakpointHomology {
 		// localSeq           remoteSeq
 		//      >>>>       >>>>
 		//      localRef   remoteRef
-		String localSeq = bs.getAnchorSequence(lookup, refLength);
-		String localBsSeq = bs.getAnchorSequence(lookup, seqLength);
-		String localRef = bs.advance(refLength).getAnchorSequence(lookup, refLength);
-		String remoteSeq = SequenceUtil.reverseComplement(bs.remoteBreakend().getAnchorSequence(lookup, refLength));
-		String remoteBsSeq = SequenceUtil.reverseComplement(bs.remoteBreakend().getAnchorSequence(lookup, seqLength));
-		String remoteRef = SequenceUtil.reverseComplement(bs.remoteBreakend().advance(refLength).getAnchorSequence(lookup, refLength));
-		String strBreakend = localBsSeq + insertedSequence + remoteBsSeq;
-		String strLocal = localSeq + localRef;
-		String strRemote = remoteRef + remoteSeq;
-		byte[] breakend = strBreakend.getBytes(StandardCharsets.US_ASCII);
-		byte[] local = strLocal.getBytes(StandardCharsets.US_ASCII);
-		byte[] remote = strRemote.getBytes(StandardCharsets.US_ASCII);
-		Aligner aligner = AlignerFactory.create();
+		byte[] localSeq = anchorBases(bs, lookup, refLength);
+		byte[] localBsSeq = anchorBases(bs, lookup, seqLength);
+		byte[] localRef = anchorBases(bs.advance(refLength), lookup, refLength);
+		byte[] remoteSeq = anchorBases(bs.remoteBreakend(), lookup, refLength);
+		SequenceUtil.reverseComplement(remoteSeq);
+		byte[] remoteBsSeq = anchorBases(bs.remoteBreakend(), lookup, seqLength);
+		SequenceUtil.reverseComplement(remoteBsSeq);
+		byte[] remoteRef = anchorBases(bs.remoteBreakend().advance(refLength), lookup, refLength);
+		SequenceUtil.reverseComplement(remoteRef);
+		byte[] breakend = concat(localBsSeq, insertedSequence.getBytes(StandardCharsets.US_ASCII), remoteBsSeq);
+		byte[] local = concat(localSeq, localRef);
+		byte[] remote = concat(remoteRef, remoteSeq);
 		int localHomologyBaseCount = 0;
 		int remoteHomologyBaseCount = 0;
 		if (breakend != null && breakend.length > 0) {
 			if (local != null && local.length > 0) {
-				Alignment localAlignment = aligner.align_smith_waterman(breakend, local);
+				// homologous bases align on the same diagonal as the anchor
+				// and are offset by at most the inserted sequence and margin
+				int anchorDiagonal = localSeq.length - localBsSeq.length;
+				Alignment localAlignment = aligner.align_smith_waterman(breakend, local, anchorDiagonal - insertedSequence.length() - margin, anchorDiagonal + margin);
 				List<CigarElement> cigar = TextCigarCodec.decode(localAlignment.getCigar()).getCigarElements();
 				// We are defining a homology as the number of bases mapped on the other side
 				// inserted sequence means the number of bases consumed can be negative
-				remoteHomologyBaseCount = Math.max(0, remoteBsSeq.length() - SAMRecordUtil.getEndSoftClipLength(cigar));
+				remoteHomologyBaseCount = Math.max(0, remoteBsSeq.length - SAMRecordUtil.getEndSoftClipLength(cigar));
 				if (SAMRecordUtil.getStartSoftClipLength(cigar) > 0) {
 					// anchor is not aligned - something went wrong
 					remoteHomologyBaseCount = 0;
@@ -91,9 +98,10 @@ public class BreakpointHomology {
 				// are multiple equally good alignments
 				SequenceUtil.reverseComplement(breakend);
 				SequenceUtil.reverseComplement(remote);
-				Alignment remoteAlignment = aligner.align_smith_waterman(breakend, remote);
+				int anchorDiagonal = remoteSeq.length - remoteBsSeq.length;
+				Alignment remoteAlignment = aligner.align_smith_waterman(breakend, remote, anchorDiagonal - insertedSequence.length() - margin, anchorDiagonal + margin);
 				List<CigarElement> cigar = TextCigarCodec.decode(remoteAlignment.getCigar()).getCigarElements();
-				localHomologyBaseCount = Math.max(0, localBsSeq.length() - SAMRecordUtil.getEndSoftClipLength(cigar));
+				localHomologyBaseCount = Math.max(0, localBsSeq.length - SAMRecordUtil.getEndSoftClipLength(cigar));
 				if (SAMRecordUtil.getStartSoftClipLength(cigar) > 0) {
 					// anchor is not aligned - something went wrong
 					localHomologyBaseCount = 0;
@@ -102,6 +110,22 @@ public class BreakpointHomology {
 		}
 		return new BreakpointHomology(localHomologyBaseCount, remoteHomologyBaseCount);
 	}
+	private static byte[] anchorBases(BreakendSummary be, ReferenceLookup lookup, int length) {
+		return be.getAnchorSequence(lookup, length).getBytes(StandardCharsets.US_ASCII);
+	}
+	private static byte[] concat(byte[]... sequences) {
+		int length = 0;
+		for (byte[] seq : sequences) {
+			length += seq.length;
+		}
+		byte[] result = new byte[length];
+		int offset = 0;
+		for (byte[] seq : sequences) {
+			System.arraycopy(seq, 0, result, offset, seq.length);
+			offset += seq.length;
+		}
+		return result;
+	}
 	public int getLocalHomologyLength() {
 		return localHomologyLength;
 	}
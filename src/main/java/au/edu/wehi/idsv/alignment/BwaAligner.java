@@ -2,6 +2,7 @@ package au.edu.wehi.idsv.alignment;
 
 import au.edu.wehi.idsv.Defaults;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
+import au.edu.wehi.idsv.util.ResidentCache;
 import htsjdk.samtools.*;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
@@ -102,10 +103,11 @@ public class BwaAligner implements Closeable {
 
     public static BwaMemIndex getBwaIndexFor(File reference) {
         File image = getBwaIndexFileFor(reference);
-        log.info("Loading bwa mem index image from " + image);
-        System.err.flush(); // ensure our warning error message gets to the console as we're possible about to die in C code
-        BwaMemIndex index = new BwaMemIndex(image.getAbsolutePath());
-        return index;
+        return ResidentCache.get("bwa", image, () -> {
+            log.info("Loading bwa mem index image from " + image);
+            System.err.flush(); // ensure our warning error message gets to the console as we're possible about to die in C code
+            return new BwaMemIndex(image.getAbsolutePath());
+        });
     }
 
     private static SAMFileHeader getMinimalHeader(SAMSequenceDictionary dict) {
@@ -0,0 +1,322 @@
+package au.edu.wehi.idsv.bed;
+
+import au.edu.wehi.idsv.BreakendDirection;
+import au.edu.wehi.idsv.BreakendSummary;
+import au.edu.wehi.idsv.BreakpointSummary;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static au.edu.wehi.idsv.util.BinaryIndexFile.firstAtLeast;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeHeader;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.map;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeStrings;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readStrings;
+
+/**
+ * Compact binary panel of normals supporting region queries of breakend and breakpoint counts.
+ *
+ * Breakends and breakpoints are stored in primitive arrays sorted by reference index and start position.
+ * Breakpoints are stored by their lower breakend.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class PanelOfNormalsIndex {
+	private static final int MAGIC = 0x504f4e58; // PONX
+	private static final int VERSION = 1;
+	private final String[] contigs;
+	private final Table breakends;
+	private final Table breakpoints;
+	/**
+	 * Sorted records. Breakpoint tables include the remote breakend fields.
+	 */
+	private static class Table {
+		/**
+		 * Offset of the first record of each reference index. Size is the number of contigs + 1.
+		 */
+		private final int[] offset;
+		private final int[] start;
+		private final int[] end;
+		/**
+		 * Maximum end position of all records of the reference index up to and including this one.
+		 */
+		private final int[] maxEnd;
+		private final int[] count;
+		private final byte[] direction;
+		private final int[] remoteReferenceIndex;
+		private final int[] remoteStart;
+		private final int[] remoteEnd;
+		private final byte[] remoteDirection;
+		private Table(int[] offset, int[] start, int[] end, int[] maxEnd, int[] count, byte[] direction,
+				int[] remoteReferenceIndex, int[] remoteStart, int[] remoteEnd, byte[] remoteDirection) {
+			this.offset = offset;
+			this.start = start;
+			this.end = end;
+			this.maxEnd = maxEnd;
+			this.count = count;
+			this.direction = direction;
+			this.remoteReferenceIndex = remoteReferenceIndex;
+			this.remoteStart = remoteStart;
+			this.remoteEnd = remoteEnd;
+			this.remoteDirection = remoteDirection;
+		}
+		private boolean hasRemote() {
+			return remoteReferenceIndex != null;
+		}
+		private int size() {
+			return start.length;
+		}
+	}
+	private PanelOfNormalsIndex(String[] contigs, Table breakends, Table breakpoints) {
+		this.contigs = contigs;
+		this.breakends = breakends;
+		this.breakpoints = breakpoints;
+	}
+	public int breakendSize() {
+		return breakends.size();
+	}
+	public int breakpointSize() {
+		return breakpoints.size();
+	}
+	/**
+	 * Validates that this index was generated against the given reference genome
+	 */
+	public void assertDictionaryMatches(SAMSequenceDictionary dict) {
+		if (dict.size() != contigs.length) {
+			throw new IllegalArgumentException(String.format("Panel of normals contains %d contigs but reference genome contains %d", contigs.length, dict.size()));
+		}
+		for (int i = 0; i < contigs.length; i++) {
+			if (!contigs[i].equals(dict.getSequence(i).getSequenceName())) {
+				throw new IllegalArgumentException(String.format("Panel of normals contig %s does not match reference genome contig %s", contigs[i], dict.getSequence(i).getSequenceName()));
+			}
+		}
+	}
+	/**
+	 * Total count of panel of normals single breakends overlapping the given breakend
+	 */
+	public int breakendCount(BreakendSummary bs) {
+		return breakendCount(bs.referenceIndex, bs.start, bs.end, bs.direction);
+	}
+	/**
+	 * Total count of panel of normals single breakends with the given direction overlapping the given closed interval
+	 */
+	public int breakendCount(int referenceIndex, int start, int end, BreakendDirection direction) {
+		Table t = breakends;
+		if (referenceIndex < 0 || referenceIndex >= contigs.length) return 0;
+		int to = firstAtLeast(t.start, t.offset[referenceIndex], t.offset[referenceIndex + 1], end + 1);
+		int total = 0;
+		for (int i = firstAtLeast(t.maxEnd, t.offset[referenceIndex], to, start); i < to; i++) {
+			if (t.end[i] >= start && t.direction[i] == direction.ordinal()) {
+				total += t.count[i];
+			}
+		}
+		return total;
+	}
+	/**
+	 * Total count of panel of normals breakpoints overlapping both breakends of the given breakpoint
+	 */
+	public int breakpointCount(BreakpointSummary bp) {
+		// records are stored by their lower breakend but overlapping
+		// intervals on the same contig can match in either orientation
+		BreakpointSummary remote = bp.remoteBreakpoint();
+		return breakpointCount(bp, null) + breakpointCount(remote, bp);
+	}
+	private int breakpointCount(BreakpointSummary bp, BreakpointSummary exclude) {
+		Table t = breakpoints;
+		int referenceIndex = bp.referenceIndex;
+		if (referenceIndex < 0 || referenceIndex >= contigs.length) return 0;
+		int to = firstAtLeast(t.start, t.offset[referenceIndex], t.offset[referenceIndex + 1], bp.end + 1);
+		int total = 0;
+		for (int i = firstAtLeast(t.maxEnd, t.offset[referenceIndex], to, bp.start); i < to; i++) {
+			if (matches(t, i, bp) && (exclude == null || !matches(t, i, exclude))) {
+				total += t.count[i];
+			}
+		}
+		return total;
+	}
+	private static boolean matches(Table t, int i, BreakpointSummary bp) {
+		return t.start[i] <= bp.end
+				&& t.end[i] >= bp.start
+				&& t.direction[i] == bp.direction.ordinal()
+				&& t.remoteReferenceIndex[i] == bp.referenceIndex2
+				&& t.remoteStart[i] <= bp.end2
+				&& t.remoteEnd[i] >= bp.start2
+				&& t.remoteDirection[i] == bp.direction2.ordinal();
+	}
+	/**
+	 * Accumulates panel of normals records in any order
+	 */
+	public static class Builder {
+		private final String[] contigs;
+		private final TableBuilder breakends = new TableBuilder(false);
+		private final TableBuilder breakpoints = new TableBuilder(true);
+		public Builder(SAMSequenceDictionary dict) {
+			this.contigs = dict.getSequences().stream().map(SAMSequenceRecord::getSequenceName).toArray(String[]::new);
+		}
+		/**
+		 * Adds a single breakend or breakpoint record
+		 */
+		public Builder add(BreakendSummary bs, int count) {
+			if (bs instanceof BreakpointSummary) {
+				BreakpointSummary bp = (BreakpointSummary)bs;
+				if (bp.isHighBreakend()) {
+					bp = bp.remoteBreakpoint();
+				}
+				breakpoints.add(bp, count);
+			} else {
+				breakends.add(bs, count);
+			}
+			return this;
+		}
+		public PanelOfNormalsIndex build() {
+			return new PanelOfNormalsIndex(contigs, breakends.build(contigs.length), breakpoints.build(contigs.length));
+		}
+	}
+	private static class TableBuilder {
+		private final boolean hasRemote;
+		private final IntArrayList referenceIndex = new IntArrayList();
+		private final IntArrayList start = new IntArrayList();
+		private final IntArrayList end = new IntArrayList();
+		private final IntArrayList count = new IntArrayList();
+		private final IntArrayList direction = new IntArrayList();
+		private final IntArrayList remoteReferenceIndex = new IntArrayList();
+		private final IntArrayList remoteStart = new IntArrayList();
+		private final IntArrayList remoteEnd = new IntArrayList();
+		private final IntArrayList remoteDirection = new IntArrayList();
+		private TableBuilder(boolean hasRemote) {
+			this.hasRemote = hasRemote;
+		}
+		private void add(BreakendSummary bs, int count) {
+			this.referenceIndex.add(bs.referenceIndex);
+			this.start.add(bs.start);
+			this.end.add(bs.end);
+			this.count.add(count);
+			this.direction.add(bs.direction.ordinal());
+			if (hasRemote) {
+				BreakpointSummary bp = (BreakpointSummary)bs;
+				this.remoteReferenceIndex.add(bp.referenceIndex2);
+				this.remoteStart.add(bp.start2);
+				this.remoteEnd.add(bp.end2);
+				this.remoteDirection.add(bp.direction2.ordinal());
+			}
+		}
+		private Table build(int contigCount) {
+			int n = start.size();
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			// stable sort so records at the same position retain their input order
+			it.unimi.dsi.fastutil.ints.IntArrays.mergeSort(order, (a, b) -> {
+				int cmp = Integer.compare(referenceIndex.getInt(a), referenceIndex.getInt(b));
+				if (cmp != 0) return cmp;
+				cmp = Integer.compare(start.getInt(a), start.getInt(b));
+				if (cmp != 0) return cmp;
+				return Integer.compare(end.getInt(a), end.getInt(b));
+			});
+			int[] offset = new int[contigCount + 1];
+			int[] s = new int[n];
+			int[] e = new int[n];
+			int[] maxEnd = new int[n];
+			int[] c = new int[n];
+			byte[] dir = new byte[n];
+			int[] rri = hasRemote ? new int[n] : null;
+			int[] rs = hasRemote ? new int[n] : null;
+			int[] re = hasRemote ? new int[n] : null;
+			byte[] rdir = hasRemote ? new byte[n] : null;
+			int currentReferenceIndex = -1;
+			int max = Integer.MIN_VALUE;
+			for (int i = 0; i < n; i++) {
+				int j = order[i];
+				int ri = referenceIndex.getInt(j);
+				if (ri < 0 || ri >= contigCount) {
+					throw new IllegalArgumentException(String.format("Reference index %d not in reference genome", ri));
+				}
+				if (ri != currentReferenceIndex) {
+					currentReferenceIndex = ri;
+					max = Integer.MIN_VALUE;
+				}
+				offset[ri + 1]++;
+				s[i] = start.getInt(j);
+				e[i] = end.getInt(j);
+				max = Math.max(max, e[i]);
+				maxEnd[i] = max;
+				c[i] = count.getInt(j);
+				dir[i] = (byte)direction.getInt(j);
+				if (hasRemote) {
+					rri[i] = remoteReferenceIndex.getInt(j);
+					rs[i] = remoteStart.getInt(j);
+					re[i] = remoteEnd.getInt(j);
+					rdir[i] = (byte)remoteDirection.getInt(j);
+				}
+			}
+			for (int i = 0; i < contigCount; i++) {
+				offset[i + 1] += offset[i];
+			}
+			return new Table(offset, s, e, maxEnd, c, dir, rri, rs, re, rdir);
+		}
+	}
+	public void save(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			writeHeader(out, MAGIC, VERSION);
+			writeStrings(out, contigs);
+			writeTable(out, breakends);
+			writeTable(out, breakpoints);
+		}
+	}
+	private static void writeTable(DataOutputStream out, Table t) throws IOException {
+		out.writeInt(t.size());
+		writeInts(out, t.offset);
+		writeInts(out, t.start);
+		writeInts(out, t.end);
+		writeInts(out, t.maxEnd);
+		writeInts(out, t.count);
+		out.write(t.direction);
+		out.writeBoolean(t.hasRemote());
+		if (t.hasRemote()) {
+			writeInts(out, t.remoteReferenceIndex);
+			writeInts(out, t.remoteStart);
+			writeInts(out, t.remoteEnd);
+			out.write(t.remoteDirection);
+		}
+	}
+	/**
+	 * Loads an index previously written by {@link #save(File)}
+	 */
+	public static PanelOfNormalsIndex load(File file) throws IOException {
+		ByteBuffer buffer = map(file, MAGIC, VERSION, "panel of normals index");
+		String[] contigs = readStrings(buffer);
+		Table breakends = readTable(buffer, contigs.length);
+		Table breakpoints = readTable(buffer, contigs.length);
+		return new PanelOfNormalsIndex(contigs, breakends, breakpoints);
+	}
+	private static Table readTable(ByteBuffer buffer, int contigCount) {
+		int n = buffer.getInt();
+		int[] offset = readInts(buffer, contigCount + 1);
+		int[] start = readInts(buffer, n);
+		int[] end = readInts(buffer, n);
+		int[] maxEnd = readInts(buffer, n);
+		int[] count = readInts(buffer, n);
+		byte[] direction = new byte[n];
+		buffer.get(direction);
+		if (buffer.get() == 0) {
+			return new Table(offset, start, end, maxEnd, count, direction, null, null, null, null);
+		}
+		int[] remoteReferenceIndex = readInts(buffer, n);
+		int[] remoteStart = readInts(buffer, n);
+		int[] remoteEnd = readInts(buffer, n);
+		byte[] remoteDirection = new byte[n];
+		buffer.get(remoteDirection);
+		return new Table(offset, start, end, maxEnd, count, direction, remoteReferenceIndex, remoteStart, remoteEnd, remoteDirection);
+	}
+}
@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv.configuration;
 
+import au.edu.wehi.idsv.debruijn.positional.KmerEncoding;
 import org.apache.commons.configuration.Configuration;
 
 public class AssemblyConfiguration {
@@ -23,12 +24,15 @@ public class AssemblyConfiguration {
 		recoverAfterError = config.getBoolean("recoverAfterError");
 		longReadReadLengthThreshold = config.getInt("longReadReadLengthThreshold");
 		maximumReproductionExportPackages = config.getInt("maximumReproductionExportPackages");
+		if (k < 1 || k > KmerEncoding.MAX_K) {
+			throw new IllegalArgumentException(String.format("assembly.k must be between 1 and %d", KmerEncoding.MAX_K));
+		}
 	}
 	public ErrorCorrectionConfiguration errorCorrection;
 	public DownsamplingConfiguration downsampling;
 	public PositionalAssemblyConfiguration positional;
 	/**
-	 * De Bruijn graph kmer size
+	 * De Bruijn graph kmer size. Kmers larger than 31 use a slower two word kmer encoding.
 	 */
 	public int k;
 	/**
@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv.configuration;
 
+import au.edu.wehi.idsv.debruijn.ReadErrorCorrector;
 import org.apache.commons.configuration.Configuration;
 
 public class ErrorCorrectionConfiguration {
@@ -10,13 +11,16 @@ public class ErrorCorrectionConfiguration {
 		k = config.getInt("k");
 		maxCorrectionsInKmer = config.getInt("maxCorrectionsInKmer");
 		deduplicateReadKmers = config.getBoolean("deduplicateReadKmers");
+		if (k < 1 || k > ReadErrorCorrector.MAX_SUPPORTED_K) {
+			throw new IllegalArgumentException(String.format("errorCorrection.k must be between 1 and %d", ReadErrorCorrector.MAX_SUPPORTED_K));
+		}
 	}
 	/**
 	 * Extent to which an adjacent kmer should be more supported before error correction
 	 */
 	public float kmerErrorCorrectionMultiple;
 	/**
-	 * error correction kmer size
+	 * error correction kmer size. Kmers larger than 31 use a slower two word kmer encoding.
 	 */
 	public int k;
 	/**
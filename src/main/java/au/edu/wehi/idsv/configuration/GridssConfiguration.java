@@ -9,7 +9,14 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 
 import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Configuration settings container for gridss
@@ -98,6 +105,10 @@ public class GridssConfiguration {
 	private final VariantCallingConfiguration variantCalling;
 	private final ScoringConfiguration scoring;
 	private File sourceConfigurationFile;
+	/**
+	 * Configuration settings used to construct this configuration in key order
+	 */
+	private final String parameters;
 	public GridssConfiguration() throws ConfigurationException {
 		this((File)null, new File("."));
 		sourceConfigurationFile = null;
@@ -125,6 +136,15 @@ public class GridssConfiguration {
 		useReadGroupSampleNameCategoryLabel = config.getBoolean("useReadGroupSampleNameCategoryLabel");
 		hashEvidenceID = config.getBoolean("hashEvidenceID");
 		sourceConfigurationFile = null;
+		List<String> keys = Lists.newArrayList(config.getKeys());
+		Collections.sort(keys);
+		StringBuilder sb = new StringBuilder();
+		for (String key : keys) {
+			for (String value : config.getStringArray(key)) {
+				sb.append(key).append('=').append(value).append('\n');
+			}
+		}
+		parameters = sb.toString();
 	}
 	public static Configuration LoadConfiguration(File configuration) throws ConfigurationException {
 		CompositeConfiguration config = new CompositeConfiguration();
@@ -167,4 +187,61 @@ public class GridssConfiguration {
 	public File getSourceConfigurationFile() {
 		return sourceConfigurationFile;
 	}
+
+	/**
+	 * Configuration settings used to construct this configuration followed by
+	 * the current value of every configuration field so changes made to the
+	 * configuration after construction are included.
+	 * @return configuration settings, one key=value pair per line
+	 */
+	public String getParameters() {
+		StringBuilder sb = new StringBuilder(parameters);
+		appendFields(sb, "", this);
+		return sb.toString();
+	}
+	private static void appendFields(StringBuilder sb, String prefix, Object config) {
+		for (Class<?> c = config.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+			Field[] fields = c.getDeclaredFields();
+			Arrays.sort(fields, Comparator.comparing(Field::getName));
+			for (Field f : fields) {
+				if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic() || (c == GridssConfiguration.class && f.getName().equals("parameters"))) {
+					continue;
+				}
+				Object value;
+				try {
+					f.setAccessible(true);
+					value = f.get(config);
+				} catch (IllegalAccessException | RuntimeException e) {
+					throw new IllegalStateException("Unable to read configuration field " + f, e);
+				}
+				String name = prefix + f.getName();
+				if (value != null && value.getClass().getPackage() == GridssConfiguration.class.getPackage()) {
+					appendFields(sb, name + ".", value);
+				} else {
+					sb.append(name).append('=').append(describe(value)).append('\n');
+				}
+			}
+		}
+	}
+	private static String describe(Object value) {
+		if (value == null) {
+			return "null";
+		}
+		if (value.getClass().isArray()) {
+			StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < Array.getLength(value); i++) {
+				if (i > 0) sb.append(',');
+				sb.append(describe(Array.get(value, i)));
+			}
+			return sb.append(']').toString();
+		}
+		try {
+			if (value.getClass().getMethod("toString").getDeclaringClass() != Object.class) {
+				return value.toString();
+			}
+		} catch (NoSuchMethodException e) {
+		}
+		// objects without a value representation are identified by type
+		return value.getClass().getName();
+	}
 }
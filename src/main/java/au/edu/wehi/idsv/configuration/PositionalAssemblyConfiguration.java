@@ -15,6 +15,7 @@ public class PositionalAssemblyConfiguration {
 		forceFullMemoizationRecalculationAt = config.getFloat("forceFullMemoizationRecalculationAt");
 		safetyModePathCountThreshold = config.getInt("safetyModePathCountThreshold");
 		safetyModeContigsToCall = config.getInt("safetyModeContigsToCall");
+		maximumGraphBytes = config.getLong("maximumGraphBytes");
 		if (retainWidthMultiple < 1) {
 			throw new IllegalArgumentException("retainWidthMultiple must be at least 1");
 		}
@@ -76,4 +77,12 @@ public class PositionalAssemblyConfiguration {
 	 * Number of memoized paths to enter safety mode
 	 */
 	public final int safetyModePathCountThreshold;
+	/**
+	 * Estimated memory budget (in bytes) of the assembly graph of a single assembler.
+	 *
+	 * When the estimated size of the loaded graph exceeds half this budget, contigs outside the
+	 * retain window are flushed without waiting for a full flush width. When the budget is exceeded, evidence in the densest
+	 * loaded window is downsampled in place. A value of zero disables the budget.
+	 */
+	public long maximumGraphBytes;
 }
\ No newline at end of file
@@ -2,35 +2,63 @@ package au.edu.wehi.idsv.debruijn;
 
 import au.edu.wehi.idsv.picard.InMemoryReferenceSequenceFile;
 import au.edu.wehi.idsv.picard.TwoBitBufferedReferenceSequenceFile;
+import au.edu.wehi.idsv.picard.TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence;
 import com.google.common.collect.Lists;
-import htsjdk.samtools.SAMSequenceRecord;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.util.Log;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongList;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Counts matching kmers
+ *
+ * Reference kmers are sampled either every stride bases (in both orientations)
+ * or as the canonical (w,k)-minimisers of the reference.
+ * When minimisers are used, only the minimisers of each read are looked up.
+ *
+ * Sampled kmers are stored in a primitive open addressed hash table with
+ * the contigs containing each kmer stored in a single flat postings array.
  */
 public class ContigKmerCounter {
     private static final Log log = Log.getInstance(ContigKmerCounter.class);
+    /**
+     * Number of reads in each parallel counting task
+     */
+    private static final int READS_PER_BATCH = 1024;
+    private static final List<byte[]> END_OF_READS = Collections.emptyList();
+    private static final long WORKER_POLL_INTERVAL_MS = 100;
     private final List<String> contigs = new ArrayList<>();
-    private final KmerLookup kmerLookup;
-    private final LongList counts = new LongArrayList();
+    private final Set<String> contigLookup = new HashSet<>();
     private final int k;
+    private final int minimiserWindow;
+    private final KmerIndex index;
+    private final long[] counts;
     public ContigKmerCounter(List<String> contigs, List<byte[]> sequences, int k, int stride) {
-        this(deduplicatedReference(contigs, sequences), k, stride);
+        this(contigs, sequences, k, stride, 0);
+    }
+    public ContigKmerCounter(List<String> contigs, List<byte[]> sequences, int k, int stride, int minimiserWindow) {
+        this(deduplicatedReference(contigs, sequences), k, stride, minimiserWindow);
     }
 
     private static TwoBitBufferedReferenceSequenceFile deduplicatedReference(List<String> contigs, List<byte[]> sequences) {
@@ -56,99 +84,314 @@ public class ContigKmerCounter {
             stride);
     }
     public ContigKmerCounter(TwoBitBufferedReferenceSequenceFile reference, int k, int stride) {
-        this.k = k;
-        this.kmerLookup = k <= 16 ? new KmerLookup32() : new KmerLookup64();
-        for (SAMSequenceRecord ssr : reference.getSequenceDictionary().getSequences()) {
-            String contig = ssr.getContig();
-            TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence prs = reference.getPackedSequence(contig);
-            log.debug("Adding:\t" + contig);
-            sequentialAddToLookup(contig, prs, stride);
-        }
+        this(reference, k, stride, 0);
+    }
+    public ContigKmerCounter(TwoBitBufferedReferenceSequenceFile reference, int k, int stride, int minimiserWindow) {
+        this(k, stride, minimiserWindow, reference.getSequenceDictionary().getSequences().stream()
+                .map(ssr -> reference.getPackedSequence(ssr.getSequenceName())));
     }
     public ContigKmerCounter(Stream<ReferenceSequence> ref, int k, int stride) {
+        this(ref, k, stride, 0);
+    }
+    /**
+     * @param ref reference sequences
+     * @param k kmer size
+     * @param stride distance between reference kmers. Only used if minimisers are not used.
+     * @param minimiserWindow number of consecutive kmers from which each minimiser is chosen. Minimisers are not used if zero.
+     */
+    public ContigKmerCounter(Stream<ReferenceSequence> ref, int k, int stride, int minimiserWindow) {
+        this(k, stride, minimiserWindow, ref.map(PackedReferenceSequence::new));
+    }
+    private ContigKmerCounter(int k, int stride, int minimiserWindow, Stream<PackedReferenceSequence> ref) {
+        if (k < 1 || k > KmerEncodingHelper.MAX_K) throw new IllegalArgumentException(String.format("kmer size must be between 1 and %d", KmerEncodingHelper.MAX_K));
+        if (stride < 1) throw new IllegalArgumentException("stride must be positive");
+        if (minimiserWindow < 0) throw new IllegalArgumentException("minimiserWindow must not be negative");
         this.k = k;
-        this.kmerLookup = k <= 16 ? new KmerLookup32() : new KmerLookup64();
-        ref.forEachOrdered(rs -> {
-            sequentialAddToLookup(rs.getName(), new TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence(rs), stride);
-        });
+        this.minimiserWindow = minimiserWindow;
+        KmerIndexBuilder builder = new KmerIndexBuilder();
+        ref.forEachOrdered(prs -> sequentialAddToLookup(builder, prs.getName(), prs, stride));
+        this.index = builder.build();
+        this.counts = new long[contigs.size()];
+        log.debug(String.format("Indexed %d kmers from %d contigs", index.size(), contigs.size()));
     }
 
-    private void sequentialAddToLookup(String contig, TwoBitBufferedReferenceSequenceFile.PackedReferenceSequence prs, int stride) {
-        if (contigs.contains(contig)) return; // prevent double-counting
+    private void sequentialAddToLookup(KmerIndexBuilder builder, String contig, PackedReferenceSequence prs, int stride) {
+        if (!contigLookup.add(contig)) return; // prevent double-counting
         contigs.add(contig);
-        counts.add(0);
         int contigId = contigs.size() - 1;
-        for (int i = 0; i < prs.length() - k + 1; i += stride) {
-            int startRefPos = i + 1;
-            int endRefPos = i + k;
-            if (!prs.anyAmbiguous(startRefPos, endRefPos)) {
-                long kmer = prs.getKmer(i, k);
-                sequentialAddToLookup(contigId, kmer);
-                sequentialAddToLookup(contigId, KmerEncodingHelper.reverseComplement(k, kmer));
+        log.debug("Adding:\t" + contig);
+        int kmers = (int)prs.length() - k + 1;
+        IntPredicate unambiguous = i -> {
+            int next = prs.nextAmbiguous(i);
+            return next < 0 || next >= i + k;
+        };
+        if (minimiserWindow > 0) {
+            forEachMinimiser(prs, kmers, unambiguous, kmer -> builder.add(kmer, contigId));
+        } else {
+            for (int i = 0; i < kmers; i += stride) {
+                if (unambiguous.test(i)) {
+                    long kmer = prs.getKmer(i, k);
+                    builder.add(kmer, contigId);
+                    builder.add(KmerEncodingHelper.reverseComplement(k, kmer), contigId);
+                }
             }
         }
     }
 
-    private void sequentialAddToLookup(int contigId, long kmer) {
-        IntList value = kmerLookup.getKmer(kmer);
-        if (value == null) {
-            value = new IntArrayList(4);
-            value.add(contigId);
-            kmerLookup.putKmer(kmer, value);
-        } else if (value.getInt(value.size() - 1) != contigId) { // repeated kmers in the reference shouldn't count multiple times
-            value.add(contigId);
+    /**
+     * Calls the consumer for each distinct canonical minimiser of the given sequence.
+     * Kmers are ordered by hash to prevent low complexity kmers being over-represented.
+     * Sequences with fewer kmers than the window size have a single minimiser.
+     */
+    private void forEachMinimiser(PackedSequence ps, int kmers, IntPredicate valid, LongConsumer consumer) {
+        int w = minimiserWindow;
+        long[] kmerRing = new long[w];
+        long[] hashRing = new long[w];
+        int minOffset = -1;
+        long minHash = Long.MAX_VALUE;
+        int lastEmitted = -1;
+        for (int i = 0; i < kmers; i++) {
+            long kmer = ps.getKmer(i, k);
+            long canonical = Math.min(kmer, KmerEncodingHelper.reverseComplement(k, kmer));
+            // invalid kmers are given the maximum hash and are never emitted
+            long hash = valid.test(i) ? HashCommon.mix(canonical) >>> 1 : Long.MAX_VALUE;
+            kmerRing[i % w] = canonical;
+            hashRing[i % w] = hash;
+            int windowStart = Math.max(0, i - w + 1);
+            if (minOffset < windowStart) {
+                // previous minimiser has left the window
+                minOffset = windowStart;
+                minHash = hashRing[windowStart % w];
+                for (int j = windowStart + 1; j <= i; j++) {
+                    if (hashRing[j % w] < minHash) {
+                        minOffset = j;
+                        minHash = hashRing[j % w];
+                    }
+                }
+            } else if (hash < minHash) {
+                minOffset = i;
+                minHash = hash;
+            }
+            if ((i >= w - 1 || i == kmers - 1) && minHash != Long.MAX_VALUE && minOffset != lastEmitted) {
+                consumer.accept(kmerRing[minOffset % w]);
+                lastEmitted = minOffset;
+            }
         }
     }
 
+    /**
+     * Counts the reference kmers matching the given sequence
+     * @return total number of kmer hits across all contigs
+     */
     public int count(byte[] seq) {
-        int hits = 0;
-        PackedSequence fps = new PackedSequence(seq, false, false);
-        //PackedSequence bps = new PackedSequence(seq, true, true); // don't need to RC the reads since we added the RC of the reference
-        for (int i = 0; i < seq.length - k + 1; i++) {
-            hits += count(fps.getKmer(i, k));
-            //hits += count(bps.getKmer(i, k));
+        Counter counter = new Counter(counts);
+        counter.count(seq);
+        return (int)counter.hits;
+    }
+
+    /**
+     * Counts the reference kmers matching the given sequences.
+     * Reads are counted in parallel with each worker thread counting into
+     * its own count array. These are merged once all reads have been counted.
+     * @param reads sequences to count
+     * @param threads number of worker threads
+     * @return total number of kmer hits across all contigs
+     */
+    public long count(Iterator<byte[]> reads, int threads) {
+        if (threads <= 1) {
+            Counter counter = new Counter(counts);
+            while (reads.hasNext()) {
+                counter.count(reads.next());
+            }
+            return counter.hits;
+        }
+        ExecutorService threadpool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ContigKmerCounter-%d").build());
+        try {
+            BlockingQueue<List<byte[]>> queue = new ArrayBlockingQueue<>(2 * threads);
+            List<Future<Counter>> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(threadpool.submit(() -> {
+                    Counter counter = new Counter(new long[counts.length]);
+                    for (List<byte[]> batch = queue.take(); batch != END_OF_READS; batch = queue.take()) {
+                        for (byte[] seq : batch) {
+                            counter.count(seq);
+                        }
+                    }
+                    return counter;
+                }));
+            }
+            while (reads.hasNext()) {
+                List<byte[]> batch = new ArrayList<>(READS_PER_BATCH);
+                while (batch.size() < READS_PER_BATCH && reads.hasNext()) {
+                    batch.add(reads.next());
+                }
+                put(queue, batch, workers);
+            }
+            for (int i = 0; i < threads; i++) {
+                put(queue, END_OF_READS, workers);
+            }
+            long hits = 0;
+            for (Future<Counter> worker : workers) {
+                Counter counter = worker.get();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += counter.counts[i];
+                }
+                hits += counter.hits;
+            }
+            return hits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            threadpool.shutdownNow();
         }
-        return hits;
     }
 
-    private int count(long kmer) {
-        IntList hits = kmerLookup.getKmer(kmer);
-        if (hits == null) return 0;
-        hits.forEach((int refIndex) -> counts.set(refIndex, counts.getLong(refIndex) + 1));
-        return hits.size();
+    /**
+     * Adds the batch to the work queue, rethrowing any worker failure
+     * so the producer does not block on a queue that is no longer drained.
+     */
+    private static void put(BlockingQueue<List<byte[]>> queue, List<byte[]> batch, List<Future<Counter>> workers) throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            for (Future<Counter> worker : workers) {
+                if (worker.isDone()) {
+                    // workers only complete normally after receiving END_OF_READS
+                    worker.get();
+                }
+            }
+        }
+    }
+
+    private class Counter implements LongConsumer {
+        private final long[] counts;
+        private long hits = 0;
+        private Counter(long[] counts) {
+            this.counts = counts;
+        }
+        private void count(byte[] seq) {
+            int kmers = seq.length - k + 1;
+            if (kmers <= 0) return;
+            PackedSequence fps = new PackedSequence(seq, false, false);
+            if (minimiserWindow > 0) {
+                forEachMinimiser(fps, kmers, i -> true, this);
+            } else {
+                // don't need to RC the reads since we added the RC of the reference
+                for (int i = 0; i < kmers; i++) {
+                    accept(fps.getKmer(i, k));
+                }
+            }
+        }
+        @Override
+        public void accept(long kmer) {
+            int slot = index.find(kmer);
+            if (slot < 0) return;
+            int end = index.postingEnd[slot];
+            for (int i = index.postingStart[slot]; i < end; i++) {
+                counts[index.postings[i]]++;
+            }
+            hits += end - index.postingStart[slot];
+        }
     }
 
     public List<String> getContigs() {
         return contigs;
     }
     public LongList getKmerCounts() {
-        return counts;
+        return LongArrayList.wrap(counts);
     }
-    private abstract static class KmerLookup {
-        protected abstract void putKmer(long kmer, IntList list);
 
-        protected abstract IntList getKmer(long kmer);
-    }
-    private static class KmerLookup32 extends KmerLookup {
-        private final Int2ObjectOpenHashMap<IntList> kmerLookup = new Int2ObjectOpenHashMap<>();
-        @Override
-        protected void putKmer(long kmer, IntList list) {
-            kmerLookup.put((int)kmer, list);
+    /**
+     * Open addressed kmer lookup. The contigs containing each kmer are
+     * stored in the postings array between the posting start and end offsets.
+     * Empty slots have a posting end offset of zero.
+     */
+    private static class KmerIndex {
+        private final long[] kmers;
+        private final int[] postingStart;
+        private final int[] postingEnd;
+        private final int[] postings;
+        private final int mask;
+        private final int size;
+        private KmerIndex(long[] kmers, int[] postingStart, int[] postingEnd, int[] postings, int size) {
+            this.kmers = kmers;
+            this.postingStart = postingStart;
+            this.postingEnd = postingEnd;
+            this.postings = postings;
+            this.mask = kmers.length - 1;
+            this.size = size;
         }
-
-        @Override
-        protected IntList getKmer(long kmer) {
-            return kmerLookup.get((int)kmer);
+        private int find(long kmer) {
+            for (int slot = (int)HashCommon.mix(kmer) & mask; postingEnd[slot] != 0; slot = (slot + 1) & mask) {
+                if (kmers[slot] == kmer) return slot;
+            }
+            return -1;
+        }
+        private int size() {
+            return size;
         }
     }
-    private static class KmerLookup64 extends KmerLookup {
-        private final Long2ObjectOpenHashMap<IntList> kmerLookup = new Long2ObjectOpenHashMap<>();
-        @Override
-        protected void putKmer(long kmer, IntList list) {
-            kmerLookup.put(kmer, list);
+    private static class KmerIndexBuilder {
+        private final LongArrayList kmers = new LongArrayList();
+        private final IntArrayList contigIds = new IntArrayList();
+        private void add(long kmer, int contigId) {
+            kmers.add(kmer);
+            contigIds.add(contigId);
+        }
+        private KmerIndex build() {
+            int n = kmers.size();
+            long[] kmer = kmers.elements();
+            int[] contigId = contigIds.elements();
+            it.unimi.dsi.fastutil.Arrays.parallelQuickSort(0, n, (a, b) -> {
+                int cmp = Long.compare(kmer[a], kmer[b]);
+                if (cmp != 0) return cmp;
+                return Integer.compare(contigId[a], contigId[b]);
+            }, (a, b) -> {
+                long tmpKmer = kmer[a]; kmer[a] = kmer[b]; kmer[b] = tmpKmer;
+                int tmpContig = contigId[a]; contigId[a] = contigId[b]; contigId[b] = tmpContig;
+            });
+            int uniqueKmers = 0;
+            int postingCount = 0;
+            for (int i = 0; i < n; i++) {
+                if (i == 0 || kmer[i] != kmer[i - 1]) {
+                    uniqueKmers++;
+                    postingCount++;
+                } else if (contigId[i] != contigId[i - 1]) {
+                    postingCount++;
+                }
+            }
+            int capacity = HashCommon.arraySize(Math.max(uniqueKmers, 1), 0.5f);
+            int mask = capacity - 1;
+            long[] keys = new long[capacity];
+            int[] postingStart = new int[capacity];
+            int[] postingEnd = new int[capacity];
+            int[] postings = new int[postingCount];
+            int offset = 0;
+            int i = 0;
+            while (i < n) {
+                long current = kmer[i];
+                int start = offset;
+                // repeated kmers in the reference shouldn't count multiple times
+                for (; i < n && kmer[i] == current; i++) {
+                    if (offset == start || postings[offset - 1] != contigId[i]) {
+                        postings[offset++] = contigId[i];
+                    }
+                }
+                int slot = (int)HashCommon.mix(current) & mask;
+                while (postingEnd[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = current;
+                postingStart[slot] = start;
+                postingEnd[slot] = offset;
+            }
+            kmers.clear();
+            kmers.trim();
+            contigIds.clear();
+            contigIds.trim();
+            return new KmerIndex(keys, postingStart, postingEnd, postings, uniqueKmers);
         }
-
-        @Override
-        protected IntList getKmer(long kmer) { return kmerLookup.get(kmer); }
     }
 }
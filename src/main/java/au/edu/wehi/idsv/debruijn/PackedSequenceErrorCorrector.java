@@ -0,0 +1,289 @@
+package au.edu.wehi.idsv.debruijn;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Musket kmer counting error corrector operating on packed read sequences.
+ *
+ * The error correction algorithm is independent of the kmer encoding:
+ * subclasses provide the kmer count table for their encoding.
+ * Since every correction changes a single base, neighbouring kmers are
+ * represented by their replacement base instead of the full kmer.
+ */
+abstract class PackedSequenceErrorCorrector {
+    /**
+     * Replacement base sentinel indicating no neighbouring kmer is sufficiently abundant
+     */
+    private static final long NO_CHANGE = -1;
+    protected final int k;
+    protected final float kmerErrorCorrectionMultiple;
+    protected final boolean deduplicateReadKmers;
+    protected final int maxCorrectionsInKmer;
+    private int maxCount = 0;
+    private int maxCollapseCount = 0;
+
+    protected PackedSequenceErrorCorrector(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers) {
+        this.k = k;
+        this.kmerErrorCorrectionMultiple = kmerErrorCorrectionMultiple;
+        this.maxCorrectionsInKmer = maxCorrectionsInKmer;
+        this.deduplicateReadKmers = deduplicateReadKmers;
+    }
+    public abstract void countKmers(PackedSequence ps);
+    /**
+     * Counts the kmers of all sequences in parallel
+     * @param batches number of batches to split the sequences into
+     */
+    public abstract void countKmersInParallel(PackedSequence[] packed, int batches);
+    /**
+     * @return count of the kmer starting at the given offset
+     */
+    protected abstract int count(PackedSequence ps, int offset);
+    /**
+     * Count of the kmer at the given offset with a single base replaced
+     * @param baseOffset offset of the replaced base within the kmer
+     * @param base encoded replacement base
+     */
+    protected abstract int count(PackedSequence ps, int offset, int baseOffset, long base);
+    /**
+     * Updates the maximum kmer count with the given kmer count
+     */
+    protected void onKmerCount(int count) {
+        if (count > maxCount) {
+            maxCount = count;
+            refreshMaxCollapseCount();
+        }
+    }
+    /**
+     * Max count that we will consider collapsing. All kmers above this threshold are safe from
+     * error correction
+     */
+    private void refreshMaxCollapseCount() {
+        maxCollapseCount = (int)Math.floor(maxCount / kmerErrorCorrectionMultiple);
+    }
+
+    public void countKmers(SAMRecord r, boolean reverseComplement) {
+        countKmers(new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement));
+    }
+    public int errorCorrect(SAMRecord r, boolean reverseComplement) {
+        if (r.getReadLength() < k) return 0;
+        return errorCorrect(r, new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement), reverseComplement);
+    }
+    /**
+     * Error corrects the given read
+     * @param ps packed read sequence. This sequence is modified by error correction.
+     * @return number of bases changed
+     */
+    public int errorCorrect(SAMRecord r, PackedSequence ps, boolean reverseComplement) {
+        if (r.getReadLength() < k) return 0;
+        PackedSequence oldps = new PackedSequence(ps);
+        int basesChanged = 0;
+        basesChanged += musket_two_sided(ps);
+        basesChanged += musket_one_sided_greedy_without_voting(ps);
+        if (basesChanged > 0) {
+            if (basesChanged > maxCorrectionsInKmer && tooManyDifferencesInWindow(ps, oldps)) {
+                // discard the changes - too much in a window
+                basesChanged = 0;
+            } else {
+                byte[] seq = ps.getBytes(0, r.getReadBases().length);
+                if (reverseComplement) {
+                    SequenceUtil.reverseComplement(seq);
+                }
+                r.setReadBases(seq);
+            }
+        }
+        //debug_dump_changes(r, ps, oldps);
+        return basesChanged;
+    }
+
+    private boolean tooManyDifferencesInWindow(PackedSequence ps1, PackedSequence ps2) {
+        // number of differences in the kmer ending at i
+        int diff = 0;
+        for (int i = 0; i < ps1.length(); i++) {
+            if (getBase(ps1, i) != getBase(ps2, i)) diff++;
+            if (i >= k && getBase(ps1, i - k) != getBase(ps2, i - k)) diff--;
+            if (diff > maxCorrectionsInKmer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void debug_dump_changes(SAMRecord r, PackedSequence ps, PackedSequence oldps) {
+        String oldSeq = new String(oldps.getBytes(0, r.getReadBases().length));
+        String newSeq = new String(ps.getBytes(0, r.getReadBases().length));
+        System.err.printf("\n%s\n", oldSeq);
+        for (int i = 0; i < oldSeq.length() - (k - 1); i++) {
+            if (isSafeBase(oldps, i)) {
+                System.err.printf("*");
+            } else {
+                System.err.printf(" ");
+            }
+        }
+        System.err.printf("\n");
+        for (int i = 0; i < oldSeq.length(); i++) {
+            if (oldSeq.charAt(i) == newSeq.charAt(i)) {
+                System.err.printf(" ");
+            } else {
+                System.err.printf("|");
+            }
+        }
+        System.err.printf("\n");
+        for (int i = 0; i < oldSeq.length(); i++) {
+            if (oldSeq.charAt(i) == newSeq.charAt(i)) {
+                System.err.printf(" ");
+            } else {
+                System.err.printf("%s", newSeq.charAt(i));
+            }
+        }
+        System.err.printf("\n");
+    }
+
+    private static long getBase(PackedSequence ps, int position) {
+        return ps.getKmer(position, 1);
+    }
+    private static void setBase(PackedSequence ps, int position, long base) {
+        ps.setKmer(base, position, 1);
+    }
+
+    private int musket_two_sided(PackedSequence ps) {
+        int i = k - 1;
+        int basesChanged = 0;
+        while (i + k < ps.length()) {
+            int rightCount = count(ps, i);
+            if (rightCount > maxCollapseCount) {
+                i += k; // advance to first non-overlapping
+                continue;
+            }
+            int leftKmerOffset = i - (k - 1);
+            int leftCount = count(ps, leftKmerOffset);
+            if (leftCount > maxCollapseCount) {
+                i += 1; // advance to first non-overlapping kmer
+                continue;
+            }
+            // both kmers share the base at position i: check both kmers for their best replacement
+            long leftBase = baseToCollapseInto(ps, leftKmerOffset, k - 1, leftCount);
+            if (leftBase == NO_CHANGE) {
+                i++;
+                continue;
+            }
+            long rightBase = baseToCollapseInto(ps, i, 0, rightCount);
+            if (rightBase == NO_CHANGE) {
+                i++;
+                continue;
+            }
+            if (count(ps, leftKmerOffset, k - 1, leftBase) >= count(ps, i, 0, rightBase)) {
+                // collapse using replacement base from left kmer
+                setBase(ps, i, leftBase);
+            } else {
+                setBase(ps, i, rightBase);
+            }
+            i += k; // right kmer is now good
+            basesChanged++;
+        }
+        return basesChanged;
+    }
+    private int musket_one_sided_greedy_without_voting(PackedSequence ps) {
+        int safePosition = advanceToSafePosition(ps, 0);
+        int basesChanged = 0;
+        // nothing is safe
+        if (safePosition > ps.length() - k) return basesChanged;
+        if (safePosition > 0) {
+            basesChanged += fixBaseAdjacentTo(ps, safePosition, -1);
+        }
+        safePosition = advanceToEndOfSafeRegion(ps, safePosition);
+        while (safePosition <= ps.length() - k - 1) {
+            basesChanged += fixBaseAdjacentTo(ps, safePosition, 1);
+            safePosition = advanceToSafePosition(ps, safePosition + 1);
+            safePosition = advanceToEndOfSafeRegion(ps, safePosition);
+        }
+        return basesChanged;
+    }
+
+    private int advanceToSafePosition(PackedSequence ps, int offset) {
+        while (offset <= ps.length() - k) {
+            if (isSafeKmerStartPosition(ps, offset)) {
+                return offset;
+            }
+            offset++;
+        }
+        return offset;
+    }
+    private boolean isSafeKmerStartPosition(PackedSequence ps, int offset) {
+        return count(ps, offset) > maxCollapseCount;
+    }
+    private boolean isSafeBase(PackedSequence ps, int offset) {
+        for (int i = Math.max(0, offset - (k - 1)); i <= Math.min(offset, ps.length() - k); i++) {
+            if (isSafeKmerStartPosition(ps, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int advanceToEndOfSafeRegion(PackedSequence ps, int offset) {
+        while (offset <= ps.length() - k) {
+            if (!isSafeKmerStartPosition(ps, offset)) {
+                // unsafe kmer - we've hit the end of our safe region
+                return offset - 1;
+            }
+            int strideOffset = offset + k;
+            if (strideOffset <= ps.length() - k && isSafeKmerStartPosition(ps, strideOffset)) {
+                // we can jump forward if the next non-overlapping kmer is also safe
+                offset = strideOffset;
+            } else {
+                offset++;
+            }
+        }
+        return offset;
+    }
+
+    private int fixBaseAdjacentTo(PackedSequence ps, int position, int direction) {
+        int nextPosition = position + direction;
+        // out of bounds
+        if (nextPosition < 0 || nextPosition > ps.length() - k) return 0;
+        int nextNextPosition = nextPosition + direction;
+        int nextKmerBaseOfInterest = direction == -1 ? 0 : k - 1;
+        int changedPosition = nextPosition + nextKmerBaseOfInterest;
+        long nextBase = baseToCollapseInto(ps, nextPosition, nextKmerBaseOfInterest, count(ps, nextPosition));
+        if (nextBase == NO_CHANGE) return 0;
+        if (nextNextPosition < 0 || nextNextPosition > ps.length() - k) {
+            // we're at the start or end of the read so we can't check the next base
+            setBase(ps, changedPosition, nextBase);
+            return 1;
+        }
+        // check that the next kmer also agrees with the error correction
+        int nextNextKmerBaseOfInterest = direction == -1 ? 1 : k - 2;
+        long nextNextBase = baseToCollapseInto(ps, nextNextPosition, nextNextKmerBaseOfInterest, count(ps, nextNextPosition));
+        if (nextNextBase == NO_CHANGE) {
+            nextNextBase = getBase(ps, changedPosition);
+        }
+        // make sure they agree on the base to be changed
+        if (nextBase != nextNextBase) return 0;
+        setBase(ps, changedPosition, nextBase);
+        return 1;
+    }
+
+    /**
+     * Finds the replacement base for the given kmer base
+     * @param offset kmer offset
+     * @param baseOffset offset of base within kmer
+     * @param count kmer count
+     * @return encoded replacement base, NO_CHANGE if no neighbouring kmer is sufficiently abundant
+     */
+    private long baseToCollapseInto(PackedSequence ps, int offset, int baseOffset, int count) {
+        long base = getBase(ps, offset + baseOffset);
+        long bestBase = NO_CHANGE;
+        // use 1 less than the collapse threshold as the sentinel value
+        int bestCount = (int)Math.ceil(count * kmerErrorCorrectionMultiple) - 1;
+        for (long j = 1; j < 4; j++) { // XOR 0 = self so we can start at 1
+            long neighbourBase = base ^ j;
+            int neighbourCount = count(ps, offset, baseOffset, neighbourBase);
+            if (neighbourCount > bestCount) {
+                bestBase = neighbourBase;
+                bestCount = neighbourCount;
+            }
+        }
+        return bestBase;
+    }
+}
@@ -6,35 +6,63 @@ import au.edu.wehi.idsv.NonReferenceReadPair;
 import au.edu.wehi.idsv.configuration.ErrorCorrectionConfiguration;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.util.Log;
-import htsjdk.samtools.util.SequenceUtil;
 import it.unimi.dsi.fastutil.Hash;
-import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
-public class ReadErrorCorrector {
+public class ReadErrorCorrector extends PackedSequenceErrorCorrector {
     private static final Log log = Log.getInstance(ReadErrorCorrector.class);
-    private final Long2IntMap kmerCounts = new Long2IntOpenHashMap();
-    private final int k;
-    private final float kmerErrorCorrectionMultiple;
-    private final boolean deduplicateReadKmers;
-    private final int maxCorrectionsInKmer;
-    private int maxCount = 0;
-    private int maxCollapseCount = 0;
+    /**
+     * Largest kmer supported by the single word kmer encoding.
+     * Larger kmers are error corrected by {@link WideReadErrorCorrector}.
+     */
+    public static final int MAX_K = KmerEncodingHelper.MAX_K - 1;
+    /**
+     * Largest kmer supported by error correction
+     */
+    public static final int MAX_SUPPORTED_K = WideReadErrorCorrector.MAX_K;
+    /**
+     * Minimum number of reads before kmer counting and error correction is performed in parallel.
+     */
+    private static final int PARALLEL_MIN_READS = 4096;
+    /**
+     * Number of batches per thread. Read lengths vary so multiple batches
+     * per thread are used to balance the load.
+     */
+    private static final int BATCHES_PER_THREAD = 4;
+    /**
+     * Kmer counts sharded by the high bits of the kmer hash
+     */
+    private final Long2IntOpenHashMap[] kmerCounts;
+    private final int shardBits;
 
     public ReadErrorCorrector(ErrorCorrectionConfiguration ecc) {
         this(ecc.k, ecc.kmerErrorCorrectionMultiple, ecc.maxCorrectionsInKmer, ecc.deduplicateReadKmers);
     }
     public ReadErrorCorrector(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers) {
-        if (k > 31) throw new IllegalArgumentException("k cannot exceed 31");
-        this.k = k;
-        this.kmerErrorCorrectionMultiple = kmerErrorCorrectionMultiple;
-        this.maxCorrectionsInKmer = maxCorrectionsInKmer;
-        this.deduplicateReadKmers = deduplicateReadKmers;
+        this(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, 0);
+    }
+    private ReadErrorCorrector(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers, int shardBits) {
+        super(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers);
+        if (k > MAX_K) throw new IllegalArgumentException(String.format("k cannot exceed %d", MAX_K));
+        this.shardBits = shardBits;
+        this.kmerCounts = new Long2IntOpenHashMap[1 << shardBits];
+        for (int i = 0; i < kmerCounts.length; i++) {
+            kmerCounts[i] = new Long2IntOpenHashMap();
+        }
     }
 
     /**
@@ -46,7 +74,21 @@ public class ReadErrorCorrector {
      * @param evidence evidence to perform error correction on
      */
     public static void errorCorrect(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers, Iterable<? extends DirectedEvidence> evidence) {
-        ReadErrorCorrector ec = new ReadErrorCorrector(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers);
+        errorCorrect(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, evidence, ForkJoinPool.getCommonPoolParallelism());
+    }
+    /**
+     * Error corrects the reads underlying the given evidence.
+     *
+     * Kmers of each read are packed once and reused for both counting and correction.
+     * Large read sets are counted in parallel into sharded count tables then corrected
+     * in parallel against the completed table. Since corrections are only made against
+     * the completed count table, the result does not depend on the degree of parallelism.
+     *
+     * Kmers larger than {@link #MAX_K} are error corrected using a two word kmer encoding.
+     *
+     * @param parallelism maximum number of concurrent tasks
+     */
+    static void errorCorrect(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers, Iterable<? extends DirectedEvidence> evidence, int parallelism) {
         // need to deduplicate the underlying reads so we don't double count
         // kmers from reads with multiple evidence (e.g. multiple indels or SC on both ends)
         Set<SAMRecord> reads = new HashSet<>();
@@ -62,238 +104,141 @@ public class ReadErrorCorrector {
                 }
             }
         }
-        // TODO: cache PackedSequence
-        reads.stream().forEach(r -> ec.countKmers(r, false));
-        rcreads.stream().forEach(r -> ec.countKmers(r, true));
-        reads.stream().forEach(r -> ec.errorCorrect(r, false));
-        rcreads.stream().forEach(r -> ec.errorCorrect(r, true));
-    }
-
-    public void countKmers(SAMRecord r, boolean reverseComplement) {
-        PackedSequence ps = new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement);
-        LongSet encountered = new LongOpenHashSet(Math.max(1, ps.length() - k + 1), Hash.FAST_LOAD_FACTOR);
-        for (int i = 0; i < ps.length() - k + 1; i++) {
-            long kmer = ps.getKmer(i, k);
-            if (this.deduplicateReadKmers && encountered.contains(kmer)) {
-                continue;
-            }
-            int count = kmerCounts.get(kmer);
-            count++;
-            kmerCounts.put(kmer, count);
-            if (count > maxCount) {
-                maxCount = count;
-                refreshMaxCollapseCount();
-            }
-            if (this.deduplicateReadKmers) {
-                encountered.add(kmer);
-            }
-        }
-    }
-    public int errorCorrect(SAMRecord r, boolean reverseComplement) {
-        if (r.getReadLength() < k) return 0;
-        PackedSequence ps = new PackedSequence(r.getReadBases(), reverseComplement, reverseComplement);
-        PackedSequence oldps = new PackedSequence(ps);
-        int basesChanged = 0;
-        basesChanged += musket_two_sided(ps);
-        basesChanged += musket_one_sided_greedy_without_voting(ps);
-        if (basesChanged > 0) {
-            if (basesChanged > maxCorrectionsInKmer && tooManyDifferencesInWindow(ps, oldps)) {
-                // discard the changes - too much in a window
-                basesChanged = 0;
+        boolean parallel = parallelism > 1 && reads.size() + rcreads.size() >= PARALLEL_MIN_READS;
+        int shardBits = parallel ? 32 - Integer.numberOfLeadingZeros(parallelism - 1) : 0;
+        int batches = parallel ? parallelism * BATCHES_PER_THREAD : 1;
+        PackedSequenceErrorCorrector ec = k > MAX_K ?
+                new WideReadErrorCorrector(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, shardBits) :
+                new ReadErrorCorrector(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, shardBits);
+        List<SAMRecord> readList = new ArrayList<>(reads);
+        List<SAMRecord> rcreadList = new ArrayList<>(rcreads);
+        PackedSequence[] packed = new PackedSequence[readList.size() + rcreadList.size()];
+        forEachBatch(packed.length, batches, parallel, i -> {
+            if (i < readList.size()) {
+                packed[i] = new PackedSequence(readList.get(i).getReadBases(), false, false);
             } else {
-                byte[] seq = ps.getBytes(0, r.getReadBases().length);
-                if (reverseComplement) {
-                    SequenceUtil.reverseComplement(seq);
-                }
-                r.setReadBases(seq);
+                packed[i] = new PackedSequence(rcreadList.get(i - readList.size()).getReadBases(), true, true);
             }
-        }
-        //debug_dump_changes(r, ps, oldps);
-        return basesChanged;
-    }
-
-    private boolean tooManyDifferencesInWindow(PackedSequence ps1, PackedSequence ps2) {
-        for (int i = 0; i < ps1.length() - (k - 1); i++) {
-            int diff = KmerEncodingHelper.basesDifference(k, ps1.getKmer(i, k), ps2.getKmer(i, k));
-            if (diff > maxCorrectionsInKmer) {
-                return true;
+        });
+        if (parallel) {
+            ec.countKmersInParallel(packed, batches);
+        } else {
+            for (PackedSequence ps : packed) {
+                ec.countKmers(ps);
             }
         }
-        return false;
-    }
-
-    private void debug_dump_changes(SAMRecord r, PackedSequence ps, PackedSequence oldps) {
-        String oldSeq = new String(oldps.getBytes(0, r.getReadBases().length));
-        String newSeq = new String(ps.getBytes(0, r.getReadBases().length));
-        System.err.printf("\n%s\n", oldSeq);
-        for (int i = 0; i < oldSeq.length() - (k - 1); i++) {
-            if (isSafeBase(oldps, i)) {
-                System.err.printf("*");
-            } else {
-                System.err.printf(" ");
-            }
-        }
-        System.err.printf("\n");
-        for (int i = 0; i < oldSeq.length(); i++) {
-            if (oldSeq.charAt(i) == newSeq.charAt(i)) {
-                System.err.printf(" ");
-            } else {
-                System.err.printf("|");
-            }
-        }
-        System.err.printf("\n");
-        for (int i = 0; i < oldSeq.length(); i++) {
-            if (oldSeq.charAt(i) == newSeq.charAt(i)) {
-                System.err.printf(" ");
-            } else {
-                System.err.printf("%s", newSeq.charAt(i));
-            }
-        }
-        System.err.printf("\n");
+        // SAMRecord hash codes change when the read bases are corrected
+        Set<SAMRecord> forwardReads = Collections.newSetFromMap(new IdentityHashMap<>());
+        forwardReads.addAll(readList);
+        // The packed sequences are no longer required for counting so are corrected in-place
+        forEachBatch(readList.size(), batches, parallel, i -> ec.errorCorrect(readList.get(i), packed[i], false));
+        forEachBatch(rcreadList.size(), batches, parallel, i -> {
+            SAMRecord r = rcreadList.get(i);
+            PackedSequence ps = packed[readList.size() + i];
+            if (forwardReads.contains(r)) {
+                // read could have been changed by the forward strand correction
+                ps = new PackedSequence(r.getReadBases(), true, true);
+            }
+            ec.errorCorrect(r, ps, true);
+        });
     }
 
     /**
-     * Max count that we will consider collapsing. All kmers above this threshold are safe from
-     * error correction
+     * Performs the given action for each offset
+     * @param n number of offsets
+     * @param batches number of batches to split the offsets into
+     * @param parallel process batches in parallel
      */
-    private void refreshMaxCollapseCount() {
-        maxCollapseCount = (int)Math.floor(maxCount / kmerErrorCorrectionMultiple);
-    }
-
-    private int musket_two_sided(PackedSequence ps) {
-        //List<Integer> zzcounts = IntStream.range(0, ps.length() - k + 1).mapToObj(offset -> kmerCounts.get(ps.getKmer(offset, k))).collect(Collectors.toList());
-        int i = k - 1;
-        int basesChanged = 0;
-        while (i + k < ps.length()) {
-            long rightKmer = ps.getKmer(i, k);
-            int rightCount = kmerCounts.get(rightKmer);
-            if (rightCount > maxCollapseCount) {
-                i += k; // advance to first non-overlapping
-                continue;
-            }
-            int leftKmerOffset = i - (k - 1);
-            long leftKmer = ps.getKmer(leftKmerOffset, k);
-            int leftCount = kmerCounts.get(leftKmer);
-            if (leftCount > maxCollapseCount) {
-                i += 1; // advance to first non-overlapping kmer
-                continue;
-            }
-            // check both kmers for their best replacement
-            long leftCollapse = neighbourToCollapseInto(leftKmer, k - 1, leftCount);
-            if (leftCollapse == leftKmer) {
-                i++;
-                continue;
-            }
-            long rightCollapse = neighbourToCollapseInto(rightKmer, 0, rightCount);
-            if (rightCollapse == rightKmer) {
-                i++;
-                continue;
+    private static void forEachBatch(int n, int batches, boolean parallel, IntConsumer action) {
+        if (!parallel) {
+            for (int i = 0; i < n; i++) {
+                action.accept(i);
             }
-            if (kmerCounts.get(leftCollapse) >= kmerCounts.get(rightCollapse)) {
-                // collapse using replacement base from left kmer
-                ps.setKmer(leftCollapse, leftKmerOffset, k);
-            } else {
-                ps.setKmer(rightCollapse, i, k);
-            }
-            i += k; // right kmer is now good
-            basesChanged++;
+            return;
         }
-        return basesChanged;
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            int end = batchStart(n, batches, b + 1);
+            for (int i = batchStart(n, batches, b); i < end; i++) {
+                action.accept(i);
+            }
+        });
     }
-    private int musket_one_sided_greedy_without_voting(PackedSequence ps) {
-        int safePosition = advanceToSafePosition(ps, 0);
-        int basesChanged = 0;
-        // nothing is safe
-        if (safePosition > ps.length() - k) return basesChanged;
-        if (safePosition > 0) {
-            basesChanged += fixBaseAdjacentTo(ps, safePosition, -1);
-        }
-        safePosition = advanceToEndOfSafeRegion(ps, safePosition);
-        while (safePosition <= ps.length() - k - 1) {
-            basesChanged += fixBaseAdjacentTo(ps, safePosition, 1);
-            safePosition = advanceToSafePosition(ps, safePosition + 1);
-            safePosition = advanceToEndOfSafeRegion(ps, safePosition);
-        }
-        return basesChanged;
+    static int batchStart(int n, int batches, int batch) {
+        return (int)((long)n * batch / batches);
     }
-
-    private int advanceToSafePosition(PackedSequence ps, int offset) {
-        while (offset <= ps.length() - k) {
-            if (isSafeKmerStartPosition(ps, offset)) {
-                return offset;
-            }
-            offset++;
-        }
-        return offset;
+    private int shard(long kmer) {
+        if (shardBits == 0) return 0;
+        return (int)(HashCommon.mix(kmer) >>> (Long.SIZE - shardBits));
     }
-    private boolean isSafeKmerStartPosition(PackedSequence ps, int offset) {
-        return kmerCounts.get(ps.getKmer(offset, k)) > maxCollapseCount;
+    private int count(long kmer) {
+        return kmerCounts[shard(kmer)].get(kmer);
     }
-    private boolean isSafeBase(PackedSequence ps, int offset) {
-        for (int i = Math.max(0, offset - (k - 1)); i <= Math.min(offset, ps.length() - k); i++) {
-            if (isSafeKmerStartPosition(ps, i)) {
-                return true;
-            }
-        }
-        return false;
+    @Override
+    protected int count(PackedSequence ps, int offset) {
+        return count(ps.getKmer(offset, k));
     }
-
-    private int advanceToEndOfSafeRegion(PackedSequence ps, int offset) {
-        while (offset <= ps.length() - k) {
-            if (!isSafeKmerStartPosition(ps, offset)) {
-                // unsafe kmer - we've hit the end of our safe region
-                return offset - 1;
+    @Override
+    protected int count(PackedSequence ps, int offset, int baseOffset, long base) {
+        int shift = (k - 1 - baseOffset) * 2;
+        long kmer = ps.getKmer(offset, k);
+        return count((kmer & ~(3L << shift)) | (base << shift));
+    }
+    @Override
+    public void countKmers(PackedSequence ps) {
+        LongSet encountered = new LongOpenHashSet(Math.max(1, ps.length() - k + 1), Hash.FAST_LOAD_FACTOR);
+        for (int i = 0; i < ps.length() - k + 1; i++) {
+            long kmer = ps.getKmer(i, k);
+            if (this.deduplicateReadKmers && encountered.contains(kmer)) {
+                continue;
             }
-            int strideOffset = offset + k;
-            if (strideOffset <= ps.length() - k && isSafeKmerStartPosition(ps, strideOffset)) {
-                // we can jump forward if the next non-overlapping kmer is also safe
-                offset = strideOffset;
-            } else {
-                offset++;
+            onKmerCount(kmerCounts[shard(kmer)].addTo(kmer, 1) + 1);
+            if (this.deduplicateReadKmers) {
+                encountered.add(kmer);
             }
         }
-        return offset;
     }
-
-    private int fixBaseAdjacentTo(PackedSequence ps, int position, int direction) {
-        int nextPosition = position + direction;
-        // out of bounds
-        if (nextPosition < 0 || nextPosition > ps.length() - k) return 0;
-        int nextNextPosition = nextPosition + direction;
-        long nextKmer = ps.getKmer(nextPosition, k);
-        int nextKmerBaseOfInterest = direction == -1 ? 0 : k - 1;
-        long nextCollapseKmer = neighbourToCollapseInto(nextKmer, nextKmerBaseOfInterest, kmerCounts.get(nextKmer));
-        if (nextCollapseKmer == nextKmer) return 0;
-        if (nextNextPosition < 0 || nextNextPosition > ps.length() - k) {
-            // we're at the start or end of the read so we can't check the next base
-            ps.setKmer(nextCollapseKmer, nextPosition, k);
-            return 1;
-        }
-        // check that the next kmer also agrees with the error correction
-        long nextNextKmer = ps.getKmer(nextNextPosition, k);
-        int nextNextKmerBaseOfInterest = direction == -1 ? 1 : k - 2;
-        long nextNextCollapseKmer = neighbourToCollapseInto(nextNextKmer, nextNextKmerBaseOfInterest, kmerCounts.get(nextNextKmer));
-
-        long nextKmerChangedBase = KmerEncodingHelper.getBase(k, nextCollapseKmer, nextKmerBaseOfInterest);
-        long nextNextChangedBase = KmerEncodingHelper.getBase(k, nextNextCollapseKmer,nextNextKmerBaseOfInterest);
-        // make sure they agree on the base to be changed
-        if (nextKmerChangedBase != nextNextChangedBase) return 0;
-        ps.setKmer(nextCollapseKmer, nextPosition, k);
-        return 1;
-    }
-
-    private long neighbourToCollapseInto(long kmer, int baseOffset, int count) {
-        long bestKmer = kmer;
-        // use 1 less than the collapse threshold as the sentinel value
-        int bestCount = (int)Math.ceil(count * kmerErrorCorrectionMultiple) - 1;
-        for (long j = 1; j < 4; j++) { // XOR 0 = self so we can start at 1
-            long neighbourKmer = kmer ^ (j << ((k - 1 - baseOffset) * 2));
-            int neighbourCount = kmerCounts.get(neighbourKmer);
-            if (neighbourCount > bestCount) {
-                bestKmer = neighbourKmer;
-                bestCount = neighbourCount;
+    /**
+     * Counts kmers in two parallel passes: kmers of each batch of reads are partitioned
+     * by shard, then each shard count table is updated by a single thread.
+     */
+    @Override
+    public void countKmersInParallel(PackedSequence[] packed, int batches) {
+        int shards = kmerCounts.length;
+        LongArrayList[][] partitioned = new LongArrayList[batches][];
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            LongArrayList[] byShard = new LongArrayList[shards];
+            for (int s = 0; s < shards; s++) {
+                byShard[s] = new LongArrayList();
+            }
+            LongSet encountered = new LongOpenHashSet(Hash.DEFAULT_INITIAL_SIZE, Hash.FAST_LOAD_FACTOR);
+            int end = batchStart(packed.length, batches, b + 1);
+            for (int i = batchStart(packed.length, batches, b); i < end; i++) {
+                PackedSequence ps = packed[i];
+                encountered.clear();
+                for (int j = 0; j < ps.length() - k + 1; j++) {
+                    long kmer = ps.getKmer(j, k);
+                    if (this.deduplicateReadKmers && !encountered.add(kmer)) {
+                        continue;
+                    }
+                    byShard[shard(kmer)].add(kmer);
+                }
+            }
+            partitioned[b] = byShard;
+        });
+        int[] shardMaxCount = new int[shards];
+        IntStream.range(0, shards).parallel().forEach(s -> {
+            Long2IntOpenHashMap counts = kmerCounts[s];
+            int max = 0;
+            for (LongArrayList[] byShard : partitioned) {
+                LongArrayList kmers = byShard[s];
+                for (int i = 0; i < kmers.size(); i++) {
+                    max = Math.max(max, counts.addTo(kmers.getLong(i), 1) + 1);
+                }
             }
+            shardMaxCount[s] = max;
+        });
+        for (int max : shardMaxCount) {
+            onKmerCount(max);
         }
-        return bestKmer;
     }
 }
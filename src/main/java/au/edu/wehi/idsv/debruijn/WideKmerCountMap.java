@@ -0,0 +1,92 @@
+package au.edu.wehi.idsv.debruijn;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from a 128-bit kmer to its count.
+ *
+ * Kmers are stored as a pair of longs in parallel primitive arrays.
+ * A count of zero indicates an empty slot so all stored counts must be positive.
+ */
+class WideKmerCountMap {
+	private static final float LOAD_FACTOR = 0.5f;
+	private long[] high;
+	private long[] low;
+	private int[] count;
+	private int mask;
+	private int size = 0;
+	private int maxFill;
+	public WideKmerCountMap() {
+		this(16);
+	}
+	public WideKmerCountMap(int expected) {
+		allocate(HashCommon.arraySize(Math.max(2, expected), LOAD_FACTOR));
+	}
+	private void allocate(int capacity) {
+		high = new long[capacity];
+		low = new long[capacity];
+		count = new int[capacity];
+		mask = capacity - 1;
+		maxFill = HashCommon.maxFill(capacity, LOAD_FACTOR);
+	}
+	private static int hash(long high, long low) {
+		return (int)HashCommon.mix(high * 0x9E3779B97F4A7C15L ^ low);
+	}
+	private int slot(long high, long low) {
+		int pos = hash(high, low) & mask;
+		while (count[pos] != 0 && (this.high[pos] != high || this.low[pos] != low)) {
+			pos = (pos + 1) & mask;
+		}
+		return pos;
+	}
+	/**
+	 * @return count of the given kmer, 0 if the kmer is not in the map
+	 */
+	public int get(long high, long low) {
+		return count[slot(high, low)];
+	}
+	/**
+	 * Increments the count of the given kmer
+	 * @param increment positive increment
+	 * @return count before incrementing
+	 */
+	public int addTo(long high, long low, int increment) {
+		int pos = slot(high, low);
+		int old = count[pos];
+		if (old == 0) {
+			this.high[pos] = high;
+			this.low[pos] = low;
+			if (++size > maxFill) {
+				count[pos] = increment;
+				rehash(2 * count.length);
+				return 0;
+			}
+		}
+		count[pos] = old + increment;
+		return old;
+	}
+	private void rehash(int capacity) {
+		long[] oldHigh = high;
+		long[] oldLow = low;
+		int[] oldCount = count;
+		allocate(capacity);
+		for (int i = 0; i < oldCount.length; i++) {
+			if (oldCount[i] != 0) {
+				int pos = slot(oldHigh[i], oldLow[i]);
+				high[pos] = oldHigh[i];
+				low[pos] = oldLow[i];
+				count[pos] = oldCount[i];
+			}
+		}
+	}
+	public int size() {
+		return size;
+	}
+	public void clear() {
+		if (size == 0) return;
+		Arrays.fill(count, 0);
+		size = 0;
+	}
+}
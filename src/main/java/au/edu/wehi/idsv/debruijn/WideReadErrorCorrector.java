@@ -0,0 +1,129 @@
+package au.edu.wehi.idsv.debruijn;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.stream.IntStream;
+
+/**
+ * Read error corrector for kmers too large to be encoded in a single long.
+ *
+ * Kmers are encoded in two longs: the high word contains the first k-32 bases
+ * and the low word contains the last 32 bases. The error correction algorithm
+ * is shared with {@link ReadErrorCorrector}.
+ */
+class WideReadErrorCorrector extends PackedSequenceErrorCorrector {
+    public static final int MAX_K = 2 * KmerEncodingHelper.MAX_K;
+    private static final long HIGH_WORD_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    /**
+     * Kmer counts sharded by the high bits of the kmer hash
+     */
+    private final WideKmerCountMap[] kmerCounts;
+    private final int shardBits;
+    /**
+     * Number of bases encoded in the high word
+     */
+    private final int highK;
+
+    public WideReadErrorCorrector(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers) {
+        this(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers, 0);
+    }
+    WideReadErrorCorrector(int k, float kmerErrorCorrectionMultiple, int maxCorrectionsInKmer, boolean deduplicateReadKmers, int shardBits) {
+        super(k, kmerErrorCorrectionMultiple, maxCorrectionsInKmer, deduplicateReadKmers);
+        if (k <= ReadErrorCorrector.MAX_K) throw new IllegalArgumentException(String.format("k must exceed %d", ReadErrorCorrector.MAX_K));
+        if (k > MAX_K) throw new IllegalArgumentException(String.format("k cannot exceed %d", MAX_K));
+        this.highK = k - KmerEncodingHelper.MAX_K;
+        this.shardBits = shardBits;
+        this.kmerCounts = new WideKmerCountMap[1 << shardBits];
+        for (int i = 0; i < kmerCounts.length; i++) {
+            kmerCounts[i] = new WideKmerCountMap();
+        }
+    }
+    private long high(PackedSequence ps, int offset) {
+        // PackedSequence cannot extract zero length kmers
+        return highK == 0 ? 0 : ps.getKmer(offset, highK);
+    }
+    private long low(PackedSequence ps, int offset) {
+        return ps.getKmer(offset + highK, KmerEncodingHelper.MAX_K);
+    }
+    private int shard(long high, long low) {
+        if (shardBits == 0) return 0;
+        return (int)(HashCommon.mix(high * HIGH_WORD_MULTIPLIER ^ low) >>> (Long.SIZE - shardBits));
+    }
+    private int count(long high, long low) {
+        return kmerCounts[shard(high, low)].get(high, low);
+    }
+    @Override
+    protected int count(PackedSequence ps, int offset) {
+        return count(high(ps, offset), low(ps, offset));
+    }
+    @Override
+    protected int count(PackedSequence ps, int offset, int baseOffset, long base) {
+        long high = high(ps, offset);
+        long low = low(ps, offset);
+        if (baseOffset < highK) {
+            int shift = (highK - 1 - baseOffset) * 2;
+            high = (high & ~(3L << shift)) | (base << shift);
+        } else {
+            int shift = (KmerEncodingHelper.MAX_K - 1 - (baseOffset - highK)) * 2;
+            low = (low & ~(3L << shift)) | (base << shift);
+        }
+        return count(high, low);
+    }
+    @Override
+    public void countKmers(PackedSequence ps) {
+        WideKmerCountMap encountered = deduplicateReadKmers ? new WideKmerCountMap(Math.max(1, ps.length() - k + 1)) : null;
+        for (int i = 0; i < ps.length() - k + 1; i++) {
+            long high = high(ps, i);
+            long low = low(ps, i);
+            if (this.deduplicateReadKmers && encountered.addTo(high, low, 1) != 0) {
+                continue;
+            }
+            onKmerCount(kmerCounts[shard(high, low)].addTo(high, low, 1) + 1);
+        }
+    }
+    @Override
+    public void countKmersInParallel(PackedSequence[] packed, int batches) {
+        int shards = kmerCounts.length;
+        // kmers are stored as consecutive high, low word pairs
+        LongArrayList[][] partitioned = new LongArrayList[batches][];
+        IntStream.range(0, batches).parallel().forEach(b -> {
+            LongArrayList[] byShard = new LongArrayList[shards];
+            for (int s = 0; s < shards; s++) {
+                byShard[s] = new LongArrayList();
+            }
+            WideKmerCountMap encountered = new WideKmerCountMap();
+            int end = ReadErrorCorrector.batchStart(packed.length, batches, b + 1);
+            for (int i = ReadErrorCorrector.batchStart(packed.length, batches, b); i < end; i++) {
+                PackedSequence ps = packed[i];
+                encountered.clear();
+                for (int j = 0; j < ps.length() - k + 1; j++) {
+                    long high = high(ps, j);
+                    long low = low(ps, j);
+                    if (this.deduplicateReadKmers && encountered.addTo(high, low, 1) != 0) {
+                        continue;
+                    }
+                    LongArrayList list = byShard[shard(high, low)];
+                    list.add(high);
+                    list.add(low);
+                }
+            }
+            partitioned[b] = byShard;
+        });
+        int[] shardMaxCount = new int[shards];
+        IntStream.range(0, shards).parallel().forEach(s -> {
+            WideKmerCountMap counts = kmerCounts[s];
+            int max = 0;
+            for (LongArrayList[] byShard : partitioned) {
+                LongArrayList kmers = byShard[s];
+                for (int i = 0; i < kmers.size(); i += 2) {
+                    max = Math.max(max, counts.addTo(kmers.getLong(i), kmers.getLong(i + 1), 1) + 1);
+                }
+            }
+            shardMaxCount[s] = max;
+        });
+        for (int max : shardMaxCount) {
+            onKmerCount(max);
+        }
+    }
+}
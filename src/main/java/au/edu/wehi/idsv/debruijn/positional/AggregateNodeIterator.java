@@ -1,16 +1,13 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
-import au.edu.wehi.idsv.debruijn.positional.AggregateNodeIterator.KmerNodeAggregator.KmerNodeAggregatorSnapshot;
-import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeAggregatorSnapshotByEndPriorityQueue;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartPriorityQueue;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.PriorityQueue;
 import java.util.Queue;
@@ -18,16 +15,38 @@ import java.util.Queue;
 /**
  * Transforms a start position sorted sequence of KmerNodes to a
  * start position sorted sequence of non-overlapping KmerAggregateNodes
+ *
+ * Input nodes are buffered in primitive column arrays. Aggregation is
+ * performed in batches by sorting the pending nodes by kmer and start
+ * position, then sweeping over the start and end boundaries of each kmer.
+ * Aggregate nodes are only materialised once their interval is final.
+ *
  * @author Daniel Cameron
  *
  */
 public class AggregateNodeIterator implements PeekingIterator<KmerNode> {
+	/**
+	 * Minimum number of input positions between successive batch aggregations
+	 */
+	private static final int MIN_FLUSH_INTERVAL = 16;
 	private final PeekingIterator<? extends KmerNode> underlying;
 	private Queue<ImmutableKmerNode> outputSortBuffer = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartPriorityQueue<>(16) : new PriorityQueue<ImmutableKmerNode>(1024, KmerNodeUtil.ByFirstStart);
-	private Long2ObjectOpenHashMap<KmerNodeAggregator> byKmer = new Long2ObjectOpenHashMap<KmerNodeAggregator>();
-	private Queue<KmerNodeAggregatorSnapshot> byEnd = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeAggregatorSnapshotByEndPriorityQueue(16) : new PriorityQueue<KmerNodeAggregatorSnapshot>(1024, BySnapshotEnd);
+	private NodeColumns pending = new NodeColumns();
+	/**
+	 * Nodes still being aggregated after the last batch
+	 */
+	private NodeColumns retained = new NodeColumns();
+	/**
+	 * Scratch buffer of group offsets sorted by end position
+	 */
+	private int[] byEnd = new int[16];
+	/**
+	 * Earliest start position of any pending node
+	 */
+	private int pendingMinStart = Integer.MAX_VALUE;
 	private int maxWidth = 0;
 	private int inputPosition = Integer.MIN_VALUE;
+	private int lastFlushPosition = Integer.MIN_VALUE;
 	private long consumed = 0;
 	public AggregateNodeIterator(Iterator<? extends KmerNode> it) {
 		this.underlying = Iterators.peekingIterator(it);
@@ -52,11 +71,13 @@ public class AggregateNodeIterator implements PeekingIterator<KmerNode> {
 		// we can emit whenever there are no unprocessed or incomplete intervals
 		// before our current interval
 		while (underlying.hasNext() && (outputSortBuffer.isEmpty() || outputSortBuffer.peek().firstStart() >= earliestPossibleStartOfNodeBeingAggregated())) {
-			inputPosition = underlying.peek().firstStart(); 
+			inputPosition = underlying.peek().firstStart();
 			process();
-			flush();
+			if ((long)inputPosition - lastFlushPosition >= Math.max(MIN_FLUSH_INTERVAL, maxWidth)) {
+				flush();
+			}
 		}
-		if (!underlying.hasNext()) {
+		if (!underlying.hasNext() && pending.size > 0) {
 			// flush everything
 			inputPosition = Integer.MAX_VALUE;
 			flush();
@@ -66,136 +87,143 @@ public class AggregateNodeIterator implements PeekingIterator<KmerNode> {
 		}
 	}
 	private int earliestPossibleStartOfNodeBeingAggregated() {
-		return inputPosition - maxWidth;
+		return Math.min(inputPosition, pendingMinStart);
 	}
 	private void process() {
 		while (underlying.hasNext() && underlying.peek().firstStart() <= inputPosition) {
 			KmerNode n = underlying.next();
 			consumed++;
 			assert(n.firstStart() == inputPosition || inputPosition == Integer.MAX_VALUE); // input should be sorted by start position
-			long kmer = n.firstKmer();
-			KmerNodeAggregator ag = byKmer.get(kmer);
-			if (ag == null) {
-				ag = new KmerNodeAggregator(kmer);
-				byKmer.put(kmer, ag);
-			}
-			ag.add(n);
-			byEnd.add(ag.new KmerNodeAggregatorSnapshot());
+			maxWidth = Math.max(maxWidth, n.width());
+			pendingMinStart = Math.min(pendingMinStart, n.firstStart());
+			pending.add(n.firstKmer(), n.firstStart(), n.firstEnd(), n.weight(), n.isReference());
 		}
 	}
 	/**
-	 * Flush all fully constructed aggregate nodes
+	 * Emits all aggregate nodes whose intervals can no longer change
 	 */
 	private void flush() {
-		while (!byEnd.isEmpty() && byEnd.peek().snapshotEnd < inputPosition) {
-			KmerNodeAggregatorSnapshot snapshot = byEnd.poll();
-			if (!snapshot.isValid()) continue;
-			KmerNodeAggregator ag = snapshot.aggregator();
-			ag.advanceTo(inputPosition - 1);
-			if (ag.isEmpty()) {
-				byKmer.remove(ag.kmer);
-			} else {
-				KmerNodeAggregatorSnapshot newSnapshot = ag.new KmerNodeAggregatorSnapshot();
-				assert(newSnapshot.snapshotEnd >= inputPosition);
-				byEnd.add(newSnapshot);
+		lastFlushPosition = inputPosition;
+		NodeColumns p = pending;
+		p.sortByKmerStart();
+		retained.clear();
+		int groupStart = 0;
+		while (groupStart < p.size) {
+			int groupEnd = groupStart + 1;
+			while (groupEnd < p.size && p.kmer[groupEnd] == p.kmer[groupStart]) {
+				groupEnd++;
 			}
+			sweep(p, groupStart, groupEnd);
+			groupStart = groupEnd;
 		}
-	}
-	private static final Ordering<KmerNodeAggregatorSnapshot> BySnapshotEnd = new Ordering<KmerNodeAggregatorSnapshot>() {
-		@Override
-		public int compare(KmerNodeAggregatorSnapshot left, KmerNodeAggregatorSnapshot right) {
-			return Ints.compare(left.snapshotEnd, right.snapshotEnd);
+		// retained nodes become the new pending set
+		pending = retained;
+		retained = p;
+		pendingMinStart = Integer.MAX_VALUE;
+		for (int i = 0; i < pending.size; i++) {
+			pendingMinStart = Math.min(pendingMinStart, pending.start[i]);
 		}
-	};
+	}
 	/**
-	 * Generates KmerAggregateNode from an underlying sequence of KmerSupportNodes in ascending starting position
-	 * 
-	 * @author Daniel Cameron
+	 * Aggregates the nodes of a single kmer
 	 *
+	 * Aggregate nodes are split at every start and end boundary. Nodes
+	 * that extend past the current input position are retained with their
+	 * start truncated to the start of the incomplete aggregate node.
+	 *
+	 * @param p pending nodes sorted by kmer then start position
+	 * @param groupStart first offset of the kmer
+	 * @param groupEnd offset after the last node of the kmer
 	 */
-	public class KmerNodeAggregator implements Comparable<KmerNodeAggregator> {
-		public class KmerNodeAggregatorSnapshot {
-			public KmerNodeAggregatorSnapshot() {
-				this.snapshotEnd = KmerNodeAggregator.this.end();
+	private void sweep(NodeColumns p, int groupStart, int groupEnd) {
+		int n = groupEnd - groupStart;
+		if (byEnd.length < n) {
+			byEnd = new int[Math.max(n, 2 * byEnd.length)];
+		}
+		for (int i = 0; i < n; i++) {
+			byEnd[i] = groupStart + i;
+		}
+		if (n > 1) {
+			final int[] end = p.end;
+			IntArrays.quickSort(byEnd, 0, n, (a, b) -> Integer.compare(end[a], end[b]));
+		}
+		long kmer = p.kmer[groupStart];
+		int startOffset = groupStart;
+		int endOffset = 0;
+		int weight = 0;
+		int referenceCount = 0;
+		long segmentStart = Long.MIN_VALUE;
+		while (startOffset < groupEnd || endOffset < n) {
+			long nextStart = startOffset < groupEnd ? p.start[startOffset] : Long.MAX_VALUE;
+			long nextEnd = endOffset < n ? (long)p.end[byEnd[endOffset]] + 1 : Long.MAX_VALUE;
+			long boundary = Math.min(nextStart, nextEnd);
+			if (boundary > inputPosition) {
+				// aggregate node could still be extended
+				break;
 			}
-			public final int snapshotEnd;
-			/**
-			 * Determines whether the snapshot is still valid
-			 * @return
-			 */
-			public boolean isValid() {
-				return this.snapshotEnd == KmerNodeAggregator.this.end();
+			if (weight > 0 && segmentStart < boundary) {
+				outputSortBuffer.add(new ImmutableKmerNode(kmer, (int)segmentStart, (int)(boundary - 1), referenceCount > 0, weight));
 			}
-			// what's the correct syntax for doing this from outside the class?
-			public KmerNodeAggregator aggregator() { return KmerNodeAggregator.this; }
-		}
-		public KmerNodeAggregator(long kmer) {
-			this.kmer = kmer;
-		}
-		public boolean isEmpty() { return active.isEmpty(); }
-		/**
-		 * KmerNodes in the currently active aggregation interval
-		 */
-		private PriorityQueue<KmerNode> active = new PriorityQueue<KmerNode>(8, KmerNodeUtil.ByLastEnd);
-		/**
-		 * Start position of currently active aggregation interval
-		 */
-		private int start = Integer.MIN_VALUE;
-		/**
-		 * Weight of currently active aggregation interval
-		 */
-		private int weight = 0;
-		/**
-		 * Number of active reference KmerNode 
-		 */
-		private int referenceCount = 0;
-		/**
-		 * Advances to the next node, adding aggregate nodes to the given collection
-		 * @param node next node
-		 * @param emitTo collection to emit aggregate records to
-		 */
-		private final long kmer;
-		public int end() {
-			if (active.isEmpty()) return Integer.MAX_VALUE;
-			return active.peek().firstEnd();
-		}
-		public void add(KmerNode node) {
-			assert(node.firstKmer() == kmer);
-			assert(node.firstStart() >= start);
-			maxWidth = Math.max(maxWidth, node.width());
-			advanceTo(node.firstStart() - 1);
-			if (weight > 0 && start < node.firstStart()) {
-				outputSortBuffer.add(new ImmutableKmerNode(kmer, start, node.firstStart() - 1, referenceCount > 0, weight));
+			while (startOffset < groupEnd && p.start[startOffset] == boundary) {
+				weight += p.weight[startOffset];
+				if (p.reference[startOffset]) referenceCount++;
+				startOffset++;
 			}
-			start = node.firstStart();
-			if (node.isReference()) {
-				referenceCount++;
+			while (endOffset < n && (long)p.end[byEnd[endOffset]] + 1 == boundary) {
+				int offset = byEnd[endOffset];
+				weight -= p.weight[offset];
+				if (p.reference[offset]) referenceCount--;
+				endOffset++;
 			}
-			weight += node.weight();
-			active.add(node);
-		}
-		/**
-		 * Process up to and including the given position
-		 * @param position final processing position
-		 */
-		public void advanceTo(int position) {
-			while (!active.isEmpty() && active.peek().firstEnd() <= position) {
-				int end = active.peek().firstEnd();
-				outputSortBuffer.add(new ImmutableKmerNode(kmer, start, end, referenceCount > 0, weight));
-				while (!active.isEmpty() && active.peek().firstEnd() == end) {
-					KmerNode endingHere = active.poll();
-					assert(endingHere.firstKmer() == kmer);
-					weight -= endingHere.weight();
-					if (endingHere.isReference()) {
-						referenceCount--;
-					}
-				}
-				start = end + 1;
+			segmentStart = boundary;
+		}
+		assert(startOffset == groupEnd || endOffset == n);
+		for (int i = endOffset; i < n; i++) {
+			int offset = byEnd[i];
+			retained.add(kmer, (int)Math.max(p.start[offset], segmentStart), p.end[offset], p.weight[offset], p.reference[offset]);
+		}
+	}
+	/**
+	 * KmerNode fields stored in parallel arrays
+	 */
+	private static class NodeColumns {
+		private long[] kmer = new long[16];
+		private int[] start = new int[16];
+		private int[] end = new int[16];
+		private int[] weight = new int[16];
+		private boolean[] reference = new boolean[16];
+		private int size = 0;
+		public void add(long kmer, int start, int end, int weight, boolean reference) {
+			if (size == this.kmer.length) {
+				int newCapacity = 2 * size;
+				this.kmer = Arrays.copyOf(this.kmer, newCapacity);
+				this.start = Arrays.copyOf(this.start, newCapacity);
+				this.end = Arrays.copyOf(this.end, newCapacity);
+				this.weight = Arrays.copyOf(this.weight, newCapacity);
+				this.reference = Arrays.copyOf(this.reference, newCapacity);
 			}
+			this.kmer[size] = kmer;
+			this.start[size] = start;
+			this.end[size] = end;
+			this.weight[size] = weight;
+			this.reference[size] = reference;
+			size++;
 		}
-		@Override
-		public int compareTo(KmerNodeAggregator right) {
-			return Longs.compare(kmer, right.kmer);
+		public void clear() {
+			size = 0;
+		}
+		public void sortByKmerStart() {
+			it.unimi.dsi.fastutil.Arrays.quickSort(0, size, (a, b) -> {
+				int cmp = Long.compare(kmer[a], kmer[b]);
+				if (cmp != 0) return cmp;
+				return Integer.compare(start[a], start[b]);
+			}, (a, b) -> {
+				long tmpKmer = kmer[a]; kmer[a] = kmer[b]; kmer[b] = tmpKmer;
+				int tmp = start[a]; start[a] = start[b]; start[b] = tmp;
+				tmp = end[a]; end[a] = end[b]; end[b] = tmp;
+				tmp = weight[a]; weight[a] = weight[b]; weight[b] = tmp;
+				boolean tmpRef = reference[a]; reference[a] = reference[b]; reference[b] = tmpRef;
+			});
 		}
 	}
 	@Override
@@ -203,19 +231,15 @@ public class AggregateNodeIterator implements PeekingIterator<KmerNode> {
 		throw new UnsupportedOperationException();
 	}
 	private boolean sanityCheck() {
-		// kmer lookup is correct
-		assert(byKmer.long2ObjectEntrySet().stream().allMatch(kvp -> kvp.getLongKey() == kvp.getValue().kmer));
-		// empty aggregators have been removed
-		assert(byKmer.values().stream().allMatch(ag -> !ag.active.isEmpty()));
-		// could have many start position entries, but only one position is valid (and even that could have duplicate entries)
-		assert(byEnd.size() >= byKmer.size());
-		assert(byEnd.stream().allMatch(snapshot -> !snapshot.isValid() || byKmer.containsKey(snapshot.aggregator().kmer)));
-		assert(byKmer.values().stream().allMatch(ag -> ag.end() >= inputPosition));
+		for (int i = 0; i < pending.size; i++) {
+			assert(pending.start[i] <= pending.end[i]);
+			assert(pending.weight[i] > 0);
+			assert(pending.start[i] >= pendingMinStart);
+		}
 		if (outputSortBuffer.isEmpty()) {
-			assert(byKmer.isEmpty());
-			assert(byEnd.isEmpty());
+			assert(pending.size == 0);
 			assert(!underlying.hasNext());
-		}	
+		}
 		return true;
 	}
 	public int tracking_processedSize() {
@@ -228,15 +252,22 @@ public class AggregateNodeIterator implements PeekingIterator<KmerNode> {
 		return consumed;
 	}
 	public int tracking_kmerCount() {
-		return byKmer.size();
+		return pendingKmerCounts().size();
 	}
 	public int tracking_aggregatorQueueSize() {
-		return byEnd.size();
+		return pending.size;
 	}
 	public int tracking_aggregatorActiveNodeCount() {
-		return byKmer.values().stream().mapToInt(x -> x.active.size()).sum();
+		return pending.size;
 	}
 	public int tracking_aggregatorKmerMaxActiveNodeCount() {
-		return byKmer.values().stream().mapToInt(x -> x.active.size()).max().orElse(0);
+		return pendingKmerCounts().values().stream().mapToInt(x -> x).max().orElse(0);
+	}
+	private Long2IntOpenHashMap pendingKmerCounts() {
+		Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+		for (int i = 0; i < pending.size; i++) {
+			counts.addTo(pending.kmer[i], 1);
+		}
+		return counts;
 	}
 }
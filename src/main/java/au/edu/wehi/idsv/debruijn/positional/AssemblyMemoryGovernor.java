@@ -0,0 +1,102 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+/**
+ * Tracks an estimate of the memory used by a positional assembly graph and
+ * determines what action should be taken to keep the graph within budget.
+ *
+ * Actions are graded: as the estimate approaches the budget, contigs outside
+ * the retain window are flushed as soon as possible instead of in batches of
+ * the flush width. Once the budget is exceeded, the
+ * densest loaded window is downsampled in place. Both actions are taken before
+ * the graph grows to the point at which an {@link AssemblyThresholdReachedException}
+ * forces the entire graph to be discarded and rebuilt.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class AssemblyMemoryGovernor {
+	public enum Action {
+		NONE,
+		/**
+		 * Contigs outside the retain window should be flushed without waiting for a full flush width
+		 */
+		FLUSH_EAGERLY,
+		/**
+		 * Evidence in the densest portion of the graph should be downsampled
+		 */
+		DOWNSAMPLE_DENSE_WINDOW,
+	}
+	/**
+	 * Approximate size of a KmerPathNode including its kmer, weight and edge lists
+	 */
+	public static final long KMER_PATH_NODE_BYTES = 192;
+	/**
+	 * Approximate size of a KmerSupportNode including its evidence lookup list entry
+	 */
+	public static final long KMER_SUPPORT_NODE_BYTES = 64;
+	/**
+	 * Approximate size of a memoized TraversalNode including its memoization entry
+	 */
+	public static final long TRAVERSAL_NODE_BYTES = 96;
+	/**
+	 * Portion of the budget at which contigs are flushed eagerly
+	 */
+	public static final double FLUSH_EAGERLY_PORTION = 0.5;
+	private final long maxBytes;
+	private long estimatedBytes = 0;
+	private long peakEstimatedBytes = 0;
+	private Action action = Action.NONE;
+	/**
+	 * @param maxBytes memory budget of the assembly graph. Values less than or equal to zero disable the governor.
+	 */
+	public AssemblyMemoryGovernor(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	public static long estimateBytes(long pathNodes, long supportNodes, long traversalNodes) {
+		return pathNodes * KMER_PATH_NODE_BYTES
+				+ supportNodes * KMER_SUPPORT_NODE_BYTES
+				+ traversalNodes * TRAVERSAL_NODE_BYTES;
+	}
+	/**
+	 * Updates the memory estimate
+	 * @param pathNodes number of KmerPathNodes in the graph
+	 * @param supportNodes number of tracked KmerSupportNodes
+	 * @param traversalNodes number of memoized TraversalNodes
+	 * @return action to take to keep the graph within budget
+	 */
+	public Action update(long pathNodes, long supportNodes, long traversalNodes) {
+		estimatedBytes = estimateBytes(pathNodes, supportNodes, traversalNodes);
+		peakEstimatedBytes = Math.max(peakEstimatedBytes, estimatedBytes);
+		if (maxBytes <= 0) {
+			action = Action.NONE;
+		} else if (estimatedBytes > maxBytes) {
+			action = Action.DOWNSAMPLE_DENSE_WINDOW;
+		} else if (estimatedBytes > FLUSH_EAGERLY_PORTION * maxBytes) {
+			action = Action.FLUSH_EAGERLY;
+		} else {
+			action = Action.NONE;
+		}
+		return action;
+	}
+	/**
+	 * Action determined by the most recent update
+	 */
+	public Action getAction() {
+		return action;
+	}
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+	public boolean shouldFlushEagerly() {
+		return action != Action.NONE;
+	}
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+	public long getPeakEstimatedBytes() {
+		return peakEstimatedBytes;
+	}
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
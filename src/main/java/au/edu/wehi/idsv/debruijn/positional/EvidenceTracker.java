@@ -31,6 +31,10 @@ public class EvidenceTracker {
 	private final Long2ObjectOpenHashMap<LinkedList<KmerSupportNode>> lookup = new Long2ObjectOpenHashMap<>();
 	private final Object2ObjectOpenHashMap<String, List<KmerEvidence>> id = new Object2ObjectOpenHashMap<>();
 	private long evidenceTotal = 0;
+	/**
+	 * Number of KmerSupportNodes currently tracked
+	 */
+	private int supportNodeCount = 0;
 	private PrintWriter debugFile = null;
 	/**
 	 * Tracks evidence emitted from the given iterator
@@ -62,6 +66,7 @@ public class EvidenceTracker {
 			lookup.put(kmer, list);
 		}
 		list.add(support);
+		supportNodeCount++;
 		KmerEvidence ke = support.evidence();
 		String evidenceId = ke.evidence().getEvidenceID();
 		List<KmerEvidence> idvalue = id.get(evidenceId);
@@ -131,6 +136,7 @@ public class EvidenceTracker {
 				KmerSupportNode n = it.next();
 				if (evidence.contains(n.evidence())) {
 					it.remove();
+					supportNodeCount--;
 				}
 			}
 			if (list.size() == 0) {
@@ -190,6 +196,7 @@ public class EvidenceTracker {
 				if (IntervalUtil.overlapsClosed(start, end, n.lastStart(), n.lastEnd())) {
 					if (remove) {
 						it.remove();
+						supportNodeCount--;
 					}
 					KmerEvidence e = n.evidence();
 					collection.add(e);
@@ -276,7 +283,7 @@ public class EvidenceTracker {
 		return lookup.size();
 	}
 	public int tracking_supportNodeCount() {
-		return lookup.values().stream().mapToInt(x -> x.size()).sum();
+		return supportNodeCount;
 	}
 	public int tracking_maxKmerSupportNodesCount() {
 		return lookup.values().stream().mapToInt(x -> x.size()).max().orElse(0);
@@ -318,5 +325,8 @@ public class EvidenceTracker {
 		if (missingKsn.size() > 0) {
 			throw new IllegalStateException("Partially missing kmer support.");
 		}
+		if (supportNodeCount != lookup.values().stream().mapToInt(x -> x.size()).sum()) {
+			throw new IllegalStateException("Support node count does not match lookup.");
+		}
 	}
 }
@@ -0,0 +1,84 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+
+import java.util.List;
+
+/**
+ * Encoding of the kmers of a positional de Bruijn graph.
+ *
+ * Graph nodes identify kmers by a single long. Kmers small enough to fit in
+ * a single long are identified by their 2bit encoding. Larger kmers are
+ * identified by a handle assigned by the encoding thus all graph nodes
+ * of an assembly must share the same encoding.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public interface KmerEncoding {
+	/**
+	 * Largest supported kmer size
+	 */
+	int MAX_K = WideKmerEncoding.MAX_K;
+	/**
+	 * Creates the kmer encoding for the given kmer size
+	 */
+	static KmerEncoding create(int k) {
+		if (k < 1 || k > MAX_K) {
+			throw new IllegalArgumentException(String.format("k must be between 1 and %d", MAX_K));
+		}
+		if (k <= PackedKmerEncoding.MAX_K) {
+			return PackedKmerEncoding.of(k);
+		}
+		return new WideKmerEncoding(k);
+	}
+	int k();
+	/**
+	 * Kmers of the given sequence
+	 * @param seq sequence
+	 * @param endPosition last position the first kmer of the sequence can be placed
+	 * @return kmers of the given sequence, null if kmers are identified by their packed sequence encoding
+	 */
+	long[] kmers(PackedSequence seq, int endPosition);
+	/**
+	 * Kmers following the given kmer. Kmers not present in any graph node may be omitted.
+	 */
+	long[] nextStates(long kmer);
+	/**
+	 * Kmers preceding the given kmer. Kmers not present in any graph node may be omitted.
+	 */
+	long[] prevStates(long kmer);
+	boolean isNext(long kmer, long next);
+	/**
+	 * @return ASCII bases of the given kmer
+	 */
+	byte[] bases(long kmer);
+	/**
+	 * @return ASCII last base of the given kmer
+	 */
+	byte lastBase(long kmer);
+	/**
+	 * Base calls of contig
+	 * @param path kmer contig
+	 * @return base calls of a positive strand SAMRecord readout of contig
+	 */
+	default byte[] baseCalls(List<Long> path) {
+		byte[] bases = new byte[path.size() + k() - 1];
+		System.arraycopy(bases(path.get(0)), 0, bases, 0, k());
+		int offset = k() - 1;
+		for (Long kmer : path) {
+			bases[offset++] = lastBase(kmer);
+		}
+		return bases;
+	}
+	default String toString(long kmer) {
+		return new String(bases(kmer));
+	}
+	/**
+	 * Indicates that no graph node contains kmers before the given position.
+	 * Encodings may reclaim the resources of kmers not used after this position.
+	 * @param position first position at which graph nodes could be present
+	 */
+	default void release(int position) {
+	}
+}
@@ -45,6 +45,11 @@ public class KmerEvidence extends PackedKmerList {
 	private final int end;
 	private final float score;
 	private final boolean isReadPairAnchorRead;
+	private final KmerEncoding encoding;
+	/**
+	 * Kmers of the evidence. Null if kmers are identified by their packed sequence encoding.
+	 */
+	private final long[] kmers;
 	private Integer hashCode = null;
 	public KmerSupportNode node(int offset) {
 		if (ambiguous != null && ambiguous.get(offset)) {
@@ -52,6 +57,14 @@ public class KmerEvidence extends PackedKmerList {
 		}
 		return new KmerSupportNode(this, offset);
 	}
+	@Override
+	public long kmer(int offset) {
+		if (kmers != null) {
+			return kmers[offset];
+		}
+		return super.kmer(offset);
+	}
+	public KmerEncoding encoding() { return encoding; }
 	public float evidenceQuality() { return score; }
 	public DirectedEvidence evidence() { return evidence; }
 	/**
@@ -92,10 +105,10 @@ public class KmerEvidence extends PackedKmerList {
 			DirectedEvidence evidence,
 			int start,
 			int end,
-			int k, int firstAnchoredKmer, int lastAnchoredKmer, byte[] bases, byte[] qual, boolean reverse, boolean complement,
+			KmerEncoding encoding, int firstAnchoredKmer, int lastAnchoredKmer, byte[] bases, byte[] qual, boolean reverse, boolean complement,
 			float evidenceQual,
 			boolean isReadPairAnchorRead) {
-		super(k, bases, qual, reverse, complement);
+		super(encoding.k(), bases, qual, reverse, complement);
 		assert(evidence != null);
 		assert(qual.length == bases.length);
 		this.evidence = evidence;
@@ -105,6 +118,8 @@ public class KmerEvidence extends PackedKmerList {
 		this.firstAnchorKmer = firstAnchoredKmer;
 		this.lastAnchorKmer = lastAnchoredKmer;
 		this.score = evidenceQual;
+		this.encoding = encoding;
+		this.kmers = encoding.kmers(seq, end);
 		this.ambiguous = ambiguousKmers(k, bases);
 		if (start != end && evidence.getEvidenceSource().getContext().getConfig().getAssembly().positional.trimSelfIntersectingReads) {
 			this.ambiguous = flagSelfIntersectingKmersAsAmbiguous(this.ambiguous);
@@ -139,7 +154,7 @@ public class KmerEvidence extends PackedKmerList {
 			KmerSupportNode n = nodes[i];
 			if (n != null) {
 				long currentkmer = n.firstKmer();
-				for (long kmer : KmerEncodingHelper.nextStates(k, currentkmer)) {
+				for (long kmer : encoding.nextStates(currentkmer)) {
 					List<KmerSupportNode> kmerList = lookup.get(kmer);
 					if (kmerList != null) {
 						for (KmerSupportNode adj : kmerList) {
@@ -172,6 +187,10 @@ public class KmerEvidence extends PackedKmerList {
 		return toFlag;
 	}
 	public static KmerEvidence create(int k, NonReferenceReadPair pair) {
+		return create(KmerEncoding.create(k), pair);
+	}
+	public static KmerEvidence create(KmerEncoding encoding, NonReferenceReadPair pair) {
+		int k = encoding.k();
 		SAMRecord local = pair.getLocalledMappedRead();
 		SAMRecord remote = pair.getNonReferenceRead();
 		if (k > remote.getReadLength()) {
@@ -225,7 +244,7 @@ public class KmerEvidence extends PackedKmerList {
 			log.error(msg);
 			return null;
 		}
-		return new KmerEvidence(pair, startPosition, endPosition, k, -1, -1, remote.getReadBases(), remote.getBaseQualities(), reverseComp, reverseComp, pair.getBreakendQual(), false);
+		return new KmerEvidence(pair, startPosition, endPosition, encoding, -1, -1, remote.getReadBases(), remote.getBaseQualities(), reverseComp, reverseComp, pair.getBreakendQual(), false);
 	}
 	/**
 	 * Finds the length of the reference sequence on which this kmer is placed
@@ -250,7 +269,16 @@ public class KmerEvidence extends PackedKmerList {
 	 * @return anchoring support
 	 */
 	public static KmerEvidence createAnchor(int k, NonReferenceReadPair pair, int disallowMismatch, ReferenceLookup reference) {
-		return createAnchor(pair, k, pair.getLocalledMappedRead(), pair.getBreakendSummary().direction, disallowMismatch, reference);
+		return createAnchor(KmerEncoding.create(k), pair, disallowMismatch, reference);
+	}
+	/**
+	 * Creates anchoring evidence for the given read pair
+	 * @param encoding kmer encoding
+	 * @param pair read pair evidence
+	 * @return anchoring support
+	 */
+	public static KmerEvidence createAnchor(KmerEncoding encoding, NonReferenceReadPair pair, int disallowMismatch, ReferenceLookup reference) {
+		return createAnchor(pair, encoding, pair.getLocalledMappedRead(), pair.getBreakendSummary().direction, disallowMismatch, reference);
 	}
 	/**
 	 * Creates anchoring evidence for the given read
@@ -263,6 +291,20 @@ public class KmerEvidence extends PackedKmerList {
 	 * @return
 	 */
 	public static KmerEvidence createAnchor(DirectedEvidence evidence, int k, SAMRecord read, BreakendDirection direction, int disallowMismatch, ReferenceLookup reference) {
+		return createAnchor(evidence, KmerEncoding.create(k), read, direction, disallowMismatch, reference);
+	}
+	/**
+	 * Creates anchoring evidence for the given read
+	 * @param encoding kmer encoding
+	 * @param read read
+	 * @param direction direction to consider matching from. If an indel is present in the read, only bases closes to the
+	 * inferred breakend in this direction will be considered anchoring
+	 * @param disallowMismatch disallow mismatching bases this number of bases from the end of the read
+	 * @param reference reference genome
+	 * @return
+	 */
+	public static KmerEvidence createAnchor(DirectedEvidence evidence, KmerEncoding encoding, SAMRecord read, BreakendDirection direction, int disallowMismatch, ReferenceLookup reference) {
+		int k = encoding.k();
 		if (k > read.getReadLength()) {
 			return null;
 		}
@@ -302,13 +344,17 @@ public class KmerEvidence extends PackedKmerList {
 				}
 			}
 		}
-		return new KmerEvidence(evidence, firstBasePosition, firstBasePosition, k, 0, bases.length, bases, read.getBaseQualities(), false, false, 0, true);
+		return new KmerEvidence(evidence, firstBasePosition, firstBasePosition, encoding, 0, bases.length, bases, read.getBaseQualities(), false, false, 0, true);
 	}
 	private static byte getBase(ReferenceLookup reference, int referenceIndex, int contigLength, int position) {
 		if (position <= 0 || position > contigLength) return 'N';
 		return reference.getBase(referenceIndex, position);
 	}
 	public static KmerEvidence create(int k, SingleReadEvidence sre) {
+		return create(KmerEncoding.create(k), sre);
+	}
+	public static KmerEvidence create(KmerEncoding encoding, SingleReadEvidence sre) {
+		int k = encoding.k();
 		if (!sre.isBreakendExact()) {
 			throw new NotImplementedException("reassembly of XNX placeholder contigs");
 		}
@@ -343,7 +389,7 @@ public class KmerEvidence extends PackedKmerList {
 		if (k > seq.length) {
 			return null;
 		}
-		return new KmerEvidence(sre, bs.start + positionOffset, bs.end + positionOffset, k, firstAnchoredBase, firstAnchoredBase + anchoredBases - (k - 1), seq, qual, false, false, sre.getBreakendQual(), false);
+		return new KmerEvidence(sre, bs.start + positionOffset, bs.end + positionOffset, encoding, firstAnchoredBase, firstAnchoredBase + anchoredBases - (k - 1), seq, qual, false, false, sre.getBreakendQual(), false);
 		
 	}
 	@Override
@@ -1,7 +1,5 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
-
 /**
  * Evidence contribution to the given kmer position of a single piece of evidence
  * @author Daniel Cameron
@@ -23,7 +21,7 @@ public class KmerSupportNode implements KmerNode {
 	}
 	@Override
 	public String toString() {
-		return String.format("[%d-%d]%s %d %s", lastStart(), lastEnd(), isReference() ? "R" : " ", weight(), KmerEncodingHelper.toApproximateString(lastKmer()));
+		return String.format("[%d-%d]%s %d %s", lastStart(), lastEnd(), isReference() ? "R" : " ", weight(), evidence.encoding().toString(lastKmer()));
 	}
 	@Override
 	public int hashCode() {
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.TraversalNodeByFirstEndSortedArray;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.TraversalNodeByLastEndKmerSortedSet;
 import au.edu.wehi.idsv.util.IntervalUtil;
 import au.edu.wehi.idsv.util.MessageThrottler;
@@ -8,8 +9,6 @@ import au.edu.wehi.idsv.visualisation.PositionalDeBruijnGraphTracker.Memoization
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 import htsjdk.samtools.util.Log;
-import it.unimi.dsi.fastutil.ints.AbstractInt2ObjectSortedMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenCustomHashSet;
 
 import java.io.File;
@@ -31,9 +30,9 @@ public class MemoizedTraverse {
 	 * (BFS in position space) of the graph, caching the best predecessor
 	 * of each node.
 	 *
-	 * Int2ObjectSortedMap is sorted by TraversalNode.firstEnd
+	 * Memoized paths for each node are sorted by TraversalNode.firstEnd
 	 */
-	private final IdentityHashMap<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> memoized = new IdentityHashMap<>();
+	private final IdentityHashMap<KmerPathNode, TraversalNodeByFirstEndSortedArray> memoized = new IdentityHashMap<>();
 	// TODO: track anchored and unanchored paths in different frontiers - only call unanchored when no anchored paths nearby
 	private final SortedSet<TraversalNode> frontier = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new TraversalNodeByLastEndKmerSortedSet(16) : new TreeSet<>(TraversalNode.ByLastEndKmer);
 	private final MemoizationStats stats = new MemoizationStats();
@@ -53,7 +52,7 @@ public class MemoizedTraverse {
 				}
 				continue;
 			}
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.remove(node);
+			TraversalNodeByFirstEndSortedArray cache = memoized.remove(node);
 			if (cache == null) {
 				if (!MessageThrottler.Current.shouldSupress(log, "removal of unmemoized nodes")) {
 					log.error(String.format("Sanity check failure: %s not memoized", node));
@@ -105,14 +104,16 @@ public class MemoizedTraverse {
 	private Collection<TraversalNode> removeChildPaths(Iterable<KmerPathNode> toCheck, Set<KmerPathNode> parents) {
 		Collection<TraversalNode> matches = new ArrayList<>();
 		for (KmerPathNode node : toCheck) {
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+			TraversalNodeByFirstEndSortedArray cache = memoized.get(node);
 			if (cache == null || cache.isEmpty()) continue;
-			Iterator<TraversalNode> it = cache.values().iterator();
-			while (it.hasNext()) {
-				TraversalNode tn = it.next();
+			int i = 0;
+			while (i < cache.size()) {
+				TraversalNode tn = cache.get(i);
 				if (tn.parent != null && parents.contains(tn.parent.node.node())) {
-					it.remove();
+					cache.removeAt(i);
 					matches.add(tn);
+				} else {
+					i++;
 				}
 			}
 		}
@@ -132,7 +133,7 @@ public class MemoizedTraverse {
 	 */
 	public void remove(KmerPathNode node) {
 		assert(node.isValid());
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		TraversalNodeByFirstEndSortedArray cache = memoized.get(node);
 		if (cache == null) return;
 		Stack<TraversalNode> callStack = new Stack<TraversalNode>();
 		callStack.addAll(cache.values());
@@ -157,7 +158,7 @@ public class MemoizedTraverse {
 	 */
 	private int unmemoize(TraversalNode tn, Stack<TraversalNode> callStack, boolean alreadyRemoved) {
 		if (!alreadyRemoved) {
-			if (memoized.get(tn.node.node()).remove(tn.node.firstEnd()) == null) {
+			if (memoized.get(tn.node.node()).removeByFirstEnd(tn.node.firstEnd()) == null) {
 				// already processed this TraversalNode
 				return 0;
 			}
@@ -169,10 +170,11 @@ public class MemoizedTraverse {
 		int frontierResetCount = addAlternatePathsToFrontier(tn);
 		// check if this path continues on to any children
 		for (KmerPathNode child : tn.node.node().next()) {
-			AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(child);
+			TraversalNodeByFirstEndSortedArray cache = memoized.get(child);
 			if (cache != null) {
 				// skip values that end before we start
-				for (TraversalNode childtn : cache.tailMap(tn.node.lastStart() + 1).values()) {
+				for (int i = cache.ceilingIndex(tn.node.lastStart() + 1); i < cache.size(); i++) {
+					TraversalNode childtn = cache.get(i);
 					// can't use reference equality since
 					// the parent node could have been split
 					// on an unrelated path.
@@ -211,9 +213,10 @@ public class MemoizedTraverse {
 		for (KmerPathNode prev : tn.node.node().prev()) {
 			if (prev != parent) {
 				int parentLength = prev.length();
-				AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(prev);
+				TraversalNodeByFirstEndSortedArray cache = memoized.get(prev);
 				if (cache != null) {
-					for (TraversalNode altParent : cache.tailMap(tn.node.firstStart() - parentLength).values()) {
+					for (int i = cache.ceilingIndex(tn.node.firstStart() - parentLength); i < cache.size(); i++) {
+						TraversalNode altParent = cache.get(i);
 						if (altParent.node.lastStart() + 1 > tn.node.firstEnd()) {
 							break;
 						}
@@ -230,7 +233,7 @@ public class MemoizedTraverse {
 	 * @return Memoized best paths
 	 */
 	public Collection<TraversalNode> memoized(KmerPathNode node) {
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
+		TraversalNodeByFirstEndSortedArray cache = memoized.get(node);
 		if (cache == null) return Collections.emptyList();
 		return cache.values();
 	}
@@ -242,24 +245,24 @@ public class MemoizedTraverse {
 	public void memoize(TraversalNode node) {
 		KmerPathSubnode sn = node.node;
 		KmerPathNode pn = sn.node();
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(pn);
+		TraversalNodeByFirstEndSortedArray cache = memoized.get(pn);
 		if (cache == null) {
-			cache = new Int2ObjectRBTreeMap<TraversalNode>();
+			cache = new TraversalNodeByFirstEndSortedArray();
 			memoized.put(pn, cache);
 		}
-		memoize_fastutil_sortedmap(node, cache);
+		memoize_sortedarray(node, cache);
 		assert(!cache.isEmpty());
 		if (Defaults.SANITY_CHECK_MEMOIZATION) {
 			//sanityCheck();
 		}
 	}
-	private void memoize_fastutil_sortedmap(TraversalNode node, AbstractInt2ObjectSortedMap<TraversalNode> cache) {
+	private void memoize_sortedarray(TraversalNode node, TraversalNodeByFirstEndSortedArray cache) {
 		KmerPathSubnode sn = node.node;
 		// skip cached values that end before we start
-		Iterator<TraversalNode> it = cache.tailMap(sn.firstStart()).values().iterator();
-		List<TraversalNode> addlist = null; // need to delay adding to cache until after our iterator is complete (so we don't invalidate the iterator midway)
-		while (it.hasNext()) {
-			TraversalNode existing = it.next();
+		int i = cache.ceilingIndex(sn.firstStart());
+		List<TraversalNode> addlist = null; // need to delay adding to cache until after our traversal is complete (so we don't shift the array midway)
+		while (i < cache.size()) {
+			TraversalNode existing = cache.get(i);
 			KmerPathSubnode existingsn = existing.node;
 			assert(existingsn.firstEnd() >= sn.firstStart()); // should have been skipped in the initial lookup
 			if (existingsn.firstStart() > sn.firstEnd()) {
@@ -271,7 +274,7 @@ public class MemoizedTraverse {
 			assert(existingsn.firstKmer() == sn.firstKmer() && IntervalUtil.overlapsClosed(existingsn.firstStart(), existingsn.firstEnd(), sn.firstStart(), sn.firstEnd()));
 			if (node.score > existing.score) {
 				// remove existing node in overlapping interval
-				it.remove();
+				cache.removeAt(i);
 				onMemoizeRemove(existing);
 				boolean inFrontier = frontier.remove(existing);
 				if (inFrontier) {
@@ -318,17 +321,18 @@ public class MemoizedTraverse {
 					node = new TraversalNode(node, newStartPosition, node.node.firstEnd());
 					sn = node.node;
 				}
+				i++;
 			}
 		}
 		if (node != null) {
-			cache.put(node.node.firstEnd(), node);
+			cache.put(node);
 			onMemoizeAdd(node);
 			frontier.add(node);
 			onFrontierAdd(node);
 		}
 		if (addlist != null) {
 			for (TraversalNode n : addlist) {
-				cache.put(n.node.firstEnd(), n);
+				cache.put(n);
 				onMemoizeAdd(n);
 			}
 		}
@@ -403,10 +407,10 @@ public class MemoizedTraverse {
 	 * @return predecessor node, null if no single predecessor is defined for the entire interval 
 	 */
 	public KmerPathNode getParent(KmerPathNode node, int start, int end) {
-		AbstractInt2ObjectSortedMap<TraversalNode> cache = memoized.get(node);
-		Iterator<TraversalNode> it = cache.tailMap(start).values().iterator();
-		if (it.hasNext()) {
-			TraversalNode existing = it.next();
+		TraversalNodeByFirstEndSortedArray cache = memoized.get(node);
+		int i = cache.ceilingIndex(start);
+		if (i < cache.size()) {
+			TraversalNode existing = cache.get(i);
 			if (existing.node.firstStart() <= start && existing.node.firstEnd() >= end) {
 				if (existing.parent != null) {
 					return existing.parent.node.node();
@@ -461,29 +465,30 @@ public class MemoizedTraverse {
 		Files.write(sb.toString().getBytes(), file);
 	}
 	public boolean sanityCheck() {
-		for (Entry<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> entry : memoized.entrySet()) {
+		for (Entry<KmerPathNode, TraversalNodeByFirstEndSortedArray> entry : memoized.entrySet()) {
 			KmerPathNode node = entry.getKey();
 			assert(node.isValid());
-			for (int position : entry.getValue().keySet()) {
+			int lastPosition = Integer.MIN_VALUE;
+			for (TraversalNode tn : entry.getValue().values()) {
+				int position = tn.node.firstEnd();
+				assert(position > lastPosition);
 				assert(position >= node.firstStart());
 				assert(position <= node.firstEnd());
-				TraversalNode tn = entry.getValue().get(position);
 				assert(tn.sanityCheck());
 				assert(tn.node.node() == node);
-				assert(tn.node.firstEnd() == position);
+				lastPosition = position;
 			}
 		}
 		for (TraversalNode tn : frontier) {
 			assert(memoized.containsKey(tn.node.node()));
-			assert(memoized.get(tn.node.node()).get(tn.node.firstEnd()) == tn);
+			assert(memoized.get(tn.node.node()).getByFirstEnd(tn.node.firstEnd()) == tn);
 			assert(memoized.get(tn.node.node()).containsValue(tn));
 		}
 		return true;
 	}
 	public boolean sanityCheckAreRemoved(Collection<KmerPathNode> removed) {
-		for (Entry<KmerPathNode, AbstractInt2ObjectSortedMap<TraversalNode>> entry : memoized.entrySet()) {
-			for (int position : entry.getValue().keySet()) {
-				TraversalNode tn = entry.getValue().get(position);
+		for (TraversalNodeByFirstEndSortedArray cache : memoized.values()) {
+			for (TraversalNode tn : cache.values()) {
 				sanityCheckDoesNotContain(tn, removed);
 			}
 		}
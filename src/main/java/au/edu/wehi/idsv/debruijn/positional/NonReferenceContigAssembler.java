@@ -3,8 +3,8 @@ package au.edu.wehi.idsv.debruijn.positional;
 import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.IntervalBed;
 import au.edu.wehi.idsv.debruijn.DeBruijnGraphBase;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByLastKmerIntervalLookup;
+import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartKmerSortedSet;
 import au.edu.wehi.idsv.graph.ScalingHelper;
 import au.edu.wehi.idsv.model.Models;
 import au.edu.wehi.idsv.util.FilenameUtil;
@@ -73,15 +73,21 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	 * expensive approach overall
 	 */
 	private static final boolean SIMPLIFY_AFTER_REMOVAL = false;
+	/**
+	 * Graph position lookups are iterated in full so use smaller blocks
+	 * than the priority queues to reduce the number of empty positions scanned
+	 */
+	private static final int GRAPH_BY_POSITION_BLOCK_BITS = 10;
 	private KmerNodeByLastKmerIntervalLookup<KmerPathNodeKmerNode> graphByKmerNode = new KmerNodeByLastKmerIntervalLookup<>();
-	private TreeSet<KmerPathNode> graphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
-	private SortedSet<KmerPathNode> nonReferenceGraphByPosition = new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer); // TODO: OPT: replace data structure
+	private NavigableSet<KmerPathNode> graphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerSortedSet<>(GRAPH_BY_POSITION_BLOCK_BITS) : new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer);
+	private SortedSet<KmerPathNode> nonReferenceGraphByPosition = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartKmerSortedSet<>(GRAPH_BY_POSITION_BLOCK_BITS) : new TreeSet<KmerPathNode>(KmerNodeUtil.ByFirstStartKmer);
 	private final EvidenceTracker evidenceTracker;
 	private final AssemblyEvidenceSource aes;
 	private final AssemblyIdGenerator assemblyNameGenerator;
 	private final int maxEvidenceSupportIntervalWidth;
 	private final int maxAnchorLength;
 	private final int k;
+	private final KmerEncoding encoding;
 	private final int referenceIndex;
 	private final ContigStats stats = new ContigStats();
 	private final PeekingIterator<KmerPathNode> underlying;
@@ -91,6 +97,14 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	private int lastUnderlyingStartPosition = Integer.MIN_VALUE;
 	private int lastNextPosition = Integer.MIN_VALUE;
 	private RangeSet<Integer> toFlush = TreeRangeSet.create();
+	private RangeSet<Integer> toDownsample = TreeRangeSet.create();
+	private final AssemblyMemoryGovernor memoryGovernor;
+	/**
+	 * Number of non-reference nodes starting in each density window.
+	 * Only maintained when the memory governor is enabled.
+	 */
+	private final Int2IntOpenHashMap nonReferenceNodesPerDensityWindow = new Int2IntOpenHashMap();
+	private final int densityWindowSize;
 	private MemoizedContigCaller bestContigCaller;
 	private int contigsCalled = 0;
 	private int contigsCalledInSafetyMode = 0;
@@ -107,7 +121,12 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 				// calculate retain width from contig 
 				(int)(aes.getContext().getAssemblyParameters().positional.retainWidthMultiple * aes.getMaxConcordantFragmentSize())) - k + 1;
 	}
-	private int flushWidth() { return Math.max(1, (int)(aes.getContext().getAssemblyParameters().positional.flushWidthMultiple * aes.getMaxConcordantFragmentSize())) - k + 1; }
+	private int flushWidth() {
+		if (memoryGovernor.shouldFlushEagerly()) {
+			return 1 - k + 1;
+		}
+		return Math.max(1, (int)(aes.getContext().getAssemblyParameters().positional.flushWidthMultiple * aes.getMaxConcordantFragmentSize())) - k + 1;
+	}
 	private int maxExpectedBreakendLength() { return Math.max(2, ((int)(aes.getContext().getAssemblyParameters().maxExpectedBreakendLengthMultiple * aes.getMaxConcordantFragmentSize()) - k + 1)); }
 	/**
 	 * Worst case scenario is a RP providing single kmer support for contig
@@ -151,7 +170,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	 * @param it reads
 	 * @param referenceIndex evidence source
 	 * @param maxAnchorLength maximum number of reference-supporting anchor bases to assemble
-	 * @param k
+	 * @param encoding kmer encoding shared by all nodes of the graph
 	 * @param source assembly source
 	 * @param assemblyNameGenerator 
 	 * @param tracker evidence lookup
@@ -172,10 +191,26 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			BreakendDirection preferredContigDirection,
 			IntervalBed excludedRegions,
 			IntervalBed safetyRegions) {
+		this(it, referenceIndex, maxEvidenceSupportIntervalWidth, maxAnchorLength, KmerEncoding.create(k), source, assemblyNameGenerator, tracker, contigName, preferredContigDirection, excludedRegions, safetyRegions);
+	}
+	public NonReferenceContigAssembler(
+			Iterator<KmerPathNode> it,
+			int referenceIndex,
+			int maxEvidenceSupportIntervalWidth,
+			int maxAnchorLength,
+			KmerEncoding encoding,
+			AssemblyEvidenceSource source,
+			AssemblyIdGenerator assemblyNameGenerator,
+			EvidenceTracker tracker,
+			String contigName,
+			BreakendDirection preferredContigDirection,
+			IntervalBed excludedRegions,
+			IntervalBed safetyRegions) {
 		this.underlying = Iterators.peekingIterator(it);
 		this.maxEvidenceSupportIntervalWidth = maxEvidenceSupportIntervalWidth;
 		this.maxAnchorLength = maxAnchorLength;
-		this.k = k;
+		this.k = encoding.k();
+		this.encoding = encoding;
 		this.referenceIndex = referenceIndex;
 		this.aes = source;
 		this.assemblyNameGenerator = assemblyNameGenerator;
@@ -184,6 +219,8 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		this.preferredContigDirection = preferredContigDirection;
 		this.excludedRegions = excludedRegions;
 		this.safetyRegions = safetyRegions;
+		this.memoryGovernor = new AssemblyMemoryGovernor(source.getContext().getAssemblyParameters().positional.maximumGraphBytes);
+		this.densityWindowSize = Math.max(1, source.getMaxConcordantFragmentSize());
 		initialiseBestCaller();
 	}
 	private void initialiseBestCaller() {
@@ -256,6 +293,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	private void ensureCalledContig() {
 		while (called.isEmpty()) {
 			flushExcessivelyDenseIntervals();
+			downsampleDenseIntervals();
 			// remove misassembled partial contigs
 			if (aes.getContext().getAssemblyParameters().removeMisassembledPartialContigsDuringAssembly) {
 				removeMisassembledPartialContig();
@@ -404,6 +442,106 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			}
 		}
 	}
+	/**
+	 * Downsamples the evidence in portions of the graph identified by the memory governor
+	 */
+	private void downsampleDenseIntervals() {
+		while (!toDownsample.isEmpty()) {
+			if (nonReferenceGraphByPosition.isEmpty()) {
+				toDownsample.clear();
+				break;
+			}
+			Range<Integer> range = toDownsample.asRanges().iterator().next();
+			toDownsample.remove(range);
+			int downsampleOnOrAfter = range.lowerEndpoint();
+			int downsampleBefore = range.upperEndpoint();
+			// ensure all evidence overlapping the interval has been fully loaded
+			advanceUnderlying(downsampleBefore + minDistanceFromNextPositionForEvidenceToBeFullyLoaded());
+			List<KmerPathSubnode> nodes = new ArrayList<>();
+			for (KmerPathNode pn : nonReferenceGraphByPosition) {
+				if (pn.firstStart() >= downsampleBefore) break;
+				if (pn.firstStart() >= downsampleOnOrAfter) {
+					nodes.add(new KmerPathSubnode(pn));
+				}
+			}
+			Set<KmerEvidence> evidence = evidenceTracker.support(nodes);
+			Set<KmerEvidence> evidenceToRemove = downsample(evidence, downsampleOnOrAfter);
+			if (!evidenceToRemove.isEmpty()) {
+				log.debug(String.format("Estimated graph size of %d bytes exceeds budget: removing %d of %d reads in %s:%d-%d.",
+						memoryGovernor.getEstimatedBytes(), evidenceToRemove.size(), evidence.size(), contigName, downsampleOnOrAfter, downsampleBefore));
+				removeFromGraph(evidenceTracker.remove(evidenceToRemove));
+			}
+			if (debug_injectErrors) {
+				debug_inject();
+			}
+		}
+	}
+	/**
+	 * Selects the evidence to remove when downsampling
+	 * @param evidence evidence to downsample
+	 * @param seed random seed
+	 * @return evidence to remove
+	 */
+	private Set<KmerEvidence> downsample(Set<KmerEvidence> evidence, int seed) {
+		float scRate = aes.getContext().getAssemblyParameters().downsampling.densityDownsampleRateClippedReads;
+		float rpRate = aes.getContext().getAssemblyParameters().downsampling.densityDownsampleRateDiscordantReads;
+		Random rng = new Random(seed);
+		// sort so our downsampling is deterministic
+		List<KmerEvidence> sorted = evidence.stream()
+				.sorted(Comparator.comparing((KmerEvidence ke) -> ke.evidence().getEvidenceID()).thenComparing(ke -> ke.isAnchored()))
+				.collect(Collectors.toList());
+		Set<KmerEvidence> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (KmerEvidence ke : sorted) {
+			float rate = ke.evidence() instanceof NonReferenceReadPair ? rpRate : scRate;
+			if (rng.nextFloat() >= rate) {
+				toRemove.add(ke);
+			}
+		}
+		if (toRemove.isEmpty() && !sorted.isEmpty()) {
+			// ensure we make progress
+			toRemove.add(sorted.get(0));
+		}
+		return toRemove;
+	}
+	/**
+	 * Finds the loaded interval with the highest density of non-reference nodes
+	 * @return densest interval, null if no non-reference nodes are loaded
+	 */
+	private Range<Integer> densestWindow() {
+		Range<Integer> best = null;
+		int bestCount = 0;
+		for (Int2IntMap.Entry entry : nonReferenceNodesPerDensityWindow.int2IntEntrySet()) {
+			int window = entry.getIntKey();
+			int count = entry.getIntValue();
+			if (count > bestCount || (count == bestCount && best != null && window * densityWindowSize < best.lowerEndpoint())) {
+				bestCount = count;
+				best = Range.closedOpen(window * densityWindowSize, window * densityWindowSize + densityWindowSize);
+			}
+		}
+		return best;
+	}
+	private void updateDensityWindow(KmerPathNode node, int delta) {
+		int window = Math.floorDiv(node.firstStart(), densityWindowSize);
+		if (nonReferenceNodesPerDensityWindow.addTo(window, delta) + delta == 0) {
+			nonReferenceNodesPerDensityWindow.remove(window);
+		}
+	}
+	/**
+	 * Updates the graph memory estimate and schedules downsampling when the graph exceeds the budget
+	 */
+	private void updateMemoryGovernor() {
+		AssemblyMemoryGovernor.Action action = memoryGovernor.update(
+				graphByPosition.size(),
+				evidenceTracker.tracking_supportNodeCount(),
+				bestContigCaller == null ? 0 : bestContigCaller.memoizedNodeCount() + bestContigCaller.tracking_frontierSize());
+		// only schedule the next window once the previously scheduled window has been downsampled
+		if (action == AssemblyMemoryGovernor.Action.DOWNSAMPLE_DENSE_WINDOW && toDownsample.isEmpty()) {
+			Range<Integer> range = densestWindow();
+			if (range != null) {
+				toDownsample.add(range);
+			}
+		}
+	}
 	/**
 	 * Advances the graph to the given position
 	 * @param loadUntil
@@ -430,6 +568,9 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 				count++;
 			}
 		}
+		// subsequent nodes start at or after the last loaded node
+		int firstGraphPosition = graphByPosition.isEmpty() ? lastUnderlyingStartPosition : Math.min(graphByPosition.first().firstStart(), lastUnderlyingStartPosition);
+		encoding.release(firstGraphPosition);
 		int advanceWidth = nextPosition() - lastNextPosition;
 		float density = advanceWidth <= 0 ? 0 : count / (float)advanceWidth;
 		boolean filtered = false;
@@ -443,6 +584,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			toFlush.add(range);
 			throw new AssemblyThresholdReachedException(range);
 		}
+		updateMemoryGovernor();
 		if (getTelemetry() != null) {
 			long currentTime = System.nanoTime();
 			getTelemetry().loadGraph(referenceIndex, lastNextPosition, nextPosition(), count, filtered, currentTime - telemetryLastloadGraphs);
@@ -519,7 +661,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			endingAnchor.addFirst(endIt.next());
 		}
 		
-		byte[] bases = KmerEncodingHelper.baseCalls(fullContig.stream().flatMap(sn -> sn.node().pathKmers().stream()).collect(Collectors.toList()), k);
+		byte[] bases = encoding.baseCalls(fullContig.stream().flatMap(sn -> sn.node().pathKmers().stream()).collect(Collectors.toList()));
 		byte[] quals = DeBruijnGraphBase.kmerWeightsToBaseQuals(k, fullContig.stream().flatMapToInt(sn -> sn.node().pathWeights().stream().mapToInt(Integer::intValue)).toArray());
 		assert(quals.length == bases.length);
 		// left aligned anchor position although it shouldn't matter since anchoring should be a single base wide
@@ -607,14 +749,14 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		if (assembledContig != null) {
 			if (aes.getContext().getConfig().getVisualisation().assemblyGraph) {
 				try {
-					PositionalExporter.exportDot(new File(aes.getContext().getConfig().getVisualisation().directory, FilenameUtil.stripInvalidFilenameCharacters("assembly." + contigName + "." + assembledContig.getReadName() + ".dot")), k, graphByPosition, fullContig);
+					PositionalExporter.exportDot(new File(aes.getContext().getConfig().getVisualisation().directory, FilenameUtil.stripInvalidFilenameCharacters("assembly." + contigName + "." + assembledContig.getReadName() + ".dot")), encoding, graphByPosition, fullContig);
 				} catch (Exception ex) {
 					log.debug(ex, "Error exporting assembly ", assembledContig != null ? assembledContig.getReadName() : "(null)", " ", contigName);
 				}
 			}
 			if (aes.getContext().getConfig().getVisualisation().assemblyGraphFullSize) {
 				try {
-					PositionalExporter.exportNodeDot(new File(aes.getContext().getConfig().getVisualisation().directory, FilenameUtil.stripInvalidFilenameCharacters("assembly.fullsize." + contigName + "." + assembledContig.getReadName() + ".dot")), k, graphByPosition, fullContig);
+					PositionalExporter.exportNodeDot(new File(aes.getContext().getConfig().getVisualisation().directory, FilenameUtil.stripInvalidFilenameCharacters("assembly.fullsize." + contigName + "." + assembledContig.getReadName() + ".dot")), encoding, graphByPosition, fullContig);
 				} catch (Exception ex) {
 					log.debug(ex, "Error exporting assembly ", assembledContig != null ? assembledContig.getReadName() : "(null)", " ", contigName);
 				}
@@ -907,6 +1049,9 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		assert(added);
 		if (!node.isReference()) {
 			nonReferenceGraphByPosition.add(node);
+			if (memoryGovernor.isEnabled()) {
+				updateDensityWindow(node, 1);
+			}
 		}
 		for (int i = 0; i < node.length(); i++) {
 			addToGraph(new KmerPathNodeKmerNode(node, i));
@@ -922,7 +1067,9 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 			}
 		}
 		boolean removed = graphByPosition.remove(node);
-		nonReferenceGraphByPosition.remove(node);
+		if (nonReferenceGraphByPosition.remove(node) && memoryGovernor.isEnabled()) {
+			updateDensityWindow(node, -1);
+		}
 		assert(removed);
 		for (int i = 0; i < node.length(); i++) {
 			removeFromGraph(new KmerPathNodeKmerNode(node, i));
@@ -984,7 +1131,7 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 		}
 		private Range<Integer> readPairEvidence(KmerEvidence e) {
 			NonReferenceReadPair nrrp = (NonReferenceReadPair)e.evidence();
-			KmerEvidence e2 = KmerEvidence.createAnchor(k, nrrp, aes.getContext().getAssemblyParameters().pairAnchorMismatchIgnoreEndBases, nrrp.getEvidenceSource().getContext().getReference());
+			KmerEvidence e2 = KmerEvidence.createAnchor(encoding, nrrp, aes.getContext().getAssemblyParameters().pairAnchorMismatchIgnoreEndBases, nrrp.getEvidenceSource().getContext().getReference());
 
 			Range<Integer> bounds = contigBaseOffsetBounds(lookup, e);
 			// #287 e2 can be null if we don't have any valid kmers on the mate.
@@ -1216,6 +1363,12 @@ public class NonReferenceContigAssembler implements Iterator<SAMRecord> {
 	public int tracking_inputPosition() {
 		return nextPosition();
 	}
+	public long tracking_estimatedGraphBytes() {
+		return memoryGovernor.getEstimatedBytes();
+	}
+	public long tracking_peakEstimatedGraphBytes() {
+		return memoryGovernor.getPeakEstimatedBytes();
+	}
 	public int tracking_firstPosition() {
 		if (graphByPosition.size() == 0) return Integer.MAX_VALUE;
 		return graphByPosition.first().firstStart();
@@ -0,0 +1,68 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+
+import java.util.List;
+
+/**
+ * Kmers identified by their 2bit encoding
+ */
+public class PackedKmerEncoding implements KmerEncoding {
+	/**
+	 * Largest kmer supported by the single word kmer encoding
+	 */
+	public static final int MAX_K = KmerEncodingHelper.MAX_K - 1;
+	private static final PackedKmerEncoding[] ENCODINGS = new PackedKmerEncoding[MAX_K + 1];
+	static {
+		for (int k = 1; k <= MAX_K; k++) {
+			ENCODINGS[k] = new PackedKmerEncoding(k);
+		}
+	}
+	private final int k;
+	private PackedKmerEncoding(int k) {
+		this.k = k;
+	}
+	public static PackedKmerEncoding of(int k) {
+		if (k < 1 || k > MAX_K) {
+			throw new IllegalArgumentException(String.format("k must be between 1 and %d", MAX_K));
+		}
+		return ENCODINGS[k];
+	}
+	@Override
+	public int k() {
+		return k;
+	}
+	@Override
+	public long[] kmers(PackedSequence seq, int endPosition) {
+		return null;
+	}
+	@Override
+	public long[] nextStates(long kmer) {
+		return KmerEncodingHelper.nextStates(k, kmer);
+	}
+	@Override
+	public long[] prevStates(long kmer) {
+		return KmerEncodingHelper.prevStates(k, kmer);
+	}
+	@Override
+	public boolean isNext(long kmer, long next) {
+		return KmerEncodingHelper.isNext(k, kmer, next);
+	}
+	@Override
+	public byte[] bases(long kmer) {
+		return KmerEncodingHelper.encodedToPicardBases(k, kmer);
+	}
+	@Override
+	public byte lastBase(long kmer) {
+		return KmerEncodingHelper.lastBaseEncodedToPicardBase(kmer);
+	}
+	@Override
+	public byte[] baseCalls(List<Long> path) {
+		return KmerEncodingHelper.baseCalls(path, k);
+	}
+	@Override
+	public String toString(long kmer) {
+		return KmerEncodingHelper.toString(k, kmer);
+	}
+}
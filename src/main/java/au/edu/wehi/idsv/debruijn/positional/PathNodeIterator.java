@@ -1,7 +1,6 @@
 package au.edu.wehi.idsv.debruijn.positional;
 
 import au.edu.wehi.idsv.Defaults;
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByFirstStartPriorityQueue;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeByLastEndPriorityQueue;
 import au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures.KmerNodeNonOverlappingLookup;
@@ -23,7 +22,7 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 	private static final Log log = Log.getInstance(PathNodeIterator.class);
 	private final PeekingIterator<? extends KmerNode> underlying;
 	private final int maxNodeLength;
-	private final int k;
+	private final KmerEncoding encoding;
 	private final KmerNodeNonOverlappingLookup<KmerNode> edgeLookup;
 	/**
 	 * Nodes that have not yet had all edges defined.
@@ -42,11 +41,14 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 	private int maxNodeWidth = 0;
 	private long consumed = 0;
 	public PathNodeIterator(Iterator<? extends KmerNode> it, int maxPathLength, int k) {
+		this(it, maxPathLength, KmerEncoding.create(k));
+	}
+	public PathNodeIterator(Iterator<? extends KmerNode> it, int maxPathLength, KmerEncoding encoding) {
 		if (maxPathLength < 1) throw new IllegalArgumentException("Path length must be positive");
 		this.underlying = Iterators.peekingIterator(it);
 		this.maxNodeLength = maxPathLength;
-		this.k = k;
-		this.edgeLookup = new KmerNodeNonOverlappingLookup<>(k);
+		this.encoding = encoding;
+		this.edgeLookup = new KmerNodeNonOverlappingLookup<>(encoding);
 	}
 	@Override
 	public boolean hasNext() {
@@ -91,7 +93,7 @@ public class PathNodeIterator implements Iterator<KmerPathNode> {
 					right.isReference() == left.isReference() &&
 					edgeLookup.getUniqueFullWidthSuccessor(left) == right) {
 				//assert(edgeLookup.nextNodes(left).size() == 1); // TEMP HACK
-				assert(KmerEncodingHelper.isNext(k, left.lastKmer(), right.firstKmer()));
+				assert(encoding.isNext(left.lastKmer(), right.firstKmer()));
 				KmerPathNode pn = (KmerPathNode) left;
 				edgeLookup.adjustForMerge(left, right);
 				pn.append(right);
@@ -107,9 +107,15 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 			ensureAssembler(preload);
 		} catch (AssemblyThresholdReachedException atre) {
 			Set<DirectedEvidence> reloadRecoverySet = getEvidenceInCurrentAssembler();
+			// Only the evidence in the overloaded interval is reprocessed.
+			// Everything else is reloaded unchanged so contigs outside the interval are unaffected
+			Map<Boolean, Set<DirectedEvidence>> byOverlap = reloadRecoverySet.stream()
+					.collect(Collectors.partitioningBy(de -> overlapsRange(de, atre.getRange()), Collectors.toSet()));
+			Set<DirectedEvidence> denseEvidence = byOverlap.get(true);
 			// really aggressive error correction of every read might simplify our assembly graph
-			ReadErrorCorrector.errorCorrect(context.getAssemblyParameters().errorCorrection.k, context.getAssemblyParameters().errorCorrection.kmerErrorCorrectionMultiple / 2, context.getAssemblyParameters().errorCorrection.maxCorrectionsInKmer, context.getAssemblyParameters().errorCorrection.deduplicateReadKmers, reloadRecoverySet);
-			Set<DirectedEvidence> downsampledRecoverySet = downsampleEvidenceInRegion(reloadRecoverySet, atre.getRange());
+			ReadErrorCorrector.errorCorrect(context.getAssemblyParameters().errorCorrection.k, context.getAssemblyParameters().errorCorrection.kmerErrorCorrectionMultiple / 2, context.getAssemblyParameters().errorCorrection.maxCorrectionsInKmer, context.getAssemblyParameters().errorCorrection.deduplicateReadKmers, denseEvidence);
+			Set<DirectedEvidence> downsampledRecoverySet = downsampleEvidenceInRegion(denseEvidence, atre.getRange());
+			downsampledRecoverySet.addAll(byOverlap.get(false));
 			// restart assembly using the downsampled set of reads
 			closeCurrentAssembler();
 			ensureAssembler(true, downsampledRecoverySet);
@@ -170,19 +176,8 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		float rpRate = context.getAssemblyParameters().downsampling.densityDownsampleRateDiscordantReads;
 		Random rng = new Random(range.lowerEndpoint());
 		Set<DirectedEvidence> downsampledPreload = preload.stream().filter(de -> {
-			float downsampleThreshold = scRate;
-			boolean overlapsRanges = IntervalUtil.overlapsClosed(
-					range.lowerEndpoint(), range.upperEndpoint(),
-					de.getUnderlyingSAMRecord().getUnclippedStart(), de.getUnderlyingSAMRecord().getUnclippedEnd());
-			if (de instanceof NonReferenceReadPair) {
-				downsampleThreshold = rpRate;
-				NonReferenceReadPair nrrp = (NonReferenceReadPair) de;
-				KmerEvidence ke = KmerEvidence.create(context.getAssemblyParameters().k, nrrp);
-				overlapsRanges |= IntervalUtil.overlapsClosed(
-						range.lowerEndpoint(), range.upperEndpoint(),
-						ke.startPosition(), ke.endPosition());
-			}
-			return !overlapsRanges | rng.nextFloat() < downsampleThreshold;
+			float downsampleThreshold = de instanceof NonReferenceReadPair ? rpRate : scRate;
+			return !overlapsRange(de, range) | rng.nextFloat() < downsampleThreshold;
 		}).collect(Collectors.toSet());
 		if (downsampledPreload.size() == preload.size()) {
 			log.warn(String.format("Forcing downsampling around %s:%d-%d since probabilistic downsampling failed.", currentContig, range.lowerEndpoint(), range.upperEndpoint()));
@@ -196,6 +191,23 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 	}
 
 
+	/**
+	 * Determines whether the evidence contributes kmers to the given interval
+	 */
+	private boolean overlapsRange(DirectedEvidence de, Range<Integer> range) {
+		boolean overlapsRanges = IntervalUtil.overlapsClosed(
+				range.lowerEndpoint(), range.upperEndpoint(),
+				de.getUnderlyingSAMRecord().getUnclippedStart(), de.getUnderlyingSAMRecord().getUnclippedEnd());
+		if (!overlapsRanges && de instanceof NonReferenceReadPair) {
+			NonReferenceReadPair nrrp = (NonReferenceReadPair) de;
+			KmerEvidence ke = KmerEvidence.create(context.getAssemblyParameters().k, nrrp);
+			overlapsRanges = IntervalUtil.overlapsClosed(
+					range.lowerEndpoint(), range.upperEndpoint(),
+					ke.startPosition(), ke.endPosition());
+		}
+		return overlapsRanges;
+	}
+
 	private static AtomicInteger errorPackagesCreated = new AtomicInteger(0);
 	private File packageMinimalAssemblyErrorReproductionData(Set<DirectedEvidence> evidenceInCurrentAssembler) throws IOException {
 		FileSystemContext fsc = context.getFileSystemContext();
@@ -303,6 +315,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		int maxKmerSupportIntervalWidth = source.getMaxConcordantFragmentSize() - source.getMinConcordantFragmentSize() + 1; 		
 		int maxReadLength = source.getMaxReadLength();
 		int k = ap.k;
+		KmerEncoding encoding = KmerEncoding.create(k);
 		int maxEvidenceSupportIntervalWidth = maxKmerSupportIntervalWidth + maxReadLength - k + 2;
 		int maxPathLength = ap.positional.maxPathLengthInBases(maxReadLength);
 		int anchorAssemblyLength = ap.anchorLength;
@@ -327,7 +340,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		if (Defaults.SANITY_CHECK_DUMP_ITERATORS) {
 			evidenceIt = Iterators.peekingIterator(new DebugSpammingIterator<>(it, "PositionalAssembler.evidenceIt"));
 		}
-		SupportNodeIterator supportIt_raw = new SupportNodeIterator(k, evidenceIt, Math.max(2 * source.getMaxReadLength(), source.getMaxConcordantFragmentSize()), evidenceTracker, ap.includePairAnchors, ap.pairAnchorMismatchIgnoreEndBases);
+		SupportNodeIterator supportIt_raw = new SupportNodeIterator(encoding, evidenceIt, Math.max(2 * source.getMaxReadLength(), source.getMaxConcordantFragmentSize()), evidenceTracker, ap.includePairAnchors, ap.pairAnchorMismatchIgnoreEndBases);
 		PeekingIterator<KmerSupportNode> supportIt = supportIt_raw;
 		if (Defaults.SANITY_CHECK_DUMP_ITERATORS) {
 			supportIt = Iterators.peekingIterator(new DebugSpammingIterator<>(supportIt, "PositionalAssembler.SupportNodeIterator"));
@@ -341,7 +354,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
 			knIt = evidenceTracker.new AggregateNodeAssertionInterceptor(knIt);
 		}
-		PathNodeIterator pathNodeIt = new PathNodeIterator(knIt, maxPathLength, k);
+		PathNodeIterator pathNodeIt = new PathNodeIterator(knIt, maxPathLength, encoding);
 		Iterator<KmerPathNode> pnIt = pathNodeIt;
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH) {
 			pnIt = evidenceTracker.new PathNodeAssertionInterceptor(pnIt, "PathNodeIterator");
@@ -349,7 +362,7 @@ public class PositionalAssembler implements Iterator<SAMRecord> {
 		if (Defaults.SANITY_CHECK_DUMP_ITERATORS) {
 			pnIt = Iterators.peekingIterator(new DebugSpammingIterator<>(pnIt, "PositionalAssembler.PathNodeIterator"));
 		}
-		currentAssembler = new NonReferenceContigAssembler(pnIt, referenceIndex, maxEvidenceSupportIntervalWidth, anchorAssemblyLength, k, source, assemblyNameGenerator, evidenceTracker, currentContig, BreakendDirection.Forward, excludedRegions, safetyRegions);
+		currentAssembler = new NonReferenceContigAssembler(pnIt, referenceIndex, maxEvidenceSupportIntervalWidth, anchorAssemblyLength, encoding, source, assemblyNameGenerator, evidenceTracker, currentContig, BreakendDirection.Forward, excludedRegions, safetyRegions);
 		if (vis.assemblyProgress) {
 			String filename = String.format("positional-%s_%d-%s.csv", context.getDictionary().getSequence(referenceIndex).getSequenceName(), firstPosition, direction);
 			filename = FilenameUtil.stripInvalidFilenameCharacters(filename);
@@ -25,7 +25,7 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 	private static final Log log = Log.getInstance(SupportNodeIterator.class);
 	private final PeekingIterator<DirectedEvidence> underlying;
 	private final boolean includePairAnchors;
-	private final int k;
+	private final KmerEncoding encoding;
 	/**
 	 * Position to emit kmers as no more can be added
 	 *                  | input position
@@ -39,6 +39,10 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 	private final int maxSupportStartPositionOffset;
 	private final Queue<KmerSupportNode> buffer = Defaults.USE_OPTIMISED_ASSEMBLY_DATA_STRUCTURES ? new KmerNodeByFirstStartPriorityQueue<>(16) : new PriorityQueue<>(1024, KmerNodeUtil.ByFirstStart);
 	private final EvidenceTracker tracker;
+	/**
+	 * Scratch buffer of kmer support for the evidence currently being processed
+	 */
+	private final List<KmerSupportNode> supportNodes = new ArrayList<>();
 	private final int disallowMismatch;
 	private int inputPosition = Integer.MIN_VALUE;
 	private int firstReferenceIndex;
@@ -58,8 +62,15 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 	 * position).
 	 */
 	public SupportNodeIterator(int k, Iterator<DirectedEvidence> it, int maxSupportStartPositionOffset, EvidenceTracker tracker, boolean includePairAnchors, int disallowMismatch) {
+		this(KmerEncoding.create(k), it, maxSupportStartPositionOffset, tracker, includePairAnchors, disallowMismatch);
+	}
+	/**
+	 * Iterator that converts evidence to kmer nodes
+	 * @param encoding kmer encoding shared by all nodes of the graph
+	 */
+	public SupportNodeIterator(KmerEncoding encoding, Iterator<DirectedEvidence> it, int maxSupportStartPositionOffset, EvidenceTracker tracker, boolean includePairAnchors, int disallowMismatch) {
 		this.underlying = Iterators.peekingIterator(it);
-		this.k = k;
+		this.encoding = encoding;
 		this.includePairAnchors = includePairAnchors;
 		this.disallowMismatch = disallowMismatch;
 		this.maxSupportStartPositionOffset = maxSupportStartPositionOffset;
@@ -92,12 +103,12 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 		KmerEvidence e;
 		KmerEvidence e2 = null;
 		if (de instanceof SingleReadEvidence) {
-			e = KmerEvidence.create(k, (SingleReadEvidence)de);
+			e = KmerEvidence.create(encoding, (SingleReadEvidence)de);
 		} else if (de instanceof NonReferenceReadPair) {
 			NonReferenceReadPair nrrp = (NonReferenceReadPair)de;
-			e = KmerEvidence.create(k, nrrp);
+			e = KmerEvidence.create(encoding, nrrp);
 			if (includePairAnchors) {
-				e2 = KmerEvidence.createAnchor(k, nrrp, disallowMismatch, nrrp.getEvidenceSource().getContext().getReference());
+				e2 = KmerEvidence.createAnchor(encoding, nrrp, disallowMismatch, nrrp.getEvidenceSource().getContext().getReference());
 			}
 		} else {
 			throw new RuntimeException("Assembler able to process only soft clip and read pair evidence");
@@ -105,7 +116,7 @@ public class SupportNodeIterator implements PeekingIterator<KmerSupportNode> {
 		if (e == null) {
 			return;
 		}
-		List<KmerSupportNode> supportNodes = new ArrayList<KmerSupportNode>(e.length() + (e2 == null ? 0 : e2.length()));
+		supportNodes.clear();
 		boolean hasNonReference = addSupport(supportNodes, de, e);
 		addSupport(supportNodes, de, e2);
 		if (Defaults.SANITY_CHECK_ASSEMBLY_GRAPH && supportNodes.size() > 0) {
@@ -0,0 +1,244 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+
+/**
+ * Kmers too large to be encoded in a single long.
+ *
+ * Kmers are encoded in two longs: the high word contains the first k-32 bases
+ * and the low word contains the last 32 bases. Each distinct kmer is identified
+ * in the graph by a handle. Handles are assigned in increasing order and are
+ * never reused so a kmer removed from the encoding and encountered again
+ * is assigned a new handle.
+ *
+ * Kmers are stored in primitive arrays in handle order and indexed by an
+ * open addressing hash table. Kmers only placed before the position released
+ * by the assembler are periodically removed.
+ */
+public class WideKmerEncoding implements KmerEncoding {
+	public static final int MAX_K = 2 * KmerEncodingHelper.MAX_K;
+	private static final int DEFAULT_MIN_COMPACTION_SIZE = 1 << 16;
+	private static final float LOAD_FACTOR = 0.5f;
+	private static final long HIGH_WORD_MULTIPLIER = 0x9E3779B97F4A7C15L;
+	private final int k;
+	/**
+	 * Number of bases encoded in the high word
+	 */
+	private final int highK;
+	private final long highMask;
+	private final int minCompactionSize;
+	/**
+	 * Kmers in handle order
+	 */
+	private long[] handle;
+	private long[] high;
+	private long[] low;
+	/**
+	 * Last position at which the kmer can be placed
+	 */
+	private int[] lastPosition;
+	private int size = 0;
+	/**
+	 * Open addressing index of kmer offsets. Offsets are stored +1 so 0 indicates an empty slot.
+	 */
+	private int[] index;
+	private int mask;
+	private int maxFill;
+	private long nextHandle = 0;
+	/**
+	 * Number of kmers at which kmers are next removed
+	 */
+	private int compactionSize;
+	public WideKmerEncoding(int k) {
+		this(k, DEFAULT_MIN_COMPACTION_SIZE);
+	}
+	WideKmerEncoding(int k, int minCompactionSize) {
+		if (k <= PackedKmerEncoding.MAX_K) throw new IllegalArgumentException(String.format("k must exceed %d", PackedKmerEncoding.MAX_K));
+		if (k > MAX_K) throw new IllegalArgumentException(String.format("k cannot exceed %d", MAX_K));
+		this.k = k;
+		this.highK = k - KmerEncodingHelper.MAX_K;
+		this.highMask = highK == KmerEncodingHelper.MAX_K ? -1L : (1L << (2 * highK)) - 1;
+		this.minCompactionSize = minCompactionSize;
+		this.compactionSize = minCompactionSize;
+		allocate(16);
+		allocateIndex(HashCommon.arraySize(16, LOAD_FACTOR));
+	}
+	private void allocate(int capacity) {
+		handle = new long[capacity];
+		high = new long[capacity];
+		low = new long[capacity];
+		lastPosition = new int[capacity];
+	}
+	private void allocateIndex(int capacity) {
+		index = new int[capacity];
+		mask = capacity - 1;
+		maxFill = HashCommon.maxFill(capacity, LOAD_FACTOR);
+	}
+	@Override
+	public int k() {
+		return k;
+	}
+	/**
+	 * Number of kmers currently stored
+	 */
+	public int size() {
+		return size;
+	}
+	private static int hash(long high, long low) {
+		return (int)HashCommon.mix(high * HIGH_WORD_MULTIPLIER ^ low);
+	}
+	private int slot(long high, long low) {
+		int pos = hash(high, low) & mask;
+		int i;
+		while ((i = index[pos]) != 0 && (this.high[i - 1] != high || this.low[i - 1] != low)) {
+			pos = (pos + 1) & mask;
+		}
+		return pos;
+	}
+	/**
+	 * @return offset of the given kmer, -1 if the kmer is not stored
+	 */
+	private int offsetOf(long high, long low) {
+		return index[slot(high, low)] - 1;
+	}
+	private int offsetOf(long kmer) {
+		int offset = Arrays.binarySearch(handle, 0, size, kmer);
+		if (offset < 0) {
+			throw new IllegalStateException(String.format("Kmer %d is no longer present in the graph", kmer));
+		}
+		return offset;
+	}
+	private long intern(long high, long low, int position) {
+		int pos = slot(high, low);
+		int offset = index[pos] - 1;
+		if (offset >= 0) {
+			lastPosition[offset] = Math.max(lastPosition[offset], position);
+			return handle[offset];
+		}
+		if (size == handle.length) {
+			int capacity = 2 * size;
+			handle = Arrays.copyOf(handle, capacity);
+			this.high = Arrays.copyOf(this.high, capacity);
+			this.low = Arrays.copyOf(this.low, capacity);
+			lastPosition = Arrays.copyOf(lastPosition, capacity);
+		}
+		offset = size++;
+		handle[offset] = nextHandle++;
+		this.high[offset] = high;
+		this.low[offset] = low;
+		lastPosition[offset] = position;
+		index[pos] = offset + 1;
+		if (size > maxFill) {
+			rebuildIndex(2 * index.length);
+		}
+		return handle[offset];
+	}
+	private void rebuildIndex(int capacity) {
+		allocateIndex(capacity);
+		for (int i = 0; i < size; i++) {
+			index[slot(high[i], low[i])] = i + 1;
+		}
+	}
+	@Override
+	public long[] kmers(PackedSequence seq, int endPosition) {
+		long[] kmers = new long[seq.kmers(k)];
+		for (int i = 0; i < kmers.length; i++) {
+			// PackedSequence cannot extract zero length kmers
+			long high = highK == 0 ? 0 : seq.getKmer(i, highK);
+			long low = seq.getKmer(i + highK, KmerEncodingHelper.MAX_K);
+			kmers[i] = intern(high, low, endPosition + i);
+		}
+		return kmers;
+	}
+	/**
+	 * Handles of the stored kmers with each possible encoded base added
+	 * @param baseInHighWord add the base to the high word instead of the low word
+	 * @param shift bit offset of the added base
+	 */
+	private long[] existing(long high, long low, boolean baseInHighWord, int shift) {
+		long[] result = new long[4];
+		int n = 0;
+		for (long base = 0; base < 4; base++) {
+			int offset = baseInHighWord ? offsetOf(high | (base << shift), low) : offsetOf(high, low | (base << shift));
+			if (offset >= 0) {
+				result[n++] = handle[offset];
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+	private long nextHigh(int offset) {
+		return ((high[offset] << 2) | (low[offset] >>> (Long.SIZE - 2))) & highMask;
+	}
+	@Override
+	public long[] nextStates(long kmer) {
+		int offset = offsetOf(kmer);
+		return existing(nextHigh(offset), low[offset] << 2, false, 0);
+	}
+	@Override
+	public long[] prevStates(long kmer) {
+		int offset = offsetOf(kmer);
+		if (highK == 0) {
+			return existing(0, low[offset] >>> 2, false, Long.SIZE - 2);
+		}
+		long prevLow = (low[offset] >>> 2) | ((high[offset] & 3) << (Long.SIZE - 2));
+		return existing(high[offset] >>> 2, prevLow, true, 2 * highK - 2);
+	}
+	@Override
+	public boolean isNext(long kmer, long next) {
+		int offset = offsetOf(kmer);
+		int nextOffset = offsetOf(next);
+		return nextHigh(offset) == high[nextOffset]
+				&& (low[offset] << 2 | (low[nextOffset] & 3)) == low[nextOffset];
+	}
+	@Override
+	public byte[] bases(long kmer) {
+		int offset = offsetOf(kmer);
+		byte[] bases = new byte[k];
+		long state = low[offset];
+		for (int i = k - 1; i >= highK; i--) {
+			bases[i] = KmerEncodingHelper.lastBaseEncodedToPicardBase(state);
+			state >>>= 2;
+		}
+		state = high[offset];
+		for (int i = highK - 1; i >= 0; i--) {
+			bases[i] = KmerEncodingHelper.lastBaseEncodedToPicardBase(state);
+			state >>>= 2;
+		}
+		return bases;
+	}
+	@Override
+	public byte lastBase(long kmer) {
+		return KmerEncodingHelper.lastBaseEncodedToPicardBase(low[offsetOf(kmer)]);
+	}
+	/**
+	 * Removes kmers that can only be placed before the given position.
+	 * Kmers are removed in batches to amortise the cost of rebuilding the index.
+	 */
+	@Override
+	public void release(int position) {
+		if (size < compactionSize) return;
+		int retained = 0;
+		for (int i = 0; i < size; i++) {
+			if (lastPosition[i] >= position) {
+				handle[retained] = handle[i];
+				high[retained] = high[i];
+				low[retained] = low[i];
+				lastPosition[retained] = lastPosition[i];
+				retained++;
+			}
+		}
+		size = retained;
+		compactionSize = Math.max(minCompactionSize, 2 * size);
+		if (handle.length > 2 * compactionSize) {
+			handle = Arrays.copyOf(handle, compactionSize);
+			high = Arrays.copyOf(high, compactionSize);
+			low = Arrays.copyOf(low, compactionSize);
+			lastPosition = Arrays.copyOf(lastPosition, compactionSize);
+		}
+		rebuildIndex(HashCommon.arraySize(Math.max(16, size), LOAD_FACTOR));
+	}
+}
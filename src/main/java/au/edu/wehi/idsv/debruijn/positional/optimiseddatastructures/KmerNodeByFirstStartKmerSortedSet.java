@@ -0,0 +1,175 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.KmerNode;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Graph nodes ordered by first start position then first kmer.
+ *
+ * Equivalent to a TreeSet using {@link KmerNodeUtil#ByFirstStartKmer} but
+ * backed by position buckets so insertion and removal do not require
+ * rebalancing a tree spanning the entire loaded graph.
+ */
+public class KmerNodeByFirstStartKmerSortedSet<T extends KmerNode> extends SortedByPosition<T, Long2ObjectRBTreeMap<T>> implements NavigableSet<T> {
+    public KmerNodeByFirstStartKmerSortedSet(int blockBits) {
+        super(blockBits);
+    }
+
+    @Override
+    protected int getPosition(T obj) {
+        return obj.firstStart();
+    }
+
+    @Override
+    protected T peekAtPosition(Long2ObjectRBTreeMap<T> coll) {
+        return coll.get(coll.firstLongKey());
+    }
+
+    @Override
+    protected T popAtPosition(Long2ObjectRBTreeMap<T> coll) {
+        return coll.remove(coll.firstLongKey());
+    }
+
+    @Override
+    protected Long2ObjectRBTreeMap<T> createAtPosition() {
+        return new Long2ObjectRBTreeMap<>();
+    }
+
+    @Override
+    protected boolean addAtPosition(Long2ObjectRBTreeMap<T> existing, T toAdd) {
+        if (existing.containsKey(toAdd.firstKmer())) return false;
+        existing.put(toAdd.firstKmer(), toAdd);
+        return true;
+    }
+
+    @Override
+    protected boolean removeAtPosition(Long2ObjectRBTreeMap<T> coll, T obj) {
+        return coll.remove(obj.firstKmer()) != null;
+    }
+
+    @Override
+    protected boolean positionIsEmpty(Long2ObjectRBTreeMap<T> coll) {
+        return coll.isEmpty();
+    }
+
+    @Override
+    protected int positionSize(Long2ObjectRBTreeMap<T> coll) {
+        return coll.size();
+    }
+
+    @Override
+    protected boolean containsAtPosition(Long2ObjectRBTreeMap<T> coll, T obj) {
+        return coll.containsKey(obj.firstKmer());
+    }
+
+    @Override
+    protected Stream<T> positionStream(Long2ObjectRBTreeMap<T> coll) {
+        return coll.values().stream();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return Iterators.concat(Iterators.transform(collectionIterator(), coll -> coll.values().iterator()));
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return Iterators.concat(Iterators.transform(descendingCollectionIterator(), coll -> Lists.reverse(new ArrayList<>(coll.values())).iterator()));
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return java.util.Spliterators.spliterator(iterator(), size(), Spliterator.SIZED | Spliterator.ORDERED | Spliterator.DISTINCT);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Lists.newArrayList(iterator()).toArray();
+    }
+
+    @Override
+    public <U> U[] toArray(U[] a) {
+        return Lists.newArrayList(iterator()).toArray(a);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return KmerNodeUtil.ByFirstStartKmer;
+    }
+
+    @Override
+    public T pollFirst() {
+        return poll();
+    }
+
+    @Override
+    public T lower(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T floor(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T ceiling(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T higher(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T t, boolean b, T e1, boolean b1) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T t, boolean b) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T t, boolean b) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> subSet(T t, T e1) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> headSet(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T t) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public T last() {
+        throw new UnsupportedOperationException();
+    }
+}
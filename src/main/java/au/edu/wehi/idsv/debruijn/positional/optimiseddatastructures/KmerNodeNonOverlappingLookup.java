@@ -1,6 +1,6 @@
 package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
 
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
+import au.edu.wehi.idsv.debruijn.positional.KmerEncoding;
 import au.edu.wehi.idsv.debruijn.positional.KmerNode;
 import au.edu.wehi.idsv.util.IntervalUtil;
 import com.google.common.collect.Iterables;
@@ -17,7 +17,7 @@ import java.util.stream.Stream;
  * KmerNode lookup in which no records overlap
  */
 public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
-    protected final int k;
+    protected final KmerEncoding encoding;
     /**
      * Lookup of node starts. Secondary key is firstEnd()
      * Values are the KmerNode itself (when there is only 1) or a Int2ObjectSortedMap
@@ -31,7 +31,10 @@ public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
     private final Long2ObjectOpenHashMap<Object> endKmerLookup = new Long2ObjectOpenHashMap<>();
     private int size = 0;
     public KmerNodeNonOverlappingLookup(int k) {
-        this.k = k;
+        this(KmerEncoding.create(k));
+    }
+    public KmerNodeNonOverlappingLookup(KmerEncoding encoding) {
+        this.encoding = encoding;
     }
 
     public List<T> prevNodes(T right) {
@@ -39,7 +42,7 @@ public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
     }
     public List<T> prevNodes(T right, boolean abortIfNotSingleUniqueFullWidth) {
         List<T> adj = new ArrayList<T>(4);
-        for (long kmer : KmerEncodingHelper.prevStates(k, right.firstKmer())) {
+        for (long kmer : encoding.prevStates(right.firstKmer())) {
             Object lookup = endKmerLookup.get(kmer);
             if (lookup == null) {
                 // nothing to do
@@ -50,7 +53,7 @@ public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
                         break;
                     } else {
                         assert(IntervalUtil.overlapsClosed(left.lastStart() + 1, left.lastEnd() + 1, right.firstStart(), right.firstEnd()));
-                        assert(KmerEncodingHelper.isNext(k, left.lastKmer(), right.firstKmer()));
+                        assert(encoding.isNext(left.lastKmer(), right.firstKmer()));
                         if (abortIfNotSingleUniqueFullWidth && (adj.size() != 0 || !(left.lastStart() + 1 == right.firstStart() && left.lastEnd() + 1 == right.firstEnd()))) {
                             return null;
                         }
@@ -75,7 +78,7 @@ public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
 
     private List<T> nextNodes(T left, boolean abortIfNotSingleUniqueFullWidth) {
         List<T> adj = new ArrayList<T>(4);
-        for (long kmer : KmerEncodingHelper.nextStates(k, left.lastKmer())) {
+        for (long kmer : encoding.nextStates(left.lastKmer())) {
             Object lookup = startKmerLookup.get(kmer);
             if (lookup == null) {
                 // nothing to do
@@ -86,7 +89,7 @@ public class KmerNodeNonOverlappingLookup<T extends KmerNode> {
                         break;
                     } else {
                         assert(IntervalUtil.overlapsClosed(left.lastStart() + 1, left.lastEnd() + 1, right.firstStart(), right.firstEnd()));
-                        assert(KmerEncodingHelper.isNext(k, left.lastKmer(), right.firstKmer()));
+                        assert(encoding.isNext(left.lastKmer(), right.firstKmer()));
                         if (abortIfNotSingleUniqueFullWidth && (adj.size() != 0 || !(left.lastStart() + 1 == right.firstStart() && left.lastEnd() + 1 == right.firstEnd()))) {
                             return null;
                         }
@@ -1,5 +1,6 @@
 package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
 
+import com.google.common.collect.AbstractIterator;
 import htsjdk.samtools.util.Log;
 
 import java.util.*;
@@ -321,6 +322,65 @@ public abstract class SortedByPosition<T, TColl> {
         return list;
     }
 
+    /**
+     * Iterates over the non-empty position collections in genomic order.
+     * The underlying collection must not be modified during iteration.
+     */
+    protected Iterator<TColl> collectionIterator() {
+        return new AbstractIterator<TColl>() {
+            private Node<TColl> node = head;
+            private int offset = head == null ? 0 : head.firstOccupiedOffset;
+            @Override
+            protected TColl computeNext() {
+                while (node != null) {
+                    while (offset < node.position.length) {
+                        TColl coll = node.position[offset++];
+                        if (coll != null && !positionIsEmpty(coll)) {
+                            return coll;
+                        }
+                    }
+                    node = node.next;
+                    if (node != null) {
+                        offset = node.firstOccupiedOffset;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the non-empty position collections in reverse genomic order.
+     * The underlying collection must not be modified during iteration.
+     */
+    protected Iterator<TColl> descendingCollectionIterator() {
+        List<Node<TColl>> nodes = new ArrayList<>();
+        for (Node<TColl> n = head; n != null; n = n.next) {
+            nodes.add(n);
+        }
+        return new AbstractIterator<TColl>() {
+            private int nodeIndex = nodes.size() - 1;
+            private int offset = nodes.isEmpty() ? -1 : nodes.get(nodeIndex).position.length - 1;
+            @Override
+            protected TColl computeNext() {
+                while (nodeIndex >= 0) {
+                    Node<TColl> node = nodes.get(nodeIndex);
+                    while (offset >= node.firstOccupiedOffset) {
+                        TColl coll = node.position[offset--];
+                        if (coll != null && !positionIsEmpty(coll)) {
+                            return coll;
+                        }
+                    }
+                    nodeIndex--;
+                    if (nodeIndex >= 0) {
+                        offset = nodes.get(nodeIndex).position.length - 1;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
     public Iterator<T> iterator() {
         if (!"quiet".equals(System.getProperty("SortedByPosition.iterator.spamminess"))) {
             log.warn("SortedByPosition.iterator() call. This is inefficient and should be no be called in production code.");
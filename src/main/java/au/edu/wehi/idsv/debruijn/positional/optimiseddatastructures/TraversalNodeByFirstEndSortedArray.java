@@ -0,0 +1,109 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.debruijn.positional.TraversalNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Memoized traversals of a single KmerPathNode keyed by the first end position of the traversal subnode.
+ *
+ * Backed by parallel arrays under the assumption that the number of
+ * memoized traversals for each node will be small. In the common case
+ * of a single traversal over the entire node, this requires no per-entry
+ * allocation, unlike a red-black tree map.
+ */
+public class TraversalNodeByFirstEndSortedArray {
+    private static final int INITIAL_CAPACITY = 2;
+    private int[] firstEnd = new int[INITIAL_CAPACITY];
+    private TraversalNode[] value = new TraversalNode[INITIAL_CAPACITY];
+    private int size = 0;
+    public int size() {
+        return size;
+    }
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    /**
+     * Index of the first traversal with a first end position on or after the given position
+     * @param position genomic position
+     * @return index of first traversal ending at or after the given position, size() if no such traversal exists
+     */
+    public int ceilingIndex(int position) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (firstEnd[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    public TraversalNode get(int index) {
+        return value[index];
+    }
+    /**
+     * Gets the traversal with the given first end position
+     * @return traversal, null if no traversal with the given end position exists
+     */
+    public TraversalNode getByFirstEnd(int position) {
+        int index = ceilingIndex(position);
+        if (index < size && firstEnd[index] == position) return value[index];
+        return null;
+    }
+    /**
+     * Adds the given traversal, replacing any existing traversal with the same first end position
+     */
+    public void put(TraversalNode tn) {
+        int position = tn.node.firstEnd();
+        int index = ceilingIndex(position);
+        if (index < size && firstEnd[index] == position) {
+            value[index] = tn;
+            return;
+        }
+        if (size == firstEnd.length) {
+            int newCapacity = firstEnd.length * 2;
+            firstEnd = Arrays.copyOf(firstEnd, newCapacity);
+            value = Arrays.copyOf(value, newCapacity);
+        }
+        System.arraycopy(firstEnd, index, firstEnd, index + 1, size - index);
+        System.arraycopy(value, index, value, index + 1, size - index);
+        firstEnd[index] = position;
+        value[index] = tn;
+        size++;
+    }
+    public TraversalNode removeAt(int index) {
+        TraversalNode tn = value[index];
+        System.arraycopy(firstEnd, index + 1, firstEnd, index, size - index - 1);
+        System.arraycopy(value, index + 1, value, index, size - index - 1);
+        size--;
+        value[size] = null;
+        return tn;
+    }
+    /**
+     * Removes the traversal with the given first end position
+     * @return removed traversal, null if no traversal with the given end position exists
+     */
+    public TraversalNode removeByFirstEnd(int position) {
+        int index = ceilingIndex(position);
+        if (index < size && firstEnd[index] == position) return removeAt(index);
+        return null;
+    }
+    public boolean containsValue(TraversalNode tn) {
+        for (int i = 0; i < size; i++) {
+            if (value[i] == tn) return true;
+        }
+        return false;
+    }
+    /**
+     * Traversals in first end position order.
+     * The returned list is a view and must not be used after this collection is modified.
+     */
+    public List<TraversalNode> values() {
+        return Collections.unmodifiableList(Arrays.asList(value).subList(0, size));
+    }
+}
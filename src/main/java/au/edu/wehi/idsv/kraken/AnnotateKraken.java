@@ -42,9 +42,9 @@ public class AnnotateKraken implements CloseableIterator<VariantContext> {
         while (nextClassification == null && kraken.hasNext()) {
             nextClassification = kraken.next();
         }
-        if (nextClassification != null && nextClassification.sequenceId.equals(vc.getID())) {
-            if (Strings.isNullOrEmpty(nextClassification.sequenceId) || nextClassification.sequenceId.equals(".")) {
-                log.error("Kraken classification record has identifier of '" + nextClassification.sequenceId + "'.");
+        if (nextClassification != null && nextClassification.sequenceIdEquals(vc.getID())) {
+            if (Strings.isNullOrEmpty(vc.getID()) || vc.getID().equals(".")) {
+                log.error("Kraken classification record has identifier of '" + vc.getID() + "'.");
             }
             vc = annotate(vc, nextClassification);
             nextClassification = null;
@@ -1,66 +1,214 @@
 package au.edu.wehi.idsv.kraken;
 
-import joptsimple.internal.Strings;
-import org.apache.commons.lang3.tuple.Pair;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Kraken2 output record.
+ *
+ * The record is decoded directly from the bytes of the Kraken2 output line.
+ * The sequence ID is only converted to a String on request and the per-kmer
+ * LCA mappings are only parsed when first accessed.
+ */
 public class KrakenClassification {
-    private final String line;
+    private static final int[] EMPTY = new int[0];
+    private final byte[] line;
+    private final int sequenceIdStart;
+    private final int sequenceIdEnd;
+    private final int sequenceIdHash;
+    /**
+     * Start offset of the kmer LCA mapping field
+     */
+    private final int kmerStart;
     public final boolean isClassified;
-    public final String sequenceId;
     public final int taxonomyId;
     public final int sequenceLength;
     public final int sequenceLength2;
-    public final List<KrakenKmerClassification> kmerTaxonomyIds;
-    public final List<KrakenKmerClassification> kmerTaxonomyIds2;
-
-    public String toKrakenOutput() { return line; }
+    private String sequenceId = null;
+    private int[] kmerTaxonomyIds = null;
+    private int[] kmerCounts;
+    private int[] kmerTaxonomyIds2;
+    private int[] kmerCounts2;
 
     public KrakenClassification(String line) {
+        this(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param line Kraken2 output line excluding the line terminator
+     */
+    public KrakenClassification(byte[] line) {
         this.line = line;
-        String[] fields = line.split("\t");
         // "C"/"U": a one letter code indicating that the sequence was either classified or unclassified.
-        this.isClassified = "C".equals(fields[0]);
+        this.isClassified = line.length > 1 && line[0] == 'C' && line[1] == '\t';
+        int offset = nextField(0);
         // The sequence ID, obtained from the FASTA/FASTQ header.
-        this.sequenceId = fields[1];
+        this.sequenceIdStart = offset;
+        offset = nextField(offset);
+        this.sequenceIdEnd = fieldEnd(sequenceIdStart);
+        int hash = 0;
+        for (int i = sequenceIdStart; i < sequenceIdEnd; i++) {
+            hash = 31 * hash + (line[i] & 0xFF);
+        }
+        this.sequenceIdHash = hash;
         // The taxonomy ID Kraken 2 used to label the sequence; this is 0 if the sequence is unclassified.
-        this.taxonomyId = Integer.parseInt(fields[2]);
+        this.taxonomyId = parseInt(offset, fieldEnd(offset));
+        offset = nextField(offset);
         // The length of the sequence in bp. In the case of paired read data, this will be a string containing the lengths of the two sequences in bp, separated by a pipe character, e.g. "98|94".
-        String[] lengths = fields[3].split("[|]");
-        this.sequenceLength = Integer.parseInt(lengths[0]);
-        this.sequenceLength2 = (lengths.length < 2 || Strings.isNullOrEmpty(lengths[1])) ? 0 : Integer.parseInt(lengths[1]);
-        Pair<List<KrakenKmerClassification>, List<KrakenKmerClassification>> kmers = fields.length >= 5 ? parseKmerClassifications(fields[4]) : Pair.of(Collections.emptyList(), Collections.emptyList());
-        this.kmerTaxonomyIds = kmers.getLeft();
-        this.kmerTaxonomyIds2 = kmers.getRight();
+        int lengthEnd = fieldEnd(offset);
+        int pipe = offset;
+        while (pipe < lengthEnd && line[pipe] != '|') pipe++;
+        this.sequenceLength = parseInt(offset, pipe);
+        this.sequenceLength2 = pipe + 1 < lengthEnd ? parseInt(pipe + 1, lengthEnd) : 0;
+        this.kmerStart = nextField(offset);
+    }
+
+    private int fieldEnd(int offset) {
+        while (offset < line.length && line[offset] != '\t') offset++;
+        return offset;
+    }
+
+    private int nextField(int offset) {
+        return Math.min(line.length, fieldEnd(offset) + 1);
+    }
+
+    private int parseInt(int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Missing integer in Kraken2 output: " + toKrakenOutput());
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(String.format("Unable to parse \"%s\" as integer in Kraken2 output: %s",
+                        new String(line, start, end - start, StandardCharsets.UTF_8), toKrakenOutput()));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    public String toKrakenOutput() { return new String(line, StandardCharsets.UTF_8); }
+
+    /**
+     * Writes the Kraken2 output line excluding the line terminator
+     */
+    public void writeKrakenOutput(OutputStream os) throws IOException {
+        os.write(line);
+    }
+
+    public String getSequenceId() {
+        if (sequenceId == null) {
+            sequenceId = new String(line, sequenceIdStart, sequenceIdEnd - sequenceIdStart, StandardCharsets.UTF_8);
+        }
+        return sequenceId;
+    }
+
+    public void writeSequenceId(OutputStream os) throws IOException {
+        os.write(line, sequenceIdStart, sequenceIdEnd - sequenceIdStart);
+    }
+
+    /**
+     * Determines whether this record has the given sequence ID without decoding the sequence ID of this record
+     */
+    public boolean sequenceIdEquals(String id) {
+        if (id == null || id.length() != sequenceIdEnd - sequenceIdStart || id.hashCode() != sequenceIdHash) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) != (line[sequenceIdStart + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return taxonomy IDs of the kmer LCA mappings of the first read, in read order.
+     * Ambiguous kmers have a taxonomy ID of {@link KrakenKmerClassification#AMBIGUOUS}.
+     */
+    public int[] getKmerTaxonomyIdArray() {
+        ensureKmersParsed();
+        return kmerTaxonomyIds;
+    }
+
+    /**
+     * @return taxonomy IDs of the kmer LCA mappings of the second read, in read order.
+     */
+    public int[] getKmerTaxonomyIdArray2() {
+        ensureKmersParsed();
+        return kmerTaxonomyIds2;
     }
+
+    public List<KrakenKmerClassification> getKmerTaxonomyIds() {
+        ensureKmersParsed();
+        return toList(kmerTaxonomyIds, kmerCounts);
+    }
+
+    public List<KrakenKmerClassification> getKmerTaxonomyIds2() {
+        ensureKmersParsed();
+        return toList(kmerTaxonomyIds2, kmerCounts2);
+    }
+
+    private static List<KrakenKmerClassification> toList(int[] taxonomyIds, int[] counts) {
+        if (taxonomyIds.length == 0) return Collections.emptyList();
+        List<KrakenKmerClassification> list = new ArrayList<>(taxonomyIds.length);
+        for (int i = 0; i < taxonomyIds.length; i++) {
+            list.add(new KrakenKmerClassification(taxonomyIds[i], counts[i]));
+        }
+        return list;
+    }
+
     /**
      * A space-delimited list indicating the LCA mapping of each k-mer in the sequence(s). For example, "562:13 561:4 A:31 0:1 562:3" would indicate that:
      * When Kraken 2 is run against a protein database (see [Translated Search]), the LCA hitlist will contain the results of querying all six frames of each sequence. Reading frame data is separated by a "-:-" token.
      * Note that paired read data will contain a "|:|" token in this list to indicate the end of one read and the beginning of another.
-     * @param str
-     * @return
      */
-    private static Pair<List<KrakenKmerClassification>, List<KrakenKmerClassification>> parseKmerClassifications(String str) {
-        List<KrakenKmerClassification> read1 = Collections.emptyList();
-        List<KrakenKmerClassification> read2 = Collections.emptyList();
-        String[] readSplit = str.split("[|][:][|]");
-        if (!Strings.isNullOrEmpty(readSplit[0])) {
-            read1 = new ArrayList<>();
-            for (String s : readSplit[0].split(" ")) {
-                if (!Strings.isNullOrEmpty(s)) {
-                    read1.add(new KrakenKmerClassification(s));
-                }
-            }
+    private void ensureKmersParsed() {
+        if (kmerTaxonomyIds != null) return;
+        int end = fieldEnd(kmerStart);
+        int separator = kmerStart;
+        while (separator + 2 < end && !(line[separator] == '|' && line[separator + 1] == ':' && line[separator + 2] == '|')) {
+            separator++;
+        }
+        if (separator + 2 >= end) {
+            separator = end;
         }
-        if (readSplit.length >= 2 && !Strings.isNullOrEmpty(readSplit[1])) {
-            read2 = new ArrayList<>();
-            for (String s : readSplit[1].split(" ")) {
-                read2.add(new KrakenKmerClassification(s));
+        IntArrayList taxIds = new IntArrayList();
+        IntArrayList counts = new IntArrayList();
+        parseKmerClassifications(kmerStart, separator, taxIds, counts);
+        kmerCounts = counts.isEmpty() ? EMPTY : counts.toIntArray();
+        int[] read1 = taxIds.isEmpty() ? EMPTY : taxIds.toIntArray();
+        taxIds.clear();
+        counts.clear();
+        parseKmerClassifications(separator + 3, end, taxIds, counts);
+        kmerTaxonomyIds2 = taxIds.isEmpty() ? EMPTY : taxIds.toIntArray();
+        kmerCounts2 = counts.isEmpty() ? EMPTY : counts.toIntArray();
+        kmerTaxonomyIds = read1;
+    }
+
+    private void parseKmerClassifications(int start, int end, IntArrayList taxIds, IntArrayList counts) {
+        int offset = start;
+        while (offset < end) {
+            int tokenEnd = offset;
+            while (tokenEnd < end && line[tokenEnd] != ' ') tokenEnd++;
+            if (tokenEnd > offset) {
+                int colon = offset;
+                while (colon < tokenEnd && line[colon] != ':') colon++;
+                boolean singleCharTaxId = colon == offset + 1;
+                // -:- reading frame separators are ignored
+                if (!(singleCharTaxId && line[offset] == '-')) {
+                    taxIds.add(singleCharTaxId && line[offset] == 'A' ? KrakenKmerClassification.AMBIGUOUS : parseInt(offset, colon));
+                    counts.add(colon + 1 < tokenEnd ? parseInt(colon + 1, tokenEnd) : 0);
+                }
             }
+            offset = tokenEnd + 1;
         }
-        return Pair.of(read1, read2);
     }
 }
@@ -1,15 +1,11 @@
 package au.edu.wehi.idsv.kraken;
 
-import au.edu.wehi.idsv.ncbi.MinimalTaxonomyNode;
-import au.edu.wehi.idsv.ncbi.TaxonomyHelper;
+import au.edu.wehi.idsv.ncbi.NcbiTaxonomy;
 import htsjdk.samtools.util.Log;
-import org.apache.commons.collections4.iterators.ReverseListIterator;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Checks whether this read could be part of the given taxonomic subset.
@@ -33,13 +29,15 @@ public class KrakenClassificationChecker {
      */
     private final boolean[] badTaxId;
     public KrakenClassificationChecker(List<Integer> taxonomyIdOfInterest, File nodesdmp) throws IOException {
-        log.info("Loading NCBI taxonomy from ", nodesdmp);
-        Map<Integer, MinimalTaxonomyNode> lookup = TaxonomyHelper.parseMinimal(nodesdmp);
-        this.goodTaxId = TaxonomyHelper.createInclusionLookup(taxonomyIdOfInterest, lookup);
-        this.badTaxId = setupBadTaxId(goodTaxId, lookup, taxonomyIdOfInterest);
+        this(taxonomyIdOfInterest, NcbiTaxonomy.parse(nodesdmp));
     }
 
-    private boolean[] setupBadTaxId(boolean[] goodTaxId, Map<Integer, MinimalTaxonomyNode> lookup, List<Integer> taxonomyIdOfInterest) {
+    public KrakenClassificationChecker(List<Integer> taxonomyIdOfInterest, NcbiTaxonomy taxonomy) {
+        this.goodTaxId = taxonomy.createInclusionLookup(taxonomyIdOfInterest);
+        this.badTaxId = setupBadTaxId(goodTaxId, taxonomy, taxonomyIdOfInterest);
+    }
+
+    private boolean[] setupBadTaxId(boolean[] goodTaxId, NcbiTaxonomy taxonomy, List<Integer> taxonomyIdOfInterest) {
         boolean[] badTaxId = new boolean[goodTaxId.length];
         for (int i = 0 ; i < goodTaxId.length; i++) {
             badTaxId[i] = !goodTaxId[i];
@@ -49,7 +47,7 @@ public class KrakenClassificationChecker {
             while (ancestorTaxId != lastTaxId) {
                 badTaxId[ancestorTaxId] = false;
                 lastTaxId = ancestorTaxId;
-                ancestorTaxId = lookup.get(ancestorTaxId).parentTaxId;
+                ancestorTaxId = taxonomy.parentTaxId(ancestorTaxId);
 
             }
         }
@@ -58,22 +56,22 @@ public class KrakenClassificationChecker {
 
     public boolean isOfInterest(KrakenClassification kc) {
         if (goodTaxId[kc.taxonomyId]) return true;
-        return isOfInterest(kc.kmerTaxonomyIds) || isOfInterest(kc.kmerTaxonomyIds2);
+        return isOfInterest(kc.getKmerTaxonomyIdArray()) || isOfInterest(kc.getKmerTaxonomyIdArray2());
     }
-    private boolean isOfInterest(List<KrakenKmerClassification> read) {
-        return !read.isEmpty() && (
-                isOfInterest(read.iterator()) || isOfInterest(new ReverseListIterator<>(read)));
+    private boolean isOfInterest(int[] read) {
+        return read.length > 0 && (
+                isOfInterest(read, 0, 1) || isOfInterest(read, read.length - 1, -1));
     }
-    private boolean isOfInterest(Iterator<KrakenKmerClassification> it) {
+    private boolean isOfInterest(int[] read, int start, int step) {
         // Traverse towards the middle of the read
         // if we find at least one good kmer and any number of ambiguous kmers
         // then we might be a split read to a taxonomic sequence of interest
         boolean foundGood = false;
-        while (it.hasNext()) {
-            KrakenKmerClassification kkc = it.next();
-            if (kkc.taxonomyId != KrakenKmerClassification.AMBIGUOUS) {
-                foundGood |= goodTaxId[kkc.taxonomyId];
-                if (badTaxId[kkc.taxonomyId]) {
+        for (int i = start; i >= 0 && i < read.length; i += step) {
+            int taxonomyId = read[i];
+            if (taxonomyId != KrakenKmerClassification.AMBIGUOUS) {
+                foundGood |= goodTaxId[taxonomyId];
+                if (badTaxId[taxonomyId]) {
                     break;
                 }
             }
@@ -6,6 +6,10 @@ public class KrakenKmerClassification {
     public static final int AMBIGUOUS = -1;
     public final int taxonomyId;
     public final int kmerCount;
+    public KrakenKmerClassification(int taxonomyId, int kmerCount) {
+        this.taxonomyId = taxonomyId;
+        this.kmerCount = kmerCount;
+    }
     public KrakenKmerClassification(String s) {
         String[] fields = s.split("[:]");
         taxonomyId = fields[0].equals("A") ? AMBIGUOUS : Integer.parseInt(fields[0]);
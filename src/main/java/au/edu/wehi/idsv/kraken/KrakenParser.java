@@ -1,19 +1,36 @@
 package au.edu.wehi.idsv.kraken;
 
 import htsjdk.samtools.util.RuntimeIOException;
-import joptsimple.internal.Strings;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+/**
+ * Parses Kraken2 output.
+ *
+ * Lines are split directly from the underlying byte stream without
+ * any intermediate character decoding.
+ */
 public class KrakenParser implements Closeable, Iterator<KrakenClassification> {
-    private final BufferedReader krakenOutput;
-    private String nextLine = null;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final InputStream krakenOutput;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * Offset of the first unprocessed byte in the buffer
+     */
+    private int position = 0;
+    /**
+     * Offset after the last valid byte in the buffer
+     */
+    private int limit = 0;
+    private boolean eof = false;
+    private byte[] nextLine = null;
 
-    public KrakenParser(BufferedReader krakenOutput) {
+    public KrakenParser(InputStream krakenOutput) {
         this.krakenOutput = krakenOutput;
     }
 
@@ -26,12 +43,12 @@ public class KrakenParser implements Closeable, Iterator<KrakenClassification> {
     public boolean hasNext() {
         if (nextLine == null) {
             try {
-                nextLine = krakenOutput.readLine();
+                nextLine = readLine();
             } catch (IOException e) {
                 throw new RuntimeIOException(e);
             }
         }
-        return !Strings.isNullOrEmpty(nextLine);
+        return nextLine != null && nextLine.length > 0;
     }
 
     @Override
@@ -43,4 +60,57 @@ public class KrakenParser implements Closeable, Iterator<KrakenClassification> {
         nextLine = null;
         return kc;
     }
+
+    /**
+     * @return next line excluding line terminator, null if there are no more lines
+     */
+    private byte[] readLine() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    byte[] line = copyLine(position, i);
+                    position = i + 1;
+                    return line;
+                }
+            }
+            if (eof) {
+                if (position == limit) return null;
+                byte[] line = copyLine(position, limit);
+                position = limit;
+                return line;
+            }
+            scanFrom = fill();
+        }
+    }
+
+    private byte[] copyLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        return Arrays.copyOfRange(buffer, start, end);
+    }
+
+    /**
+     * Reads more data into the buffer
+     * @return offset of the first newly read byte
+     */
+    private int fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int start = limit;
+        int read = krakenOutput.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+        return start;
+    }
 }
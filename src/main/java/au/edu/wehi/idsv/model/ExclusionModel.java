@@ -50,4 +50,14 @@ public class ExclusionModel implements VariantScoringModel {
 		if (excludeUnmappedMates) return -1;
 		return model.scoreUnmappedMate(metrics, e, mapq);
 	}
+	@Override
+	public String toString() {
+		String inner = model.getClass().getSimpleName();
+		if (model instanceof ExclusionModel || model instanceof ReadNameWeightedModel) {
+			inner = model.toString();
+		}
+		return String.format("%s(%s,excludeDiscordantReadPairs=%b,excludeUnmappedMates=%b,excludeSplitReads=%b,excludeSoftClips=%b,excludeIndels=%b)",
+				getClass().getSimpleName(), inner,
+				excludeDiscordantReadPairs, excludeUnmappedMates, excludeSplitReads, excludeSoftClips, excludeIndels);
+	}
 }
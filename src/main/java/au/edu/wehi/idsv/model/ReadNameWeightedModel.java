@@ -18,6 +18,10 @@ public class ReadNameWeightedModel implements VariantScoringModel {
 	public ReadNameWeightedModel(String regex) {
 		this.pattern = Pattern.compile(regex);
 	}
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(" + pattern.pattern() + ")";
+	}
 	private double readWeight(DirectedEvidence e, double defaultScore) {
 		Matcher match = pattern.matcher(e.getUnderlyingSAMRecord().getReadName());
 		if (!match.matches()) return defaultScore;
@@ -0,0 +1,334 @@
+package au.edu.wehi.idsv.ncbi;
+
+import htsjdk.samtools.util.Log;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeHeader;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.map;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeStrings;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readStrings;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.loadCached;
+
+/**
+ * Compact array-based representation of the NCBI taxonomy tree.
+ *
+ * Parent and rank are stored in arrays indexed by taxonomy ID.
+ * Nodes are numbered in depth-first (Euler tour) order so
+ * ancestry queries are constant time interval comparisons.
+ */
+public class NcbiTaxonomy {
+    private static final Log log = Log.getInstance(NcbiTaxonomy.class);
+    private static final int MAGIC = 0x4e435458; // NCTX
+    private static final int VERSION = 1;
+    /**
+     * Parent of taxonomy ID absent from the taxonomy
+     */
+    public static final int NO_NODE = -1;
+    private final int[] parent;
+    private final int[] rank;
+    private final String[] rankNames;
+    /**
+     * Depth-first pre-order position of each node
+     */
+    private final int[] enter;
+    /**
+     * One after the last pre-order position of any descendant of each node
+     */
+    private final int[] exit;
+    private final int size;
+
+    private NcbiTaxonomy(int[] parent, int[] rank, String[] rankNames, int[] enter, int[] exit, int size) {
+        this.parent = parent;
+        this.rank = rank;
+        this.rankNames = rankNames;
+        this.enter = enter;
+        this.exit = exit;
+        this.size = size;
+    }
+
+    private NcbiTaxonomy(int[] parent, int[] rank, String[] rankNames) {
+        this.parent = parent;
+        this.rank = rank;
+        this.rankNames = rankNames;
+        this.enter = new int[parent.length];
+        this.exit = new int[parent.length];
+        this.size = eulerTour(parent, enter, exit);
+    }
+
+    /**
+     * Assigns pre-order traversal intervals to each node
+     * @return number of nodes in the taxonomy
+     */
+    private static int eulerTour(int[] parent, int[] enter, int[] exit) {
+        // children stored in compressed sparse row format
+        int[] childOffset = new int[parent.length + 1];
+        for (int taxId = 0; taxId < parent.length; taxId++) {
+            if (!isRoot(parent, taxId) && parent[taxId] != NO_NODE) {
+                childOffset[parent[taxId] + 1]++;
+            }
+        }
+        for (int i = 0; i < parent.length; i++) {
+            childOffset[i + 1] += childOffset[i];
+        }
+        int[] children = new int[childOffset[parent.length]];
+        int[] next = Arrays.copyOf(childOffset, parent.length);
+        for (int taxId = 0; taxId < parent.length; taxId++) {
+            if (!isRoot(parent, taxId) && parent[taxId] != NO_NODE) {
+                children[next[parent[taxId]]++] = taxId;
+            }
+        }
+        Arrays.fill(enter, NO_NODE);
+        Arrays.fill(exit, NO_NODE);
+        // offset of the next child of each node to visit
+        int[] cursor = Arrays.copyOf(childOffset, parent.length);
+        int[] stack = new int[parent.length];
+        int position = 0;
+        for (int root = 0; root < parent.length; root++) {
+            if (!isRoot(parent, root)) continue;
+            int depth = 0;
+            stack[depth++] = root;
+            enter[root] = position++;
+            while (depth > 0) {
+                int node = stack[depth - 1];
+                if (cursor[node] < childOffset[node + 1]) {
+                    int child = children[cursor[node]++];
+                    enter[child] = position++;
+                    stack[depth++] = child;
+                } else {
+                    exit[node] = position;
+                    depth--;
+                }
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Roots are present nodes that are their own parent or whose parent is absent from the taxonomy
+     */
+    private static boolean isRoot(int[] parent, int taxId) {
+        int p = parent[taxId];
+        if (p == NO_NODE) return false;
+        return p == taxId || p < 0 || p >= parent.length || parent[p] == NO_NODE;
+    }
+
+    /**
+     * Parses nodes.dmp from https://ftp.ncbi.nlm.nih.gov/pub/taxonomy/taxdmp.zip
+     *
+     * @param nodesdmp nodes.dmp file
+     */
+    public static NcbiTaxonomy parse(File nodesdmp) throws IOException {
+        int[] parent = new int[TaxonomyHelper.MAX_NCBI_TAXID + 1];
+        int[] rank = new int[parent.length];
+        Arrays.fill(parent, NO_NODE);
+        Object2IntOpenHashMap<String> rankIds = new Object2IntOpenHashMap<>();
+        List<String> rankNames = new ArrayList<>();
+        int maxTaxId = 0;
+        try (BufferedReader reader = Files.newBufferedReader(nodesdmp.toPath(), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                // tax_id \t|\t parent tax_id \t|\t rank \t|\t ...
+                int taxIdEnd = line.indexOf('\t');
+                int parentStart = taxIdEnd + 3;
+                int parentEnd = line.indexOf('\t', parentStart);
+                int rankStart = parentEnd + 3;
+                int rankEnd = line.indexOf('\t', rankStart);
+                if (taxIdEnd < 0 || parentEnd < 0) {
+                    throw new IOException("Unable to parse " + nodesdmp + " line: " + line);
+                }
+                int taxId = Integer.parseInt(line.substring(0, taxIdEnd));
+                int parentTaxId = Integer.parseInt(line.substring(parentStart, parentEnd));
+                String rankName = rankEnd < 0 ? "" : line.substring(rankStart, rankEnd);
+                if (taxId >= parent.length || parentTaxId >= parent.length) {
+                    int newLength = Math.max(2 * parent.length, Math.max(taxId, parentTaxId) + 1);
+                    int oldLength = parent.length;
+                    parent = Arrays.copyOf(parent, newLength);
+                    rank = Arrays.copyOf(rank, newLength);
+                    Arrays.fill(parent, oldLength, newLength, NO_NODE);
+                }
+                int rankId = rankIds.getOrDefault(rankName, -1);
+                if (rankId < 0) {
+                    rankId = rankNames.size();
+                    rankNames.add(rankName);
+                    rankIds.put(rankName, rankId);
+                }
+                parent[taxId] = parentTaxId;
+                rank[taxId] = rankId;
+                maxTaxId = Math.max(maxTaxId, taxId);
+            }
+        }
+        return new NcbiTaxonomy(
+                Arrays.copyOf(parent, maxTaxId + 1),
+                Arrays.copyOf(rank, maxTaxId + 1),
+                rankNames.toArray(new String[0]));
+    }
+
+    /**
+     * @return largest taxonomy ID in the taxonomy
+     */
+    public int maxTaxId() {
+        return parent.length - 1;
+    }
+
+    /**
+     * @return number of nodes in the taxonomy
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int taxId) {
+        return taxId >= 0 && taxId < parent.length && parent[taxId] != NO_NODE;
+    }
+
+    /**
+     * @return parent taxonomy ID, or NO_NODE if the taxonomy ID is not in the taxonomy
+     */
+    public int parentTaxId(int taxId) {
+        if (!contains(taxId)) return NO_NODE;
+        return parent[taxId];
+    }
+
+    /**
+     * @return NCBI rank of the given taxonomy ID, or null if the taxonomy ID is not in the taxonomy
+     */
+    public String rank(int taxId) {
+        if (!contains(taxId)) return null;
+        return rankNames[rank[taxId]];
+    }
+
+    /**
+     * Determines whether the given node is in the subtree rooted at the given ancestor.
+     * Nodes are considered descendants of themselves.
+     */
+    public boolean isDescendantOf(int taxId, int ancestorTaxId) {
+        if (!contains(taxId) || !contains(ancestorTaxId)) return false;
+        return enter[ancestorTaxId] <= enter[taxId] && enter[taxId] < exit[ancestorTaxId];
+    }
+
+    /**
+     * Creates a lookup table indicating whether that node is included, or is a child of
+     * any of the given NCBI taxonomy IDs.
+     * @param taxIds taxonomy IDs to search for
+     * @return lookup table of inclusion(true) or exclusion(false) any of the given taxonomy IDs.
+     */
+    public boolean[] createInclusionLookup(Collection<Integer> taxIds) {
+        boolean[] result = new boolean[parent.length];
+        // mark the subtrees in pre-order then map back to taxonomy IDs
+        int[] delta = new int[size + 1];
+        for (int id : taxIds) {
+            if (contains(id)) {
+                delta[enter[id]]++;
+                delta[exit[id]]--;
+            } else if (id >= 0 && id < result.length) {
+                result[id] = true;
+            }
+        }
+        boolean[] included = new boolean[size];
+        int depth = 0;
+        for (int i = 0; i < size; i++) {
+            depth += delta[i];
+            included[i] = depth > 0;
+        }
+        for (int taxId = 0; taxId < parent.length; taxId++) {
+            if (contains(taxId) && included[enter[taxId]]) {
+                result[taxId] = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return lookup of taxonomy IDs that have no children
+     */
+    public boolean[] leafNodes() {
+        boolean[] result = new boolean[parent.length];
+        for (int taxId = 0; taxId < parent.length; taxId++) {
+            result[taxId] = !contains(taxId) || exit[taxId] == enter[taxId] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return copy of the given taxa lookup with the ancestors of all included taxa also included
+     */
+    public boolean[] addAncestors(boolean[] taxa) {
+        boolean[] result = Arrays.copyOf(taxa, Math.max(taxa.length, parent.length));
+        for (int i = 0; i < taxa.length; i++) {
+            if (taxa[i]) {
+                // iterate up the tree until we reach a node already included.
+                // The ancestors of that node have either already been added
+                // or will be added when we reach that node.
+                for (int node = i; contains(node) && !isRoot(parent, node); ) {
+                    node = parent[node];
+                    if (result[node]) break;
+                    result[node] = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeHeader(out, MAGIC, VERSION);
+            writeStrings(out, rankNames);
+            out.writeInt(parent.length);
+            out.writeInt(size);
+            writeInts(out, parent);
+            writeInts(out, rank);
+            writeInts(out, enter);
+            writeInts(out, exit);
+        }
+    }
+
+    /**
+     * Loads a taxonomy previously written by {@link #save(File)}
+     */
+    public static NcbiTaxonomy load(File file) throws IOException {
+        ByteBuffer buffer = map(file, MAGIC, VERSION, "NCBI taxonomy cache");
+        String[] rankNames = readStrings(buffer);
+        int n = buffer.getInt();
+        int size = buffer.getInt();
+        int[] parent = readInts(buffer, n);
+        int[] rank = readInts(buffer, n);
+        int[] enter = readInts(buffer, n);
+        int[] exit = readInts(buffer, n);
+        return new NcbiTaxonomy(parent, rank, rankNames, enter, exit, size);
+    }
+
+    /**
+     * Loads the taxonomy for the given nodes.dmp from the given cache file.
+     * If the cache file does not exist or is older than nodes.dmp, the taxonomy is
+     * parsed from nodes.dmp and persisted to the cache file.
+     * @param nodesdmp NCBI nodes.dmp
+     * @param cacheFile taxonomy cache file
+     */
+    public static NcbiTaxonomy load(File nodesdmp, File cacheFile) throws IOException {
+        return loadCached(nodesdmp, cacheFile, "NCBI taxonomy",
+                NcbiTaxonomy::load,
+                NcbiTaxonomy::parse,
+                NcbiTaxonomy::save);
+    }
+
+    public static File getCacheFile(File nodesdmp) {
+        return new File(nodesdmp.getAbsolutePath() + ".gridsscache");
+    }
+}
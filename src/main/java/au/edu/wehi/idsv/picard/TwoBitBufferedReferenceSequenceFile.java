@@ -112,6 +112,9 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 				}
 			}
 		}
+		public String getName() {
+			return name;
+		}
 		public ReferenceSequence getSequence() {
 			return getSubsequenceAt(1, length);
 		}
@@ -133,6 +136,13 @@ public class TwoBitBufferedReferenceSequenceFile implements ReferenceSequenceFil
 		public boolean anyAmbiguous(long start, long stop) {
 			return !ambiguous.get((int)start - 1, (int)stop).isEmpty();
 		}
+		/**
+		 * Returns the 0-based offset of the first ambiguous base on or after the given 0-based offset,
+		 * or -1 if there are no subsequent ambiguous bases.
+		 */
+		public int nextAmbiguous(int offset) {
+			return ambiguous.nextSetBit(offset);
+		}
 	}
 	@Override
 	public SAMSequenceDictionary getSequenceDictionary() {
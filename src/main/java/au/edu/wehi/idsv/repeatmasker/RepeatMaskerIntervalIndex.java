@@ -0,0 +1,263 @@
+package au.edu.wehi.idsv.repeatmasker;
+
+import htsjdk.samtools.util.Log;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.annotation.Strand;
+import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.readers.LineIterator;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static au.edu.wehi.idsv.util.BinaryIndexFile.firstAtLeast;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeHeader;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.map;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readInts;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeString;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readString;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.writeStrings;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.readStrings;
+import static au.edu.wehi.idsv.util.BinaryIndexFile.loadCached;
+
+/**
+ * Compact RepeatMasker interval index.
+ *
+ * Features of each contig are stored in primitive arrays sorted by start position.
+ * Overlap queries use a running maximum of the feature end positions to find
+ * the first feature that could overlap the query interval.
+ * Repeat types and classes are interned and stored as ids.
+ *
+ * The index can be saved to a binary file that is memory mapped when loaded.
+ */
+public class RepeatMaskerIntervalIndex {
+    private static final Log log = Log.getInstance(RepeatMaskerIntervalIndex.class);
+    private static final int MAGIC = 0x524d4958; // RMIX
+    private static final int VERSION = 1;
+    private static final int NO_ID = -1;
+    private final String[] repeatTypes;
+    private final String[] repeatClasses;
+    private final Map<String, ContigIndex> lookup;
+
+    public interface OverlapConsumer {
+        /**
+         * @param start 1-based start position of the RepeatMasker feature
+         * @param end 1-based end position of the RepeatMasker feature
+         * @param negativeStrand feature is on the negative strand
+         * @param repeatType RepeatMasker repeat type
+         * @param repeatClass RepeatMasker repeat class
+         */
+        void accept(int start, int end, boolean negativeStrand, String repeatType, String repeatClass);
+    }
+
+    private static class ContigIndex {
+        private final int[] start;
+        private final int[] end;
+        /**
+         * Maximum end position of all features up to and including this offset
+         */
+        private final int[] maxEnd;
+        private final int[] repeatType;
+        private final int[] repeatClass;
+        private final byte[] negativeStrand;
+        private ContigIndex(int[] start, int[] end, int[] maxEnd, int[] repeatType, int[] repeatClass, byte[] negativeStrand) {
+            this.start = start;
+            this.end = end;
+            this.maxEnd = maxEnd;
+            this.repeatType = repeatType;
+            this.repeatClass = repeatClass;
+            this.negativeStrand = negativeStrand;
+        }
+        private int size() {
+            return start.length;
+        }
+    }
+
+    private RepeatMaskerIntervalIndex(String[] repeatTypes, String[] repeatClasses, Map<String, ContigIndex> lookup) {
+        this.repeatTypes = repeatTypes;
+        this.repeatClasses = repeatClasses;
+        this.lookup = lookup;
+    }
+
+    public Collection<String> getContigs() {
+        return lookup.keySet();
+    }
+
+    public int size() {
+        return lookup.values().stream().mapToInt(ContigIndex::size).sum();
+    }
+
+    /**
+     * Calls the consumer for every feature overlapping the given closed interval in start position order.
+     */
+    public void forEachOverlap(String contig, int start, int end, OverlapConsumer consumer) {
+        ContigIndex ci = lookup.get(contig);
+        if (ci == null) return;
+        // first feature that ends on or after the query start
+        int first = firstAtLeast(ci.maxEnd, start);
+        // first feature that starts after the query end
+        int last = firstAtLeast(ci.start, end + 1);
+        for (int i = first; i < last; i++) {
+            if (ci.end[i] >= start) {
+                consumer.accept(ci.start[i], ci.end[i], ci.negativeStrand[i] != 0,
+                        ci.repeatType[i] == NO_ID ? null : repeatTypes[ci.repeatType[i]],
+                        ci.repeatClass[i] == NO_ID ? null : repeatClasses[ci.repeatClass[i]]);
+            }
+        }
+    }
+
+    /**
+     * Creates an index from a bedops RepeatMasker BED file
+     */
+    public static RepeatMaskerIntervalIndex fromBed(File repeatMaskerBed) throws IOException {
+        Object2IntOpenHashMap<String> typeIds = new Object2IntOpenHashMap<>();
+        Object2IntOpenHashMap<String> classIds = new Object2IntOpenHashMap<>();
+        typeIds.defaultReturnValue(NO_ID);
+        classIds.defaultReturnValue(NO_ID);
+        List<String> types = new ArrayList<>();
+        List<String> classes = new ArrayList<>();
+        Map<String, ContigBuilder> builders = new LinkedHashMap<>();
+        try (AbstractFeatureReader<BEDFeature, LineIterator> reader = AbstractFeatureReader.getFeatureReader(repeatMaskerBed.getPath(), new RepeatMaskerBEDCodec(), false)) {
+            for (BEDFeature rawfeat : reader.iterator()) {
+                RepeatMaskerFeature feat = (RepeatMaskerFeature)rawfeat;
+                ContigBuilder builder = builders.computeIfAbsent(feat.getContig(), c -> new ContigBuilder());
+                builder.add(feat.getStart(), feat.getEnd(),
+                        intern(typeIds, types, feat.getRepeatType()),
+                        intern(classIds, classes, feat.getRepeatClass()),
+                        feat.getStrand() == Strand.NEGATIVE);
+            }
+        }
+        Map<String, ContigIndex> lookup = new LinkedHashMap<>();
+        for (Map.Entry<String, ContigBuilder> entry : builders.entrySet()) {
+            lookup.put(entry.getKey(), entry.getValue().build());
+        }
+        return new RepeatMaskerIntervalIndex(types.toArray(new String[0]), classes.toArray(new String[0]), lookup);
+    }
+
+    private static int intern(Object2IntOpenHashMap<String> ids, List<String> values, String value) {
+        if (value == null) return NO_ID;
+        int id = ids.getInt(value);
+        if (id == NO_ID) {
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    private static class ContigBuilder {
+        private int[] start = new int[16];
+        private int[] end = new int[16];
+        private int[] repeatType = new int[16];
+        private int[] repeatClass = new int[16];
+        private byte[] negativeStrand = new byte[16];
+        private int size = 0;
+        private void add(int start, int end, int repeatType, int repeatClass, boolean negativeStrand) {
+            if (size == this.start.length) {
+                int newCapacity = 2 * size;
+                this.start = Arrays.copyOf(this.start, newCapacity);
+                this.end = Arrays.copyOf(this.end, newCapacity);
+                this.repeatType = Arrays.copyOf(this.repeatType, newCapacity);
+                this.repeatClass = Arrays.copyOf(this.repeatClass, newCapacity);
+                this.negativeStrand = Arrays.copyOf(this.negativeStrand, newCapacity);
+            }
+            this.start[size] = start;
+            this.end[size] = end;
+            this.repeatType[size] = repeatType;
+            this.repeatClass[size] = repeatClass;
+            this.negativeStrand[size] = (byte)(negativeStrand ? 1 : 0);
+            size++;
+        }
+        private ContigIndex build() {
+            // stable sort so identical intervals retain input order
+            it.unimi.dsi.fastutil.Arrays.mergeSort(0, size, (a, b) -> {
+                int cmp = Integer.compare(start[a], start[b]);
+                if (cmp != 0) return cmp;
+                return Integer.compare(end[a], end[b]);
+            }, (a, b) -> {
+                int tmp = start[a]; start[a] = start[b]; start[b] = tmp;
+                tmp = end[a]; end[a] = end[b]; end[b] = tmp;
+                tmp = repeatType[a]; repeatType[a] = repeatType[b]; repeatType[b] = tmp;
+                tmp = repeatClass[a]; repeatClass[a] = repeatClass[b]; repeatClass[b] = tmp;
+                byte tmpStrand = negativeStrand[a]; negativeStrand[a] = negativeStrand[b]; negativeStrand[b] = tmpStrand;
+            });
+            int[] maxEnd = new int[size];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                max = Math.max(max, end[i]);
+                maxEnd[i] = max;
+            }
+            return new ContigIndex(
+                    Arrays.copyOf(start, size),
+                    Arrays.copyOf(end, size),
+                    maxEnd,
+                    Arrays.copyOf(repeatType, size),
+                    Arrays.copyOf(repeatClass, size),
+                    Arrays.copyOf(negativeStrand, size));
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeHeader(out, MAGIC, VERSION);
+            writeStrings(out, repeatTypes);
+            writeStrings(out, repeatClasses);
+            out.writeInt(lookup.size());
+            for (Map.Entry<String, ContigIndex> entry : lookup.entrySet()) {
+                ContigIndex ci = entry.getValue();
+                writeString(out, entry.getKey());
+                out.writeInt(ci.size());
+                writeInts(out, ci.start);
+                writeInts(out, ci.end);
+                writeInts(out, ci.maxEnd);
+                writeInts(out, ci.repeatType);
+                writeInts(out, ci.repeatClass);
+                out.write(ci.negativeStrand);
+            }
+        }
+    }
+
+    /**
+     * Loads an index previously written by {@link #save(File)}
+     */
+    public static RepeatMaskerIntervalIndex load(File file) throws IOException {
+        ByteBuffer buffer = map(file, MAGIC, VERSION, "RepeatMasker index");
+        String[] repeatTypes = readStrings(buffer);
+        String[] repeatClasses = readStrings(buffer);
+        int contigs = buffer.getInt();
+        Map<String, ContigIndex> lookup = new LinkedHashMap<>();
+        for (int i = 0; i < contigs; i++) {
+            String contig = readString(buffer);
+            int n = buffer.getInt();
+            int[] start = readInts(buffer, n);
+            int[] end = readInts(buffer, n);
+            int[] maxEnd = readInts(buffer, n);
+            int[] repeatType = readInts(buffer, n);
+            int[] repeatClass = readInts(buffer, n);
+            byte[] negativeStrand = new byte[n];
+            buffer.get(negativeStrand);
+            lookup.put(contig, new ContigIndex(start, end, maxEnd, repeatType, repeatClass, negativeStrand));
+        }
+        return new RepeatMaskerIntervalIndex(repeatTypes, repeatClasses, lookup);
+    }
+
+    /**
+     * Loads the index for the given RepeatMasker BED file from the given cache file.
+     * If the cache file does not exist or is older than the BED file, the index is
+     * created from the BED file and persisted to the cache file.
+     * @param repeatMaskerBed bedops RepeatMasker BED file
+     * @param cacheFile index cache file
+     */
+    public static RepeatMaskerIntervalIndex load(File repeatMaskerBed, File cacheFile) throws IOException {
+        return loadCached(repeatMaskerBed, cacheFile, "RepeatMasker index",
+                RepeatMaskerIntervalIndex::load,
+                RepeatMaskerIntervalIndex::fromBed,
+                RepeatMaskerIntervalIndex::save);
+    }
+
+    public static File getCacheFile(File repeatMaskerBed) {
+        return new File(repeatMaskerBed.getAbsolutePath() + ".gridsscache");
+    }
+}
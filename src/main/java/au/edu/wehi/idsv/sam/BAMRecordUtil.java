@@ -0,0 +1,203 @@
+package au.edu.wehi.idsv.sam;
+
+import htsjdk.samtools.BAMRecord;
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Record inspection directly from the binary BAM record layout.
+ *
+ * htsjdk lazily decodes the variable length fields of BAM records. These helpers
+ * inspect the CIGAR and tags without materialising them so the vast majority of
+ * reads that cannot be structural variant evidence never have their CIGAR, bases,
+ * qualities or attributes decoded. Records that are not backed by an unmodified
+ * BAM record fall back to the equivalent {@link SAMRecord} accessors.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class BAMRecordUtil {
+	private BAMRecordUtil() {
+	}
+	public static final int CLIPPING_OPERATOR_MASK = mask(CigarOperator.S, CigarOperator.H);
+	public static final int INDEL_OPERATOR_MASK = mask(CigarOperator.I, CigarOperator.D, CigarOperator.N);
+	/**
+	 * Operators that do not prevent a read from being considered fully aligned to the reference
+	 */
+	public static final int ALIGNED_OPERATOR_MASK = mask(CigarOperator.M, CigarOperator.EQ, CigarOperator.X, CigarOperator.P);
+	public static int mask(CigarOperator... ops) {
+		int mask = 0;
+		for (CigarOperator op : ops) {
+			mask |= 1 << CigarOperator.enumToBinary(op);
+		}
+		return mask;
+	}
+	/**
+	 * Gets the raw BAM data of the record
+	 * @return variable length record data, null if the record is not backed by up to date BAM data
+	 */
+	private static byte[] getBinary(SAMRecord r) {
+		if (r instanceof BAMRecord) {
+			return ((BAMRecord)r).getVariableBinaryRepresentation();
+		}
+		return null;
+	}
+	private static int cigarOffset(SAMRecord r) {
+		return r.getReadNameLength() + 1;
+	}
+	private static int readInt(byte[] b, int offset) {
+		return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8) | ((b[offset + 2] & 0xFF) << 16) | ((b[offset + 3] & 0xFF) << 24);
+	}
+	/**
+	 * Bitmask of the BAM operator codes present in the CIGAR of the given read.
+	 * @return bitmask with bit n set if the CIGAR contains an operator with BAM binary code n
+	 */
+	public static int cigarOperatorMask(SAMRecord r) {
+		int mask = 0;
+		byte[] b = getBinary(r);
+		if (b != null) {
+			int offset = cigarOffset(r);
+			int n = ((BAMRecord)r).getCigarLength();
+			for (int i = 0; i < n; i++) {
+				mask |= 1 << (readInt(b, offset + 4 * i) & 0xF);
+			}
+		} else {
+			Cigar cigar = r.getCigar();
+			if (cigar != null) {
+				for (CigarElement ce : cigar) {
+					mask |= 1 << CigarOperator.enumToBinary(ce.getOperator());
+				}
+			}
+		}
+		return mask;
+	}
+	/**
+	 * Length of the longest CIGAR element matching the given operator mask
+	 * @param opMask BAM operator bitmask
+	 * @return maximum element length, 0 if no elements match the mask
+	 */
+	public static int maxCigarElementLength(SAMRecord r, int opMask) {
+		int max = 0;
+		byte[] b = getBinary(r);
+		if (b != null) {
+			int offset = cigarOffset(r);
+			int n = ((BAMRecord)r).getCigarLength();
+			for (int i = 0; i < n; i++) {
+				int v = readInt(b, offset + 4 * i);
+				if ((opMask & (1 << (v & 0xF))) != 0) {
+					max = Math.max(max, v >>> 4);
+				}
+			}
+		} else {
+			Cigar cigar = r.getCigar();
+			if (cigar != null) {
+				for (CigarElement ce : cigar) {
+					if ((opMask & (1 << CigarOperator.enumToBinary(ce.getOperator()))) != 0) {
+						max = Math.max(max, ce.getLength());
+					}
+				}
+			}
+		}
+		return max;
+	}
+	/**
+	 * Total number of soft and hard clipped bases at the start and end of the read alignment
+	 */
+	public static int clipLength(SAMRecord r) {
+		byte[] b = getBinary(r);
+		if (b == null) {
+			return SAMRecordUtil.getStartClipLength(r) + SAMRecordUtil.getEndClipLength(r);
+		}
+		int offset = cigarOffset(r);
+		int n = ((BAMRecord)r).getCigarLength();
+		int length = 0;
+		int i = 0;
+		for (; i < n; i++) {
+			int v = readInt(b, offset + 4 * i);
+			if ((CLIPPING_OPERATOR_MASK & (1 << (v & 0xF))) == 0) break;
+			length += v >>> 4;
+		}
+		for (int j = n - 1; j > i; j--) {
+			int v = readInt(b, offset + 4 * j);
+			if ((CLIPPING_OPERATOR_MASK & (1 << (v & 0xF))) == 0) break;
+			length += v >>> 4;
+		}
+		return length;
+	}
+	/**
+	 * Determines whether the read has the given tag without decoding the record attributes.
+	 * @param tag two character SAM tag
+	 */
+	public static boolean hasAttribute(SAMRecord r, String tag) {
+		byte[] b = getBinary(r);
+		if (b == null) {
+			return r.hasAttribute(tag);
+		}
+		byte t0 = (byte)tag.charAt(0);
+		byte t1 = (byte)tag.charAt(1);
+		int readLength = r.getReadLength();
+		int offset = cigarOffset(r) + 4 * ((BAMRecord)r).getCigarLength() + (readLength + 1) / 2 + readLength;
+		while (offset + 3 <= b.length) {
+			if (b[offset] == t0 && b[offset + 1] == t1) {
+				return true;
+			}
+			int size = valueSize(b, offset + 2);
+			if (size < 0) {
+				// Unrecognised type: let htsjdk deal with it
+				return r.hasAttribute(tag);
+			}
+			offset += 3 + size;
+		}
+		return false;
+	}
+	/**
+	 * Size of the tag value
+	 * @param typeOffset offset of the tag value type
+	 * @return size of the value in bytes, -1 if the type is not recognised
+	 */
+	private static int valueSize(byte[] b, int typeOffset) {
+		switch (b[typeOffset]) {
+			case 'A':
+			case 'c':
+			case 'C':
+				return 1;
+			case 's':
+			case 'S':
+				return 2;
+			case 'i':
+			case 'I':
+			case 'f':
+				return 4;
+			case 'Z':
+			case 'H':
+				int end = typeOffset + 1;
+				while (end < b.length && b[end] != 0) end++;
+				return end - typeOffset;
+			case 'B':
+				if (typeOffset + 6 > b.length) return -1;
+				int elementSize;
+				switch (b[typeOffset + 1]) {
+					case 'c':
+					case 'C':
+						elementSize = 1;
+						break;
+					case 's':
+					case 'S':
+						elementSize = 2;
+						break;
+					case 'i':
+					case 'I':
+					case 'f':
+						elementSize = 4;
+						break;
+					default:
+						return -1;
+				}
+				return 1 + 4 + elementSize * readInt(b, typeOffset + 2);
+			default:
+				return -1;
+		}
+	}
+}
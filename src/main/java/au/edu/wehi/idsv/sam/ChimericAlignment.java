@@ -74,10 +74,103 @@ public class ChimericAlignment {
 		this.nm = nmParsed;
 	}
 	public ChimericAlignment(String str) {
-		this(str, ",");
+		this(str, 0, str.length());
+	}
+	/**
+	 * Parses a single comma separated alignment directly from the given substring
+	 * without regular expression splitting or intermediate field strings.
+	 * @param str string containing the alignment
+	 * @param start start offset of the alignment
+	 * @param end end offset (exclusive) of the alignment
+	 */
+	private ChimericAlignment(String str, int start, int end) {
+		while (start < end && isSeparatorOrWhitespace(str.charAt(start))) start++;
+		while (end > start && isSeparatorOrWhitespace(str.charAt(end - 1))) end--;
+		int rnameEnd = fieldEnd(str, start, end);
+		int posEnd = fieldEnd(str, rnameEnd + 1, end);
+		int strandEnd = fieldEnd(str, posEnd + 1, end);
+		int cigarEnd = fieldEnd(str, strandEnd + 1, end);
+		if (cigarEnd > end) {
+			throw new IllegalArgumentException(String.format("Invalid alignment \"%s\": expected at least 4 fields.", str.substring(start, end)));
+		}
+		this.rname = str.substring(start, rnameEnd);
+		this.pos = parseInt(str, rnameEnd + 1, posEnd);
+		this.isNegativeStrand = strandEnd - posEnd == 2 && str.charAt(posEnd + 1) == '-';
+		this.cigar = parseCigar(str, strandEnd + 1, cigarEnd);
+		int mapqEnd = fieldEnd(str, cigarEnd + 1, end);
+		this.mapq = mapqEnd > end || mapqEnd == cigarEnd + 1 ? SAMRecord.UNKNOWN_MAPPING_QUALITY : parseInt(str, cigarEnd + 1, mapqEnd);
+		Integer nmParsed = null;
+		if (mapqEnd < end) {
+			int nmEnd = fieldEnd(str, mapqEnd + 1, end);
+			try {
+				nmParsed = parseInt(str, mapqEnd + 1, nmEnd);
+			} catch (NumberFormatException nfe) {
+				// swallow and fall back to null
+			}
+		}
+		this.nm = nmParsed;
+	}
+	private static boolean isSeparatorOrWhitespace(char c) {
+		return c == ';' || Character.isWhitespace(c);
+	}
+	/**
+	 * Offset of the comma terminating the field starting at the given offset
+	 * @return offset of the field terminator, end if the field is the last field,
+	 * end + 1 if no field starts at the given offset
+	 */
+	private static int fieldEnd(String str, int start, int end) {
+		if (start > end) return end + 1;
+		for (int i = start; i < end; i++) {
+			if (str.charAt(i) == ',') return i;
+		}
+		return end;
+	}
+	private static int parseInt(String str, int start, int end) {
+		if (start >= end || end - start > 9) {
+			return Integer.parseInt(str.substring(start, end));
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = str.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				// let the JDK deal with signs and report errors
+				return Integer.parseInt(str.substring(start, end));
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+	private static Cigar parseCigar(String str, int start, int end) {
+		if (end - start == 1 && str.charAt(start) == '*') {
+			return new Cigar();
+		}
+		List<CigarElement> list = new ArrayList<>(4);
+		int length = 0;
+		boolean hasLength = false;
+		for (int i = start; i < end; i++) {
+			char c = str.charAt(i);
+			if (c >= '0' && c <= '9') {
+				length = length * 10 + (c - '0');
+				hasLength = true;
+			} else {
+				if (!hasLength) {
+					throw new IllegalArgumentException(String.format("Malformed CIGAR string: %s", str.substring(start, end)));
+				}
+				list.add(new CigarElement(length, CigarOperator.characterToEnum(c)));
+				length = 0;
+				hasLength = false;
+			}
+		}
+		if (hasLength) {
+			throw new IllegalArgumentException(String.format("Malformed CIGAR string: %s", str.substring(start, end)));
+		}
+		return new Cigar(list);
 	}
 	public static List<ChimericAlignment> getChimericAlignments(String sa, String separatorRegex) {
 		if (StringUtils.isEmpty(sa)) return Collections.emptyList();
+		if (";".equals(separatorRegex)) {
+			return parseSA(sa);
+		}
 		List<ChimericAlignment> list = new ArrayList<ChimericAlignment>();
 		String[] splits = sa.split(separatorRegex);
 		for (String s : splits) {
@@ -87,11 +180,47 @@ public class ChimericAlignment {
 		}
 		return list;
 	}
+	private static List<ChimericAlignment> parseSA(String sa) {
+		List<ChimericAlignment> list = new ArrayList<ChimericAlignment>(4);
+		int start = 0;
+		while (start < sa.length()) {
+			int end = sa.indexOf(';', start);
+			if (end < 0) end = sa.length();
+			if (end > start) {
+				list.add(new ChimericAlignment(sa, start, end));
+			}
+			start = end + 1;
+		}
+		return list;
+	}
 	public static List<ChimericAlignment> getChimericAlignments(String sa) {
 		return getChimericAlignments(sa, ";");
 	}
+	/**
+	 * Gets the alignments encoded in the SA tag of the given record.
+	 * 
+	 * The parsed alignments are cached as a transient attribute of the record
+	 * and reused until the SA tag of the record changes.
+	 * @return unmodifiable list of supplementary alignments
+	 */
 	public static List<ChimericAlignment> getChimericAlignments(SAMRecord r) {
-		return getChimericAlignments(r.getStringAttribute(SAMTag.SA.name()));
+		String sa = r.getStringAttribute(SAMTag.SA.name());
+		if (StringUtils.isEmpty(sa)) return Collections.emptyList();
+		Object cached = r.getTransientAttribute(SAMTag.SA.name());
+		if (cached instanceof ParsedSA && ((ParsedSA)cached).sa == sa) {
+			return ((ParsedSA)cached).alignments;
+		}
+		List<ChimericAlignment> list = Collections.unmodifiableList(parseSA(sa));
+		r.setTransientAttribute(SAMTag.SA.name(), new ParsedSA(sa, list));
+		return list;
+	}
+	private static class ParsedSA {
+		private final String sa;
+		private final List<ChimericAlignment> alignments;
+		public ParsedSA(String sa, List<ChimericAlignment> alignments) {
+			this.sa = sa;
+			this.alignments = alignments;
+		}
 	}
 
 	/**
@@ -862,6 +862,7 @@ public class SAMRecordUtil {
 			if (splitca.isEmpty() || r.getReadUnmappedFlag()) {
 				r.setSupplementaryAlignmentFlag(false);
 			} else {
+				splitca = new ArrayList<>(splitca);
 				splitca.add(new ChimericAlignment(r));
 				splitca.sort(ChimericAlignment.ByReadOffset);
 				List<SAMRecord> saGroup = saLookup.get(splitca);
@@ -1207,7 +1208,7 @@ public class SAMRecordUtil {
 
 	private static void warnIfInvalidSA(List<SAMRecord> list) {
 		Set<ChimericAlignment> referencedReads = list.stream()
-				.flatMap(r -> ChimericAlignment.getChimericAlignments(r.getStringAttribute(SAMTag.SA.name())).stream())
+				.flatMap(r -> ChimericAlignment.getChimericAlignments(r).stream())
 				.collect(Collectors.toSet());
 		// validate SA tags
 		for (SAMRecord r : list) {
@@ -3,43 +3,85 @@ package au.edu.wehi.idsv.util;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Log;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Wrapper iterator that uses a background thread to read from a given source iterator.
- * 
+ * Wrapper iterator that reads ahead from a given source iterator in the background.
+ *
+ * Read-ahead is scheduled on a shared executor so no dedicated thread is required
+ * for each iterator. The underlying iterator is only ever read by a single thread
+ * at a time. If the consumer requires a batch whose read has been scheduled but not
+ * yet started, the consumer performs the read itself. This ensures nested
+ * asynchronous iterators cannot deadlock regardless of the size of the executor.
+ *
+ * The number of read-ahead batches adapts to the consumer: it grows when the consumer
+ * has to wait for records and shrinks when the read-ahead is consistently unused.
+ * Read-ahead batches are also limited globally so total memory usage is bounded
+ * regardless of the number of open iterators.
+ *
  * @author Daniel Cameron
  *
  */
 public class AsyncBufferedIterator<T> implements CloseableIterator<T>, PeekingIterator<T>, AutoCloseable {
-	private static AtomicInteger threadsCreated = new AtomicInteger(0);
 	private static final Log log = Log.getInstance(AsyncBufferedIterator.class);
-    private final Thread reader;
-    private final ReaderRunnable readerRunnable;
-    private final AtomicReference<Throwable> ex = new AtomicReference<Throwable>(null);
-    private final Iterator<T> underlying;
-	private final BlockingQueue<List<Object>> buffer;
-	private boolean closeCalled = false;
+	/**
+	 * Number of consecutive batches taken without waiting before the read-ahead is reduced
+	 */
+	private static final int SHRINK_AFTER_UNSTALLED_BATCHES = 32;
+	private static final int IDLE = 0;
+	private static final int SCHEDULED = 1;
+	private static final int RUNNING = 2;
+	private static class Shared {
+		private static final Executor EXECUTOR = Executors.newFixedThreadPool(
+				gridss.Defaults.ASYNC_THREADS,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("AsyncBufferedIterator-%d").build());
+		private static final Semaphore OUTSTANDING_BATCHES = new Semaphore(gridss.Defaults.ASYNC_MAX_OUTSTANDING_BATCHES);
+	}
+	private final Iterator<T> underlying;
+	private final String description;
+	private final int maxBufferCount;
 	private final int batchSize;
-	private final Semaphore closingCriticalSection = new Semaphore(1);
-    private PeekingIterator<Object> currentBuffer = Iterators.peekingIterator(ImmutableList.<Object>of().iterator());
-	private static final Object eos = new Object(); // End of stream sentinel
+	private final Executor executor;
+	private final Semaphore outstandingBatches;
+	/**
+	 * State of the read-ahead of the underlying iterator.
+	 * Only the thread transitioning to RUNNING may access the underlying iterator.
+	 * A SCHEDULED read holds an outstanding batch permit.
+	 */
+	private final AtomicInteger state = new AtomicInteger(IDLE);
 	/**
-	 * Creates a new iterator that traverses the given iterator on a background thread
+	 * Batches read but not yet returned. Guarded by this.
+	 */
+	private final ArrayDeque<List<T>> buffer = new ArrayDeque<>();
+	/**
+	 * Number of buffered batches holding an outstanding batch permit. Guarded by this.
+	 */
+	private int permitsHeld = 0;
+	private volatile boolean eos = false;
+	private volatile boolean closed = false;
+	private volatile Throwable ex = null;
+	private boolean underlyingClosed = false;
+	private int targetBufferCount = 1;
+	private int unstalledBatches = 0;
+	private PeekingIterator<T> currentBuffer = Iterators.peekingIterator(ImmutableList.<T>of().iterator());
+	/**
+	 * Creates a new iterator that traverses the given iterator in the background
 	 * @param iterator iterator to traverse
-	 * @param bufferCount number of read-ahead buffers
+	 * @param bufferCount maximum number of read-ahead buffers
 	 * @param batchSize size of each read-ahead buffer. A larger batch size will increase throughput and latency.
 	 */
 	public AsyncBufferedIterator(Iterator<T> iterator, int bufferCount, int batchSize) {
@@ -49,170 +91,211 @@ public class AsyncBufferedIterator<T> implements CloseableIterator<T>, PeekingIt
 		this(iterator, description, gridss.Defaults.ASYNC_BUFFERS, gridss.Defaults.ASYNC_BUFFER_SIZE);
 	}
 	public AsyncBufferedIterator(Iterator<T> iterator, String description, int bufferCount, int batchSize) {
+		this(iterator, description, bufferCount, batchSize, Shared.EXECUTOR, Shared.OUTSTANDING_BATCHES);
+	}
+	/**
+	 * @param executor executor to perform read-ahead on
+	 * @param outstandingBatches permits limiting the total number of read-ahead batches across all iterators sharing these permits
+	 */
+	public AsyncBufferedIterator(Iterator<T> iterator, String description, int bufferCount, int batchSize, Executor executor, Semaphore outstandingBatches) {
 		if (iterator == null) throw new IllegalArgumentException();
 		if (bufferCount <= 0 || batchSize <= 0) throw new IllegalArgumentException("Buffer size must be at least 1.");
 		this.underlying = iterator;
-		this.buffer = new ArrayBlockingQueue<List<Object>>(bufferCount);
+		this.description = description == null ? "AsyncBufferedIterator" : description;
+		this.maxBufferCount = bufferCount;
 		this.batchSize = batchSize;
-        this.readerRunnable = new ReaderRunnable();
-        this.reader = new Thread(readerRunnable, description == null ? getThreadNamePrefix() + threadsCreated.incrementAndGet() : description);
-        this.reader.setDaemon(true);
-        log.debug("Starting thread " + this.reader.getName());
-        this.reader.start();
+		this.executor = executor;
+		this.outstandingBatches = outstandingBatches;
+		schedule();
 	}
-	protected String getThreadNamePrefix() {
-		return "AsyncBufferedIterator";
+	/**
+	 * Schedules a background read if our read-ahead buffer is not yet full
+	 */
+	private void schedule() {
+		if (closed || eos) return;
+		synchronized (this) {
+			if (buffer.size() >= targetBufferCount) return;
+		}
+		if (!outstandingBatches.tryAcquire()) {
+			// we'll try again once the consumer takes a batch
+			return;
+		}
+		if (!state.compareAndSet(IDLE, SCHEDULED)) {
+			outstandingBatches.release();
+			return;
+		}
+		try {
+			executor.execute(this::readAhead);
+		} catch (RejectedExecutionException e) {
+			if (state.compareAndSet(SCHEDULED, IDLE)) {
+				outstandingBatches.release();
+			}
+		}
 	}
-	@Override
-	public void close() {
-		if (closeCalled) return;
-		closeCalled = true;
+	private void readAhead() {
+		if (state.compareAndSet(SCHEDULED, RUNNING)) {
+			readBatch(true);
+			schedule();
+		}
+	}
+	/**
+	 * Reads the next batch from the underlying iterator.
+	 * Must only be called by the thread that transitioned the state to RUNNING.
+	 * @param holdsPermit batch holds an outstanding batch permit
+	 */
+	private void readBatch(boolean holdsPermit) {
+		List<T> batch = null;
 		try {
-			if (closingCriticalSection.tryAcquire()) {
-				// without closingCriticalSection, raising the interrupt at the same time
-				// the background thread is closing causes the following exception:
-				//WARNING 2018-04-12 08:58:30     AutoClosingIterator     Error closing resource.
-				//java.lang.RuntimeException: Interrupted waiting for decompression thread
-				//    at htsjdk.samtools.util.AsyncBlockCompressedInputStream.flushReadAhead(AsyncBlockCompressedInputStream.java:151)
-				//    at htsjdk.samtools.util.AsyncBlockCompressedInputStream.close(AsyncBlockCompressedInputStream.java:134)
-				//    at htsjdk.samtools.BAMFileReader.close(BAMFileReader.java:417)
-				//    at htsjdk.samtools.SamReader$PrimitiveSamReaderToSamReaderAdapter.close(SamReader.java:488)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:64)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:48)
-				//    at au.edu.wehi.idsv.util.AutoClosingIterator.close(AutoClosingIterator.java:37)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:64)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:48)
-				//    at au.edu.wehi.idsv.util.AutoClosingIterator.close(AutoClosingIterator.java:35)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:64)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:48)
-				//    at au.edu.wehi.idsv.util.AutoClosingMergedIterator.tryclose(AutoClosingMergedIterator.java:87)
-				//    at au.edu.wehi.idsv.util.AutoClosingMergedIterator.close(AutoClosingMergedIterator.java:75)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:64)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:48)
-				//    at au.edu.wehi.idsv.VariantCallIterator.close(VariantCallIterator.java:117)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:64)
-				//    at htsjdk.samtools.util.CloserUtil.close(CloserUtil.java:48)
-				//    at au.edu.wehi.idsv.util.AsyncBufferedIterator.syncClose(AsyncBufferedIterator.java:75)
-				//    at au.edu.wehi.idsv.util.AsyncBufferedIterator.access$600(AsyncBufferedIterator.java:26)
-				//    at au.edu.wehi.idsv.util.AsyncBufferedIterator$ReaderRunnable.run(AsyncBufferedIterator.java:150)
-				//    at java.lang.Thread.run(Thread.java:745)
-				//Caused by: java.lang.InterruptedException
-				//    at java.util.concurrent.locks.AbstractQueuedSynchronizer.doAcquireSharedInterruptibly(AbstractQueuedSynchronizer.java:998)
-				//    at java.util.concurrent.locks.AbstractQueuedSynchronizer.acquireSharedInterruptibly(AbstractQueuedSynchronizer.java:1304)
-				//    at java.util.concurrent.Semaphore.acquire(Semaphore.java:312)
-				//    at htsjdk.samtools.util.AsyncBlockCompressedInputStream.flushReadAhead(AsyncBlockCompressedInputStream.java:149)
-				reader.interrupt();
-				closingCriticalSection.release();
+			if (!closed && !eos) {
+				batch = new ArrayList<>(batchSize);
+				while (batch.size() < batchSize && underlying.hasNext()) {
+					batch.add(underlying.next());
+				}
+				if (!underlying.hasNext()) {
+					eos = true;
+					closeUnderlying();
+				}
 			}
-			buffer.clear(); // flush buffer so EOS indicator can be written if writer is blocking
-			reader.join();
-		} catch (InterruptedException ie) { }
+		} catch (Throwable t) {
+			ex = t;
+			eos = true;
+			closeUnderlying();
+		} finally {
+			synchronized (this) {
+				if (batch != null && !batch.isEmpty() && !closed) {
+					buffer.add(batch);
+					if (holdsPermit) {
+						permitsHeld++;
+						holdsPermit = false;
+					}
+				}
+				if (holdsPermit) {
+					outstandingBatches.release();
+				}
+				state.set(IDLE);
+				notifyAll();
+			}
+		}
 	}
-	private void syncClose() {
-		CloserUtil.close(underlying);
+	private void closeUnderlying() {
+		if (!underlyingClosed) {
+			underlyingClosed = true;
+			CloserUtil.close(underlying);
+		}
+	}
+	/**
+	 * Gets the next batch, reading it on the calling thread if it is not already being read in the background
+	 * @return next batch, null if there are no more records
+	 */
+	private List<T> takeBatch() {
+		boolean stalled = false;
+		while (true) {
+			synchronized (this) {
+				if (!buffer.isEmpty()) {
+					List<T> batch = buffer.poll();
+					if (permitsHeld > 0) {
+						permitsHeld--;
+						outstandingBatches.release();
+					}
+					if (stalled) {
+						targetBufferCount = Math.min(maxBufferCount, targetBufferCount + 1);
+						unstalledBatches = 0;
+					} else if (++unstalledBatches >= SHRINK_AFTER_UNSTALLED_BATCHES) {
+						targetBufferCount = Math.max(1, targetBufferCount - 1);
+						unstalledBatches = 0;
+					}
+					schedule();
+					return batch;
+				}
+				throwOnCallingThread();
+				int s = state.get();
+				if (eos && s == IDLE) return null;
+				stalled = true;
+				if (s == RUNNING) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					continue;
+				}
+			}
+			if (state.compareAndSet(SCHEDULED, RUNNING)) {
+				// the background read hasn't started yet so we'll do it ourselves
+				readBatch(true);
+			} else if (state.compareAndSet(IDLE, RUNNING)) {
+				readBatch(false);
+			}
+		}
+	}
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		synchronized (this) {
+			while (true) {
+				if (state.compareAndSet(SCHEDULED, IDLE)) {
+					outstandingBatches.release();
+				}
+				if (state.get() != RUNNING) break;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					log.warn("Thread interrupt received whilst waiting for " + description + " read-ahead to complete");
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			outstandingBatches.release(permitsHeld);
+			permitsHeld = 0;
+			buffer.clear();
+			closeUnderlying();
+		}
 	}
 	@Override
 	public boolean hasNext() {
 		throwOnCallingThread();
-		if (closeCalled) return false;
-		if (!currentBuffer.hasNext()) {
-			try {
-				currentBuffer = Iterators.peekingIterator(buffer.take().iterator());
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
+		if (closed) return false;
+		while (!currentBuffer.hasNext()) {
+			List<T> batch = takeBatch();
+			if (batch == null) {
+				throwOnCallingThread();
+				return false;
 			}
-			// rethrow any exceptions raised on the background thread while we were blocking on the next record
-			throwOnCallingThread();
+			currentBuffer = Iterators.peekingIterator(batch.iterator());
 		}
-		return currentBuffer.hasNext() && currentBuffer.peek() != eos;
+		return true;
 	}
-	@SuppressWarnings("unchecked")
 	@Override
 	public T next() {
-		if (hasNext()) {
-			Object result = currentBuffer.next();
-			if (result != eos) {
-				return (T)result;
-			}
-		}
-		throw new NoSuchElementException("next");
+		if (!hasNext()) throw new NoSuchElementException("next");
+		return currentBuffer.next();
 	}
-	@SuppressWarnings("unchecked")
 	@Override
 	public T peek() {
 		if (!hasNext()) throw new NoSuchElementException("peek");
-		return (T)currentBuffer.peek();
-	}
-	private final void throwOnCallingThread() {
-        final Throwable t = this.ex.get();
-        if (t != null) {
-            if (t instanceof Error) throw (Error) t;
-            if (t instanceof RuntimeException) throw (RuntimeException) t;
-            else throw new RuntimeException(t);
-        }
-    }
+		return currentBuffer.peek();
+	}
+	private void throwOnCallingThread() {
+		final Throwable t = this.ex;
+		if (t != null) {
+			if (t instanceof Error) throw (Error) t;
+			if (t instanceof RuntimeException) throw (RuntimeException) t;
+			else throw new RuntimeException(t);
+		}
+	}
 	/**
-     * Reads the given iterator and passing back to the calling thread
-     * in chunks
-     */
-    private class ReaderRunnable implements Runnable {
-    	private boolean eosWritten = false;
-        public void run() {
-        	try {
-        		while (underlying.hasNext()) {
-		        	List<Object> readAhead = new ArrayList<Object>(batchSize + 1);
-		    		for (int i = 0; i < batchSize; i++) {
-		    			if (!underlying.hasNext()) break;
-		    			readAhead.add(underlying.next());
-		    		}
-		    		if (!underlying.hasNext()) {
-		    			readAhead.add(eos);
-		    			eosWritten = true;
-		    		}
-		    		buffer.put(readAhead);
-        		}
-        	} catch (InterruptedException ie) {
-        		// log.debug("Thread interrupt received - closing on background thread.");
-        	} catch (Throwable t) {
-        		// when using async I/O, htsjdk BlockCompressedInputStream
-        		// RuntimeException-wrapped InterruptedExceptionon the calling thread
-        		// (i.e., this one).
-        		boolean causedByInterruptedException = false;
-        		for (Throwable cause = t.getCause(); cause != null; cause = cause.getCause()) {
-        			if (cause instanceof InterruptedException) {
-        				causedByInterruptedException = true;
-        				break;
-        			}
-        		}
-        		if (!causedByInterruptedException) {
-        			ex.set(t);
-        			throw new RuntimeException(t);
-        		}
-        	} finally {
-        		try {
-	        		closingCriticalSection.acquire();
-	        		Thread.interrupted(); // clear thread interrupt flag so we can close the stream
-	        		syncClose();
-	        		// don't release the semaphore since we're now closed
-        		} catch (InterruptedException e2) {
-					log.warn("Thread interrupt received whilst closing underlying iterator");
-				}
-        		try {
-	        		Thread.interrupted(); // clear thread interrupt flag again so we can write the eos indicator if needed
-        			if (!eosWritten) {
-        				buffer.put(ImmutableList.of(eos));
-        			}
-				} catch (InterruptedException e2) {
-					log.warn("Thread interrupt received whilst writing end of stream indicator");
-				}
-        	}
-        }
-    }
+	 * @return true if a background read of the underlying iterator is scheduled or in progress
+	 */
+	public boolean isReadAheadActive() {
+		return state.get() != IDLE;
+	}
 	@Override
 	public void remove() {
 		throw new UnsupportedOperationException();
 	}
-	protected String getBackgroundThreadName() {
-		return this.reader.getName();
+	@Override
+	public String toString() {
+		return description;
 	}
 }
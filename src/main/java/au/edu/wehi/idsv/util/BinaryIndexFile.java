@@ -0,0 +1,151 @@
+package au.edu.wehi.idsv.util;
+
+import htsjdk.samtools.util.Log;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for flat primitive array indexes persisted as binary cache files.
+ *
+ * Index files start with a magic number and format version followed by
+ * big-endian primitive arrays. Index files are memory mapped when loaded.
+ */
+public class BinaryIndexFile {
+	private static final Log log = Log.getInstance(BinaryIndexFile.class);
+	private BinaryIndexFile() { }
+	@FunctionalInterface
+	public interface Loader<T> {
+		T load(File file) throws IOException;
+	}
+	@FunctionalInterface
+	public interface Saver<T> {
+		void save(T index, File file) throws IOException;
+	}
+	/**
+	 * @return offset of first element greater than or equal to the given value in a sorted array
+	 */
+	public static int firstAtLeast(int[] sorted, int value) {
+		return firstAtLeast(sorted, 0, sorted.length, value);
+	}
+	/**
+	 * @return offset of first element in [from, to) greater than or equal to the given value in a sorted array
+	 */
+	public static int firstAtLeast(int[] sorted, int from, int to, int value) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	public static void writeHeader(DataOutputStream out, int magic, int version) throws IOException {
+		out.writeInt(magic);
+		out.writeInt(version);
+	}
+	/**
+	 * Memory maps the given index file
+	 * @param file index file
+	 * @param magic expected magic number
+	 * @param version expected format version
+	 * @param description index description used in error messages
+	 * @return buffer positioned after the file header
+	 */
+	public static ByteBuffer map(File file, int magic, int version, String description) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != magic) {
+				throw new IOException(file + " is not a " + description);
+			}
+			if (buffer.getInt() != version) {
+				throw new IOException(file + " has an unsupported " + description + " version");
+			}
+			return buffer;
+		}
+	}
+	public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int v : values) {
+			out.writeInt(v);
+		}
+	}
+	public static int[] readInts(ByteBuffer buffer, int n) {
+		int[] values = new int[n];
+		IntBuffer ib = buffer.asIntBuffer();
+		ib.get(values);
+		buffer.position(buffer.position() + n * Integer.BYTES);
+		return values;
+	}
+	public static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+	public static String readString(ByteBuffer buffer) {
+		byte[] b = new byte[buffer.getInt()];
+		buffer.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+	public static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+		out.writeInt(values.length);
+		for (String s : values) {
+			writeString(out, s);
+		}
+	}
+	public static String[] readStrings(ByteBuffer buffer) {
+		String[] values = new String[buffer.getInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readString(buffer);
+		}
+		return values;
+	}
+	/**
+	 * Loads the index for the given source file from the given cache file.
+	 * If the cache file does not exist, cannot be loaded, or is older than the source file,
+	 * the index is created from the source file and persisted to the cache file.
+	 * @param source source file the index is created from
+	 * @param cacheFile index cache file
+	 * @param description index description used in log messages
+	 * @param loadCache loads the index from the cache file
+	 * @param create creates the index from the source file
+	 * @param save writes the index to the cache file
+	 */
+	public static <T> T loadCached(File source, File cacheFile, String description, Loader<T> loadCache, Loader<T> create, Saver<T> save) throws IOException {
+		if (cacheFile.exists() && cacheFile.lastModified() >= source.lastModified()) {
+			try {
+				log.info("Loading " + description + " from " + cacheFile);
+				return loadCache.load(cacheFile);
+			} catch (IOException | RuntimeException e) {
+				log.warn(e, "Unable to load " + description + " from cache " + cacheFile + ". Recreating.");
+			}
+		}
+		log.info("Loading " + description + " from " + source);
+		T index = create.load(source);
+		File parent = cacheFile.getAbsoluteFile().getParentFile();
+		if (parent == null || !parent.canWrite()) {
+			log.warn("Cannot write to " + cacheFile + " not persisting " + description);
+		} else {
+			File tmp = new File(cacheFile.getAbsolutePath() + ".tmp");
+			try {
+				save.save(index, tmp);
+				Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				log.error(e, "Error saving " + description + " to cache file " + cacheFile);
+				Files.deleteIfExists(tmp.toPath());
+			}
+		}
+		return index;
+	}
+}
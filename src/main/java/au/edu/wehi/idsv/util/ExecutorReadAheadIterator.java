@@ -0,0 +1,115 @@
+package au.edu.wehi.idsv.util;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Wrapper iterator that reads batches ahead from the underlying iterator using a shared executor.
+ *
+ * Unlike {@link AsyncBufferedIterator}, no dedicated thread is required for each iterator
+ * so a large number of iterators can read ahead using a small thread pool.
+ * Batch reads of the underlying iterator are chained so the underlying
+ * iterator is only ever accessed by a single task at a time.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ExecutorReadAheadIterator<T> implements CloseableIterator<T> {
+	private final Iterator<? extends T> underlying;
+	private final Executor executor;
+	private final int bufferCount;
+	private final int batchSize;
+	private final ArrayDeque<CompletableFuture<List<T>>> pending = new ArrayDeque<>();
+	private CompletableFuture<List<T>> tail = CompletableFuture.completedFuture(null);
+	private Iterator<T> current = Collections.emptyIterator();
+	/**
+	 * All batches from the underlying iterator have been scheduled
+	 */
+	private boolean eos = false;
+	private volatile boolean closed = false;
+	/**
+	 * @param iterator iterator to traverse
+	 * @param executor executor to perform reads on
+	 * @param bufferCount number of read-ahead batches
+	 * @param batchSize size of each read-ahead batch
+	 */
+	public ExecutorReadAheadIterator(Iterator<? extends T> iterator, Executor executor, int bufferCount, int batchSize) {
+		if (iterator == null) throw new IllegalArgumentException();
+		if (bufferCount <= 0 || batchSize <= 0) throw new IllegalArgumentException("Buffer size must be at least 1.");
+		this.underlying = iterator;
+		this.executor = executor;
+		this.bufferCount = bufferCount;
+		this.batchSize = batchSize;
+		schedule();
+	}
+	public ExecutorReadAheadIterator(Iterator<? extends T> iterator, Executor executor) {
+		this(iterator, executor, gridss.Defaults.ASYNC_BUFFERS, gridss.Defaults.ASYNC_BUFFER_SIZE);
+	}
+	private void schedule() {
+		while (!eos && !closed && pending.size() < bufferCount) {
+			tail = tail.thenApplyAsync(this::readBatch, executor);
+			pending.add(tail);
+		}
+	}
+	/**
+	 * @param previous previous batch
+	 * @return next batch. A batch smaller than the batch size indicates the end of the underlying iterator.
+	 */
+	private List<T> readBatch(List<T> previous) {
+		if (closed || (previous != null && previous.size() < batchSize)) {
+			return Collections.emptyList();
+		}
+		List<T> batch = new ArrayList<>(batchSize);
+		while (batch.size() < batchSize && underlying.hasNext()) {
+			batch.add(underlying.next());
+		}
+		return batch;
+	}
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (closed || pending.isEmpty()) return false;
+			List<T> batch;
+			try {
+				batch = pending.poll().join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+				if (e.getCause() instanceof Error) throw (Error)e.getCause();
+				throw e;
+			}
+			if (batch.size() < batchSize) {
+				// remaining scheduled batches will be empty
+				eos = true;
+				pending.clear();
+			}
+			current = batch.iterator();
+			schedule();
+		}
+		return true;
+	}
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return current.next();
+	}
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		pending.clear();
+		current = Collections.emptyIterator();
+		// wait for any in-progress read to complete before closing
+		tail.handle((result, e) -> null).join();
+		CloserUtil.close(underlying);
+	}
+}
@@ -0,0 +1,114 @@
+package au.edu.wehi.idsv.util;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * Compact set of strings stored as 128-bit fingerprints.
+ *
+ * The strings themselves are not retained. Each distinct fingerprint is assigned an
+ * ordinal in insertion order so callers can associate state with set members using
+ * primitive arrays. Distinct strings sharing a fingerprint are treated as the same
+ * member so callers requiring exact membership should verify any collisions
+ * encountered when building the set.
+ *
+ * Lookups do not modify the set and are safe to perform concurrently once the set
+ * has been built.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class FingerprintSet {
+	private static final float LOAD_FACTOR = 0.5f;
+	private long[] high;
+	private long[] low;
+	/**
+	 * Ordinal + 1 of the fingerprint in each slot. 0 indicates an empty slot.
+	 */
+	private int[] ordinal;
+	private int mask;
+	private int size = 0;
+	public FingerprintSet(int expectedSize) {
+		allocate(HashCommon.arraySize(Math.max(expectedSize, 16), LOAD_FACTOR));
+	}
+	public FingerprintSet() {
+		this(16);
+	}
+	private void allocate(int capacity) {
+		high = new long[capacity];
+		low = new long[capacity];
+		ordinal = new int[capacity];
+		mask = capacity - 1;
+	}
+	public static long fingerprintHigh(CharSequence s) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * 0x100000001B3L;
+		}
+		return HashCommon.mix(h ^ s.length());
+	}
+	public static long fingerprintLow(CharSequence s) {
+		long h = 0xC6A4A7935BD1E995L;
+		for (int i = 0; i < s.length(); i++) {
+			h = Long.rotateLeft(h + s.charAt(i) * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+		}
+		return HashCommon.mix(h ^ s.length());
+	}
+	/**
+	 * @return slot containing the given fingerprint, or the empty slot in which it should be placed
+	 */
+	private int slot(long h, long l) {
+		int slot = (int)h & mask;
+		while (ordinal[slot] != 0 && (high[slot] != h || low[slot] != l)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	/**
+	 * Adds the given string to the set
+	 * @return ordinal of the newly added fingerprint, or -(ordinal + 1) if the fingerprint was already present
+	 */
+	public int add(CharSequence s) {
+		long h = fingerprintHigh(s);
+		long l = fingerprintLow(s);
+		int slot = slot(h, l);
+		if (ordinal[slot] != 0) {
+			return -ordinal[slot];
+		}
+		high[slot] = h;
+		low[slot] = l;
+		ordinal[slot] = ++size;
+		if (size > LOAD_FACTOR * ordinal.length) {
+			rehash(ordinal.length * 2);
+		}
+		return size - 1;
+	}
+	private void rehash(int capacity) {
+		long[] oldHigh = high;
+		long[] oldLow = low;
+		int[] oldOrdinal = ordinal;
+		allocate(capacity);
+		for (int i = 0; i < oldOrdinal.length; i++) {
+			if (oldOrdinal[i] != 0) {
+				int slot = slot(oldHigh[i], oldLow[i]);
+				high[slot] = oldHigh[i];
+				low[slot] = oldLow[i];
+				ordinal[slot] = oldOrdinal[i];
+			}
+		}
+	}
+	/**
+	 * @return ordinal of the fingerprint of the given string, -1 if not present
+	 */
+	public int find(CharSequence s) {
+		return ordinal[slot(fingerprintHigh(s), fingerprintLow(s))] - 1;
+	}
+	public boolean contains(CharSequence s) {
+		return find(s) >= 0;
+	}
+	/**
+	 * @return number of distinct fingerprints in the set
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,128 @@
+package au.edu.wehi.idsv.util;
+
+import java.util.Arrays;
+
+/**
+ * Array backed store of closed intervals ordered by position.
+ *
+ * Intervals occupy the slots [head, tail) of the backing arrays. Free slots are
+ * retained on both sides so insertions and removals near either end of the
+ * window only shift the few intervals between the modification and that end.
+ *
+ * @author Daniel Cameron
+ *
+ * @param <T> value associated with each interval
+ */
+abstract class IntervalRing<T> {
+	private static final int[] EMPTY_INT = new int[0];
+	private static final Object[] EMPTY_OBJECT = new Object[0];
+	private static final int INITIAL_CAPACITY = 16;
+	protected int[] start = EMPTY_INT;
+	protected int[] end = EMPTY_INT;
+	protected Object[] value = EMPTY_OBJECT;
+	protected int head = 0;
+	protected int tail = 0;
+	public int size() {
+		return tail - head;
+	}
+	public boolean isEmpty() {
+		return head == tail;
+	}
+	@SuppressWarnings("unchecked")
+	protected T get(int slot) {
+		return (T)value[slot];
+	}
+	/**
+	 * Replaces the slots [from, to) with count uninitialised slots
+	 * @return slot of the first replacement slot
+	 */
+	protected int resize(int from, int to, int count) {
+		int delta = count - (to - from);
+		if (delta < 0) {
+			if (from - head < tail - to) {
+				System.arraycopy(start, head, start, head - delta, from - head);
+				System.arraycopy(end, head, end, head - delta, from - head);
+				System.arraycopy(value, head, value, head - delta, from - head);
+				Arrays.fill(value, head, head - delta, null);
+				head -= delta;
+				from -= delta;
+			} else {
+				System.arraycopy(start, to, start, to + delta, tail - to);
+				System.arraycopy(end, to, end, to + delta, tail - to);
+				System.arraycopy(value, to, value, to + delta, tail - to);
+				Arrays.fill(value, tail + delta, tail, null);
+				tail += delta;
+			}
+			if (head == tail) {
+				head = 0;
+				tail = 0;
+				from = 0;
+			}
+		} else if (delta > 0) {
+			if (from - head < tail - to && head >= delta) {
+				System.arraycopy(start, head, start, head - delta, from - head);
+				System.arraycopy(end, head, end, head - delta, from - head);
+				System.arraycopy(value, head, value, head - delta, from - head);
+				head -= delta;
+				from -= delta;
+			} else if (tail + delta <= value.length) {
+				System.arraycopy(start, to, start, to + delta, tail - to);
+				System.arraycopy(end, to, end, to + delta, tail - to);
+				System.arraycopy(value, to, value, to + delta, tail - to);
+				tail += delta;
+			} else {
+				int size = size() + delta;
+				int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+				int[] newStart = new int[capacity];
+				int[] newEnd = new int[capacity];
+				Object[] newValue = new Object[capacity];
+				System.arraycopy(start, head, newStart, 0, from - head);
+				System.arraycopy(end, head, newEnd, 0, from - head);
+				System.arraycopy(value, head, newValue, 0, from - head);
+				System.arraycopy(start, to, newStart, from - head + count, tail - to);
+				System.arraycopy(end, to, newEnd, from - head + count, tail - to);
+				System.arraycopy(value, to, newValue, from - head + count, tail - to);
+				start = newStart;
+				end = newEnd;
+				value = newValue;
+				from -= head;
+				head = 0;
+				tail = size;
+			}
+		}
+		return from;
+	}
+	/**
+	 * @return first slot with a start position of at least the given position
+	 */
+	protected int firstStartAtLeast(int position) {
+		int low = head;
+		int high = tail;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (start[mid] < position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	/**
+	 * @return first slot with an end position of at least the given position.
+	 * Only valid when interval end positions are in ascending order.
+	 */
+	protected int firstEndAtLeast(int position) {
+		int low = head;
+		int high = tail;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (end[mid] < position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
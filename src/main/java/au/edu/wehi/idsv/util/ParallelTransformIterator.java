@@ -1,52 +1,64 @@
 package au.edu.wehi.idsv.util;
 
-import com.google.common.collect.Ordering;
-
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 
 /**
  * Performs a given transformation operation over all elements of an iterator.
  * The transform is applied to multiple iterator elements in parallel with
  * the order of the resultant iteration unchanged.
- * 
+ *
+ * Results are published by the worker threads into a ring buffer indexed by
+ * the ordinal of the record so the consumer reads them in order without
+ * any locking or reordering.
+ *
  * This class is not thread-safe and access from multiple threads should
  * be synchronised.
- * 
+ *
  * @author Daniel Cameron
  *
  */
 public class ParallelTransformIterator<T, U> implements Iterator<U> {
-	private static class TransformResult<U> {
-		public TransformResult(final long ordinal, final U result) {
-			this.ordinal = ordinal;
-			this.result = result;
+	/**
+	 * Placeholder for a null transform result
+	 */
+	private static final Object NULL_RESULT = new Object();
+	private static class TransformFailure {
+		public TransformFailure(final Throwable error) {
+			this.error = error;
 		}
-		public final long ordinal;
-		public final U result;
-		@SuppressWarnings("rawtypes")
-		public static Ordering<TransformResult> byOrdinal = Ordering.natural().onResultOf((TransformResult tr) -> tr.ordinal);
+		public final Throwable error;
 	}
 	protected final Iterator<T> it;
 	private final Function<T, U> f;
 	private final int lookahead;
+	private final int batchSize;
 	private final Executor threadpool;
-	private final ArrayBlockingQueue<TransformResult<U>> completed;
-	private final PriorityQueue<TransformResult<U>> results;
+	/**
+	 * Transform results indexed by ordinal modulo lookahead.
+	 * A null slot indicates the result has not yet been published.
+	 */
+	private final AtomicReferenceArray<Object> results;
+	/**
+	 * Consumer thread waiting for a result to be published
+	 */
+	private volatile Thread waiting = null;
 	/**
 	 * Number of records that have been read from the underlying iterator
 	 * but not yet returned from this iterator
 	 */
 	private int dispatched = 0;
 	/**
-	 * Ordinal of last record returned from this iterator
+	 * Ordinal of next record to return from this iterator
 	 */
-	private long lastOrdinal = -1;
-	
+	private long nextOrdinal = 0;
+
 	/**
 	 * Instantiates a new iterator
 	 * @param it underlying iterator
@@ -54,11 +66,23 @@ public class ParallelTransformIterator<T, U> implements Iterator<U> {
 	 * @param lookahead number of record to process in parallel
 	 */
 	public ParallelTransformIterator(final Iterator<T> it, final Function<T, U> f, final int lookahead, Executor threadpool) {
+		this(it, f, lookahead, 1, threadpool);
+	}
+	/**
+	 * Instantiates a new iterator
+	 * @param it underlying iterator
+	 * @param f transform function
+	 * @param lookahead number of record to process in parallel
+	 * @param batchSize number of consecutive records transformed by each task.
+	 * Batching reduces task scheduling overhead for inexpensive transforms.
+	 */
+	public ParallelTransformIterator(final Iterator<T> it, final Function<T, U> f, final int lookahead, final int batchSize, Executor threadpool) {
+		if (lookahead <= 0 || batchSize <= 0) throw new IllegalArgumentException("lookahead and batch size must be positive");
 		this.it = it;
 		this.f = f;
 		this.lookahead = lookahead;
-		this.completed = new ArrayBlockingQueue<TransformResult<U>>(lookahead);
-		this.results = new PriorityQueue<ParallelTransformIterator.TransformResult<U>>(TransformResult.byOrdinal);
+		this.batchSize = Math.min(batchSize, lookahead);
+		this.results = new AtomicReferenceArray<>(lookahead);
 		this.threadpool = threadpool;
 	}
 
@@ -71,46 +95,83 @@ public class ParallelTransformIterator<T, U> implements Iterator<U> {
 		return f.apply(t);
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public U next() {
 		if (!hasNext()) throw new NoSuchElementException();
 		// dispatching here increases our latency as we're always going to have
 		// lookahead record in our buffers, but it improves throughput as we're
-		// not waiting until we have no records dispatched before requeuing. 
+		// not waiting until we have no records dispatched before requeuing.
 		dispatch();
-		while (results.isEmpty() || results.peek().ordinal != lastOrdinal + 1) {
-			TransformResult<U> record;
-			try {
-				record = completed.take();
-			} catch (InterruptedException e) {
-				// what's the correct interrupt handling mechanism?
-				// if we swallow then raise Thread.currentThread().interrupt();
-				// after getting our record, we might end up blocking
-				// since the worker thread doing the work might also have
-				// been interrupted
-				throw new RuntimeException(e);
-			}
-			results.add(record);
+		int slot = (int)(nextOrdinal % lookahead);
+		Object result = results.get(slot);
+		if (result == null) {
+			result = awaitResult(slot);
 		}
-		U result = results.poll().result;
+		results.lazySet(slot, null);
 		dispatched--;
-		lastOrdinal++;
+		nextOrdinal++;
 		dispatch();
-		return result;
+		if (result instanceof TransformFailure) {
+			Throwable t = ((TransformFailure)result).error;
+			if (t instanceof Error) throw (Error)t;
+			if (t instanceof RuntimeException) throw (RuntimeException)t;
+			throw new RuntimeException(t);
+		}
+		return result == NULL_RESULT ? null : (U)result;
+	}
+	private Object awaitResult(int slot) {
+		waiting = Thread.currentThread();
+		try {
+			Object result;
+			while ((result = results.get(slot)) == null) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					throw new RuntimeException(new InterruptedException());
+				}
+			}
+			return result;
+		} finally {
+			waiting = null;
+		}
 	}
 	/**
 	 * Dispatches records until we have lookahead records.
 	 */
 	private void dispatch() {
-		while (dispatched < lookahead && it.hasNext()) {
-			T record = it.next();
-			dispatched++;
-			dispatch(lastOrdinal + dispatched, record);
+		// wait until we can dispatch a full batch unless we're completely idle
+		while ((lookahead - dispatched >= batchSize || dispatched == 0) && it.hasNext()) {
+			int size = Math.min(batchSize, lookahead - dispatched);
+			List<T> batch = new ArrayList<>(size);
+			for (int i = 0; i < size && it.hasNext(); i++) {
+				batch.add(it.next());
+			}
+			long firstOrdinal = nextOrdinal + dispatched;
+			dispatched += batch.size();
+			dispatch(firstOrdinal, batch);
 		}
 	}
-	private void dispatch(final long ordinal, final T record) {
+	private void dispatch(final long firstOrdinal, final List<T> batch) {
 		threadpool.execute(() -> {
-			completed.add(new TransformResult<U>(ordinal, transform(record)));
+			for (int i = 0; i < batch.size(); i++) {
+				Object result;
+				try {
+					result = transform(batch.get(i));
+					if (result == null) {
+						result = NULL_RESULT;
+					}
+				} catch (Throwable t) {
+					result = new TransformFailure(t);
+				}
+				publish(firstOrdinal + i, result);
+			}
 		});
 	}
+	private void publish(long ordinal, Object result) {
+		results.set((int)(ordinal % lookahead), result);
+		Thread consumer = waiting;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
 }
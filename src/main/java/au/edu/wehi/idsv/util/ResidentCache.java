@@ -0,0 +1,82 @@
+package au.edu.wehi.idsv.util;
+
+import htsjdk.samtools.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide cache of expensive to load resources such as reference genomes
+ * and aligner indexes.
+ *
+ * Caching is disabled by default and is only enabled by long-running processes
+ * that execute multiple command line programs in-process. When disabled, every
+ * request loads a new instance.
+ *
+ * Resources are keyed by the absolute path of the file they were loaded from and
+ * are reloaded if the size or modification time of that file changes.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class ResidentCache {
+	private static final Log log = Log.getInstance(ResidentCache.class);
+	private static class Entry {
+		public Entry(long length, long lastModified, Object value) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.value = value;
+		}
+		public final long length;
+		public final long lastModified;
+		public final Object value;
+	}
+	private static volatile boolean enabled = false;
+	private static final Map<String, Entry> cache = new HashMap<>();
+	private ResidentCache() { }
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	public static void setEnabled(boolean enabled) {
+		ResidentCache.enabled = enabled;
+		if (!enabled) {
+			clear();
+		}
+	}
+	public static synchronized void clear() {
+		cache.clear();
+	}
+	/**
+	 * Gets the resource loaded from the given file
+	 * @param kind resource type. Different types of resources can be loaded from the same file.
+	 * @param file file the resource is loaded from
+	 * @param loader resource loader
+	 * @return cached resource if caching is enabled and the file is unchanged, otherwise the newly loaded resource
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String kind, File file, Supplier<T> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+		String key = kind + ":" + file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		// loading is performed while holding the lock so each resource is only loaded once
+		synchronized (ResidentCache.class) {
+			Entry entry = cache.get(key);
+			if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+				log.debug("Using resident ", kind, " for ", file);
+				return (T)entry.value;
+			}
+			if (entry != null) {
+				log.info("Reloading ", kind, " for ", file, " as file has changed.");
+				cache.remove(key);
+			}
+			T value = loader.get();
+			cache.put(key, new Entry(length, lastModified, value));
+			return value;
+		}
+	}
+}
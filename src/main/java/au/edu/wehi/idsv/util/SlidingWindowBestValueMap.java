@@ -0,0 +1,96 @@
+package au.edu.wehi.idsv.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Tracks the best value at each position for coordinate-ordered streaming traversal.
+ *
+ * This is a primitive equivalent of {@link RangeUtil#addWhereBest} over a range map
+ * in which positions before the current traversal position can be discarded.
+ * The best value is cached as a set of disjoint closed intervals held in a ring
+ * ordered by position.
+ *
+ * @author Daniel Cameron
+ *
+ * @param <T> value type
+ */
+public class SlidingWindowBestValueMap<T> extends IntervalRing<T> {
+	private int[] newStart = new int[4];
+	private int[] newEnd = new int[4];
+	private Object[] newValue = new Object[4];
+	private int newCount;
+	/**
+	 * Associates the given value with all positions in the given interval
+	 * for which it is better than the existing value.
+	 * @param comparator value ordering. Existing values are retained on ties.
+	 */
+	public void putWhereBest(int start, int end, T value, Comparator<? super T> comparator) {
+		int from = firstEndAtLeast(start);
+		int to = from;
+		newCount = 0;
+		int position = start;
+		for (; to < tail && this.start[to] <= end; to++) {
+			T existing = get(to);
+			if (this.start[to] < start) {
+				append(this.start[to], start - 1, existing);
+			} else if (this.start[to] > position) {
+				append(position, this.start[to] - 1, value);
+			}
+			int overlapEnd = Math.min(this.end[to], end);
+			append(Math.max(this.start[to], start), overlapEnd, comparator.compare(existing, value) >= 0 ? existing : value);
+			if (this.end[to] > end) {
+				append(end + 1, this.end[to], existing);
+			}
+			position = overlapEnd + 1;
+		}
+		if (position <= end) {
+			append(position, end, value);
+		}
+		int slot = resize(from, to, newCount);
+		System.arraycopy(newStart, 0, this.start, slot, newCount);
+		System.arraycopy(newEnd, 0, this.end, slot, newCount);
+		System.arraycopy(newValue, 0, this.value, slot, newCount);
+		Arrays.fill(newValue, 0, newCount, null);
+	}
+	private void append(int start, int end, Object value) {
+		if (newCount > 0 && newValue[newCount - 1] == value && newEnd[newCount - 1] + 1 == start) {
+			newEnd[newCount - 1] = end;
+			return;
+		}
+		if (newCount == newValue.length) {
+			newStart = Arrays.copyOf(newStart, newCount * 2);
+			newEnd = Arrays.copyOf(newEnd, newCount * 2);
+			newValue = Arrays.copyOf(newValue, newCount * 2);
+		}
+		newStart[newCount] = start;
+		newEnd[newCount] = end;
+		newValue[newCount] = value;
+		newCount++;
+	}
+	/**
+	 * Removes all values associated with positions before the given position
+	 */
+	public void removeBefore(int position) {
+		int slot = firstEndAtLeast(position);
+		resize(head, slot, 0);
+		if (!isEmpty() && this.start[head] < position) {
+			this.start[head] = position;
+		}
+	}
+	/**
+	 * Finds the best value associated with any position in the given interval.
+	 * @param comparator value ordering. Ties are resolved in favour of the value at the lowest position.
+	 * @return best value, null if no values are associated with the interval
+	 */
+	public T findBest(int start, int end, Comparator<? super T> comparator) {
+		T best = null;
+		for (int slot = firstEndAtLeast(start); slot < tail && this.start[slot] <= end; slot++) {
+			T v = get(slot);
+			if (best == null || comparator.compare(v, best) > 0) {
+				best = v;
+			}
+		}
+		return best;
+	}
+}
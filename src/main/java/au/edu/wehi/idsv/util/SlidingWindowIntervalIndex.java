@@ -0,0 +1,95 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.AbstractIterator;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Closed interval lookup specialised for coordinate-ordered streaming traversal.
+ *
+ * Intervals are held in a ring ordered by start position. When intervals are
+ * added and removed in approximately start order, both operations only touch
+ * the ends of the ring, and overlap queries scan only the intervals starting
+ * within the widest interval width of the query.
+ *
+ * Overlapping intervals are returned in start, end, then insertion order.
+ *
+ * @author Daniel Cameron
+ *
+ * @param <T> value associated with each interval
+ */
+public class SlidingWindowIntervalIndex<T> extends IntervalRing<T> {
+	/**
+	 * Upper bound on end - start of the intervals in the window
+	 */
+	private int maxWidth = 0;
+	public void add(int start, int end, T value) {
+		int slot = firstStartAtLeast(start);
+		while (slot < tail && this.start[slot] == start && this.end[slot] <= end) {
+			slot++;
+		}
+		slot = resize(slot, slot, 1);
+		this.start[slot] = start;
+		this.end[slot] = end;
+		this.value[slot] = value;
+		maxWidth = Math.max(maxWidth, end - start);
+	}
+	/**
+	 * Removes the first matching value associated with the given interval
+	 * @return true if a matching value was found, false otherwise
+	 */
+	public boolean remove(int start, int end, T value) {
+		for (int slot = firstStartAtLeast(start); slot < tail && this.start[slot] == start; slot++) {
+			if (this.end[slot] == end && Objects.equals(this.value[slot], value)) {
+				resize(slot, slot + 1, 0);
+				if (isEmpty()) {
+					maxWidth = 0;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+	private int firstPossibleOverlap(int start) {
+		return firstStartAtLeast((int)Math.max(Integer.MIN_VALUE, (long)start - maxWidth));
+	}
+	/**
+	 * Finds the best value overlapping the given interval.
+	 * @param filter values to consider
+	 * @param comparator value ordering. Ties are resolved in favour of the first overlapping value.
+	 * @return best matching value, null if no values match
+	 */
+	public T findBestOverlapping(int start, int end, Predicate<? super T> filter, Comparator<? super T> comparator) {
+		T best = null;
+		for (int slot = firstPossibleOverlap(start); slot < tail && this.start[slot] <= end; slot++) {
+			if (this.end[slot] >= start) {
+				T v = get(slot);
+				if (filter.test(v) && (best == null || comparator.compare(v, best) > 0)) {
+					best = v;
+				}
+			}
+		}
+		return best;
+	}
+	/**
+	 * Iterates over the values overlapping the given interval.
+	 * The index must not be modified during iteration.
+	 */
+	public Iterator<T> findAllOverlapping(int start, int end) {
+		return new AbstractIterator<T>() {
+			private int slot = firstPossibleOverlap(start);
+			@Override
+			protected T computeNext() {
+				for (; slot < tail && SlidingWindowIntervalIndex.this.start[slot] <= end; slot++) {
+					if (SlidingWindowIntervalIndex.this.end[slot] >= start) {
+						return get(slot++);
+					}
+				}
+				return endOfData();
+			}
+		};
+	}
+}
@@ -0,0 +1,116 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import htsjdk.samtools.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Directed acyclic graph of pipeline stages.
+ *
+ * Each stage is started as soon as all the stages it depends on have completed
+ * so independent stages are executed concurrently. Stages must be added after
+ * the stages they depend on thus the graph is always acyclic.
+ *
+ * Stages are executed on a dedicated thread pool so stages can safely block
+ * on tasks submitted to a shared worker thread pool.
+ *
+ * @author Daniel Cameron
+ *
+ */
+public class StageGraph {
+	private static final Log log = Log.getInstance(StageGraph.class);
+	@FunctionalInterface
+	public interface Stage {
+		void run() throws Exception;
+	}
+	private static class Node {
+		public Node(String name, Stage stage, List<Node> dependencies) {
+			this.name = name;
+			this.stage = stage;
+			this.dependencies = dependencies;
+		}
+		public final String name;
+		public final Stage stage;
+		public final List<Node> dependencies;
+		public CompletableFuture<Void> future;
+		/**
+		 * Exception thrown by this stage
+		 */
+		public volatile Throwable error;
+	}
+	private final Map<String, Node> stages = new LinkedHashMap<>();
+	/**
+	 * Adds a stage to the graph
+	 * @param name unique stage name
+	 * @param stage stage to execute
+	 * @param dependencies names of previously added stages that must complete before this stage can start
+	 */
+	public StageGraph add(String name, Stage stage, String... dependencies) {
+		if (stages.containsKey(name)) {
+			throw new IllegalArgumentException("Duplicate stage " + name);
+		}
+		List<Node> dependsOn = new ArrayList<>(dependencies.length);
+		for (String d : dependencies) {
+			Node node = stages.get(d);
+			if (node == null) {
+				throw new IllegalArgumentException(String.format("Stage %s depends on unknown stage %s", name, d));
+			}
+			dependsOn.add(node);
+		}
+		stages.put(name, new Node(name, stage, dependsOn));
+		return this;
+	}
+	/**
+	 * Executes all stages. Stages that do not depend on a failed stage are
+	 * executed to completion before the first failure is reported.
+	 * @throws ExecutionException thrown if any stage failed.
+	 * @throws InterruptedException
+	 */
+	public void execute() throws ExecutionException, InterruptedException {
+		ExecutorService stagepool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Stage-%d").build());
+		try {
+			for (Node node : stages.values()) {
+				CompletableFuture<?>[] dependsOn = node.dependencies.stream().map(n -> n.future).toArray(CompletableFuture<?>[]::new);
+				node.future = CompletableFuture.allOf(dependsOn).thenRunAsync(() -> run(node), stagepool);
+			}
+			for (Node node : stages.values()) {
+				try {
+					node.future.get();
+				} catch (ExecutionException | CancellationException e) {
+					// reported below
+				}
+			}
+		} catch (InterruptedException e) {
+			stagepool.shutdownNow();
+			throw e;
+		} finally {
+			stagepool.shutdown();
+		}
+		for (Node node : stages.values()) {
+			if (node.error != null) {
+				throw new ExecutionException(String.format("Stage %s failed", node.name), node.error);
+			}
+		}
+	}
+	private static void run(Node node) {
+		log.debug("Starting stage ", node.name);
+		try {
+			node.stage.run();
+		} catch (Throwable t) {
+			log.error(t, "Stage ", node.name, " failed.");
+			node.error = t;
+			throw new CompletionException(t);
+		}
+		log.debug("Completed stage ", node.name);
+	}
+}
@@ -2,41 +2,76 @@ package au.edu.wehi.idsv.util;
 
 import au.edu.wehi.idsv.visualisation.TrackedBuffer;
 import com.google.common.base.Function;
-import com.google.common.collect.*;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
 import htsjdk.samtools.util.Log;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 /**
  * Sorts a mostly-sorted input sequence.
- * 
+ *
  * As SAM/BAM input is sorted by alignment start position, sorting on evidence
  * position does not require a full sort as the difference between breakend
  * start position and the alignment start position is bounded by the fragment size
  * for read pair evidence, and the read length for soft clip evidence.
- * 
+ *
+ * Records are buffered in a ring of position buckets covering the sorting window.
+ * The sort order is only used to order records within a bucket so the sort order
+ * must be consistent with the record coordinate.
+ *
  * @author Daniel Cameron
  *
  * @param <T>
  */
 public class WindowedSortingIterator<T> extends AbstractIterator<T> implements TrackedBuffer {
 	private static final Log log = Log.getInstance(WindowedSortingIterator.class);
-	private final PriorityQueue<T> calls; 
+	/**
+	 * Maximum number of buckets in the ring. Windows larger than this
+	 * are covered by buckets spanning multiple positions.
+	 */
+	private static final int MAX_BUCKETS = 4096;
+	private static final int MIN_BUCKETS = 64;
 	private final long windowSize;
-	private final PeekingIterator<T> it;
+	private final Iterator<T> it;
 	private final Function<T, Long> toCoordinate;
 	private long lastPosition = Long.MIN_VALUE;
 	private final Comparator<T> sortOrder;
 	private T lastEmitted = null;
+	/**
+	 * Next record from the underlying iterator that has not yet been buffered
+	 */
+	private T pending = null;
+	private long pendingPosition;
+	/**
+	 * Bucket for each key. A record is assigned to key position >> shift.
+	 */
+	private Bucket<T>[] buckets;
+	/**
+	 * Bitmap of non-empty buckets
+	 */
+	private long[] occupied;
+	private int mask;
+	private int shift;
+	/**
+	 * Key of the first non-empty bucket
+	 */
+	private long headKey;
+	/**
+	 * Key of the last non-empty bucket
+	 */
+	private long maxKey;
+	private int size = 0;
 	/**
 	 * Creates a new sorted iterator from a mostly-sorted sequence
 	 * @param it mostly-sorted sequence. Records cannot be out of order by more than windowSize
 	 * @param transform Coordinate transform for position of record.
-	 * @param windowSize Maximum coordinate-space length that records can deviate from a sorted sequence 
+	 * @param windowSize Maximum coordinate-space length that records can deviate from a sorted sequence
 	 */
 	public WindowedSortingIterator(final Iterator<T> it, final Function<T, Long> transform, final long windowSize) {
 		this(it, transform, windowSize, new Ordering<T>() {
@@ -47,36 +82,198 @@ public class WindowedSortingIterator<T> extends AbstractIterator<T> implements T
 	}
 	public WindowedSortingIterator(final Iterator<T> it, final Function<T, Long> transform, final long windowSize, final Comparator<T> sortOrder) {
 		this.windowSize = windowSize;
-		this.it = Iterators.peekingIterator(it);
+		this.it = it;
 		this.toCoordinate = transform;
-		this.calls = new PriorityQueue<T>(32, sortOrder);
 		this.sortOrder = sortOrder;
+		int initialShift = 0;
+		while ((Math.max(0, windowSize) >> initialShift) + 2 > MAX_BUCKETS) {
+			initialShift++;
+		}
+		allocate(Math.max(MIN_BUCKETS, Integer.highestOneBit((int)(Math.max(0, windowSize) >> initialShift) + 1) << 1), initialShift);
+	}
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity, int shift) {
+		this.buckets = (Bucket<T>[])new Bucket[capacity];
+		this.occupied = new long[capacity / 64];
+		this.mask = capacity - 1;
+		this.shift = shift;
 	}
 	@Override
 	protected T computeNext() {
 		advanceUnderlying();
-		if (calls.isEmpty()) return endOfData();
-		T next = calls.poll();
-		long nextPos = toCoordinate.apply(next);
+		if (size == 0) return endOfData();
+		int slot = (int)(headKey & mask);
+		Bucket<T> bucket = buckets[slot];
+		long nextPos = bucket.peekPosition();
+		T next = bucket.poll();
+		size--;
+		if (bucket.isEmpty()) {
+			occupied[slot >>> 6] &= ~(1L << slot);
+			if (size > 0) {
+				headKey = nextOccupiedKey(headKey);
+			}
+		}
 		if (nextPos < lastPosition) {
 			log.error("Sanity check failure: sorting window size too small: evidence out of order at linear coordinate" + nextPos);
 		}
-		if (lastEmitted != null && sortOrder.compare(lastEmitted, next) > 0) {
+		// records at different positions are ordered by their bucket
+		if (nextPos <= lastPosition && lastEmitted != null && sortOrder.compare(lastEmitted, next) > 0) {
 			throw new IllegalStateException(String.format("Unable to sort output with window size of %d. %s emitted before %s", windowSize, lastEmitted, next));
 		}
+		lastPosition = nextPos;
 		lastEmitted = next;
 		return next;
 	}
 	private void advanceUnderlying() {
-		while (it.hasNext() && (calls.isEmpty() || nextRecordCouldBeAtStartOfWindow())) {
-			T next = it.next();
-			calls.add(next);
+		while (pending != null || it.hasNext()) {
+			if (pending == null) {
+				pending = it.next();
+				pendingPosition = toCoordinate.apply(pending);
+			}
+			if (size > 0 && pendingPosition > buckets[(int)(headKey & mask)].peekPosition() + windowSize) {
+				// next record can't be at the start of the window
+				break;
+			}
+			add(pending, pendingPosition);
+			pending = null;
 		}
 	}
-	private boolean nextRecordCouldBeAtStartOfWindow() {
-		long bufferPosition = toCoordinate.apply(calls.peek());
-		long nextPosition = toCoordinate.apply(it.peek());
-		return nextPosition <= bufferPosition + windowSize;
+	private void add(T record, long position) {
+		long key = position >> shift;
+		if (size == 0) {
+			headKey = key;
+			maxKey = key;
+		} else {
+			while (Math.max(maxKey, key) - Math.min(headKey, key) > mask) {
+				grow();
+				key = position >> shift;
+			}
+			headKey = Math.min(headKey, key);
+			maxKey = Math.max(maxKey, key);
+		}
+		int slot = (int)(key & mask);
+		Bucket<T> bucket = buckets[slot];
+		if (bucket == null) {
+			bucket = new Bucket<>();
+			buckets[slot] = bucket;
+		}
+		bucket.add(record, position, sortOrder);
+		occupied[slot >>> 6] |= 1L << slot;
+		size++;
+	}
+	/**
+	 * Increases the coordinate span of the ring so the buffered records
+	 * are no longer restricted to the sorting window.
+	 * The number of buckets is doubled until the limit is reached
+	 * after which the positions covered by each bucket is doubled.
+	 */
+	private void grow() {
+		Bucket<T>[] oldBuckets = buckets;
+		long[] oldOccupied = occupied;
+		int oldMask = mask;
+		int oldShift = shift;
+		if (buckets.length < MAX_BUCKETS) {
+			allocate(buckets.length * 2, shift);
+		} else {
+			allocate(buckets.length, shift + 1);
+		}
+		int delta = shift - oldShift;
+		for (long key = headKey; key <= maxKey; key++) {
+			int oldSlot = (int)(key & oldMask);
+			if ((oldOccupied[oldSlot >>> 6] & (1L << oldSlot)) != 0) {
+				Bucket<T> bucket = oldBuckets[oldSlot];
+				int slot = (int)((key >> delta) & mask);
+				if (buckets[slot] == null) {
+					buckets[slot] = bucket;
+				} else {
+					buckets[slot].addAll(bucket, sortOrder);
+				}
+				occupied[slot >>> 6] |= 1L << slot;
+			}
+		}
+		headKey >>= delta;
+		maxKey >>= delta;
+	}
+	/**
+	 * Finds the first non-empty bucket after the given key
+	 */
+	private long nextOccupiedKey(long key) {
+		while (key <= maxKey) {
+			int slot = (int)(key & mask);
+			long bits = occupied[slot >>> 6] & (-1L << slot);
+			if (bits != 0) {
+				return key + Long.numberOfTrailingZeros(bits) - (slot & 63);
+			}
+			key += 64 - (slot & 63);
+		}
+		throw new IllegalStateException("Sanity check failure: no buffered records found");
+	}
+	/**
+	 * Records sharing a bucket, ordered by the sort order
+	 */
+	private static final class Bucket<T> {
+		private Object[] records = new Object[2];
+		private long[] positions = new long[2];
+		private int start = 0;
+		private int end = 0;
+		public boolean isEmpty() {
+			return start == end;
+		}
+		public long peekPosition() {
+			return positions[start];
+		}
+		@SuppressWarnings("unchecked")
+		public T poll() {
+			T record = (T)records[start];
+			records[start] = null;
+			start++;
+			if (start == end) {
+				start = 0;
+				end = 0;
+			}
+			return record;
+		}
+		@SuppressWarnings("unchecked")
+		public void add(T record, long position, Comparator<T> sortOrder) {
+			if (end == records.length) {
+				if (start > 0) {
+					System.arraycopy(records, start, records, 0, end - start);
+					System.arraycopy(positions, start, positions, 0, end - start);
+					Arrays.fill(records, end - start, end, null);
+					end -= start;
+					start = 0;
+				} else {
+					records = Arrays.copyOf(records, records.length * 2);
+					positions = Arrays.copyOf(positions, positions.length * 2);
+				}
+			}
+			int index = end;
+			if (end > start && sortOrder.compare((T)records[end - 1], record) > 0) {
+				// binary search for the first record after the new record
+				int low = start;
+				int high = end - 1;
+				while (low < high) {
+					int mid = (low + high) >>> 1;
+					if (sortOrder.compare((T)records[mid], record) > 0) {
+						high = mid;
+					} else {
+						low = mid + 1;
+					}
+				}
+				index = low;
+				System.arraycopy(records, index, records, index + 1, end - index);
+				System.arraycopy(positions, index, positions, index + 1, end - index);
+			}
+			records[index] = record;
+			positions[index] = position;
+			end++;
+		}
+		@SuppressWarnings("unchecked")
+		public void addAll(Bucket<T> bucket, Comparator<T> sortOrder) {
+			for (int i = bucket.start; i < bucket.end; i++) {
+				add((T)bucket.records[i], bucket.positions[i], sortOrder);
+			}
+		}
 	}
 	private String trackedBufferName_calls = "windowedSort";
 	@Override
@@ -86,7 +283,7 @@ public class WindowedSortingIterator<T> extends AbstractIterator<T> implements T
 	@Override
 	public List<NamedTrackedBuffer> currentTrackedBufferSizes() {
 		return ImmutableList.of(
-				new NamedTrackedBuffer(trackedBufferName_calls, calls.size())
+				new NamedTrackedBuffer(trackedBufferName_calls, size)
 				);
 	}
 }
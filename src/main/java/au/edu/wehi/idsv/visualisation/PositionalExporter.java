@@ -1,6 +1,5 @@
 package au.edu.wehi.idsv.visualisation;
 
-import au.edu.wehi.idsv.debruijn.KmerEncodingHelper;
 import au.edu.wehi.idsv.debruijn.positional.*;
 import htsjdk.samtools.util.CloserUtil;
 
@@ -24,21 +23,21 @@ public class PositionalExporter {
 	 * Export loaded graph
 	 * @throws IOException 
 	 */
-	public static void exportFastg(File file, int k, Collection<KmerPathNode> nodes) throws IOException {
+	public static void exportFastg(File file, KmerEncoding encoding, Collection<KmerPathNode> nodes) throws IOException {
 		BufferedWriter writer = null;
 		try {
 			writer = new BufferedWriter(new FileWriter(file));
 			writer.append("#FASTG:begin:version=1.0;\n");
 			for (KmerPathNode n : nodes) {
 				writer.append('>');
-				writer.append(id(n, k));
+				writer.append(id(n, encoding));
 				List<KmerPathNode> nextList = n.next();
 				if (nextList.size() > 0) {
 					writer.append(':');
-					writer.append(id(nextList.get(0), k));
+					writer.append(id(nextList.get(0), encoding));
 					for (int i = 1; i < nextList.size(); i++) {
 						writer.append(',');
-						writer.append(id(nextList.get(i), k));
+						writer.append(id(nextList.get(i), encoding));
 					}
 				}
 				writer.append(":start=");
@@ -50,7 +49,7 @@ public class PositionalExporter {
 				writer.append(",reference=");
 				writer.append(n.isReference() ? '1' : '0');
 				writer.append(";\n");
-				writer.append(new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)));
+				writer.append(new String(encoding.baseCalls(n.pathKmers())));
 				writer.append('\n');
 			}
 			writer.append("#FASTG:end;\n");
@@ -58,8 +57,8 @@ public class PositionalExporter {
 			CloserUtil.close(writer);
 		}
 	}
-	public static String id(KmerNode n, int k) {
-		String str = String.format("%s_%d", new String(KmerEncodingHelper.encodedToPicardBases(k, n.firstKmer())), n.firstStart());
+	public static String id(KmerNode n, KmerEncoding encoding) {
+		String str = String.format("%s_%d", new String(encoding.bases(n.firstKmer())), n.firstStart());
 		if (n.firstStart() < 0) {
 			str = str.replace('-', '_');
 		}
@@ -70,12 +69,12 @@ public class PositionalExporter {
 	 * Attempts to be consistent with ABySS attribute names but these are poorly
 	 * documented in ABySS.
 	 * @param file
-	 * @param k
+	 * @param encoding kmer encoding
 	 * @param nodes graph nodes
 	 * @param contig graph nodes being assembled
 	 * @throws IOException
 	 */
-	public static void exportDot(File file, int k, Collection<KmerPathNode> nodes, Collection<KmerPathSubnode> contig) throws IOException {
+	public static void exportDot(File file, KmerEncoding encoding, Collection<KmerPathNode> nodes, Collection<KmerPathSubnode> contig) throws IOException {
 		// d distance between contigs (negative indicates overlap)
 		// l length
 		// C kmer coverage
@@ -89,24 +88,24 @@ public class PositionalExporter {
 			writer = new BufferedWriter(new FileWriter(file));
 			writer.append("digraph G {\n");
 			//writer.append("rankdir=LR;");
-			writer.append(String.format("	graph [k=%d];\n", k));
+			writer.append(String.format("	graph [k=%d];\n", encoding.k()));
 			// nodes
 			for (KmerPathNode n : nodes) {
 				writer.append('\t');
-				writer.append(id(n, k));
+				writer.append(id(n, encoding));
 				writer.append(String.format(" [s=%d,e=%d,wid=%d,w=%d,l=%d,r=%s,seq=\"%s\",contig=%s];\n",
 						n.firstStart(), n.firstEnd(), n.width(), n.weight(), n.length(), n.isReference() ? "true" : "false",
-								new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)),
+								new String(encoding.baseCalls(n.pathKmers())),
 								lookup.contains(n) ? "true" : "false"));
 			}
 			// edges
 			for (KmerPathNode n : nodes) {
 				for (KmerPathNode next : n.next()) {
 					writer.append('\t');
-					writer.append(id(n,k));
+					writer.append(id(n, encoding));
 					writer.append(" -> ");
-					writer.append(id(next,k));
-					writer.append(String.format(" [seq=\"%s\"];\n", KmerEncodingHelper.lastBaseEncodedToPicardBase(next.firstKmer())));
+					writer.append(id(next, encoding));
+					writer.append(String.format(" [seq=\"%s\"];\n", encoding.lastBase(next.firstKmer())));
 					writer.append(";\n");
 				}
 			}
@@ -115,15 +114,15 @@ public class PositionalExporter {
 			CloserUtil.close(writer);
 		}
 	}
-	public static void exportfasta(File file, int k, Collection<KmerPathNode> nodes) throws IOException {
+	public static void exportfasta(File file, KmerEncoding encoding, Collection<KmerPathNode> nodes) throws IOException {
 		BufferedWriter writer = null;
 		try {
 			writer = new BufferedWriter(new FileWriter(file));
 			for (KmerPathNode n : nodes) {
 				writer.append('>');
-				writer.append(id(n, k));
+				writer.append(id(n, encoding));
 				writer.append('\n');
-				writer.append(new String(KmerEncodingHelper.baseCalls(n.pathKmers(), k)));
+				writer.append(new String(encoding.baseCalls(n.pathKmers())));
 				writer.append('\n');
 			}
 		} finally {
@@ -133,7 +132,7 @@ public class PositionalExporter {
 	/**
 	 * Exports a full-size uncompressed positional de Bruijn graph to graphviz dot format
 	 */
-	public static void exportNodeDot(File file, int k, Collection<KmerPathNode> graph, Collection<KmerPathSubnode> contig) throws IOException {
+	public static void exportNodeDot(File file, KmerEncoding encoding, Collection<KmerPathNode> graph, Collection<KmerPathSubnode> contig) throws IOException {
 		List<KmerNode> nodes = ImmutableKmerNode.split(graph).collect(Collectors.toList());
 		Set<KmerNode> lookup = new TreeSet<KmerNode>(KmerNodeUtil.ByFirstStartKmer);
 		lookup.addAll(nodes);
@@ -145,25 +144,25 @@ public class PositionalExporter {
 		try {
 			writer = new BufferedWriter(new FileWriter(file));
 			writer.append("digraph G {\n");
-			writer.append(String.format("\tgraph [k=%d];\n", k));
+			writer.append(String.format("\tgraph [k=%d];\n", encoding.k()));
 			// nodes
 			for (KmerNode n : nodes) {
 				writer.append('\t');
-				writer.append(id(n, k));
+				writer.append(id(n, encoding));
 				writer.append(String.format(" [s=%d,w=%d,r=%s,seq=\"%s\",contig=%s];\n",
-					n.firstStart(),n.weight(), n.isReference() ? "true" : "false", new String(KmerEncodingHelper.encodedToPicardBases(k, n.firstKmer())),
+					n.firstStart(),n.weight(), n.isReference() ? "true" : "false", new String(encoding.bases(n.firstKmer())),
 					contigLookup.contains(n) ? "true" : "false"));
 			}
 			// edges
 			for (KmerNode n : nodes) {
-				for (long nextkmer : KmerEncodingHelper.nextStates(k, n.lastKmer())) {
+				for (long nextkmer : encoding.nextStates(n.lastKmer())) {
 					ImmutableKmerNode next = new ImmutableKmerNode(nextkmer, n.firstEnd() + 1, n.firstEnd() + 1, false, 0);
 					if (lookup.contains(next)) {
 						writer.append('\t');
-						writer.append(id(n,k));
+						writer.append(id(n, encoding));
 						writer.append(" -> ");
-						writer.append(id(next, k));
-						writer.append(String.format(" [ label = \"%c\" ]", KmerEncodingHelper.lastBaseEncodedToPicardBase(next.firstKmer())));
+						writer.append(id(next, encoding));
+						writer.append(String.format(" [ label = \"%c\" ]", encoding.lastBase(next.firstKmer())));
 						writer.append(";\n");
 					}
 				}
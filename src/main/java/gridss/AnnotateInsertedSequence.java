@@ -5,6 +5,7 @@ import au.edu.wehi.idsv.VariantContextRepeatMaskerAnnotator;
 import au.edu.wehi.idsv.alignment.BwaStreamingAligner;
 import au.edu.wehi.idsv.alignment.ExternalProcessStreamingAligner;
 import au.edu.wehi.idsv.alignment.StreamingAligner;
+import au.edu.wehi.idsv.repeatmasker.RepeatMaskerIntervalIndex;
 import au.edu.wehi.idsv.util.FileHelper;
 import au.edu.wehi.idsv.vcf.InsertedSequenceAnnotator;
 import au.edu.wehi.idsv.vcf.VcfInfoAttributes;
@@ -125,7 +126,7 @@ public class AnnotateInsertedSequence extends ReferenceCommandLineProgram {
             }
             if (REPEAT_MASKER_BED != null) {
                 log.info("Loading RepeatMasker bed file from " + REPEAT_MASKER_BED);
-                VariantContextRepeatMaskerAnnotator rma = new VariantContextRepeatMaskerAnnotator(REPEAT_MASKER_BED);
+                VariantContextRepeatMaskerAnnotator rma = new VariantContextRepeatMaskerAnnotator(RepeatMaskerIntervalIndex.load(REPEAT_MASKER_BED, RepeatMaskerIntervalIndex.getCacheFile(REPEAT_MASKER_BED)));
                 log.info("RepeatMasker bed file loaded from " + REPEAT_MASKER_BED);
                 Set<String> commonContigs = Sets.intersection(Sets.newHashSet(rma.getRepeatMaskerContigs()), dict.getSequences().stream().map(s -> s.getContig()).collect(Collectors.toSet()));
                 if (commonContigs.size() < Math.min(rma.getRepeatMaskerContigs().size(), dict.size()) * 0.5) {
@@ -1,9 +1,9 @@
 package gridss;
 
 import au.edu.wehi.idsv.*;
+import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import com.google.common.io.Files;
 import gridss.cmdline.VcfTransformCommandLineProgram;
-import htsjdk.samtools.util.AsyncBufferedIterator;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.Log;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
@@ -59,8 +59,8 @@ public class AnnotateVariants extends VcfTransformCommandLineProgram {
 		copyInputs(arc);
 		copyInputs(ihom);
 		ae.INPUT_VCF = INPUT_VCF; // needed for caching 
-		calls = new AsyncBufferedIterator<VariantContextDirectedEvidence>(ae.iterator(calls, threadpool), 128, 2, "AllocateEvidence");
-		calls = new AsyncBufferedIterator<VariantContextDirectedEvidence>(arc.iterator(calls, threadpool), 128, 2, "AnnotateReferenceCoverage");
+		calls = new AsyncBufferedIterator<VariantContextDirectedEvidence>(ae.iterator(calls, threadpool), "AllocateEvidence", 2, 128);
+		calls = new AsyncBufferedIterator<VariantContextDirectedEvidence>(arc.iterator(calls, threadpool), "AnnotateReferenceCoverage", 2, 128);
 		calls = ihom.iterator(calls, threadpool);
 		AnnotateAlleleFraction aaf = new AnnotateAlleleFraction(new AlleleFractionAnnotator(getContext(), getSamEvidenceSources()));
 		return aaf.iterator(calls, threadpool);
@@ -4,8 +4,7 @@ import au.edu.wehi.idsv.AssemblyEvidenceSource;
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.SAMEvidenceSource;
 import au.edu.wehi.idsv.util.FileHelper;
-import com.google.common.base.Function;
-import com.google.common.collect.Lists;
+import au.edu.wehi.idsv.util.StageGraph;
 import gridss.cmdline.FullEvidenceCommandLineProgram;
 import gridss.cmdline.MultipleSamFileCommandLineProgram;
 import htsjdk.samtools.SamPairUtil.PairOrientation;
@@ -18,11 +17,11 @@ import picard.cmdline.StandardOptionDefinitions;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Extracts structural variation evidence and assembles breakends
@@ -41,39 +40,63 @@ public class CallVariants extends FullEvidenceCommandLineProgram {
 	public CallVariants() {
 		super(false);
 	}
-	private void extractEvidence(ExecutorService threadpool, List<SAMEvidenceSource> samEvidence) throws InterruptedException, ExecutionException {
-		log.info("Extracting evidence.");
-		for (Future<Void> future : threadpool.invokeAll(Lists.transform(samEvidence, new Function<SAMEvidenceSource, Callable<Void>>() {
-				@Override
-				public Callable<Void> apply(final SAMEvidenceSource input) {
-					return new Callable<Void>() {
-						@Override
-						public Void call() throws Exception {
-							try {
-								input.ensureMetrics();
-								InsertSizeMetrics ism = input.getMetrics().getInsertSizeMetrics();
-					    		if (ism != null && ism.PAIR_ORIENTATION != PairOrientation.FR) {
-					    			String msg = "GRIDSS currently supports only FR read pair orientation. If usage with other read pair orientations is required, please raise an enchancement request at https://github.com/PapenfussLab/gridss/issues"; 
-					    			log.error(msg);
-					    			throw new RuntimeException(msg);
-					    		}
-								input.ensureExtracted();
-							} catch (Exception e) {
-								log.error(e, "Fatal exception thrown by worker thread.");
-								if (getContext().getConfig().terminateOnFirstError) {
-									System.exit(1);
-								}
-								throw e;
-							}
-							return null;
-						}
-					};
-				}
-			}))) {
-			// throw exception from worker thread here
-			future.get();
+	private void extractEvidence(SAMEvidenceSource input) throws Exception {
+		try {
+			input.ensureMetrics();
+			InsertSizeMetrics ism = input.getMetrics().getInsertSizeMetrics();
+			if (ism != null && ism.PAIR_ORIENTATION != PairOrientation.FR) {
+				String msg = "GRIDSS currently supports only FR read pair orientation. If usage with other read pair orientations is required, please raise an enchancement request at https://github.com/PapenfussLab/gridss/issues"; 
+				log.error(msg);
+				throw new RuntimeException(msg);
+			}
+			input.ensureExtracted();
+		} catch (Exception e) {
+			log.error(e, "Fatal exception thrown by worker thread.");
+			if (getContext().getConfig().terminateOnFirstError) {
+				System.exit(1);
+			}
+			throw e;
 		}
-		log.info("Evidence extraction complete.");
+	}
+	/**
+	 * Builds the pipeline stage graph. Evidence extraction for each input
+	 * is independent and performed concurrently. Evidence caches are only
+	 * required for variant calling so are written concurrently with assembly.
+	 */
+	private StageGraph createStageGraph(ExecutorService threadpool) {
+		StageGraph graph = new StageGraph();
+		List<SAMEvidenceSource> samEvidence = getSamEvidenceSources();
+		String[] extractStages = new String[samEvidence.size()];
+		for (int i = 0; i < samEvidence.size(); i++) {
+			SAMEvidenceSource input = samEvidence.get(i);
+			extractStages[i] = String.format("extract %d:%s", i, input.getFile().getName());
+			// extraction is performed on the worker pool to bound the number of concurrent extractions
+			graph.add(extractStages[i], () -> threadpool.submit(() -> { extractEvidence(input); return null; }).get());
+		}
+		List<String> callDependencies = new ArrayList<>();
+		if (au.edu.wehi.idsv.Defaults.USE_EVIDENCE_CACHE) {
+			for (int i = 0; i < samEvidence.size(); i++) {
+				SAMEvidenceSource input = samEvidence.get(i);
+				String cacheStage = String.format("evidence cache %d:%s", i, input.getFile().getName());
+				graph.add(cacheStage, () -> threadpool.submit(() -> { input.ensureEvidenceCache(); return null; }).get(), extractStages[i]);
+				callDependencies.add(cacheStage);
+			}
+		}
+		AtomicReference<AssemblyEvidenceSource> assemblyEvidence = new AtomicReference<>();
+		graph.add("assemble", () -> {
+			log.info("Evidence extraction complete.");
+			// assembly evidence source construction requires library metrics
+			assemblyEvidence.set(new AssemblyEvidenceSource(getContext(), samEvidence, ASSEMBLY.get(0)));
+			if (!ASSEMBLY.get(0).exists()) {
+				assemblyEvidence.get().assembleBreakends(threadpool);
+			}
+		}, extractStages);
+		// convert breakend assemblies into breakpoint via split read identification
+		graph.add("extract assembly", () -> assemblyEvidence.get().ensureExtracted(), "assemble");
+		// call and annotate variants
+		callDependencies.add("extract assembly");
+		graph.add("call variants", () -> callVariants(threadpool), callDependencies.toArray(new String[0]));
+		return graph;
 	}
 	private void callVariants(ExecutorService threadpool) throws IOException, InterruptedException, ExecutionException {
 		File rawCalls = getContext().getFileSystemContext().getBreakpointVcf(OUTPUT);
@@ -122,15 +145,8 @@ public class CallVariants extends FullEvidenceCommandLineProgram {
 					lockFile.delete();
 				}
 			});
-	    	extractEvidence(threadpool, getSamEvidenceSources());
-	    	AssemblyEvidenceSource assemblyEvidence = new AssemblyEvidenceSource(getContext(), getSamEvidenceSources(), ASSEMBLY.get(0));
-	    	if (!ASSEMBLY.get(0).exists()) {
-	    		assemblyEvidence.assembleBreakends(threadpool);
-	    	}
-	    	// convert breakend assemblies into breakpoint via split read identification
-	    	assemblyEvidence.ensureExtracted();
-	    	// call and annotate variants
-	    	callVariants(threadpool);
+	    	log.info("Extracting evidence.");
+	    	createStageGraph(threadpool).execute();
 	    	lockFile.delete();
 		} else {
 			log.error("Aborting since lock " + lockFile + " already exists. GRIDSS does not support multiple simultaneous instances running on the same data.");
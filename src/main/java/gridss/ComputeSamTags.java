@@ -41,6 +41,11 @@ import static au.edu.wehi.idsv.sam.SAMRecordUtil.ensureConsistentDuplicateFlag;
 )
 public class ComputeSamTags extends ReferenceCommandLineProgram {
 	private static final Log log = Log.getInstance(ComputeSamTags.class);
+	/**
+	 * Number of read name groups transformed by each worker task.
+	 * Most groups are inexpensive to transform so per-group tasks are dominated by scheduling overhead.
+	 */
+	private static final int TASK_BATCH_SIZE = 16;
 	@Argument(shortName=StandardOptionDefinitions.INPUT_SHORT_NAME, doc="Input BAM file grouped by read name.")
     public File INPUT;
 	@Argument(shortName=StandardOptionDefinitions.OUTPUT_SHORT_NAME, doc="Annotated BAM file.")
@@ -173,6 +178,7 @@ public class ComputeSamTags extends ReferenceCommandLineProgram {
 					fixTerminalCigar,
 					reference),
 				batchSize,
+				TASK_BATCH_SIZE,
 				threadpool);
 		return new UngroupingIterator(parallelIt);
 	}
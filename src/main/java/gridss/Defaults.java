@@ -4,6 +4,14 @@ public class Defaults {
 	public static final boolean IGNORE_FILE_TIMESTAMPS;
 	public static final int ASYNC_BUFFERS;
 	public static final int ASYNC_BUFFER_SIZE;
+	/**
+	 * Number of threads in the shared pool performing asynchronous read-ahead
+	 */
+	public static final int ASYNC_THREADS;
+	/**
+	 * Maximum number of read-ahead batches outstanding across all asynchronous iterators
+	 */
+	public static final int ASYNC_MAX_OUTSTANDING_BATCHES;
 	public static final boolean DELETE_TEMPORARY_FILES;
 	public static final int SUPPRESS_DATA_ERROR_MESSAGES_AFTER;
 	public static final boolean WRITE_ZERO_OR_EMTPY_VCF_FIELDS;
@@ -22,6 +30,8 @@ public class Defaults {
 		IGNORE_FILE_TIMESTAMPS = Boolean.valueOf(System.getProperty("gridss.ignoreTimestamps", "true"));
 		ASYNC_BUFFERS = Integer.parseInt(System.getProperty("gridss.async.buffers", "2"));
 		ASYNC_BUFFER_SIZE = Integer.parseInt(System.getProperty("gridss.async.buffersize", "300"));
+		ASYNC_THREADS = Integer.parseInt(System.getProperty("gridss.async.threads", Integer.toString(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+		ASYNC_MAX_OUTSTANDING_BATCHES = Integer.parseInt(System.getProperty("gridss.async.maxOutstandingBatches", "1024"));
 		DELETE_TEMPORARY_FILES = !Boolean.valueOf(System.getProperty("gridss.keepTempFiles", "false"));
 		SUPPRESS_DATA_ERROR_MESSAGES_AFTER = Integer.parseInt(System.getProperty("gridss.logSpamLimit", "100"));
 		WRITE_ZERO_OR_EMTPY_VCF_FIELDS = Boolean.valueOf(System.getProperty("gridss.writeZeroOrEmptyVcfFields", "true"));
@@ -1,5 +1,9 @@
 package gridss;
 
+import au.edu.wehi.idsv.util.BatchingIterator;
+import au.edu.wehi.idsv.util.FingerprintSet;
+import au.edu.wehi.idsv.util.ParallelTransformIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.*;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
@@ -11,13 +15,21 @@ import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CommandLineProgramProperties(
 		summary = "Exports reads and read pairs with the given names to fastq",
@@ -26,6 +38,19 @@ import java.util.Map;
 )
 public class ExtractFragmentsToFastq extends CommandLineProgram {
 	private static final Log log = Log.getInstance(ExtractFragmentsToFastq.class);
+	private static final int BATCH_SIZE = 1000;
+	/**
+	 * Read name still to be extracted
+	 */
+	private static final byte STATE_PENDING = 0;
+	/**
+	 * Read name has already been extracted
+	 */
+	private static final byte STATE_DONE = 1;
+	/**
+	 * Multiple read names share this fingerprint so extraction is tracked by name
+	 */
+	private static final byte STATE_COLLISION = 2;
 	@Argument(shortName= StandardOptionDefinitions.INPUT_SHORT_NAME, doc="Input file to extract reads.")
 	public File INPUT;
 	@Argument(doc="File containing read names of matching reads. One per line.")
@@ -36,63 +61,182 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 	public File OUTPUT_FQ1;
 	@Argument(doc="File to extract second read in pair to.")
 	public File OUTPUT_FQ2;
+	@Argument(doc = "Number of worker threads to spawn. Defaults to number of cores available."
+			+ " Note that I/O threads are not included in this worker thread count so CPU usage can be higher than the number of worker thread.",
+			shortName = "THREADS")
+	public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+	private FingerprintSet readNames;
+	private byte[] state;
+	private Set<String> collisionDone;
+	private int remaining;
 
 	public static void main(String[] argv) {
 		System.exit(new ExtractFragmentsToFastq().instanceMain(argv));
 	}
 
-	private static FastqRecord samToFastq(SAMRecord r) {
-		byte[] bases = r.getReadBases().clone();
-		byte[] quals = r.getBaseQualities().clone();
-		if (r.getReadNegativeStrandFlag()) {
-			SequenceUtil.reverseComplement(bases);
-			SequenceUtil.reverseQualities(quals);
+	/**
+	 * Matching read in fastq form. Bases and qualities are packed into a single array
+	 * so reads awaiting their mate retain considerably less memory than the SAMRecord.
+	 */
+	private static class PackedRead {
+		private final String name;
+		private final int ordinal;
+		private final boolean paired;
+		private final boolean firstOfPair;
+		private final int baseCount;
+		/**
+		 * Read bases followed by fastq-encoded base qualities
+		 */
+		private final byte[] packed;
+		public PackedRead(SAMRecord r, int ordinal) {
+			this.name = r.getReadName();
+			this.ordinal = ordinal;
+			this.paired = r.getReadPairedFlag();
+			this.firstOfPair = paired && r.getFirstOfPairFlag();
+			byte[] bases = r.getReadBases();
+			byte[] quals = r.getBaseQualities();
+			this.baseCount = bases.length;
+			this.packed = new byte[bases.length + quals.length];
+			System.arraycopy(bases, 0, packed, 0, bases.length);
+			for (int i = 0; i < quals.length; i++) {
+				packed[baseCount + i] = (byte)SAMUtils.phredToFastq(quals[i]);
+			}
+			if (r.getReadNegativeStrandFlag()) {
+				SequenceUtil.reverseComplement(packed, 0, baseCount);
+				reverse(packed, baseCount, quals.length);
+			}
+		}
+		private static void reverse(byte[] array, int offset, int length) {
+			for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+				byte tmp = array[i];
+				array[i] = array[j];
+				array[j] = tmp;
+			}
+		}
+		public FastqRecord toFastq() {
+			return new FastqRecord(
+					name,
+					new String(packed, 0, baseCount, StandardCharsets.UTF_8),
+					null,
+					new String(packed, baseCount, packed.length - baseCount, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Finds the primary alignment records matching the read names of interest
+	 */
+	private static List<PackedRead> findMatches(FingerprintSet readNames, List<SAMRecord> records) {
+		List<PackedRead> matches = new ArrayList<>();
+		for (SAMRecord r : records) {
+			if (!r.getSupplementaryAlignmentFlag() && !r.isSecondaryAlignment()) {
+				int ordinal = readNames.find(r.getReadName());
+				if (ordinal >= 0) {
+					matches.add(new PackedRead(r, ordinal));
+				}
+			}
 		}
-		return new FastqRecord(
-				r.getReadName(),
-				new String(bases, StandardCharsets.UTF_8),
-				null,
-				SAMUtils.phredToFastq(quals));
+		return matches;
+	}
+
+	/**
+	 * Loads the read names to extract.
+	 * Fingerprints shared by distinct read names are verified with a second pass over the read name file.
+	 */
+	private void loadReadNames() throws IOException {
+		readNames = new FingerprintSet();
+		BitSet repeated = new BitSet();
+		try (BufferedReader br = Files.newBufferedReader(READ_NAMES.toPath())) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int ordinal = readNames.add(line);
+				if (ordinal < 0) {
+					repeated.set(-ordinal - 1);
+				}
+			}
+		}
+		state = new byte[readNames.size()];
+		collisionDone = new HashSet<>();
+		remaining = readNames.size();
+		if (!repeated.isEmpty()) {
+			Map<Integer, Set<String>> repeatedNames = new HashMap<>();
+			try (BufferedReader br = Files.newBufferedReader(READ_NAMES.toPath())) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					int ordinal = readNames.find(line);
+					if (repeated.get(ordinal)) {
+						repeatedNames.computeIfAbsent(ordinal, k -> new HashSet<>()).add(line);
+					}
+				}
+			}
+			for (Map.Entry<Integer, Set<String>> entry : repeatedNames.entrySet()) {
+				if (entry.getValue().size() > 1) {
+					log.warn(String.format("Read names %s share the same fingerprint.", entry.getValue()));
+					state[entry.getKey()] = STATE_COLLISION;
+					remaining += entry.getValue().size() - 1;
+				}
+			}
+		}
+	}
+
+	private boolean isDone(PackedRead r) {
+		return state[r.ordinal] == STATE_DONE || (state[r.ordinal] == STATE_COLLISION && collisionDone.contains(r.name));
+	}
+
+	private void markDone(PackedRead r) {
+		if (state[r.ordinal] == STATE_COLLISION) {
+			collisionDone.add(r.name);
+		} else {
+			state[r.ordinal] = STATE_DONE;
+		}
+		remaining--;
 	}
 
 	@Override
 	protected int doWork() {
-		Map<String, SAMRecord> lookup = new HashMap<>();
+		Map<String, PackedRead> lookup = new HashMap<>();
+		ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
 		try {
-			HashSet<String> readNames = new HashSet<>(Files.readAllLines(READ_NAMES.toPath()));
+			loadReadNames();
 			FastqWriterFactory factory = new FastqWriterFactory();
 			try (FastqWriter fq1 = factory.newWriter(OUTPUT_FQ1)) {
 				try (FastqWriter fq2 = factory.newWriter(OUTPUT_FQ2)) {
 					try (FastqWriter fq = factory.newWriter(OUTPUT_FQ)) {
 						try (SamReader reader = SamReaderFactory.makeDefault().open(INPUT)) {
 							try (SAMRecordIterator it = reader.iterator()) {
-								while (it.hasNext()) {
-									if (readNames.isEmpty()) {
+								// read names and bases are lazily decoded so matching on the worker threads also parallelises record decoding
+								Iterator<List<PackedRead>> matchIt = new ParallelTransformIterator<>(
+										new BatchingIterator<>(it, BATCH_SIZE),
+										batch -> findMatches(readNames, batch),
+										2 * WORKER_THREADS,
+										threadpool);
+								while (matchIt.hasNext()) {
+									if (remaining == 0) {
 										log.debug("Found all reads. Stopping input file traversal.");
 										break;
 									}
-									SAMRecord r = it.next();
-									String name = r.getReadName();
-									if (!r.getSupplementaryAlignmentFlag() && !r.isSecondaryAlignment() && readNames.contains(name)) {
-										if (!r.getReadPairedFlag()) {
-											fq.write(samToFastq(r));
-											readNames.remove(name);
+									for (PackedRead r : matchIt.next()) {
+										if (isDone(r)) {
+											continue;
+										}
+										if (!r.paired) {
+											fq.write(r.toFastq());
+											markDone(r);
 										} else {
-											SAMRecord lookupMatch = lookup.get(name);
+											PackedRead lookupMatch = lookup.get(r.name);
 											if (lookupMatch == null) {
-												lookup.put(name, r);
+												lookup.put(r.name, r);
 												continue;
 											}
-											if (lookupMatch.getFirstOfPairFlag() == r.getFirstOfPairFlag()) {
-												log.error("Found multiple primary alignment records for %s", name, ". Ignoring all but first.");
+											if (lookupMatch.firstOfPair == r.firstOfPair) {
+												log.error("Found multiple primary alignment records for %s", r.name, ". Ignoring all but first.");
 												continue;
 											}
-											SAMRecord r1 = r.getFirstOfPairFlag() ? r : lookupMatch;
-											SAMRecord r2 = r.getFirstOfPairFlag() ? lookupMatch : r;
-											lookup.remove(name);
-											readNames.remove(name);
-											fq1.write(samToFastq(r1));
-											fq2.write(samToFastq(r2));
+											PackedRead r1 = r.firstOfPair ? r : lookupMatch;
+											PackedRead r2 = r.firstOfPair ? lookupMatch : r;
+											lookup.remove(r.name);
+											markDone(r);
+											fq1.write(r1.toFastq());
+											fq2.write(r2.toFastq());
 										}
 									}
 								}
@@ -100,13 +244,13 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 						}
 						if (!lookup.isEmpty()) {
 							log.error("Missing paired primary alignment for ", lookup.size(), " reads. Writing to unpaired fastq.");
-							for (SAMRecord r : lookup.values()) {
-								fq.write(samToFastq(r));
-								readNames.remove(r.getReadName());
+							for (PackedRead r : lookup.values()) {
+								fq.write(r.toFastq());
+								markDone(r);
 							}
 						}
-						if (!readNames.isEmpty()) {
-							log.warn("Missing SAM records for ", readNames.size(), " reads.");
+						if (remaining > 0) {
+							log.warn("Missing SAM records for ", remaining, " reads.");
 						}
 					}
 				}
@@ -114,6 +258,8 @@ public class ExtractFragmentsToFastq extends CommandLineProgram {
 		} catch (IOException e) {
 			log.error(e);
 			return -1;
+		} finally {
+			threadpool.shutdown();
 		}
 		return 0;
 	}
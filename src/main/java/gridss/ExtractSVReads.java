@@ -3,6 +3,7 @@ package gridss;
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.ReadPairConcordanceCalculator;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
+import au.edu.wehi.idsv.sam.BAMRecordUtil;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
 import au.edu.wehi.idsv.sam.SAMRecordUtil;
 import au.edu.wehi.idsv.util.FileHelper;
@@ -81,6 +82,7 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 		return consistent;
 	}
 	private static boolean hasFullyMappedSplit(SAMRecord r) {
+		if (!BAMRecordUtil.hasAttribute(r, SAMTag.SA.name())) return false;
 		for (ChimericAlignment ca : ChimericAlignment.getChimericAlignments(r)) {
 			if (isFullyMapped(ca.cigar.getCigarElements())) {
 				return true;
@@ -90,9 +92,7 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 	}
 	private static boolean isFullyMapped(SAMRecord r) {
 		if (r.getReadUnmappedFlag()) return false;
-		Cigar cigar = r.getCigar();
-		if (cigar == null) return false;
-		return isFullyMapped(cigar.getCigarElements());
+		return (BAMRecordUtil.cigarOperatorMask(r) & ~BAMRecordUtil.ALIGNED_OPERATOR_MASK) == 0;
 	}
 	private static boolean isFullyMapped(List<CigarElement> cigar) {
 		for (CigarElement ce : cigar) {
@@ -165,8 +165,29 @@ public class ExtractSVReads extends ProcessStructuralVariantReadsCommandLineProg
 		}
 		return extract;
 	}
+	/**
+	 * Determines from the read flags and binary CIGAR alone whether the alignment
+	 * is consistent with the reference. Such records are never extracted regardless
+	 * of the other alignments of the fragment.
+	 */
+	private boolean isReferenceAlignment(SAMRecord r) {
+		if (r.getReadUnmappedFlag() || r.getSupplementaryAlignmentFlag()) return false;
+		if (!isFullyMapped(r)) return false;
+		if (!r.getReadPairedFlag()) return true;
+		if (r.getMateUnmappedFlag()) return false;
+		ReadPairConcordanceCalculator rpcc = getReadPairConcordanceCalculator();
+		return rpcc == null || rpcc.isConcordant(r);
+	}
 	@Override
 	protected void acceptFragment(List<SAMRecord> records, ReferenceLookup lookup) {
+		boolean allReference = true;
+		for (int i = 0; i < records.size() && allReference; i++) {
+			allReference = isReferenceAlignment(records.get(i));
+		}
+		if (allReference) {
+			// fast path: skip decoding of the fragment
+			return;
+		}
 		boolean[] extract = shouldExtract(records, lookup);
 		for (int i = 0; i < records.size(); i++) {
 			SAMRecord r = records.get(i);
@@ -4,16 +4,19 @@ import au.edu.wehi.idsv.*;
 import au.edu.wehi.idsv.bed.BedpeIterator;
 import au.edu.wehi.idsv.bed.BedpeRecord;
 import au.edu.wehi.idsv.bed.BedpeWriter;
+import au.edu.wehi.idsv.bed.PanelOfNormalsIndex;
 import au.edu.wehi.idsv.configuration.GridssConfiguration;
 import au.edu.wehi.idsv.util.AsyncBufferedIterator;
 import au.edu.wehi.idsv.util.AutoClosingIterator;
 import au.edu.wehi.idsv.util.DeterministicIterators;
+import au.edu.wehi.idsv.util.ExecutorReadAheadIterator;
 import au.edu.wehi.idsv.util.WindowedSortingIterator;
 import au.edu.wehi.idsv.vcf.VcfFormatAttributes;
 import au.edu.wehi.idsv.vcf.VcfSvConstants;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
@@ -34,6 +37,7 @@ import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -42,8 +46,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 @CommandLineProgramProperties(
@@ -62,6 +66,8 @@ public class GeneratePonBedpe extends CommandLineProgram {
     public File OUTPUT_BEDPE = new File("gridss_pon_breakpoint.bedpe");
 	@Argument(shortName="SBO", doc="Output BED", optional=false)
 	public File OUTPUT_BED = new File("gridss_pon_single_breakend.bed");;
+	@Argument(doc="Output binary panel of normals index of both breakpoint and single breakend counts.", optional=true)
+	public File OUTPUT_INDEX = null;
 	@Argument(shortName="NO", doc="0-based ordinals of the normal samples in the VCF.", optional=false)
     public List<Integer> NORMAL_ORDINAL = new ArrayList<>();
 	@Argument(shortName="Q", doc="Minimum variant quality score for a breakpoint variant to be considered part of the normal.", optional=true)
@@ -71,7 +77,7 @@ public class GeneratePonBedpe extends CommandLineProgram {
 	@Argument(doc="Include imprecise calls in the panel of normals.", optional=true)
 	public boolean INCLUDE_IMPRECISE_CALLS = false;
 	private int MAX_BREAKPOINT_HOMOLOGY_LENGTH = 2000;
-	@Argument(doc="Number of worker threads to spawn. Defaults to number of cores available with a maximum of one 1 per input file.", shortName="THREADS")
+	@Argument(doc="Number of worker threads to spawn. Defaults to number of cores available.", shortName="THREADS")
 	public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
 
 	@Override
@@ -107,6 +113,9 @@ public class GeneratePonBedpe extends CommandLineProgram {
 			}
 			IOUtil.assertFileIsWritable(OUTPUT_BEDPE);
 			IOUtil.assertFileIsWritable(OUTPUT_BED);
+			if (OUTPUT_INDEX != null) {
+				IOUtil.assertFileIsWritable(OUTPUT_INDEX);
+			}
 			for (File f : INPUT) {
 				IOUtil.assertFileIsReadable(f);
 			}
@@ -124,26 +133,36 @@ public class GeneratePonBedpe extends CommandLineProgram {
 			}
 			GenomicProcessingContext pc = new GenomicProcessingContext(new FileSystemContext(TMP_DIR.get(0), TMP_DIR.get(0), MAX_RECORDS_IN_RAM), REFERENCE_SEQUENCE, null);
 			pc.setCommandLineProgram(this);
-			Iterator<Pair<BreakendSummary, Integer>> mergedIt = DeterministicIterators.mergeSorted(ImmutableList.of(
-					filteredMerge(pc, INPUT, NORMAL_ORDINAL),
-					getExistingPON(pc.getDictionary(), INPUT_BEDPE, INPUT_BED)), ByBreakendStartEnd);
-			BedpeMergingCounter pe = new BedpeMergingCounter();
-			BedMergingCounter se = new BedMergingCounter(true);
-			BedpeWriter writer = new BedpeWriter(pc.getDictionary(), OUTPUT_BEDPE);
-			BufferedWriter seWriter = Files.newBufferedWriter(OUTPUT_BED.toPath(), StandardCharsets.US_ASCII);
-			while(mergedIt.hasNext()) {
-				Pair<BreakendSummary, Integer> record = mergedIt.next();
-				if (record.getFirst() instanceof BreakpointSummary) {
-					Pair<BreakpointSummary, Integer> bpRecord = Pair.create((BreakpointSummary)record.getFirst(), record.getSecond());
-					writeBedpe(pe.process(bpRecord), writer);
-				} else {
-					writeBed(pc.getReference().getSequenceDictionary(), seWriter, se.process(record));
+			ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(false).setNameFormat("Worker-%d").build());
+			try (CloseableIterator<Pair<BreakendSummary, Integer>> vcfIt = filteredMerge(pc, INPUT, NORMAL_ORDINAL, threadpool)) {
+				Iterator<Pair<BreakendSummary, Integer>> mergedIt = DeterministicIterators.mergeSorted(ImmutableList.of(
+						vcfIt,
+						getExistingPON(pc.getDictionary(), INPUT_BEDPE, INPUT_BED)), ByBreakendStartEnd);
+				BedpeMergingCounter pe = new BedpeMergingCounter();
+				BedMergingCounter se = new BedMergingCounter(true);
+				PanelOfNormalsIndex.Builder index = OUTPUT_INDEX == null ? null : new PanelOfNormalsIndex.Builder(pc.getDictionary());
+				BedpeWriter writer = new BedpeWriter(pc.getDictionary(), OUTPUT_BEDPE);
+				BufferedWriter seWriter = Files.newBufferedWriter(OUTPUT_BED.toPath(), StandardCharsets.US_ASCII);
+				while(mergedIt.hasNext()) {
+					Pair<BreakendSummary, Integer> record = mergedIt.next();
+					if (record.getFirst() instanceof BreakpointSummary) {
+						Pair<BreakpointSummary, Integer> bpRecord = Pair.create((BreakpointSummary)record.getFirst(), record.getSecond());
+						writeBedpe(pe.process(bpRecord), writer, index);
+					} else {
+						writeBed(pc.getReference().getSequenceDictionary(), seWriter, se.process(record), index);
+					}
+				}
+				writeBedpe(pe.finish(), writer, index);
+				writeBed(pc.getReference().getSequenceDictionary(), seWriter, se.finish(), index);
+				writer.close();
+				seWriter.close();
+				if (index != null) {
+					log.info("Writing panel of normals index to ", OUTPUT_INDEX);
+					index.build().save(OUTPUT_INDEX);
 				}
+			} finally {
+				threadpool.shutdown();
 			}
-			writeBedpe(pe.finish(), writer);
-			writeBed(pc.getReference().getSequenceDictionary(), seWriter, se.finish());
-			writer.close();
-			seWriter.close();
 		} catch (IOException e) {
 			log.error(e);
 			return 1;
@@ -183,9 +202,12 @@ public class GeneratePonBedpe extends CommandLineProgram {
 		return result;
 	}
 
-	private void writeBed(SAMSequenceDictionary dict, BufferedWriter writer, List<Pair<BreakendSummary, Integer>> list) throws IOException {
+	private void writeBed(SAMSequenceDictionary dict, BufferedWriter writer, List<Pair<BreakendSummary, Integer>> list, PanelOfNormalsIndex.Builder index) throws IOException {
 		for (Pair<BreakendSummary, Integer> pair : list) {
 			writeBed(dict, writer, pair.getFirst(), pair.getSecond());
+			if (index != null) {
+				index.add(pair.getFirst(), pair.getSecond());
+			}
 		}
 	}
 	private void writeBed(SAMSequenceDictionary dict, BufferedWriter writer, BreakendSummary bs, int count) throws IOException {
@@ -195,29 +217,27 @@ public class GeneratePonBedpe extends CommandLineProgram {
 		writer.write(String.format("%s\t%d\t%d\t.\t%d\t%s\n", dict.getSequence(referenceIndex).getSequenceName(), bedStart, bedEnd, count, bs.direction == BreakendDirection.Forward ? '+' : '-'));
 	}
 
-	private void writeBedpe(List<Pair<BreakpointSummary, Integer>> list, BedpeWriter writer) throws IOException {
+	private void writeBedpe(List<Pair<BreakpointSummary, Integer>> list, BedpeWriter writer, PanelOfNormalsIndex.Builder index) throws IOException {
 		for (Pair<BreakpointSummary, Integer> emitted : list) {
 			writer.write(emitted.getFirst(), ".", Integer.toString(emitted.getSecond()));
+			if (index != null) {
+				index.add(emitted.getFirst(), emitted.getSecond());
+			}
 		}
 	}
 
-	private Iterator<Pair<BreakendSummary, Integer>> filteredMerge(GenomicProcessingContext pc, List<File> file, List<Integer> ordinals) {
-    	List<CloseableIterator<Pair<BreakendSummary, Integer>>> fileIt = new ArrayList<>();
-    	for (File f : file) {
-    		fileIt.add(getFilteredIterator(pc, f, ordinals));
+	/**
+	 * Merges the filtered breakends of all input files.
+	 * VCF parsing, filtering and sorting of each input is performed by the thread pool
+	 * so the merging thread only needs to compare records.
+	 */
+	private CloseableIterator<Pair<BreakendSummary, Integer>> filteredMerge(GenomicProcessingContext pc, List<File> file, List<Integer> ordinals, ExecutorService threadpool) {
+		List<CloseableIterator<Pair<BreakendSummary, Integer>>> fileIt = new ArrayList<>();
+		for (File f : file) {
+			fileIt.add(new ExecutorReadAheadIterator<>(getFilteredIterator(pc, f, ordinals), threadpool));
 		}
-		// allocate VCF files to worker threads
-		final AtomicInteger counter = new AtomicInteger(0);
-		final int size = WORKER_THREADS;
-		final List<Iterator<Pair<BreakendSummary, Integer>>> partitioned = fileIt.stream()
-				.collect(Collectors.groupingBy(it -> counter.getAndIncrement() % size))
-				.values()
-				.stream()
-				.map(list -> list.size() == 1 ? list.get(0) : DeterministicIterators.mergeSorted(list, ByBreakendStartEnd))
-				.map(it -> new AsyncBufferedIterator<>(it,"AsyncVCF"))
-				.collect(Collectors.toList());
-		Iterator<Pair<BreakendSummary, Integer>> mergedIt = new AsyncBufferedIterator<>(DeterministicIterators.mergeSorted(partitioned, ByBreakendStartEnd), "Merged VCF reader");
-		return mergedIt;
+		Iterator<Pair<BreakendSummary, Integer>> mergedIt = new AsyncBufferedIterator<>(DeterministicIterators.mergeSorted(fileIt, ByBreakendStartEnd), "Merged VCF reader");
+		return new AutoClosingIterator<>(mergedIt, fileIt.toArray(new Closeable[0]));
 	}
 	private CloseableIterator<Pair<BreakendSummary, Integer>> getFilteredIterator(GenomicProcessingContext pc, File file, List<Integer> ordinals) {
 		VCFFileReader vcfReader = new VCFFileReader(file, false);
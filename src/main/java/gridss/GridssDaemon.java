@@ -0,0 +1,227 @@
+package gridss;
+
+import au.edu.wehi.idsv.FileSystemContext;
+import au.edu.wehi.idsv.GenomicProcessingContext;
+import au.edu.wehi.idsv.alignment.BwaAligner;
+import au.edu.wehi.idsv.util.ResidentCache;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Log;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import picard.cmdline.CommandLineProgram;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-running process that executes GRIDSS command line programs in-process.
+ *
+ * The reference genome and bwa index image are kept resident between requests
+ * so each request avoids the JVM startup, reference loading and JIT warm-up
+ * costs incurred when every step is executed in a new JVM.
+ *
+ * Requests are accepted on a loopback socket. The port and a random access token
+ * are written to PORT_FILE which is only readable by the current user.
+ * Requests are made using {@link GridssDaemonClient}.
+ *
+ * Requests are executed sequentially as command line programs modify process-wide state
+ * such as the logging verbosity.
+ */
+@CommandLineProgramProperties(
+		summary = "Executes GRIDSS command line programs on request, keeping the reference genome and bwa index resident in memory between requests. "
+				+ "Requests are made using gridss.GridssDaemonClient.",
+		oneLineSummary = "Executes GRIDSS command line programs on request.",
+		programGroup = gridss.cmdline.programgroups.DataConversion.class
+)
+public class GridssDaemon extends CommandLineProgram {
+	private static final Log log = Log.getInstance(GridssDaemon.class);
+	/**
+	 * Program name requesting the daemon to terminate
+	 */
+	public static final String SHUTDOWN = "shutdown";
+	/**
+	 * Request was rejected by the daemon
+	 */
+	public static final int STATUS_REJECTED = 2;
+	/**
+	 * Maximum time to wait for a client to send a request
+	 */
+	private static final int REQUEST_TIMEOUT_MS = 60 * 1000;
+	@Argument(doc="File to write the daemon port and access token to. Client requests are made using this file.")
+	public File PORT_FILE;
+	@Argument(doc="Loopback port to listen on. Defaults to an arbitrary free port.", optional=true)
+	public int PORT = 0;
+	@Argument(doc="Number of seconds without a request after which the daemon terminates. Zero to never terminate.", optional=true)
+	public int IDLE_TIMEOUT = 0;
+	private String token;
+	private File workingDirectory;
+	private volatile boolean shutdown = false;
+	public static void main(String[] argv) {
+		System.exit(new GridssDaemon().instanceMain(argv));
+	}
+	@Override
+	protected int doWork() {
+		IOUtil.assertFileIsWritable(PORT_FILE);
+		ResidentCache.setEnabled(true);
+		workingDirectory = new File(System.getProperty("user.dir"));
+		token = createToken();
+		try (ServerSocket server = new ServerSocket(PORT, 0, InetAddress.getLoopbackAddress())) {
+			preload();
+			writePortFile(server.getLocalPort());
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> PORT_FILE.delete()));
+			server.setSoTimeout(IDLE_TIMEOUT * 1000);
+			log.info(String.format("Listening for requests on port %d", server.getLocalPort()));
+			while (!shutdown) {
+				try (Socket socket = server.accept()) {
+					socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+					handle(socket);
+				} catch (SocketTimeoutException e) {
+					log.info(String.format("No requests received in %ds. Shutting down.", IDLE_TIMEOUT));
+					break;
+				} catch (IOException e) {
+					log.warn(e, "Error processing request");
+				}
+			}
+		} catch (IOException e) {
+			log.error(e, "Unable to start daemon");
+			return 1;
+		} finally {
+			PORT_FILE.delete();
+			ResidentCache.setEnabled(false);
+		}
+		return 0;
+	}
+	/**
+	 * Loads the reference genome and bwa index image into memory
+	 */
+	private void preload() {
+		if (REFERENCE_SEQUENCE == null) return;
+		log.info("Loading reference genome ", REFERENCE_SEQUENCE);
+		new GenomicProcessingContext(new FileSystemContext(TMP_DIR.get(0), MAX_RECORDS_IN_RAM), REFERENCE_SEQUENCE, null);
+		if (BwaAligner.getBwaIndexFileFor(REFERENCE_SEQUENCE).exists()) {
+			BwaAligner.getBwaIndexFor(REFERENCE_SEQUENCE);
+		}
+	}
+	private static String createToken() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+	private void writePortFile(int port) throws IOException {
+		File tmp = FileSystemContext.getWorkingFileFor(PORT_FILE);
+		tmp.delete();
+		Files.createFile(tmp.toPath());
+		try {
+			Files.setPosixFilePermissions(tmp.toPath(), PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			log.warn("Unable to restrict access to ", PORT_FILE);
+		}
+		Files.write(tmp.toPath(), (port + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp.toPath(), PORT_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	private void handle(Socket socket) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+		String requestToken = in.readLine();
+		if (requestToken == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8))) {
+			log.warn("Rejecting request with invalid access token");
+			respond(out, STATUS_REJECTED, "Invalid access token");
+			return;
+		}
+		String clientWorkingDirectory = in.readLine();
+		String programName = in.readLine();
+		String argCount = in.readLine();
+		if (clientWorkingDirectory == null || programName == null || argCount == null) {
+			respond(out, STATUS_REJECTED, "Malformed request");
+			return;
+		}
+		int n;
+		try {
+			n = Integer.parseInt(argCount);
+			if (n < 0) throw new NumberFormatException();
+		} catch (NumberFormatException e) {
+			respond(out, STATUS_REJECTED, "Malformed request");
+			return;
+		}
+		List<String> args = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			String arg = in.readLine();
+			if (arg == null) {
+				respond(out, STATUS_REJECTED, "Malformed request");
+				return;
+			}
+			args.add(arg);
+		}
+		if (SHUTDOWN.equals(programName)) {
+			log.info("Shutdown requested");
+			shutdown = true;
+			respond(out, 0, null);
+			return;
+		}
+		// relative paths are resolved against the daemon working directory
+		if (!workingDirectory.equals(new File(clientWorkingDirectory))) {
+			respond(out, STATUS_REJECTED, String.format("Client working directory %s does not match daemon working directory %s", clientWorkingDirectory, workingDirectory));
+			return;
+		}
+		CommandLineProgram program;
+		try {
+			program = createProgram(programName);
+		} catch (Exception e) {
+			respond(out, STATUS_REJECTED, e.getMessage());
+			return;
+		}
+		log.info("Executing ", programName, " ", String.join(" ", args));
+		int status;
+		String message = null;
+		try {
+			status = program.instanceMain(args.toArray(new String[0]));
+		} catch (Exception e) {
+			log.error(e, "Error executing ", programName);
+			status = 1;
+			message = e.toString();
+		}
+		log.info(String.format("Completed %s with status %d", programName, status));
+		respond(out, status, message);
+	}
+	/**
+	 * Instantiates the requested command line program
+	 * @param programName class name of the command line program. Programs in the gridss package do not require the package prefix.
+	 */
+	private static CommandLineProgram createProgram(String programName) throws Exception {
+		String className = programName.contains(".") ? programName : "gridss." + programName;
+		Class<?> c;
+		try {
+			c = Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown program " + programName);
+		}
+		if (!CommandLineProgram.class.isAssignableFrom(c) || GridssDaemon.class.isAssignableFrom(c)) {
+			throw new IllegalArgumentException(programName + " is not a command line program");
+		}
+		return (CommandLineProgram)c.getDeclaredConstructor().newInstance();
+	}
+	private static void respond(Writer out, int status, String message) throws IOException {
+		out.write(Integer.toString(status));
+		out.write('\n');
+		if (message != null) {
+			out.write(message.replace('\n', ' '));
+			out.write('\n');
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,96 @@
+package gridss;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executes a GRIDSS command line program on a running {@link GridssDaemon}.
+ *
+ * Usage: gridss.GridssDaemonClient PORT_FILE PROGRAM [ARGS...]
+ *
+ * Exits with the status returned by the command line program. Programs
+ * log to the daemon process, not the client.
+ * Exits with status {@link #STATUS_UNAVAILABLE} if the daemon could not be
+ * reached so callers can fall back to running the program in a new JVM.
+ */
+public class GridssDaemonClient {
+	/**
+	 * Daemon could not be contacted (EX_TEMPFAIL)
+	 */
+	public static final int STATUS_UNAVAILABLE = 75;
+	public static void main(String[] argv) {
+		if (argv.length < 2) {
+			System.err.println("Usage: gridss.GridssDaemonClient PORT_FILE PROGRAM [ARGS...]");
+			System.exit(1);
+		}
+		System.exit(execute(new File(argv[0]), argv[1], Arrays.asList(argv).subList(2, argv.length), System.err));
+	}
+	/**
+	 * Executes the given program on the daemon
+	 * @param portFile daemon port file
+	 * @param program command line program to execute
+	 * @param args program arguments
+	 * @param messages stream to write error messages returned by the daemon to
+	 * @return program exit status
+	 */
+	public static int execute(File portFile, String program, List<String> args, PrintStream messages) {
+		int port;
+		String token;
+		try {
+			List<String> lines = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+			port = Integer.parseInt(lines.get(0));
+			token = lines.get(1);
+		} catch (IOException | RuntimeException e) {
+			messages.println("Unable to read GRIDSS daemon port file " + portFile);
+			return STATUS_UNAVAILABLE;
+		}
+		for (String arg : args) {
+			if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+				messages.println("Arguments containing line breaks are not supported by the GRIDSS daemon");
+				return GridssDaemon.STATUS_REJECTED;
+			}
+		}
+		Socket socket;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		} catch (IOException e) {
+			messages.println("Unable to connect to GRIDSS daemon on port " + port);
+			return STATUS_UNAVAILABLE;
+		}
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			out.write(token + "\n");
+			out.write(System.getProperty("user.dir") + "\n");
+			out.write(program + "\n");
+			out.write(args.size() + "\n");
+			for (String arg : args) {
+				out.write(arg + "\n");
+			}
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String status = in.readLine();
+			if (status == null) {
+				messages.println("GRIDSS daemon terminated before " + program + " completed");
+				return 1;
+			}
+			String message;
+			while ((message = in.readLine()) != null) {
+				messages.println(message);
+			}
+			return Integer.parseInt(status);
+		} catch (IOException e) {
+			messages.println("Error communicating with GRIDSS daemon: " + e.getMessage());
+			return 1;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -2,17 +2,24 @@ package gridss;
 
 import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.sam.ChimericAlignment;
+import au.edu.wehi.idsv.util.BatchingIterator;
+import au.edu.wehi.idsv.util.ParallelTransformIterator;
 import au.edu.wehi.idsv.vcf.SvType;
 import au.edu.wehi.idsv.vcf.VcfFilter;
 import au.edu.wehi.idsv.vcf.VcfInfoAttributes;
 import au.edu.wehi.idsv.vcf.VcfSvConstants;
-import com.google.common.collect.*;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import gridss.cmdline.ReferenceCommandLineProgram;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.SortingCollection;
 import htsjdk.tribble.annotation.Strand;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -21,15 +28,21 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFRecordCodec;
 import joptsimple.internal.Strings;
 import org.broadinstitute.barclay.argparser.Argument;
 import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
 import picard.cmdline.StandardOptionDefinitions;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 @CommandLineProgramProperties(
@@ -39,6 +52,7 @@ import java.util.stream.Collectors;
 )
 public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 	private static final Log log = Log.getInstance(VirusBreakendFilter.class);
+	private static final int BATCH_SIZE = 256;
 
 	@Argument(shortName = StandardOptionDefinitions.INPUT_SHORT_NAME, doc = "VIRUSBreakend VCF file to filter")
 	public File INPUT;
@@ -52,6 +66,10 @@ public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 	public int MINIMUM_MAPQ = 10;
 	@Argument(doc = "Kraken taxonomic identifiers associated with host genome")
 	public List<Integer> TAXONOMY_IDS = null;
+	@Argument(doc = "Number of worker threads to spawn. Defaults to number of cores available."
+			+ " Note that I/O threads are not included in this worker thread count so CPU usage can be higher than the number of worker thread.",
+			shortName = "THREADS")
+	public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
 
 	public static void main(String[] argv) {
         System.exit(new VirusBreakendFilter().instanceMain(argv));
@@ -74,28 +92,64 @@ public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 			for (SAMSequenceRecord seq : virusDict.getSequences()) {
 				dictionary.addSequence(seq);
 			}
+			header.setSequenceDictionary(dictionary);
 			VariantContextWriterBuilder builder = new VariantContextWriterBuilder()
 					.setReferenceDictionary(dictionary)
 					.setOutputFile(OUTPUT);
-			List<VariantContext> output = vcfReader.iterator()
-					.stream()
-					.filter(vc -> shouldKeep(vc))
-					.flatMap(vc -> transformToBreakpointNotation(dictionary, vc, MINIMUM_MAPQ).stream())
-					.sorted(new VariantContextComparator(dictionary))
-					.collect(Collectors.toList());
-			try (VariantContextWriter vcfWriter = builder.build()) {
-				header.setSequenceDictionary(dictionary);
-				vcfWriter.writeHeader(header);
-				for (VariantContext vc : output) {
-					vcfWriter.add(vc);
+			if (TMP_DIR == null || TMP_DIR.size() == 0) {
+				TMP_DIR = Lists.newArrayList(new File("."));
+			}
+			// host breakends can be anywhere in the host genome so a full sort is required
+			SortingCollection<VariantContext> collection = SortingCollection.newInstance(
+					VariantContext.class,
+					new VCFRecordCodec(header, true),
+					new VariantContextComparator(dictionary),
+					MAX_RECORDS_IN_RAM,
+					TMP_DIR.stream().map(File::toPath).toArray(Path[]::new));
+			ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
+			try {
+				try (CloseableIterator<VariantContext> it = vcfReader.iterator()) {
+					Iterator<List<VariantContext>> transformedIt = new ParallelTransformIterator<>(
+							new BatchingIterator<>(it, BATCH_SIZE),
+							batch -> batch.stream().flatMap(vc -> transform(vc).stream()).collect(Collectors.toList()),
+							2 * WORKER_THREADS,
+							threadpool);
+					while (transformedIt.hasNext()) {
+						for (VariantContext vc : transformedIt.next()) {
+							collection.add(vc);
+						}
+					}
+				}
+				collection.doneAdding();
+				try (VariantContextWriter vcfWriter = builder.build()) {
+					vcfWriter.writeHeader(header);
+					try (CloseableIterator<VariantContext> it = collection.iterator()) {
+						while (it.hasNext()) {
+							vcfWriter.add(it.next());
+						}
+					}
 				}
+			} finally {
+				threadpool.shutdown();
+				collection.cleanup();
 			}
 		}
 		return 0;
 	}
 
-	public static List<VariantContext> transformToBreakpointNotation(SAMSequenceDictionary dictionary, VariantContext vc, int minMapq) {
+	private List<VariantContext> transform(VariantContext vc) {
+		if (!isCandidate(vc)) return Collections.emptyList();
+		// only parse the host alignments once
 		List<ChimericAlignment> bealn = infoToChimeric(vc, VcfInfoAttributes.BREAKEND_ALIGNMENTS.attribute());
+		if (!shouldKeep(vc, bealn)) return Collections.emptyList();
+		return transformToBreakpointNotation(vc, bealn, MINIMUM_MAPQ);
+	}
+
+	public static List<VariantContext> transformToBreakpointNotation(SAMSequenceDictionary dictionary, VariantContext vc, int minMapq) {
+		return transformToBreakpointNotation(vc, infoToChimeric(vc, VcfInfoAttributes.BREAKEND_ALIGNMENTS.attribute()), minMapq);
+	}
+
+	private static List<VariantContext> transformToBreakpointNotation(VariantContext vc, List<ChimericAlignment> bealn, int minMapq) {
 		bealn.sort(ChimericAlignment.ByMapqAlignedLength);
 		ChimericAlignment humanAlignment = bealn.get(0);
 		boolean viralNegative = vc.getAlternateAllele(0).getDisplayString().startsWith(".");
@@ -178,7 +232,7 @@ public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 		return output;
 	}
 
-	private boolean shouldKeep(VariantContext vc) {
+	private boolean isCandidate(VariantContext vc) {
 		String alt = vc.getAlternateAllele(0).getDisplayString();
 		int taxid = vc.getAttributeAsInt(VcfInfoAttributes.INSERTED_SEQUENCE_NCBI_TAXONOMY_ID.attribute(), -1);
 		if (TAXONOMY_IDS != null && TAXONOMY_IDS.size() > 0) {
@@ -189,15 +243,19 @@ public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 		//if (alt.contains("kraken")) return true;
 		// single breakends only
 		if (!alt.startsWith(".") && !alt.endsWith(".")) return false;
-		if (alt.length() < 2) return false;
-		int breakendLength = alt.length() - 2;
-		List<ChimericAlignment> host = infoToChimeric(vc, VcfInfoAttributes.BREAKEND_ALIGNMENTS.attribute());
-		RangeSet<Integer> repeats = repeatRanges(vc);
+		return alt.length() >= 2;
+	}
+
+	private boolean shouldKeep(VariantContext vc, List<ChimericAlignment> host) {
+		int breakendLength = vc.getAlternateAllele(0).getDisplayString().length() - 2;
+		int[] repeats = null;
 		for (ChimericAlignment hca : host) {
 			int hostAlignmentLength = hca.getLastAlignedBaseReadOffset() - hca.getFirstAlignedBaseReadOffset() + 1;
 			if ((hostAlignmentLength / (double)breakendLength) < MINIMUM_HOST_OVERLAP) continue;
-			RangeSet<Integer> overlappingRepeats = repeats.subRangeSet(Range.openClosed(hca.getFirstAlignedBaseReadOffset(), hca.getLastAlignedBaseReadOffset() + 1));
-			int overlap = overlappingRepeats.asRanges().stream().mapToInt(r -> r.upperEndpoint() - r.lowerEndpoint()).sum();
+			if (repeats == null) {
+				repeats = repeatRanges(vc);
+			}
+			int overlap = overlap(repeats, hca.getFirstAlignedBaseReadOffset(), hca.getLastAlignedBaseReadOffset() + 1);
 			if (overlap / (double)hostAlignmentLength <= MINIMUM_REPEAT_OVERLAP) {
 				return true;
 			}
@@ -213,14 +271,47 @@ public class VirusBreakendFilter extends ReferenceCommandLineProgram {
 				.collect(Collectors.toList());
 		return calist;
 	}
-	// half-open
-	private static RangeSet<Integer> repeatRanges(VariantContext vc) {
-		RangeSet<Integer> rs = TreeRangeSet.create();
-		for (ChimericAlignment ca : infoToChimeric(vc, VcfInfoAttributes.INSERTED_SEQUENCE_REPEATMASKER_SA_TAG.attribute())) {
+	/**
+	 * Simple and low complexity repeats in the breakend sequence
+	 * @return disjoint half-open intervals in ascending order, encoded as start, end pairs
+	 */
+	private static int[] repeatRanges(VariantContext vc) {
+		List<ChimericAlignment> repeats = infoToChimeric(vc, VcfInfoAttributes.INSERTED_SEQUENCE_REPEATMASKER_SA_TAG.attribute());
+		long[] intervals = new long[repeats.size()];
+		int n = 0;
+		for (ChimericAlignment ca : repeats) {
 			if (ca.rname.contains("Simple_repeat") || ca.rname.contains("Low_complexity")) {
-				rs.add(Range.closedOpen(ca.getFirstAlignedBaseReadOffset(), ca.getLastAlignedBaseReadOffset() + 1));
+				int start = ca.getFirstAlignedBaseReadOffset();
+				int end = ca.getLastAlignedBaseReadOffset() + 1;
+				if (start < end) {
+					// breakend sequence offsets are non-negative so the encoding sorts by start
+					intervals[n++] = ((long)start << 32) | end;
+				}
 			}
 		}
-		return rs;
+		Arrays.sort(intervals, 0, n);
+		int[] merged = new int[2 * n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int start = (int)(intervals[i] >>> 32);
+			int end = (int)intervals[i];
+			if (count > 0 && start <= merged[count - 1]) {
+				merged[count - 1] = Math.max(merged[count - 1], end);
+			} else {
+				merged[count++] = start;
+				merged[count++] = end;
+			}
+		}
+		return Arrays.copyOf(merged, count);
+	}
+	/**
+	 * @return number of bases in the half-open interval [start, end) covered by the given intervals
+	 */
+	private static int overlap(int[] intervals, int start, int end) {
+		int overlap = 0;
+		for (int i = 0; i < intervals.length && intervals[i] < end; i += 2) {
+			overlap += Math.max(0, Math.min(end, intervals[i + 1]) - Math.max(start, intervals[i]));
+		}
+		return overlap;
 	}
 }
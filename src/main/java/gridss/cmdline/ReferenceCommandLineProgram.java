@@ -3,6 +3,7 @@ package gridss.cmdline;
 import au.edu.wehi.idsv.FileSystemContext;
 import au.edu.wehi.idsv.picard.ReferenceLookup;
 import au.edu.wehi.idsv.picard.TwoBitBufferedReferenceSequenceFile;
+import au.edu.wehi.idsv.util.ResidentCache;
 import com.google.common.collect.ImmutableList;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SamReader;
@@ -53,13 +54,15 @@ public abstract class ReferenceCommandLineProgram extends CommandLineProgram {
 		if (reference == null) {
 			IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
 			ensureSequenceDictionary(REFERENCE_SEQUENCE);
-			try {
-				reference = new TwoBitBufferedReferenceSequenceFile(new IndexedFastaSequenceFile(REFERENCE_SEQUENCE));
-			} catch (FileNotFoundException e) {
-				String msg = String.format("Missing reference genome %s", REFERENCE_SEQUENCE);
-				log.error(msg);
-				throw new RuntimeException(msg);
-			}
+			reference = ResidentCache.get("reference", REFERENCE_SEQUENCE, () -> {
+				try {
+					return new TwoBitBufferedReferenceSequenceFile(new IndexedFastaSequenceFile(REFERENCE_SEQUENCE));
+				} catch (FileNotFoundException e) {
+					String msg = String.format("Missing reference genome %s", REFERENCE_SEQUENCE);
+					log.error(msg);
+					throw new RuntimeException(msg);
+				}
+			});
 		}
 		return reference;
 	}
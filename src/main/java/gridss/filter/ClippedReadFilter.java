@@ -1,6 +1,6 @@
 package gridss.filter;
 
-import au.edu.wehi.idsv.sam.SAMRecordUtil;
+import au.edu.wehi.idsv.sam.BAMRecordUtil;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.filter.SamRecordFilter;
@@ -27,9 +27,9 @@ public class ClippedReadFilter implements SamRecordFilter {
 	@Override
 	public boolean filterOut(SAMRecord record) {
 		return record.getReadUnmappedFlag()
+				|| BAMRecordUtil.clipLength(record) < minClipLength
 				|| record.getCigar() == null
-				|| (!includeSplitReads && record.hasAttribute(SAMTag.SA.name()))
-				|| SAMRecordUtil.getEndClipLength(record) + SAMRecordUtil.getStartClipLength(record) < minClipLength;
+				|| (!includeSplitReads && BAMRecordUtil.hasAttribute(record, SAMTag.SA.name()));
 	}
 
 	@Override
@@ -1,11 +1,9 @@
 package gridss.filter;
 
-import htsjdk.samtools.CigarElement;
+import au.edu.wehi.idsv.sam.BAMRecordUtil;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.filter.SamRecordFilter;
 
-import java.util.List;
-
 /**
  * Filters out reads that do not contain any indels
  * @author cameron.d
@@ -26,16 +24,7 @@ public class IndelReadFilter implements SamRecordFilter {
 	@Override
 	public boolean filterOut(SAMRecord record) {
 		return record.getReadUnmappedFlag()
-				|| record.getCigar() == null
-				|| !containsLargeIndel(record.getCigar().getCigarElements(), minIndelLength);
-	}
-	private static boolean containsLargeIndel(List<CigarElement> cigar, int minsize) {
-		for (CigarElement ce : cigar) {
-			if (ce.getLength() >= minsize && ce.getOperator().isIndelOrSkippedRegion()) {
-				return true;
-			}
-		}
-		return false;
+				|| BAMRecordUtil.maxCigarElementLength(record, BAMRecordUtil.INDEL_OPERATOR_MASK) < Math.max(1, minIndelLength);
 	}
 
 	@Override
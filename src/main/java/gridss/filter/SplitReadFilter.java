@@ -1,5 +1,6 @@
 package gridss.filter;
 
+import au.edu.wehi.idsv.sam.BAMRecordUtil;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.filter.SamRecordFilter;
@@ -13,7 +14,7 @@ public class SplitReadFilter implements SamRecordFilter {
 
 	@Override
 	public boolean filterOut(SAMRecord record) {
-		return record.getAttribute(SAMTag.SA.name()) == null;
+		return !BAMRecordUtil.hasAttribute(record, SAMTag.SA.name());
 	}
 
 	@Override
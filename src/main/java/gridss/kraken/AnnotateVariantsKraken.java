@@ -38,7 +38,7 @@ public class AnnotateVariantsKraken extends CommandLineProgram {
 		IOUtil.assertFileIsReadable(INPUT);
 		IOUtil.assertFileIsReadable(KRAKEN_INPUT);
 		IOUtil.assertFileIsWritable(OUTPUT);
-		try (KrakenParser parser = new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(INPUT))))) {
+		try (KrakenParser parser = new KrakenParser(new FileInputStream(INPUT))) {
 			try (VCFFileReader vcfReader = new VCFFileReader(INPUT, false)) {
 				VCFHeader header = vcfReader.getFileHeader();
 				if (header.getSequenceDictionary() == null) {
@@ -51,7 +51,7 @@ public class AnnotateVariantsKraken extends CommandLineProgram {
 					try (VariantContextWriter vcfWriter = builder.build()) {
 						header.addMetaDataLine(VcfInfoAttributes.INSERTED_SEQUENCE_NCBI_TAXONOMY_ID.infoHeader());
 						vcfWriter.writeHeader(header);
-						try (AnnotateKraken ak = new AnnotateKraken(new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(KRAKEN_INPUT)))), it)) {
+						try (AnnotateKraken ak = new AnnotateKraken(new KrakenParser(new FileInputStream(KRAKEN_INPUT)), it)) {
 							while (ak.hasNext()) {
 								VariantContext vc = ak.next();
 								vcfWriter.add(vc);
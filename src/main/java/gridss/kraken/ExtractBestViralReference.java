@@ -3,9 +3,8 @@ package gridss.kraken;
 import au.edu.wehi.idsv.debruijn.ContigKmerCounter;
 import au.edu.wehi.idsv.kraken.KrakenReportLine;
 import au.edu.wehi.idsv.kraken.SeqIdToTaxIdMap;
-import au.edu.wehi.idsv.ncbi.MinimalTaxonomyNode;
-import au.edu.wehi.idsv.ncbi.TaxonomyHelper;
-import au.edu.wehi.idsv.ncbi.TaxonomyNode;
+import au.edu.wehi.idsv.ncbi.NcbiTaxonomy;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import gridss.cmdline.ReferenceCommandLineProgram;
 import htsjdk.samtools.SAMSequenceRecord;
@@ -55,8 +54,13 @@ public class ExtractBestViralReference extends CommandLineProgram {
     public File OUTPUT_MATCHING_KMERS;
     @Argument(doc="Kmer used determining best viral genome match for viral reads.")
     public int KMER = 16;
-    @Argument(doc="Distance between kmers in reference lookup. Longer stride reduces memory usage. Should not be more than kmer length")
+    @Argument(doc="Distance between kmers in reference lookup. Longer stride reduces memory usage. Should not be more than kmer length. Only used when MINIMISER_WINDOW is 0.")
     public int STRIDE = 16;
+    @Argument(doc="Number of consecutive kmers from which each minimiser is sampled for the reference lookup. " +
+            "Larger windows reduce memory usage. Defaults to 0 which samples reference kmers every STRIDE bases.")
+    public int MINIMISER_WINDOW = 0;
+    @Argument(doc="Number of worker threads to spawn. Defaults to number of cores available.", shortName="THREADS")
+    public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
     @Argument(doc="NCBI taxonomy nodes.dmp. Download and extract from https://ftp.ncbi.nlm.nih.gov/pub/taxonomy/taxdmp.zip")
     public File NCBI_NODES_DMP;
     @Argument(doc="Kraken2 seqid2taxid.map mapping file")
@@ -96,8 +100,7 @@ public class ExtractBestViralReference extends CommandLineProgram {
             }
             log.info("Loading seqid2taxid.map from ", SEQID2TAXID_MAP);
             Map<String, Integer> seq2taxLookup = SeqIdToTaxIdMap.createLookup(SEQID2TAXID_MAP);
-            log.info("Loading NCBI taxonomy from ", NCBI_NODES_DMP);
-            Map<Integer, TaxonomyNode> taxa = TaxonomyHelper.parseFull(NCBI_NODES_DMP);
+            NcbiTaxonomy taxa = NcbiTaxonomy.load(NCBI_NODES_DMP, NcbiTaxonomy.getCacheFile(NCBI_NODES_DMP));
             log.info("Parsing ", INPUT_SUMMARY);
             List<List<String>> summaryLines = Files.readAllLines(INPUT_SUMMARY.toPath()).stream()
                     .map(line -> Arrays.asList(line.split("\t")))
@@ -106,7 +109,7 @@ public class ExtractBestViralReference extends CommandLineProgram {
                     .skip(1) // ignore header
                     .map(line -> Integer.parseInt(line.get(6)))
                     .collect(Collectors.toSet());
-            boolean[] taxidInTreeOfInterest = TaxonomyHelper.createInclusionLookup(taxaOfInterest, taxa);
+            boolean[] taxidInTreeOfInterest = taxa.createInclusionLookup(taxaOfInterest);
 
             Stream<ReferenceSequence> candidateContigs = ref.stream()
                 .flatMap(r -> r.getSequenceDictionary()
@@ -115,13 +118,11 @@ public class ExtractBestViralReference extends CommandLineProgram {
                     .filter(s -> taxidInTreeOfInterest[seq2taxLookup.get(s.getSequenceName())])
                     .map(s -> r.getSequence(s.getSequenceName())));
 
-            ContigKmerCounter ckc = new ContigKmerCounter(candidateContigs, KMER, STRIDE);
+            ContigKmerCounter ckc = new ContigKmerCounter(candidateContigs, KMER, STRIDE, MINIMISER_WINDOW);
             if (INPUT_VIRAL_READS != null) {
                 log.info("Identifying best viral reference genomes from ", INPUT_VIRAL_READS);
-                FastqReader fqr = new FastqReader(INPUT_VIRAL_READS);
-                while (fqr.hasNext()) {
-                    FastqRecord fq = fqr.next();
-                    ckc.count(fq.getReadBases());
+                try (FastqReader fqr = new FastqReader(INPUT_VIRAL_READS)) {
+                    ckc.count(Iterators.transform(fqr, FastqRecord::getReadBases), WORKER_THREADS);
                 }
             }
             Map<Integer, List<Pair<String, Long>>> candidateContigCountsByTaxa = Streams.zip(
@@ -220,9 +221,9 @@ public class ExtractBestViralReference extends CommandLineProgram {
         return 0;
     }
 
-    private int getParentTaxaOfInterest(Set<Integer> taxaOfInterest, Map<Integer, ? extends MinimalTaxonomyNode> taxa, int taxId) {
+    private int getParentTaxaOfInterest(Set<Integer> taxaOfInterest, NcbiTaxonomy taxa, int taxId) {
         while (!taxaOfInterest.contains(taxId)) {
-            int parentTaxId = taxa.get(taxId).parentTaxId;
+            int parentTaxId = taxa.parentTaxId(taxId);
             if (parentTaxId <= 1) return taxId;
             taxId = parentTaxId;
         }
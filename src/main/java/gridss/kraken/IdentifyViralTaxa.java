@@ -2,8 +2,7 @@ package gridss.kraken;
 
 import au.edu.wehi.idsv.kraken.KrakenReportLine;
 import au.edu.wehi.idsv.kraken.SeqIdToTaxIdMap;
-import au.edu.wehi.idsv.ncbi.MinimalTaxonomyNode;
-import au.edu.wehi.idsv.ncbi.TaxonomyHelper;
+import au.edu.wehi.idsv.ncbi.NcbiTaxonomy;
 import au.edu.wehi.idsv.ncbi.TaxonomyLevel;
 import com.google.common.collect.Lists;
 import gridss.cmdline.ReferenceCommandLineProgram;
@@ -113,10 +112,9 @@ public class IdentifyViralTaxa extends CommandLineProgram {
             }
             log.info("Loading seqid2taxid.map from ", SEQID2TAXID_MAP);
             Map<String, Integer> seq2taxLookup = SeqIdToTaxIdMap.createLookup(SEQID2TAXID_MAP);
-            log.info("Loading NCBI taxonomy from ", NCBI_NODES_DMP);
-            Map<Integer, MinimalTaxonomyNode> taxa = TaxonomyHelper.parseMinimal(NCBI_NODES_DMP);
-            boolean[] taxIdLookup = TaxonomyHelper.createInclusionLookup(TAXONOMY_IDS, taxa);
-            boolean[] relevantTaxIdAndAncestors = TaxonomyHelper.addAncestors(taxIdLookup, taxa);
+            NcbiTaxonomy taxa = NcbiTaxonomy.load(NCBI_NODES_DMP, NcbiTaxonomy.getCacheFile(NCBI_NODES_DMP));
+            boolean[] taxIdLookup = taxa.createInclusionLookup(TAXONOMY_IDS);
+            boolean[] relevantTaxIdAndAncestors = taxa.addAncestors(taxIdLookup);
             log.info("Parsing Kraken2 report from ", INPUT_KRAKEN2_REPORT);
             List<KrakenReportLine> fullReport = Files.lines(INPUT_KRAKEN2_REPORT.toPath())
                     .map(s -> new KrakenReportLine(s))
@@ -165,7 +163,7 @@ public class IdentifyViralTaxa extends CommandLineProgram {
         return "taxid_genus\tname_genus\treads_genus_tree\ttaxid_species\tname_species\treads_species_tree\ttaxid_assigned\tname_assigned\treads_assigned_tree\treads_assigned_direct";
     }
 
-    private String createSummaryLine(List<KrakenReportLine> fullReport, Map<Integer, MinimalTaxonomyNode> taxa, KrakenReportLine line) {
+    private String createSummaryLine(List<KrakenReportLine> fullReport, NcbiTaxonomy taxa, KrakenReportLine line) {
         Map<Integer, KrakenReportLine> lookup = fullReport.stream().collect(Collectors.toMap(x -> x.taxonomyId, x -> x));
         KrakenReportLine genus = line;
         KrakenReportLine species = line;
@@ -179,7 +177,7 @@ public class IdentifyViralTaxa extends CommandLineProgram {
                     genus = current;
                     break;
             }
-            int parent_taxid = taxa.get(current.taxonomyId).parentTaxId;
+            int parent_taxid = taxa.parentTaxId(current.taxonomyId);
             if (parent_taxid <= 1) break;
             current = lookup.get(parent_taxid);
         }
@@ -196,7 +194,7 @@ public class IdentifyViralTaxa extends CommandLineProgram {
      * @param level
      * @return
      */
-    public static Int2IntMap createTaxaGroupLookup(Map<Integer, ? extends MinimalTaxonomyNode> taxa, List<KrakenReportLine> fullReport, TaxonomyLevel level) {
+    public static Int2IntMap createTaxaGroupLookup(NcbiTaxonomy taxa, List<KrakenReportLine> fullReport, TaxonomyLevel level) {
         Map<Integer, KrakenReportLine> reportLookup = fullReport.stream().collect(Collectors.toMap(krl -> krl.taxonomyId, krl -> krl));
         Int2IntMap taxaGroupLookup = new Int2IntOpenHashMap();
         for (KrakenReportLine krl : fullReport) {
@@ -207,9 +205,10 @@ public class IdentifyViralTaxa extends CommandLineProgram {
                     if (level.krakenAbbreviation().equals(parent.rank)) {
                         groupTaxa = parent.taxonomyId;
                     }
-                    if (taxa.get(parent.taxonomyId) == null) break;
-                    if (parent.taxonomyId == taxa.get(parent.taxonomyId).parentTaxId) break;
-                    parent = reportLookup.get(taxa.get(parent.taxonomyId).parentTaxId);
+                    if (!taxa.contains(parent.taxonomyId)) break;
+                    int parentTaxId = taxa.parentTaxId(parent.taxonomyId);
+                    if (parent.taxonomyId == parentTaxId) break;
+                    parent = reportLookup.get(parentTaxId);
                 }
             }
             taxaGroupLookup.put(krl.taxonomyId, groupTaxa);
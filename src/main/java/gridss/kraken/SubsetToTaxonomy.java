@@ -3,7 +3,11 @@ package gridss.kraken;
 import au.edu.wehi.idsv.kraken.KrakenClassification;
 import au.edu.wehi.idsv.kraken.KrakenClassificationChecker;
 import au.edu.wehi.idsv.kraken.KrakenParser;
+import au.edu.wehi.idsv.ncbi.NcbiTaxonomy;
+import au.edu.wehi.idsv.util.BatchingIterator;
+import au.edu.wehi.idsv.util.ParallelTransformIterator;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -13,8 +17,11 @@ import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 @CommandLineProgramProperties(
         summary = "Processes Kraken2 output and subsets to only those records under the given taxonomic IDs. ",
@@ -24,6 +31,7 @@ import java.util.List;
 public class SubsetToTaxonomy extends CommandLineProgram {
     private static final int NCBI_VIRUS_TAXID = 10239;
     private static final Log log = Log.getInstance(SubsetToTaxonomy.class);
+    private static final int BATCH_SIZE = 1000;
     @Argument(shortName= StandardOptionDefinitions.INPUT_SHORT_NAME, doc="Kraken2 output file.")
     public File INPUT;
     @Argument(shortName=StandardOptionDefinitions.OUTPUT_SHORT_NAME, doc="Output file")
@@ -34,6 +42,10 @@ public class SubsetToTaxonomy extends CommandLineProgram {
     public List<Integer> TAXONOMY_IDS = Lists.newArrayList(NCBI_VIRUS_TAXID);
     @Argument(doc="NCBI taxonomy nodes.dmp. Download and extract from https://ftp.ncbi.nlm.nih.gov/pub/taxonomy/taxdmp.zip")
     public File NCBI_NODES_DMP;
+    @Argument(doc = "Number of worker threads to spawn. Defaults to number of cores available."
+            + " Note that I/O threads are not included in this worker thread count so CPU usage can be higher than the number of worker thread.",
+            shortName = "THREADS")
+    public int WORKER_THREADS = Runtime.getRuntime().availableProcessors();
     //@Argument(doc="Include in output if any kmer unambiguously matches the taxonomic classification.", optional = true)
     //public Boolean ANY_KMER = true;
 
@@ -53,21 +65,27 @@ public class SubsetToTaxonomy extends CommandLineProgram {
         IOUtil.assertFileIsReadable(INPUT);
         IOUtil.assertFileIsReadable(NCBI_NODES_DMP);
         IOUtil.assertFileIsWritable(OUTPUT);
-        try (KrakenParser parser = new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(INPUT))))) {
-            KrakenClassificationChecker kcc = new KrakenClassificationChecker(TAXONOMY_IDS, NCBI_NODES_DMP);
+        ExecutorService threadpool = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Worker-%d").build());
+        try (KrakenParser parser = new KrakenParser(new FileInputStream(INPUT))) {
+            KrakenClassificationChecker kcc = new KrakenClassificationChecker(TAXONOMY_IDS, NcbiTaxonomy.load(NCBI_NODES_DMP, NcbiTaxonomy.getCacheFile(NCBI_NODES_DMP)));
             log.info("Performing taxonomy lookup on ", INPUT);
+            // kmer classifications are lazily parsed so filtering on the worker threads also parallelises parsing
+            Iterator<List<KrakenClassification>> it = new ParallelTransformIterator<>(
+                    new BatchingIterator<>(parser, BATCH_SIZE),
+                    batch -> batch.stream().filter(kcc::isOfInterest).collect(Collectors.toList()),
+                    2 * WORKER_THREADS,
+                    threadpool);
             try (BufferedOutputStream os = new BufferedOutputStream(new FileOutputStream(OUTPUT))) {
-                while (parser.hasNext()) {
-                    KrakenClassification kc = parser.next();
-                    if (kcc.isOfInterest(kc)) {
+                while (it.hasNext()) {
+                    for (KrakenClassification kc : it.next()) {
                         switch (FORMAT) {
                             case READ_NAME:
-                                os.write(kc.sequenceId.getBytes(StandardCharsets.UTF_8));
+                                kc.writeSequenceId(os);
                                 os.write('\n');
                                 break;
                             case KRAKEN:
                             default:
-                                os.write(kc.toKrakenOutput().getBytes(StandardCharsets.UTF_8));
+                                kc.writeKrakenOutput(os);
                                 os.write('\n');
                                 break;
                         }
@@ -77,6 +95,8 @@ public class SubsetToTaxonomy extends CommandLineProgram {
         } catch (IOException e) {
             log.error(e);
             throw new RuntimeIOException(e);
+        } finally {
+            threadpool.shutdown();
         }
         return 0;
     }
@@ -52,7 +52,7 @@ public class AnnotateVariantsRepeatMasker extends CommandLineProgram {
 		IOUtil.assertFileIsReadable(INPUT);
 		IOUtil.assertFileIsReadable(REPEAT_MASKER);
 		IOUtil.assertFileIsWritable(OUTPUT);
-		try (KrakenParser parser = new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(INPUT))))) {
+		try (KrakenParser parser = new KrakenParser(new FileInputStream(INPUT))) {
 			try (VCFFileReader vcfReader = new VCFFileReader(INPUT, false)) {
 				VCFHeader header = vcfReader.getFileHeader();
 				if (header.getSequenceDictionary() == null) {
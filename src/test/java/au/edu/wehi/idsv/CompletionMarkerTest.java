@@ -0,0 +1,52 @@
+package au.edu.wehi.idsv;
+
+import com.google.common.io.Files;
+import htsjdk.samtools.QueryInterval;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CompletionMarkerTest {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	@Test
+	public void fingerprint_should_depend_on_input_file_content() throws IOException {
+		File input = testFolder.newFile("input.bam");
+		Files.asCharSink(input, StandardCharsets.UTF_8).write("a");
+		String fp = CompletionMarker.fingerprint("params", input);
+		assertEquals(fp, CompletionMarker.fingerprint("params", input));
+		Files.asCharSink(input, StandardCharsets.UTF_8).write("ab");
+		assertNotEquals(fp, CompletionMarker.fingerprint("params", input));
+	}
+	@Test
+	public void fingerprint_should_depend_on_parameters_and_intervals() {
+		QueryInterval[] chunk = new QueryInterval[] { new QueryInterval(0, 1, 100) };
+		String fp = CompletionMarker.fingerprint("params", chunk);
+		assertNotEquals(fp, CompletionMarker.fingerprint("params2", chunk));
+		assertNotEquals(fp, CompletionMarker.fingerprint("params", new QueryInterval[] { new QueryInterval(0, 1, 101) }));
+		assertNotEquals(CompletionMarker.fingerprint("ab", "c"), CompletionMarker.fingerprint("a", "bc"));
+	}
+	@Test
+	public void should_be_complete_only_after_marked_with_matching_fingerprint() throws IOException {
+		File output = testFolder.newFile("chunk0.bam");
+		assertFalse(CompletionMarker.isComplete(output, "fp"));
+		CompletionMarker.markComplete(output, "fp");
+		assertTrue(CompletionMarker.isComplete(output, "fp"));
+		assertFalse(CompletionMarker.isComplete(output, "fp2"));
+		CompletionMarker.clear(output);
+		assertFalse(CompletionMarker.isComplete(output, "fp"));
+	}
+	@Test
+	public void should_not_be_complete_if_output_missing() throws IOException {
+		File output = testFolder.newFile("chunk0.bam");
+		CompletionMarker.markComplete(output, "fp");
+		output.delete();
+		assertFalse(CompletionMarker.isComplete(output, "fp"));
+	}
+}
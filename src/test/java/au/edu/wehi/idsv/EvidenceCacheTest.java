@@ -0,0 +1,146 @@
+package au.edu.wehi.idsv;
+
+import au.edu.wehi.idsv.model.ExclusionModel;
+import au.edu.wehi.idsv.model.MapqModel;
+import com.google.common.collect.Lists;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EvidenceCacheTest extends IntermediateFilesTest {
+	private List<SAMRecord> createTestInput() {
+		List<SAMRecord> in = new ArrayList<>();
+		for (int i = 1; i < 100; i++) {
+			in.add(Read(1, i, "5S5M"));
+			in.add(Read(1, i, "5M2I5M"));
+			in.add(Read(1, i, "5M5S"));
+			Collections.addAll(in, RP(0, i, i + 10, 5));
+			Collections.addAll(in, OEA(1, i, "5M", true));
+			Collections.addAll(in, DP(1, i, "5M", true, 0, 1, "5M", false));
+			Collections.addAll(in, DP(2, i, "5M", false, 1, i + 50, "5M", false));
+		}
+		return in;
+	}
+	private void createSVBam(SAMEvidenceSource source, SAMRecord... records) throws IOException {
+		createBAM(source.getSVFile(), SAMFileHeader.SortOrder.coordinate, records);
+		try (SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(source.getSVFile())) {
+			BAMIndexer.createIndex(reader, new File(source.getSVFile().getPath() + BAMIndex.BAI_INDEX_SUFFIX));
+		}
+	}
+	@Test
+	public void should_round_trip_evidence_summary() throws IOException {
+		createInput(createTestInput());
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		List<DirectedEvidence> expected = Lists.newArrayList(source.iterator(SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition));
+		File cache = new File(testFolder.getRoot(), "test.sv.evidence");
+		EvidenceCache.write(cache, source.iterator(SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition), source.getSourceCategory(), "fp");
+		List<DirectedEvidence> actual = Lists.newArrayList(new EvidenceCache(source, cache, "fp").iterator());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			DirectedEvidence e = expected.get(i);
+			DirectedEvidence a = actual.get(i);
+			assertEquals(e.getEvidenceID(), a.getEvidenceID());
+			assertEquals(e.getBreakendSummary(), a.getBreakendSummary());
+			assertEquals(e.getBreakendQual(), a.getBreakendQual(), 0);
+			assertEquals(e.getLocalMapq(), a.getLocalMapq());
+			assertEquals(e.isBreakendExact(), a.isBreakendExact());
+			assertEquals(e.getStrandBias(), a.getStrandBias(), 0);
+			assertEquals(new ArrayList<>(e.getOriginatingFragmentID(0)), new ArrayList<>(a.getOriginatingFragmentID(0)));
+			assertArrayEquals(e.getAnchorSequence(), a.getAnchorSequence());
+			assertArrayEquals(e.getBreakendSequence(), a.getBreakendSequence());
+			assertEquals(e instanceof DirectedBreakpoint, a instanceof DirectedBreakpoint);
+			if (e instanceof DirectedBreakpoint) {
+				assertEquals(((DirectedBreakpoint)e).getBreakpointQual(), ((DirectedBreakpoint)a).getBreakpointQual(), 0);
+				assertEquals(((DirectedBreakpoint)e).getRemoteMapq(), ((DirectedBreakpoint)a).getRemoteMapq());
+			}
+			assertEquals(source, a.getEvidenceSource());
+		}
+	}
+	@Test
+	public void query_should_match_bam_query() throws IOException {
+		createInput(createTestInput());
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		File cache = new File(testFolder.getRoot(), "test.sv.evidence");
+		EvidenceCache.write(cache, source.iterator(SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition), source.getSourceCategory(), "fp");
+		QueryInterval[] qi = new QueryInterval[] { new QueryInterval(1, 20, 30), new QueryInterval(2, 50, 60) };
+		List<String> expected = Lists.newArrayList(source.iterator(qi, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition))
+				.stream().map(e -> e.getEvidenceID()).collect(Collectors.toList());
+		List<String> actual = Lists.newArrayList(new EvidenceCache(source, cache, "fp").query(qi))
+				.stream().map(e -> e.getEvidenceID()).collect(Collectors.toList());
+		assertFalse(actual.isEmpty());
+		assertEquals(expected, actual);
+	}
+	@Test(expected = IOException.class)
+	public void should_reject_cache_with_different_fingerprint() throws IOException {
+		createInput(createTestInput());
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		File cache = new File(testFolder.getRoot(), "test.sv.evidence");
+		EvidenceCache.write(cache, source.iterator(SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition), source.getSourceCategory(), "fp");
+		assertEquals("fp", EvidenceCache.readFingerprint(cache));
+		new EvidenceCache(source, cache, "fp2");
+	}
+	@Test
+	public void summaryIterator_should_use_cache_when_present() throws IOException {
+		createInput(Read(0, 1, "50M50S"));
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		createSVBam(source, Read(0, 1, "50M50S"));
+		source.ensureEvidenceCache();
+		assertTrue(source.getEvidenceCacheFile().exists());
+		QueryInterval[] qi = new QueryInterval[] { new QueryInterval(0, 1, 100) };
+		List<DirectedEvidence> list = Lists.newArrayList(source.summaryIterator(qi, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition, true));
+		assertEquals(1, list.size());
+		assertTrue(list.get(0) instanceof CachedDirectedEvidence);
+	}
+	@Test
+	public void summaryIterator_should_not_use_cache_when_caching_disabled() throws IOException {
+		createInput(Read(0, 1, "50M50S"));
+		SAMEvidenceSource source = new SAMEvidenceSource(getCommandlineContext(), input, null, 0);
+		createSVBam(source, Read(0, 1, "50M50S"));
+		source.ensureEvidenceCache();
+		QueryInterval[] qi = new QueryInterval[] { new QueryInterval(0, 1, 100) };
+		List<DirectedEvidence> list = Lists.newArrayList(source.summaryIterator(qi, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition, false));
+		assertEquals(1, list.size());
+		assertFalse(list.get(0) instanceof CachedDirectedEvidence);
+	}
+	@Test
+	public void summaryIterator_should_not_use_cache_written_with_different_configuration() throws IOException {
+		createInput(Read(0, 1, "50M50S"));
+		ProcessingContext pc = getCommandlineContext();
+		SAMEvidenceSource source = new SAMEvidenceSource(pc, input, null, 0);
+		createSVBam(source, Read(0, 1, "50M50S"));
+		source.ensureEvidenceCache();
+		pc.getConfig().getScoring().setModel(new ExclusionModel(new MapqModel(), false, false, true, false, false));
+		QueryInterval[] qi = new QueryInterval[] { new QueryInterval(0, 1, 100) };
+		List<DirectedEvidence> list = Lists.newArrayList(source.summaryIterator(qi, SAMEvidenceSource.EvidenceSortOrder.EvidenceStartPosition, true));
+		assertEquals(1, list.size());
+		assertFalse(list.get(0) instanceof CachedDirectedEvidence);
+	}
+	@Test
+	public void ensureEvidenceCache_should_rewrite_cache_when_configuration_changes() throws IOException {
+		createInput(Read(0, 1, "50M50S"));
+		ProcessingContext pc = getCommandlineContext();
+		SAMEvidenceSource source = new SAMEvidenceSource(pc, input, null, 0);
+		createSVBam(source, Read(0, 1, "50M50S"));
+		source.ensureEvidenceCache();
+		String fp = EvidenceCache.readFingerprint(source.getEvidenceCacheFile());
+		assertEquals(source.getEvidenceFingerprint(), fp);
+		pc.getConfig().getScoring().setModel(new ExclusionModel(new MapqModel(), false, false, true, false, false));
+		source.ensureEvidenceCache();
+		assertNotEquals(fp, EvidenceCache.readFingerprint(source.getEvidenceCacheFile()));
+		assertEquals(source.getEvidenceFingerprint(), EvidenceCache.readFingerprint(source.getEvidenceCacheFile()));
+	}
+}
@@ -1,15 +1,20 @@
 package au.edu.wehi.idsv;
 
 import au.edu.wehi.idsv.bed.IntervalBed;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMRecord;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
-public class FullReadExtractorTest extends TestHelper {
+public class FullReadExtractorTest extends IntermediateFilesTest {
     private static LinearGenomicCoordinate lgc = new PaddedLinearGenomicCoordinate(getSequenceDictionary(), LCCB);
     public class FullReadExtractorStub extends FullReadExtractor {
         public FullReadExtractorStub(LinearGenomicCoordinate lgc, IntervalBed bed, boolean mates, boolean splits) {
@@ -69,4 +74,60 @@ public class FullReadExtractorTest extends TestHelper {
         fre = new FullReadExtractorStub(lgc, bed, true, false);
         assertFalse(fre.shouldExtract(withAttr("SA", "polyA,50,+,5S10M,0,0;polyA,95,+,5S10M,0,0",Read(0, 1, "5M10S"))[0]));
     }
-}
\ No newline at end of file
+    @Test
+    public void getChunks_should_partition_each_contig() {
+        FullReadExtractor fre = new FullReadExtractor(lgc, new IntervalBed(lgc), false, false, 4000);
+        List<QueryInterval> chunks = fre.getChunks(getSequenceDictionary());
+        List<QueryInterval> polyA = chunks.stream().filter(qi -> qi.referenceIndex == 0).collect(Collectors.toList());
+        assertEquals(1, polyA.get(0).start);
+        assertEquals(4000, polyA.get(0).end);
+        assertEquals(4001, polyA.get(1).start);
+        assertEquals(0, polyA.get(polyA.size() - 1).end);
+        assertEquals(getSequenceDictionary().size(), chunks.stream().filter(qi -> qi.end == 0).count());
+    }
+    @Test
+    public void parallel_extraction_should_match_sequential_extraction() throws IOException {
+        Random rng = new Random(0);
+        List<SAMRecord> in = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int ref = rng.nextInt(2);
+            int pos = 1 + rng.nextInt(9000);
+            switch (i % 4) {
+                case 0:
+                    in.add(Read(ref, pos, "50M"));
+                    break;
+                case 1:
+                    for (SAMRecord r : DP(ref, pos, "50M", true, rng.nextInt(2), 1 + rng.nextInt(9000), "50M", false)) {
+                        in.add(r);
+                    }
+                    break;
+                case 2:
+                    for (SAMRecord r : OEA(ref, pos, "50M", true)) {
+                        in.add(r);
+                    }
+                    break;
+                default:
+                    in.add(withAttr("SA", String.format("polyA,%d,+,25S25M,0,0", 1 + rng.nextInt(9000)), Read(ref, pos, "25M25S"))[0]);
+                    break;
+            }
+        }
+        SAMRecord unplaced = Unmapped(50);
+        unplaced.setReadName("unplaced");
+        in.add(unplaced);
+        createInput(in);
+        IntervalBed bed = new IntervalBed(lgc);
+        bed.addInterval(0, 1000, 2000);
+        bed.addInterval(1, 5000, 5100);
+        File sequentialOut = new File(testFolder.getRoot(), "sequential.bam");
+        File parallelOut = new File(testFolder.getRoot(), "parallel.bam");
+        new FullReadExtractor(lgc, bed, true, true, 250).extract(input, sequentialOut, 1);
+        new FullReadExtractor(lgc, bed, true, true, 250).extract(input, parallelOut, 4);
+        List<String> expected = getRecords(sequentialOut).stream().map(SAMRecord::getSAMString).collect(Collectors.toList());
+        List<String> actual = getRecords(parallelOut).stream().map(SAMRecord::getSAMString).collect(Collectors.toList());
+        assertTrue(expected.size() > 0);
+        assertTrue(expected.size() < in.size());
+        // placed unmapped reads must be assigned to the chunk containing their mate
+        assertTrue(getRecords(sequentialOut).stream().anyMatch(SAMRecord::getReadUnmappedFlag));
+        assertEquals(expected, actual);
+    }
+}
@@ -45,6 +45,24 @@ public class SAMEvidenceSourceTest extends IntermediateFilesTest {
 		assertNotNull(source.getMetrics().getMapqMetrics());
 	}
 	@Test
+	public void evidence_fingerprint_should_depend_on_configuration_blacklist_and_duplicate_filtering() {
+		ProcessingContext pc = getCommandlineContext();
+		createInput(RP(0, 100, 200, 100), RP(0, 400, 600, 100));
+		SAMEvidenceSource source = new SAMEvidenceSource(pc, input, null, 0);
+		String fp = source.getEvidenceFingerprint();
+		assertEquals(fp, source.getEvidenceFingerprint());
+		pc.getConfig().getSoftClip().minLength++;
+		String configfp = source.getEvidenceFingerprint();
+		assertNotEquals(fp, configfp);
+		pc.setFilterDuplicates(!pc.isFilterDuplicates());
+		String dupfp = source.getEvidenceFingerprint();
+		assertNotEquals(configfp, dupfp);
+		IntervalBed blacklist = new IntervalBed(pc.getLinear());
+		blacklist.addInterval(0, 1, 10);
+		source.setBlacklistedRegions(blacklist);
+		assertNotEquals(dupfp, source.getEvidenceFingerprint());
+	}
+	@Test
 	public void ensure_metrics_should_coverage_blacklist_bed() {
 		ProcessingContext pc = getCommandlineContext();
 		createInput(RP(0, 100, 200, 100), RP(0, 400, 600, 100));
@@ -0,0 +1,55 @@
+package au.edu.wehi.idsv.alignment;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BandedSmithWatermanAlignerTest extends SmithWatermanAlignerTest {
+    @Override
+    protected Aligner create(int match, int mismatch, int ambiguous, int gapOpen, int gapExtend) {
+        return new BandedSmithWatermanAligner(match, mismatch, ambiguous, gapOpen, gapExtend);
+    }
+    @Test
+    public void should_align_insertion() {
+        Alignment a = create().align_smith_waterman(
+                B("AAACCCCCCCCCCCCCGGTTAATTAATTAATTTT"),
+                B("AAACCCCCCCCCCCCCTTAATTAATTAATTTT"));
+        assertEquals("16M2I16M", a.getCigar());
+        assertEquals(0, a.getStartPosition());
+    }
+    @Test
+    public void should_score_gap_extension_after_first_gap_base() {
+        // 10M + 10M - (6 + 2 * 1) is better than 10M alone
+        Alignment a = create().align_smith_waterman(
+                B("ACGTTGCAGTCCAGTCATGA"),
+                B("ACGTTGCAGTGGGCCAGTCATGA"));
+        assertEquals("10M3D10M", a.getCigar());
+    }
+    @Test
+    public void should_restrict_alignment_to_band() {
+        BandedSmithWatermanAligner aligner = new BandedSmithWatermanAligner(1, -4, -4, 6, 1);
+        byte[] seq = B("CCCCAATTGG");
+        byte[] ref = B("CCCCAATTGGTTTTTTTTTTCCCCAATTGGGA");
+        assertEquals(0, aligner.align_smith_waterman(seq, ref).getStartPosition());
+        Alignment a = aligner.align_smith_waterman(seq, ref, 15, 25);
+        assertEquals("10M", a.getCigar());
+        assertEquals(20, a.getStartPosition());
+    }
+    @Test
+    public void should_soft_clip_entire_sequence_if_no_alignment_in_band() {
+        BandedSmithWatermanAligner aligner = new BandedSmithWatermanAligner(1, -4, -4, 6, 1);
+        assertEquals("4S", aligner.align_smith_waterman(B("AAAA"), B("TTTTAAAA"), -4, 0).getCigar());
+    }
+    @Test
+    public void should_break_ties_towards_shortest_alignment() {
+        BandedSmithWatermanAligner aligner = new BandedSmithWatermanAligner(1, -4, -4, 6, 1);
+        // 10M scores the same as 10M1X4M
+        Alignment a = aligner.align_smith_waterman(B("ACGTTGCAGTAGCCA"), B("ACGTTGCAGTCGCCA"));
+        assertEquals("10M5S", a.getCigar());
+    }
+    @Test
+    public void should_match_case_insensitive() {
+        Alignment a = create().align_smith_waterman(B("acgtacgtac"), B("ACGTACGTAC"));
+        assertEquals("10M", a.getCigar());
+    }
+}
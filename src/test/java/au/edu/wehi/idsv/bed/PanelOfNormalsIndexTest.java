@@ -0,0 +1,84 @@
+package au.edu.wehi.idsv.bed;
+
+import au.edu.wehi.idsv.BreakendSummary;
+import au.edu.wehi.idsv.BreakpointSummary;
+import au.edu.wehi.idsv.IntermediateFilesTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class PanelOfNormalsIndexTest extends IntermediateFilesTest {
+	private PanelOfNormalsIndex createIndex() {
+		return new PanelOfNormalsIndex.Builder(getSequenceDictionary())
+				.add(new BreakendSummary(1, FWD, 100, 100, 200), 3)
+				.add(new BreakendSummary(0, FWD, 50, 10, 1000), 1)
+				.add(new BreakendSummary(0, BWD, 110, 110, 110), 2)
+				.add(new BreakendSummary(0, FWD, 150, 150, 150), 4)
+				.add(new BreakpointSummary(0, FWD, 100, 1, BWD, 200), 5)
+				.add(new BreakpointSummary(1, BWD, 300, 0, FWD, 400), 6)
+				.add(new BreakpointSummary(0, FWD, 500, 490, 510, 0, BWD, 520, 515, 530), 7)
+				.build();
+	}
+	@Test
+	public void should_count_overlapping_breakends() {
+		PanelOfNormalsIndex index = createIndex();
+		assertEquals(4, index.breakendSize());
+		assertEquals(0, index.breakendCount(0, 1, 9, FWD));
+		assertEquals(1, index.breakendCount(0, 1, 10, FWD));
+		assertEquals(5, index.breakendCount(0, 150, 150, FWD));
+		assertEquals(1, index.breakendCount(0, 151, 151, FWD));
+		assertEquals(2, index.breakendCount(new BreakendSummary(0, BWD, 110)));
+		assertEquals(0, index.breakendCount(0, 1001, 2000, FWD));
+		assertEquals(3, index.breakendCount(1, 200, 300, FWD));
+		assertEquals(0, index.breakendCount(2, 1, 10000, FWD));
+	}
+	@Test
+	public void should_count_breakpoints_from_either_breakend() {
+		PanelOfNormalsIndex index = createIndex();
+		assertEquals(3, index.breakpointSize());
+		assertEquals(5, index.breakpointCount(new BreakpointSummary(0, FWD, 100, 1, BWD, 200)));
+		assertEquals(5, index.breakpointCount(new BreakpointSummary(1, BWD, 200, 0, FWD, 100)));
+		assertEquals(0, index.breakpointCount(new BreakpointSummary(0, BWD, 100, 1, BWD, 200)));
+		assertEquals(0, index.breakpointCount(new BreakpointSummary(0, FWD, 100, 1, BWD, 201)));
+		assertEquals(6, index.breakpointCount(new BreakpointSummary(0, FWD, 400, 1, BWD, 300)));
+		assertEquals(6, index.breakpointCount(new BreakpointSummary(1, BWD, 300, 0, FWD, 400)));
+	}
+	@Test
+	public void should_match_overlapping_breakpoint_in_either_orientation() {
+		PanelOfNormalsIndex index = createIndex();
+		assertEquals(7, index.breakpointCount(new BreakpointSummary(0, FWD, 510, 0, BWD, 515)));
+		assertEquals(7, index.breakpointCount(new BreakpointSummary(0, BWD, 515, 0, FWD, 510)));
+		// intervals overlap so the query low breakend is the stored high breakend
+		assertEquals(7, index.breakpointCount(new BreakpointSummary(0, FWD, 500, 500, 530, 0, BWD, 518, 490, 520)));
+	}
+	@Test
+	public void should_round_trip() throws IOException {
+		PanelOfNormalsIndex index = createIndex();
+		File file = new File(testFolder.getRoot(), "pon.idx");
+		index.save(file);
+		PanelOfNormalsIndex loaded = PanelOfNormalsIndex.load(file);
+		loaded.assertDictionaryMatches(getSequenceDictionary());
+		assertEquals(index.breakendSize(), loaded.breakendSize());
+		assertEquals(index.breakpointSize(), loaded.breakpointSize());
+		for (int pos = 1; pos < 1100; pos += 3) {
+			for (int referenceIndex = 0; referenceIndex < 2; referenceIndex++) {
+				assertEquals(index.breakendCount(referenceIndex, pos, pos + 5, FWD), loaded.breakendCount(referenceIndex, pos, pos + 5, FWD));
+				assertEquals(index.breakendCount(referenceIndex, pos, pos + 5, BWD), loaded.breakendCount(referenceIndex, pos, pos + 5, BWD));
+			}
+		}
+		assertEquals(5, loaded.breakpointCount(new BreakpointSummary(1, BWD, 200, 0, FWD, 100)));
+		assertEquals(7, loaded.breakpointCount(new BreakpointSummary(0, BWD, 515, 0, FWD, 510)));
+	}
+	@Test(expected=IOException.class)
+	public void should_reject_non_index_file() throws IOException {
+		File file = new File(testFolder.getRoot(), "pon.bed");
+		Files.write(file.toPath(), "chr1\t1\t2\t.\t1\t+\n".getBytes(StandardCharsets.US_ASCII));
+		PanelOfNormalsIndex.load(file);
+	}
+}
@@ -2,9 +2,14 @@ package au.edu.wehi.idsv.debruijn;
 
 import au.edu.wehi.idsv.TestHelper;
 import com.google.common.collect.ImmutableList;
+import htsjdk.samtools.util.SequenceUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class ContigKmerCounterTest extends TestHelper {
     @Test
     public void should_count_at_end_of_read_and_reference() {
@@ -42,4 +47,63 @@ public class ContigKmerCounterTest extends TestHelper {
         Assert.assertEquals(2, ckc.getKmerCounts().getLong(0));
         Assert.assertEquals(1, ckc.getKmerCounts().getLong(1));
     }
-}
\ No newline at end of file
+    @Test
+    public void should_count_minimisers_in_either_orientation() {
+        byte[] ref = B(S(RANDOM).substring(0, 500));
+        ContigKmerCounter ckc = new ContigKmerCounter(ImmutableList.of("test1", "test2"), ImmutableList.of(ref, B("ACGTACGTACGT")), 15, 1, 8);
+        byte[] read = Arrays.copyOfRange(ref, 100, 250);
+        int hits = ckc.count(read);
+        Assert.assertTrue(hits > 0);
+        Assert.assertEquals(hits, ckc.count(B(SequenceUtil.reverseComplement(S(read)))));
+        Assert.assertEquals(2 * hits, ckc.getKmerCounts().getLong(0));
+        Assert.assertEquals(0, ckc.getKmerCounts().getLong(1));
+        // 150bp read should contain at least one minimiser per window
+        Assert.assertTrue(hits >= (150 - 15 + 1) / 8);
+    }
+    @Test
+    public void should_not_sample_ambiguous_minimisers() {
+        ContigKmerCounter ckc = new ContigKmerCounter(ImmutableList.of("test1"), ImmutableList.of(B("NNNNNNNNNNNNNNNNNNNN")), 4, 1, 4);
+        Assert.assertEquals(0, ckc.count(B("AAAAAAAAAAAAAAAAAAAA")));
+    }
+    @Test
+    public void should_count_minimisers_of_short_sequences() {
+        ContigKmerCounter ckc = new ContigKmerCounter(ImmutableList.of("test1"), ImmutableList.of(B("ACGTTGCA")), 4, 1, 10);
+        Assert.assertEquals(1, ckc.count(B("ACGTTGCA")));
+    }
+    @Test
+    public void parallel_count_should_match_sequential_count() {
+        List<byte[]> ref = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            names.add("contig" + i);
+            ref.add(B(S(RANDOM).substring(i * 1000, i * 1000 + 1500)));
+        }
+        List<byte[]> reads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int start = (i * 37) % 8000;
+            reads.add(B(S(RANDOM).substring(start, start + 100)));
+        }
+        for (int window : new int[] { 0, 5 }) {
+            ContigKmerCounter sequential = new ContigKmerCounter(names, ref, 12, 4, window);
+            ContigKmerCounter parallel = new ContigKmerCounter(names, ref, 12, 4, window);
+            long hits = sequential.count(reads.iterator(), 1);
+            Assert.assertTrue(hits > 0);
+            Assert.assertEquals(hits, parallel.count(reads.iterator(), 4));
+            Assert.assertEquals(sequential.getKmerCounts(), parallel.getKmerCounts());
+        }
+    }
+    @Test(timeout = 60000)
+    public void count_should_rethrow_worker_failure_without_blocking() {
+        ContigKmerCounter ckc = new ContigKmerCounter(ImmutableList.of("test1"), ImmutableList.of(B("ACGTTGCA")), 4, 1);
+        // null reads fail every worker while the producer has many batches left to queue
+        List<byte[]> reads = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            reads.add(null);
+        }
+        try {
+            ckc.count(reads.iterator(), 2);
+            Assert.fail();
+        } catch (NullPointerException e) {
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package au.edu.wehi.idsv.debruijn;
 
 import au.edu.wehi.idsv.DirectedEvidence;
+import au.edu.wehi.idsv.NonReferenceReadPair;
 import au.edu.wehi.idsv.TestHelper;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.util.SequenceUtil;
@@ -9,6 +10,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class ReadErrorCorrectorTest extends TestHelper {
     private static final String SEQ = S(RANDOM).substring(0, 100);
@@ -196,4 +198,114 @@ public class ReadErrorCorrectorTest extends TestHelper {
             Assert.assertEquals("AAAAAAAAAAAAAAAAAAAAAAAAA", reads.get(0).getReadString());
         }
     }
+    private List<DirectedEvidence> randomErrorEvidence(int n) {
+        Random rng = new Random(0);
+        MockSAMEvidenceSource ses = SES();
+        List<DirectedEvidence> evidence = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            byte[] bases = B(SEQ);
+            for (int j = 0; j < 3; j++) {
+                bases[rng.nextInt(bases.length)] = (byte)"ACGT".charAt(rng.nextInt(4));
+            }
+            if (i % 2 == 0) {
+                evidence.add(SCE(FWD, ses, withSequence(bases, Read(0, 1, "50M50S"))[0]));
+            } else {
+                SAMRecord[] dp = DP(0, 1, "100M", true, 1, 1, "100M", i % 4 == 1);
+                dp[0].setReadBases(B(SEQ));
+                dp[1].setReadBases(bases);
+                evidence.add(NRRP(ses, dp));
+            }
+        }
+        return evidence;
+    }
+    @Test
+    public void parallel_correction_should_match_serial_correction() {
+        int n = 10000;
+        List<DirectedEvidence> serial = randomErrorEvidence(n);
+        List<DirectedEvidence> parallel = randomErrorEvidence(n);
+        List<DirectedEvidence> uncorrected = randomErrorEvidence(n);
+        ReadErrorCorrector.errorCorrect(21, 5, 3, true, serial, 1);
+        ReadErrorCorrector.errorCorrect(21, 5, 3, true, parallel, 4);
+        int changed = 0;
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(serial.get(i).getUnderlyingSAMRecord().getReadString(), parallel.get(i).getUnderlyingSAMRecord().getReadString());
+            if (serial.get(i) instanceof NonReferenceReadPair) {
+                String expected = ((NonReferenceReadPair)serial.get(i)).getNonReferenceRead().getReadString();
+                Assert.assertEquals(expected, ((NonReferenceReadPair)parallel.get(i)).getNonReferenceRead().getReadString());
+                if (!expected.equals(((NonReferenceReadPair)uncorrected.get(i)).getNonReferenceRead().getReadString())) changed++;
+            }
+        }
+        Assert.assertTrue(changed > 0);
+    }
+    private String intoSeqWide(int k, String seq, float threshold, int n) {
+        List<SAMRecord> reads = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            reads.add(withName("seq" + i, withSequence(B(SEQ), Read(0, 1, "100M")))[0]);
+        }
+        SAMRecord r = withSequence(B(seq), Read(0, 1, "100M"))[0];
+        reads.add(r);
+        WideReadErrorCorrector rec = new WideReadErrorCorrector(k, threshold, 100, false);
+        reads.stream().forEach(x -> rec.countKmers(x, false));
+        rec.errorCorrect(r, false);
+        return r.getReadString();
+    }
+    @Test
+    public void wide_kmers_should_correct_to_neighbour_sequence() {
+        WideReadErrorCorrector rec = new WideReadErrorCorrector(41, 10, 100, false);
+        List<SAMRecord> reads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            SAMRecord r = withSequence(B(SEQ), Read(0, 1, "100M"))[0];
+            r.getReadBases()[i] = (byte)(r.getReadBases()[i] == 'T' ? 'A' : 'T');
+            reads.add(r);
+        }
+        reads.stream().forEach(r -> rec.countKmers(r, false));
+        reads.stream().forEach(r -> rec.errorCorrect(r, false));
+        for (SAMRecord r : reads) {
+            Assert.assertEquals(SEQ, S(r.getReadBases()));
+        }
+    }
+    @Test
+    public void wide_kmers_should_correct_any_position() {
+        for (int k : new int[] { 32, 33, 41, 49 }) {
+            for (int offset : new int[] { 0, 1, 2, 31, 32, 33, 50, 98, 99 }) {
+                StringBuilder sb = new StringBuilder(SEQ);
+                sb.setCharAt(offset, (char)SequenceUtil.complement((byte)sb.charAt(offset)));
+                Assert.assertEquals(SEQ, intoSeqWide(k, sb.toString(), 10, 20));
+            }
+        }
+    }
+    @Test
+    public void wide_kmers_should_respect_collapse_threshold() {
+        String seq = "T" + SEQ.substring(1);
+        Assert.assertEquals(seq, intoSeqWide(41, seq, 10, 9));
+        Assert.assertNotEquals(seq, intoSeqWide(41, seq, 10, 10));
+    }
+    @Test
+    public void wide_kmers_should_not_correct_MNV() {
+        StringBuilder sb = new StringBuilder(SEQ);
+        sb.setCharAt(50, (char)SequenceUtil.complement((byte)sb.charAt(50)));
+        sb.setCharAt(51, (char)SequenceUtil.complement((byte)sb.charAt(51)));
+        sb.setCharAt(52, (char)SequenceUtil.complement((byte)sb.charAt(52)));
+        String s2 = sb.toString();
+        Assert.assertEquals(s2, intoSeqWide(41, s2, 10, 20));
+    }
+    @Test(expected = IllegalArgumentException.class)
+    public void should_not_allow_k_larger_than_64() {
+        ReadErrorCorrector.errorCorrect(65, 5, 3, true, randomErrorEvidence(1));
+    }
+    @Test
+    public void wide_kmer_parallel_correction_should_match_serial_correction() {
+        int n = 10000;
+        List<DirectedEvidence> serial = randomErrorEvidence(n);
+        List<DirectedEvidence> parallel = randomErrorEvidence(n);
+        List<DirectedEvidence> uncorrected = randomErrorEvidence(n);
+        ReadErrorCorrector.errorCorrect(48, 5, 3, true, serial, 1);
+        ReadErrorCorrector.errorCorrect(48, 5, 3, true, parallel, 4);
+        int changed = 0;
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(serial.get(i).getUnderlyingSAMRecord().getReadString(), parallel.get(i).getUnderlyingSAMRecord().getReadString());
+            if (!serial.get(i).getUnderlyingSAMRecord().getReadString().equals(uncorrected.get(i).getUnderlyingSAMRecord().getReadString())) changed++;
+        }
+        Assert.assertTrue(changed > 0);
+    }
 }
@@ -9,7 +9,9 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -169,6 +171,37 @@ public class AggregateNodeIteratorTest extends TestHelper {
 		//		snList.stream().mapToInt(n -> (n.endPosition() - n.startPosition() + 1) * n.weight()).sum(),
 		//		anList.stream().mapToInt(n -> (n.endPosition() - n.startPosition() + 1) * n.weight()).sum());
 	}
+	@Test
+	public void should_match_per_position_aggregation() {
+		Random rng = new Random(0);
+		List<KmerNode> input = new ArrayList<KmerNode>();
+		for (int i = 0; i < 2000; i++) {
+			int start = rng.nextInt(500);
+			input.add(new ImmutableKmerNode(rng.nextInt(4), start, start + rng.nextInt(rng.nextBoolean() ? 5 : 100), rng.nextInt(8) == 0, 1 + rng.nextInt(3)));
+		}
+		Collections.sort(input, KmerNodeUtil.ByLastStart);
+		List<KmerNode> anList = Lists.newArrayList(new AggregateNodeIterator(input.iterator()));
+		assertTrue(KmerNodeUtil.ByLastStart.isOrdered(anList));
+		int[][] expectedWeight = new int[4][700];
+		boolean[][] expectedReference = new boolean[4][700];
+		for (KmerNode n : input) {
+			for (int i = n.firstStart(); i <= n.firstEnd(); i++) {
+				expectedWeight[(int)n.firstKmer()][i] += n.weight();
+				expectedReference[(int)n.firstKmer()][i] |= n.isReference();
+			}
+		}
+		int[][] actualWeight = new int[4][700];
+		for (KmerNode n : anList) {
+			for (int i = n.firstStart(); i <= n.firstEnd(); i++) {
+				assertEquals(0, actualWeight[(int)n.firstKmer()][i]);
+				actualWeight[(int)n.firstKmer()][i] = n.weight();
+				assertEquals(expectedReference[(int)n.firstKmer()][i], n.isReference());
+			}
+		}
+		for (int kmer = 0; kmer < 4; kmer++) {
+			assertArrayEquals(expectedWeight[kmer], actualWeight[kmer]);
+		}
+	}
 	//@Test // expensive test to run
 	public void should_stream_input() {
 		AggregateNodeIterator agIt = new AggregateNodeIterator(new SupportNodeIterator(25, new RandomSoftClipIterator(), 100, null, false, 0));
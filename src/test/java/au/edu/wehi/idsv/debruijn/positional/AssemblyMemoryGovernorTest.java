@@ -0,0 +1,32 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AssemblyMemoryGovernorTest {
+	@Test
+	public void should_grade_actions_by_estimated_size() {
+		long nodeBytes = AssemblyMemoryGovernor.estimateBytes(1, 0, 0);
+		AssemblyMemoryGovernor g = new AssemblyMemoryGovernor(10 * nodeBytes);
+		assertEquals(AssemblyMemoryGovernor.Action.NONE, g.update(5, 0, 0));
+		assertFalse(g.shouldFlushEagerly());
+		assertEquals(AssemblyMemoryGovernor.Action.FLUSH_EAGERLY, g.update(6, 0, 0));
+		assertTrue(g.shouldFlushEagerly());
+		assertEquals(AssemblyMemoryGovernor.Action.DOWNSAMPLE_DENSE_WINDOW, g.update(11, 0, 0));
+		assertTrue(g.shouldFlushEagerly());
+		assertEquals(AssemblyMemoryGovernor.Action.NONE, g.update(1, 0, 0));
+		assertEquals(11 * nodeBytes, g.getPeakEstimatedBytes());
+		assertEquals(nodeBytes, g.getEstimatedBytes());
+	}
+	@Test
+	public void should_include_all_node_types_in_estimate() {
+		assertEquals(AssemblyMemoryGovernor.KMER_PATH_NODE_BYTES + 2 * AssemblyMemoryGovernor.KMER_SUPPORT_NODE_BYTES + 3 * AssemblyMemoryGovernor.TRAVERSAL_NODE_BYTES,
+				AssemblyMemoryGovernor.estimateBytes(1, 2, 3));
+	}
+	@Test
+	public void should_disable_when_budget_not_positive() {
+		AssemblyMemoryGovernor g = new AssemblyMemoryGovernor(0);
+		assertEquals(AssemblyMemoryGovernor.Action.NONE, g.update(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+	}
+}
@@ -363,6 +363,39 @@ public class NonReferenceContigAssemblerTest extends TestHelper {
 		output = go(pc, e.toArray(new DirectedEvidence[0]));
 		assertEquals(2 * 100, output.size());
 	}
+	private List<DirectedEvidence> denseSoftClips(MockSAMEvidenceSource ses) {
+		List<DirectedEvidence> e = new ArrayList<>();
+		for (int i = 1; i < 101; i++) {
+			e.add(SCE(FWD, ses, withReadName(String.format("%d-%d", i, 0), withSequence("AAAATTGG", Read(0, i, "4M4S")))[0]));
+			e.add(SCE(FWD, ses, withReadName(String.format("%d-%d", i, 1), withSequence("AAAACCGG", Read(0, i, "4M4S")))[0]));
+		}
+		return e;
+	}
+	@Test
+	public void should_downsample_instead_of_failing_when_graph_exceeds_memory_budget() {
+		ProcessingContext pc = getContext();
+		MockSAMEvidenceSource ses = SES(10, 10);
+		pc.getAssemblyParameters().k = 4;
+		pc.getAssemblyParameters().maxExpectedBreakendLengthMultiple = 1;
+		pc.getAssemblyParameters().positional.maximumNodeDensity = 10;
+		pc.getAssemblyParameters().positional.maximumGraphBytes = 1;
+		List<SAMRecord> output = go(pc, denseSoftClips(ses).toArray(new DirectedEvidence[0]));
+		assertTrue(output.size() > 0);
+		assertTrue(output.size() < 2 * 100);
+		assertEquals(0, tracker.tracking_supportNodeCount());
+	}
+	@Test
+	public void should_not_downsample_when_memory_budget_disabled() {
+		ProcessingContext pc = getContext();
+		MockSAMEvidenceSource ses = SES(10, 10);
+		pc.getAssemblyParameters().k = 4;
+		pc.getAssemblyParameters().maxExpectedBreakendLengthMultiple = 1;
+		pc.getAssemblyParameters().positional.maximumNodeDensity = 10;
+		pc.getAssemblyParameters().positional.maximumGraphBytes = 0;
+		List<SAMRecord> output = go(pc, denseSoftClips(ses).toArray(new DirectedEvidence[0]));
+		assertEquals(2 * 100, output.size());
+		assertTrue(caller.tracking_peakEstimatedGraphBytes() > 0);
+	}
 	@Test
 	public void should_remove_misassembled_partial_paths() {
 		ProcessingContext pc = getContext();
@@ -67,6 +67,26 @@ public class PositionalAssemblerTest extends TestHelper {
         assertArrayEquals(new double[13], IntStream.range(0, 12+1).mapToDouble(i -> aa.getSupportingQualScore(i, null, ImmutableSet.of(AssemblyEvidenceSupport.SupportType.ReadPair), null)).toArray(), 0);
 	}
 	@Test
+	public void should_assemble_kmers_larger_than_a_single_word() {
+		String seq = S(RANDOM).substring(0, 140);
+		for (int k : new int[] { 31, 32, 33, 48, 64 }) {
+			ProcessingContext pc = getContext();
+			pc.getAssemblyParameters().anchorLength = 1;
+			AssemblyEvidenceSource aes = AES(pc);
+			pc.getAssemblyParameters().k = k;
+			List<DirectedEvidence> input = new ArrayList<DirectedEvidence>();
+			input.add(SCE(FWD, withSequence(seq.substring(0, 100), Read(0, 100, "80M20S"))[0]));
+			input.add(SCE(FWD, withSequence(seq.substring(10, 110), Read(0, 110, "70M30S"))[0]));
+			input.add(SCE(FWD, withSequence(seq.substring(40, 140), Read(0, 140, "40M60S"))[0]));
+			input.sort(DirectedEvidenceOrder.ByStartEndStart2End2);
+			List<SingleReadEvidence> r = asAssemblyEvidence(aes, Lists.newArrayList(new PositionalAssembler(pc, aes, new SequentialIdGenerator("asm"), input.iterator(), null, null)));
+			assertEquals(1, r.size());
+			assertEquals(new BreakendSummary(0, FWD, 179), r.get(0).getBreakendSummary());
+			assertEquals(seq.substring(80), S(r.get(0).getBreakendSequence()));
+			assertTrue(seq.endsWith(S(r.get(0).getSAMRecord().getReadBases())));
+		}
+	}
+	@Test
 	public void rp_anchor_should_set_non_reference_bases_as_anchoring() {
 		ProcessingContext pc = getContext();
 		pc.getAssemblyParameters().anchorLength = 1;
@@ -174,4 +194,36 @@ public class PositionalAssemblerTest extends TestHelper {
 				.collect(Collectors.toList());
 		Assert.assertNotEquals(sequences.stream().distinct().count(), assembledReads.size()); // make sure we assembled fewer reads
 	}
+	@Test
+	public void should_only_error_correct_evidence_in_overloaded_interval() {
+		ProcessingContext pc = getContext();
+		pc.getAssemblyParameters().errorCorrection.kmerErrorCorrectionMultiple = 2;
+		pc.getAssemblyParameters().positional.maximumNodeDensity = 0.05f;
+		String seq = S(RANDOM).substring(1, 51) + S(RANDOM).substring(100, 150);
+		List<String> sequences = allSequencesWithinEditDistance(seq, 2);
+		AtomicInteger index = new AtomicInteger();
+		MockSAMEvidenceSource ses = SES();
+		List<DirectedEvidence> e = Lists.newArrayList(sequences.stream()
+				.map(s -> (DirectedEvidence)SCE(FWD, ses, withName(s + index.incrementAndGet(), withSequence(s, Read(2, 1000, "50M50S")))[0]))
+				.collect(Collectors.toList()));
+		// reads outside the overloaded interval that would be error corrected towards the dense reads
+		String outsideSeq = seq.substring(0, 75) + (seq.charAt(75) == 'A' ? "C" : "A") + seq.substring(76);
+		List<SAMRecord> outside = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			SAMRecord r = withName("outside" + i, withSequence(outsideSeq, Read(2, 200, "50M50S")))[0];
+			outside.add(r);
+			e.add(SCE(FWD, ses, r));
+		}
+		for (int i = 1; i < 200; i++) {
+			e.add(SCE(FWD, ses, Read(2, 1000 + i * 100, "50M50S")));
+		}
+		e.sort(DirectedEvidenceOrder.ByStartEndStart2End2);
+		IntervalBed excluded = new IntervalBed(pc.getLinear());
+		AssemblyEvidenceSource aes = AES(pc);
+		ArrayList<SAMRecord> output = Lists.newArrayList(new PositionalAssembler(pc, aes, new SequentialIdGenerator("asm"), e.iterator(), BreakendDirection.Forward, excluded, null));
+		Assert.assertNotEquals(0, excluded.size()); // we should have hit the threshold
+		for (SAMRecord r : outside) {
+			assertEquals(outsideSeq, S(r.getReadBases()));
+		}
+	}
 }
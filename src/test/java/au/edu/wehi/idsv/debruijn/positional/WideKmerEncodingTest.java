@@ -0,0 +1,93 @@
+package au.edu.wehi.idsv.debruijn.positional;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.PackedSequence;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class WideKmerEncodingTest extends TestHelper {
+	private static PackedSequence seq(String bases) {
+		return new PackedSequence(B(bases), false, false);
+	}
+	@Test
+	public void should_round_trip_bases() {
+		String bases = S(RANDOM).substring(0, 100);
+		for (int k : new int[] { 32, 33, 48, 63, 64 }) {
+			WideKmerEncoding encoding = new WideKmerEncoding(k);
+			long[] kmers = encoding.kmers(seq(bases), 0);
+			assertEquals(bases.length() - k + 1, kmers.length);
+			for (int i = 0; i < kmers.length; i++) {
+				assertEquals(bases.substring(i, i + k), encoding.toString(kmers[i]));
+				assertEquals(bases.charAt(i + k - 1), (char)encoding.lastBase(kmers[i]));
+			}
+		}
+	}
+	@Test
+	public void should_reuse_handle_of_existing_kmer() {
+		String bases = S(RANDOM).substring(0, 40);
+		WideKmerEncoding encoding = new WideKmerEncoding(33);
+		long[] first = encoding.kmers(seq(bases), 0);
+		long[] second = encoding.kmers(seq(bases.substring(1)), 1);
+		assertEquals(first[1], second[0]);
+		assertEquals(first.length, encoding.size());
+	}
+	@Test
+	public void adjacent_kmers_should_be_next_states() {
+		String bases = S(RANDOM).substring(0, 100);
+		for (int k : new int[] { 32, 33, 48, 64 }) {
+			WideKmerEncoding encoding = new WideKmerEncoding(k);
+			long[] kmers = encoding.kmers(seq(bases), 0);
+			for (int i = 0; i < kmers.length - 1; i++) {
+				assertTrue(encoding.isNext(kmers[i], kmers[i + 1]));
+				assertFalse(encoding.isNext(kmers[i + 1], kmers[i]));
+				assertArrayEquals(new long[] { kmers[i + 1] }, encoding.nextStates(kmers[i]));
+				assertArrayEquals(new long[] { kmers[i] }, encoding.prevStates(kmers[i + 1]));
+			}
+			assertEquals(0, encoding.nextStates(kmers[kmers.length - 1]).length);
+			assertEquals(0, encoding.prevStates(kmers[0]).length);
+		}
+	}
+	@Test
+	public void next_states_should_include_all_stored_successors() {
+		String prefix = S(RANDOM).substring(0, 40);
+		WideKmerEncoding encoding = new WideKmerEncoding(41);
+		long kmer = encoding.kmers(seq("A" + prefix), 0)[0];
+		long[] successors = new long[] {
+				encoding.kmers(seq(prefix + "A"), 0)[0],
+				encoding.kmers(seq(prefix + "C"), 0)[0],
+				encoding.kmers(seq(prefix + "T"), 0)[0],
+		};
+		long[] nextStates = encoding.nextStates(kmer);
+		Arrays.sort(nextStates);
+		assertArrayEquals(successors, nextStates);
+		for (long next : successors) {
+			assertArrayEquals(new long[] { kmer }, encoding.prevStates(next));
+		}
+	}
+	@Test
+	public void release_should_remove_kmers_before_position() {
+		String bases = S(RANDOM).substring(0, 100);
+		WideKmerEncoding encoding = new WideKmerEncoding(32, 1);
+		long[] early = encoding.kmers(seq(bases.substring(0, 40)), 0);
+		long[] late = encoding.kmers(seq(bases.substring(50, 90)), 100);
+		encoding.release(50);
+		assertEquals(late.length, encoding.size());
+		assertEquals(bases.substring(50, 82), encoding.toString(late[0]));
+		long[] reloaded = encoding.kmers(seq(bases.substring(0, 40)), 200);
+		assertNotEquals(early[0], reloaded[0]);
+		assertEquals(bases.substring(0, 32), encoding.toString(reloaded[0]));
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void should_not_exceed_two_words() {
+		KmerEncoding.create(65);
+	}
+	@Test
+	public void should_use_single_word_encoding_for_small_kmers() {
+		assertTrue(KmerEncoding.create(31) instanceof PackedKmerEncoding);
+		assertTrue(KmerEncoding.create(32) instanceof WideKmerEncoding);
+	}
+}
@@ -0,0 +1,49 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.positional.KmerNodeUtil;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class KmerNodeByFirstStartKmerSortedSetTest extends TestHelper {
+    @Test
+    public void should_match_navigable_set() {
+        int k = 4;
+        KmerPathNode[] list = new KmerPathNode[] {
+            KPN(k, "GTAC", 1, 10, false),
+            KPN(k, "TTAC", 1, 10, true),
+            KPN(k, "AAAA", 1, 10, true),
+            KPN(k, "GTAC", 0, 10, true),
+            KPN(k, "GTAC", 17, 20, true),
+            KPN(k, "TTAC", 31, 40, true),
+            KPN(k, "CCCC", 1000, 1010, true),
+            KPN(k, "CCCC", -5, 10, true),
+        };
+        Random r = new Random(0);
+        NavigableSet<KmerPathNode> ns = new TreeSet<>(KmerNodeUtil.ByFirstStartKmer);
+        KmerNodeByFirstStartKmerSortedSet<KmerPathNode> set = new KmerNodeByFirstStartKmerSortedSet<>(4);
+        for (int i = 0 ; i < 4096; i++) {
+            KmerPathNode kpn = list[r.nextInt(list.length)];
+            assertEquals(ns.contains(kpn), set.contains(kpn));
+            if (r.nextInt(5) < 2) {
+                assertEquals(ns.remove(kpn), set.remove(kpn));
+            } else {
+                assertEquals(ns.add(kpn), set.add(kpn));
+            }
+            assertEquals(ns.size(), set.size());
+            assertEquals(ns.contains(kpn), set.contains(kpn));
+            if (!ns.isEmpty()) {
+                assertEquals(ns.first(), set.first());
+            }
+            assertEquals(Lists.newArrayList(ns), Lists.newArrayList(set.iterator()));
+            assertEquals(Lists.newArrayList(ns.descendingIterator()), Lists.newArrayList(set.descendingIterator()));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package au.edu.wehi.idsv.debruijn.positional.optimiseddatastructures;
+
+import au.edu.wehi.idsv.TestHelper;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathNode;
+import au.edu.wehi.idsv.debruijn.positional.KmerPathSubnode;
+import au.edu.wehi.idsv.debruijn.positional.TraversalNode;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TraversalNodeByFirstEndSortedArrayTest extends TestHelper {
+    @Test
+    public void should_match_sorted_map() {
+        KmerPathNode n = KPN(1, "A", 0, 100, false, 1);
+        Random r = new Random(0);
+        Int2ObjectRBTreeMap<TraversalNode> map = new Int2ObjectRBTreeMap<>();
+        TraversalNodeByFirstEndSortedArray array = new TraversalNodeByFirstEndSortedArray();
+        for (int i = 0; i < 4096; i++) {
+            int start = r.nextInt(100);
+            int end = start + r.nextInt(100 - start + 1);
+            TraversalNode tn = new TraversalNode(new KmerPathSubnode(n, start, end), 0);
+            switch (r.nextInt(3)) {
+                case 0:
+                    map.put(end, tn);
+                    array.put(tn);
+                    break;
+                case 1:
+                    Assert.assertSame(map.remove(end), array.removeByFirstEnd(end));
+                    break;
+                case 2:
+                    Assert.assertSame(map.get(end), array.getByFirstEnd(end));
+                    int index = array.ceilingIndex(start);
+                    assertEquals(map.tailMap(start).size(), array.size() - index);
+                    if (index < array.size()) {
+                        Assert.assertSame(map.get(map.tailMap(start).firstIntKey()), array.get(index));
+                    }
+                    break;
+            }
+            assertEquals(map.size(), array.size());
+            assertEquals(new ArrayList<>(map.values()), new ArrayList<>(array.values()));
+        }
+    }
+    @Test
+    public void removeAt_should_shift_remaining() {
+        KmerPathNode n = KPN(1, "A", 0, 100, false, 1);
+        TraversalNodeByFirstEndSortedArray array = new TraversalNodeByFirstEndSortedArray();
+        TraversalNode tn1 = new TraversalNode(new KmerPathSubnode(n, 0, 1), 0);
+        TraversalNode tn2 = new TraversalNode(new KmerPathSubnode(n, 2, 3), 0);
+        TraversalNode tn3 = new TraversalNode(new KmerPathSubnode(n, 4, 5), 0);
+        array.put(tn3);
+        array.put(tn1);
+        array.put(tn2);
+        Assert.assertSame(tn2, array.removeAt(1));
+        Assert.assertSame(tn1, array.get(0));
+        Assert.assertSame(tn3, array.get(1));
+        assertTrue(array.containsValue(tn3));
+        assertFalse(array.containsValue(tn2));
+    }
+}
@@ -10,10 +10,10 @@ public class KrakenClassificationTest {
         KrakenClassification aligned = new KrakenClassification(new String("C\tid1\t1\t10\t1:10"));
         KrakenClassification unaligned = new KrakenClassification(new String("U\tid2\t0\t100\t"));
         Assert.assertTrue(aligned.isClassified);
-        Assert.assertEquals("id1", aligned.sequenceId);
+        Assert.assertEquals("id1", aligned.getSequenceId());
         Assert.assertEquals(1, aligned.taxonomyId);
         Assert.assertFalse(unaligned.isClassified);
-        Assert.assertEquals("id2", unaligned.sequenceId);
+        Assert.assertEquals("id2", unaligned.getSequenceId());
         Assert.assertEquals(0, unaligned.taxonomyId);
     }
     @Test
@@ -28,26 +28,42 @@ public class KrakenClassificationTest {
     @Test
     public void should_parse_kmer_alignments_se() {
         KrakenClassification kc = new KrakenClassification(new String("C\tid1\t1\t10|20\t1:10"));
-        Assert.assertEquals(1, kc.kmerTaxonomyIds.size());
-        Assert.assertEquals(10, kc.kmerTaxonomyIds.get(0).kmerCount);
-        Assert.assertEquals(1, kc.kmerTaxonomyIds.get(0).taxonomyId);
+        Assert.assertEquals(1, kc.getKmerTaxonomyIds().size());
+        Assert.assertEquals(10, kc.getKmerTaxonomyIds().get(0).kmerCount);
+        Assert.assertEquals(1, kc.getKmerTaxonomyIds().get(0).taxonomyId);
     }
     @Test
     public void should_parse_kmer_alignments_pe() {
         KrakenClassification kc = new KrakenClassification(new String("C\tid2\t9606\t15\t562:13 561:4 A:31 0:1 562:3|:|9606:15"));
-        Assert.assertEquals(5, kc.kmerTaxonomyIds.size());
-        Assert.assertEquals(1, kc.kmerTaxonomyIds2.size());
-        Assert.assertEquals(13, kc.kmerTaxonomyIds.get(0).kmerCount);
-        Assert.assertEquals(4, kc.kmerTaxonomyIds.get(1).kmerCount);
-        Assert.assertEquals(31, kc.kmerTaxonomyIds.get(2).kmerCount);
-        Assert.assertEquals(1, kc.kmerTaxonomyIds.get(3).kmerCount);
-        Assert.assertEquals(3, kc.kmerTaxonomyIds.get(4).kmerCount);
-        Assert.assertEquals(15, kc.kmerTaxonomyIds2.get(0).kmerCount);
-        Assert.assertEquals(562, kc.kmerTaxonomyIds.get(0).taxonomyId);
-        Assert.assertEquals(561, kc.kmerTaxonomyIds.get(1).taxonomyId);
-        Assert.assertEquals(KrakenKmerClassification.AMBIGUOUS, kc.kmerTaxonomyIds.get(2).taxonomyId);
-        Assert.assertEquals(0, kc.kmerTaxonomyIds.get(3).taxonomyId);
-        Assert.assertEquals(562, kc.kmerTaxonomyIds.get(4).taxonomyId);
-        Assert.assertEquals(9606, kc.kmerTaxonomyIds2.get(0).taxonomyId);
+        Assert.assertEquals(5, kc.getKmerTaxonomyIds().size());
+        Assert.assertEquals(1, kc.getKmerTaxonomyIds2().size());
+        Assert.assertEquals(13, kc.getKmerTaxonomyIds().get(0).kmerCount);
+        Assert.assertEquals(4, kc.getKmerTaxonomyIds().get(1).kmerCount);
+        Assert.assertEquals(31, kc.getKmerTaxonomyIds().get(2).kmerCount);
+        Assert.assertEquals(1, kc.getKmerTaxonomyIds().get(3).kmerCount);
+        Assert.assertEquals(3, kc.getKmerTaxonomyIds().get(4).kmerCount);
+        Assert.assertEquals(15, kc.getKmerTaxonomyIds2().get(0).kmerCount);
+        Assert.assertEquals(562, kc.getKmerTaxonomyIds().get(0).taxonomyId);
+        Assert.assertEquals(561, kc.getKmerTaxonomyIds().get(1).taxonomyId);
+        Assert.assertEquals(KrakenKmerClassification.AMBIGUOUS, kc.getKmerTaxonomyIds().get(2).taxonomyId);
+        Assert.assertEquals(0, kc.getKmerTaxonomyIds().get(3).taxonomyId);
+        Assert.assertEquals(562, kc.getKmerTaxonomyIds().get(4).taxonomyId);
+        Assert.assertEquals(9606, kc.getKmerTaxonomyIds2().get(0).taxonomyId);
     }
-}
\ No newline at end of file
+    @Test
+    public void should_match_sequence_id_without_decoding() {
+        KrakenClassification kc = new KrakenClassification("C\tid1\t1\t10\t1:10");
+        Assert.assertTrue(kc.sequenceIdEquals("id1"));
+        Assert.assertFalse(kc.sequenceIdEquals("id2"));
+        Assert.assertFalse(kc.sequenceIdEquals("id"));
+        Assert.assertFalse(kc.sequenceIdEquals(null));
+    }
+    @Test
+    public void should_parse_kmer_taxonomy_id_array() {
+        KrakenClassification kc = new KrakenClassification("C\tid2\t9606\t15|10\t562:13 A:31 -:- 0:1 |:| 9606:15");
+        Assert.assertArrayEquals(new int[] { 562, KrakenKmerClassification.AMBIGUOUS, 0 }, kc.getKmerTaxonomyIdArray());
+        Assert.assertArrayEquals(new int[] { 9606 }, kc.getKmerTaxonomyIdArray2());
+        Assert.assertEquals(0, new KrakenClassification("U\tid2\t0\t100\t").getKmerTaxonomyIdArray().length);
+        Assert.assertEquals(0, new KrakenClassification("U\tid2\t0\t100").getKmerTaxonomyIds2().size());
+    }
+}
@@ -5,32 +5,54 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class KrakenParserTest {
     @Test
     public void should_parse_kraken2_output() throws FileNotFoundException {
-        List<KrakenClassification> result = Lists.newArrayList(new KrakenParser(new BufferedReader(new InputStreamReader(new FileInputStream(new File("src/test/resources/kraken2_output.tsv"))))));
+        List<KrakenClassification> result = Lists.newArrayList(new KrakenParser(new FileInputStream(new File("src/test/resources/kraken2_output.tsv"))));
         Assert.assertEquals(5, result.size());
 
         Assert.assertFalse(result.get(0).isClassified);
-        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9625:11303", result.get(0).sequenceId);
+        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9625:11303", result.get(0).getSequenceId());
         Assert.assertEquals(0, result.get(0).taxonomyId);
 
         Assert.assertFalse(result.get(1).isClassified);
-        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9625:11303", result.get(1).sequenceId);
+        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9625:11303", result.get(1).getSequenceId());
         Assert.assertEquals(0, result.get(1).taxonomyId);
 
         Assert.assertTrue(result.get(2).isClassified);
-        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9670:18239", result.get(2).sequenceId);
+        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9670:18239", result.get(2).getSequenceId());
         Assert.assertEquals(9606, result.get(2).taxonomyId);
 
         Assert.assertTrue(result.get(3).isClassified);
-        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9670:18239", result.get(3).sequenceId);
+        Assert.assertEquals("A00624:8:HHKYHDSXX:1:1245:9670:18239", result.get(3).getSequenceId());
         Assert.assertEquals(9606, result.get(3).taxonomyId);
 
         Assert.assertTrue(result.get(4).isClassified);
-        Assert.assertEquals("A00624:8:HHKYHDSXX:1:2146:29749:32377", result.get(4).sequenceId);
+        Assert.assertEquals("A00624:8:HHKYHDSXX:1:2146:29749:32377", result.get(4).getSequenceId());
         Assert.assertEquals(28384, result.get(4).taxonomyId);
     }
-}
\ No newline at end of file
+    @Test
+    public void should_parse_lines_spanning_buffer_boundaries() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("C\tread").append(i).append("\t").append(i).append("\t151\t");
+            for (int j = 0; j < i; j++) {
+                sb.append("9606:1 ");
+            }
+            sb.append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        // no trailing newline
+        sb.append("U\tlast\t0\t151\t0:117");
+        List<KrakenClassification> result = Lists.newArrayList(new KrakenParser(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8))));
+        Assert.assertEquals(1001, result.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("read" + i, result.get(i).getSequenceId());
+            Assert.assertEquals(i, result.get(i).taxonomyId);
+            Assert.assertEquals(i, result.get(i).getKmerTaxonomyIdArray().length);
+        }
+        Assert.assertEquals("U\tlast\t0\t151\t0:117", result.get(1000).toKrakenOutput());
+    }
+}
@@ -0,0 +1,85 @@
+package au.edu.wehi.idsv.ncbi;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+public class NcbiTaxonomyTest {
+    private static final File HOMO_SAPIENS = new File("src/test/resources/ncbi/homo_sapiens.nodes.dmp");
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    @Test
+    public void shouldParseNodesDmp() throws IOException {
+        NcbiTaxonomy taxonomy = NcbiTaxonomy.parse(new File("src/test/resources/ncbi/test.nodes.dmp"));
+        Assert.assertEquals(2758539, taxonomy.maxTaxId());
+        Assert.assertEquals("no rank", taxonomy.rank(1));
+        Assert.assertEquals(1, taxonomy.parentTaxId(1));
+        Assert.assertEquals("species", taxonomy.rank(2758539));
+        Assert.assertEquals(655722, taxonomy.parentTaxId(2758539));
+        Assert.assertEquals(1707, taxonomy.parentTaxId(11));
+        Assert.assertEquals("species", taxonomy.rank(11));
+        Assert.assertFalse(taxonomy.contains(3));
+        Assert.assertEquals(NcbiTaxonomy.NO_NODE, taxonomy.parentTaxId(3));
+        Assert.assertNull(taxonomy.rank(3));
+    }
+    @Test
+    public void isDescendantOfShouldUseAncestry() throws IOException {
+        NcbiTaxonomy taxonomy = NcbiTaxonomy.parse(HOMO_SAPIENS);
+        Assert.assertTrue(taxonomy.isDescendantOf(9606, 9606));
+        Assert.assertTrue(taxonomy.isDescendantOf(9606, 9605));
+        Assert.assertTrue(taxonomy.isDescendantOf(9606, 1));
+        Assert.assertFalse(taxonomy.isDescendantOf(9605, 9606));
+        Assert.assertFalse(taxonomy.isDescendantOf(10239, 9605));
+        Assert.assertFalse(taxonomy.isDescendantOf(3, 1));
+    }
+    @Test
+    public void shouldMatchTaxonomyHelperLookups() throws IOException {
+        NcbiTaxonomy taxonomy = NcbiTaxonomy.parse(HOMO_SAPIENS);
+        Map<Integer, MinimalTaxonomyNode> lookup = TaxonomyHelper.parseMinimal(HOMO_SAPIENS);
+        Assert.assertEquals(lookup.size(), taxonomy.size());
+        for (List<Integer> taxIds : ImmutableList.of(ImmutableList.of(9606), ImmutableList.of(8287), ImmutableList.of(314293, 376912))) {
+            boolean[] expected = TaxonomyHelper.createInclusionLookup(taxIds, lookup);
+            boolean[] actual = taxonomy.createInclusionLookup(taxIds);
+            Assert.assertArrayEquals(expected, actual);
+            Assert.assertArrayEquals(TaxonomyHelper.addAncestors(expected, lookup), taxonomy.addAncestors(actual));
+        }
+        boolean[] everything = taxonomy.createInclusionLookup(ImmutableList.of(1));
+        for (int taxId : lookup.keySet()) {
+            Assert.assertTrue(everything[taxId]);
+        }
+        boolean[] expectedLeaves = TaxonomyHelper.leafNodes(lookup);
+        boolean[] actualLeaves = taxonomy.leafNodes();
+        for (int taxId : lookup.keySet()) {
+            Assert.assertEquals(expectedLeaves[taxId], actualLeaves[taxId]);
+        }
+    }
+    @Test
+    public void shouldRoundTripThroughCacheFile() throws IOException {
+        File nodes = testFolder.newFile("nodes.dmp");
+        Files.copy(HOMO_SAPIENS.toPath(), nodes.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        File cache = NcbiTaxonomy.getCacheFile(nodes);
+        NcbiTaxonomy parsed = NcbiTaxonomy.load(nodes, cache);
+        Assert.assertTrue(cache.exists());
+        NcbiTaxonomy loaded = NcbiTaxonomy.load(nodes, cache);
+        Assert.assertEquals(parsed.size(), loaded.size());
+        Assert.assertEquals(parsed.maxTaxId(), loaded.maxTaxId());
+        for (int taxId = 0; taxId <= parsed.maxTaxId(); taxId++) {
+            Assert.assertEquals(parsed.parentTaxId(taxId), loaded.parentTaxId(taxId));
+            Assert.assertEquals(parsed.rank(taxId), loaded.rank(taxId));
+        }
+        Assert.assertTrue(loaded.isDescendantOf(9606, 8287));
+        Assert.assertArrayEquals(parsed.createInclusionLookup(ImmutableList.of(8287)), loaded.createInclusionLookup(ImmutableList.of(8287)));
+    }
+    @Test(expected = IOException.class)
+    public void shouldRejectNonCacheFile() throws IOException {
+        NcbiTaxonomy.load(HOMO_SAPIENS);
+    }
+}
@@ -0,0 +1,67 @@
+package au.edu.wehi.idsv.repeatmasker;
+
+import au.edu.wehi.idsv.TestHelper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RepeatMaskerIntervalIndexTest extends TestHelper {
+    private static final File BED = new File("src/test/resources/hg19.rm.bedops.bed");
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+    private static List<String> overlaps(RepeatMaskerIntervalIndex index, String contig, int start, int end) {
+        List<String> result = new ArrayList<>();
+        index.forEachOverlap(contig, start, end, (s, e, negative, type, cls) -> result.add(String.format("%d-%d%s%s/%s", s, e, negative ? "-" : "+", type, cls)));
+        return result;
+    }
+    @Test
+    public void should_find_closed_interval_overlaps_in_start_order() throws IOException {
+        RepeatMaskerIntervalIndex index = RepeatMaskerIntervalIndex.fromBed(BED);
+        Assert.assertEquals(10, index.size());
+        Assert.assertEquals(0, overlaps(index, "chr1", 1, 10000).size());
+        Assert.assertEquals(1, overlaps(index, "chr1", 10001, 10001).size());
+        Assert.assertEquals("10001-10468+(CCCTAA)n/Simple_repeat", overlaps(index, "chr1", 10001, 10001).get(0));
+        Assert.assertEquals(2, overlaps(index, "chr1", 10468, 10469).size());
+        Assert.assertEquals("10469-11447-TAR1/Satellite/telo", overlaps(index, "chr1", 10468, 10469).get(1));
+        Assert.assertEquals(4, overlaps(index, "chr1", 10000, 11700).size());
+        Assert.assertEquals(0, overlaps(index, "chr1", 22076, 100000).size());
+        Assert.assertEquals(0, overlaps(index, "chr2", 1, 100000).size());
+    }
+    @Test
+    public void should_find_overlaps_of_features_contained_in_earlier_features() throws IOException {
+        File bed = testFolder.newFile("nested.bed");
+        java.nio.file.Files.write(bed.toPath(), (
+                "chr1\t100\t1000\tA\t1\t+\t0\t0\t0\t(0)\tC\n" +
+                "chr1\t200\t300\tB\t1\t-\t0\t0\t0\t(0)\tC\n" +
+                "chr1\t400\t500\tD\t1\t+\t0\t0\t0\t(0)\tC\n").getBytes());
+        RepeatMaskerIntervalIndex index = RepeatMaskerIntervalIndex.fromBed(bed);
+        Assert.assertEquals(2, overlaps(index, "chr1", 450, 450).size());
+        Assert.assertEquals(1, overlaps(index, "chr1", 350, 350).size());
+        Assert.assertEquals(3, overlaps(index, "chr1", 250, 450).size());
+    }
+    @Test
+    public void should_round_trip_through_cache_file() throws IOException {
+        RepeatMaskerIntervalIndex index = RepeatMaskerIntervalIndex.fromBed(BED);
+        File cache = new File(testFolder.getRoot(), "rm.gridsscache");
+        RepeatMaskerIntervalIndex created = RepeatMaskerIntervalIndex.load(BED, cache);
+        Assert.assertTrue(cache.exists());
+        RepeatMaskerIntervalIndex loaded = RepeatMaskerIntervalIndex.load(cache);
+        for (RepeatMaskerIntervalIndex i : new RepeatMaskerIntervalIndex[] { created, loaded }) {
+            Assert.assertEquals(index.getContigs(), i.getContigs());
+            Assert.assertEquals(index.size(), i.size());
+            for (int pos = 9990; pos < 22100; pos += 7) {
+                Assert.assertEquals(overlaps(index, "chr1", pos, pos + 20), overlaps(i, "chr1", pos, pos + 20));
+            }
+        }
+    }
+    @Test(expected = IOException.class)
+    public void should_reject_non_index_file() throws IOException {
+        RepeatMaskerIntervalIndex.load(BED);
+    }
+}
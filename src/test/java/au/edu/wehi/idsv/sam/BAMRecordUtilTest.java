@@ -0,0 +1,73 @@
+package au.edu.wehi.idsv.sam;
+
+import au.edu.wehi.idsv.TestHelper;
+import htsjdk.samtools.BAMRecord;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class BAMRecordUtilTest extends TestHelper {
+	private static BAMRecord toBAMRecord(SAMRecord r) {
+		BAMRecordCodec codec = new BAMRecordCodec(getHeader());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		codec.setOutputStream(out);
+		codec.encode(r);
+		codec.setInputStream(new ByteArrayInputStream(out.toByteArray()));
+		return (BAMRecord)codec.decode();
+	}
+	private static SAMRecord withTags(SAMRecord r) {
+		r.setAttribute("XA", 'c');
+		r.setAttribute("NM", 3);
+		r.setAttribute("XB", new int[] { 1, 2, 3 });
+		r.setAttribute("XF", 1.5f);
+		r.setAttribute("XS", (short)7);
+		r.setAttribute("MD", "10A10");
+		return r;
+	}
+	@Test
+	public void cigarOperatorMask_should_match_cigar() {
+		for (String cigar : new String[] { "10M", "5S5M", "5M5S", "2H3S5M", "3M2I3M", "3M2D3M", "3M100N3M", "3=2X3=" }) {
+			SAMRecord r = Read(0, 1, cigar);
+			BAMRecord bam = toBAMRecord(r);
+			assertEquals(BAMRecordUtil.cigarOperatorMask(r), BAMRecordUtil.cigarOperatorMask(bam));
+			assertEquals(SAMRecordUtil.getStartClipLength(r) + SAMRecordUtil.getEndClipLength(r), BAMRecordUtil.clipLength(bam));
+			assertEquals(BAMRecordUtil.maxCigarElementLength(r, BAMRecordUtil.INDEL_OPERATOR_MASK), BAMRecordUtil.maxCigarElementLength(bam, BAMRecordUtil.INDEL_OPERATOR_MASK));
+		}
+	}
+	@Test
+	public void clipLength_should_count_both_ends() {
+		assertEquals(8, BAMRecordUtil.clipLength(toBAMRecord(Read(0, 1, "2H3S5M3S"))));
+		assertEquals(0, BAMRecordUtil.clipLength(toBAMRecord(Read(0, 1, "5M"))));
+	}
+	@Test
+	public void maxCigarElementLength_should_return_longest_matching_element() {
+		assertEquals(100, BAMRecordUtil.maxCigarElementLength(toBAMRecord(Read(0, 1, "3M2I3M100N3M")), BAMRecordUtil.INDEL_OPERATOR_MASK));
+		assertEquals(0, BAMRecordUtil.maxCigarElementLength(toBAMRecord(Read(0, 1, "3S10M")), BAMRecordUtil.INDEL_OPERATOR_MASK));
+	}
+	@Test
+	public void hasAttribute_should_skip_over_all_tag_types() {
+		SAMRecord r = withTags(Read(0, 1, "10M"));
+		BAMRecord bam = toBAMRecord(r);
+		assertFalse(BAMRecordUtil.hasAttribute(bam, SAMTag.SA.name()));
+		r.setAttribute(SAMTag.SA.name(), "polyA,1,+,5M5S,0,0");
+		bam = toBAMRecord(r);
+		assertTrue(BAMRecordUtil.hasAttribute(bam, SAMTag.SA.name()));
+		assertTrue(BAMRecordUtil.hasAttribute(bam, "MD"));
+		assertTrue(BAMRecordUtil.hasAttribute(bam, "XB"));
+		assertFalse(BAMRecordUtil.hasAttribute(bam, "XX"));
+	}
+	@Test
+	public void should_fall_back_to_decoded_record_when_modified() {
+		BAMRecord bam = toBAMRecord(Read(0, 1, "10M"));
+		bam.setAttribute(SAMTag.SA.name(), "polyA,1,+,5M5S,0,0");
+		bam.setCigarString("5S5M");
+		assertTrue(BAMRecordUtil.hasAttribute(bam, SAMTag.SA.name()));
+		assertEquals(5, BAMRecordUtil.clipLength(bam));
+	}
+}
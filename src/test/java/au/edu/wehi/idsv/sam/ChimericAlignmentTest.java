@@ -4,6 +4,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.TextCigarCodec;
 import org.junit.Assert;
 import org.junit.Test;
@@ -151,4 +153,33 @@ public class ChimericAlignmentTest {
 				Range.closedOpen(0, 5))),
 				ChimericAlignment.getUnalignedIntervals(list));
 	}
+	@Test
+	public void should_match_regex_parser() {
+		for (String ca : new String[] {
+				"chr18,107870,-,8817S631M318S,30,39",
+				"chr18,107870,+,8817S631M318S,30",
+				"chr18,107870,+,8817S631M318S",
+				"chr18,107870,-,8817S631M318S,30,,",
+				"chr18,107870,-,*,30,1;",
+				" chr18,107870,-,1=2X3I4D5N6P7H,30,1 ",
+		}) {
+			ChimericAlignment expected = new ChimericAlignment(ca, ",");
+			ChimericAlignment actual = new ChimericAlignment(ca);
+			assertEquals(expected, actual);
+			assertEquals(expected.nm, actual.nm);
+			assertEquals(expected.toString(), actual.toString());
+		}
+	}
+	@Test
+	public void getChimericAlignments_should_cache_record_SA() {
+		SAMRecord r = new SAMRecord(null);
+		r.setAttribute(SAMTag.SA.name(), "polyA,1,+,2M6S,0,0;polyA,1,-,1S5M2S,0,0");
+		List<ChimericAlignment> list = ChimericAlignment.getChimericAlignments(r);
+		assertEquals(2, list.size());
+		assertSame(list, ChimericAlignment.getChimericAlignments(r));
+		r.setAttribute(SAMTag.SA.name(), "polyA,1,+,2M6S,0,0");
+		assertEquals(1, ChimericAlignment.getChimericAlignments(r).size());
+		r.setAttribute(SAMTag.SA.name(), null);
+		assertEquals(0, ChimericAlignment.getChimericAlignments(r).size());
+	}
 }
@@ -7,7 +7,12 @@ import com.google.common.primitives.Ints;
 import htsjdk.samtools.util.CloseableIterator;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import static org.junit.Assert.*;
 
@@ -44,44 +49,101 @@ public class AsyncBufferedIteratorTest {
 	}
 	@Test
 	public void should_close_when_underlying_end_of_stream_reached() throws InterruptedException {
-		// 0 1 2 3
-		// 4 5 6 7
-		// 8 91011
-		// 1213
 		CIT it = new CIT(13);
 		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(it, 4, 2);
-		abi.next(); assertFalse(it.isClosed); // first 4 records removed from buffer 
-		abi.next(); assertFalse(it.isClosed);
-		abi.next(); assertFalse(it.isClosed);
-		abi.next(); assertFalse(it.isClosed);
-		abi.next(); // next 4 records removed
-		Thread.sleep(10); // let the consumer thread fill up the newly opened buffer slot with the final two records
-		assertTrue(it.isClosed); // should have now closed
+		for (int i = 0; i < 12; i++) {
+			abi.next();
+		}
+		assertTrue(abi.hasNext());
+		assertTrue(it.isClosed); // read the final record so underlying should now be closed
+		abi.next();
+		assertFalse(abi.hasNext());
 		abi.close();
 	}
 	@Test
-	public void should_block_background_thread_when_waiting_to_write() throws InterruptedException {
-		CIT it = new CIT(2);
+	public void should_not_read_ahead_past_buffer_limit() throws InterruptedException {
+		CIT it = new CIT(100);
 		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(it, 1, 1);
-		assertNotNull(getThreadWithName(abi.getBackgroundThreadName()));
 		abi.next();
-		abi.next(); // eos indicator can now be written to buffer
 		Thread.sleep(50);
-		assertNull(getThreadWithName(abi.getBackgroundThreadName()));
+		assertTrue(100 - it.recordsleft <= 3);
 		abi.close();
+		assertTrue(it.isClosed);
 	}
 	@Test
-	public void should_finish_background_thread_when_end_of_stream_reached() throws InterruptedException {
+	public void should_finish_read_ahead_when_end_of_stream_reached() throws InterruptedException {
 		CIT it = new CIT(1);
-		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(it, "should_finish_background_thread_when_end_of_stream_reached", 1, 1);
-		// A cleaner approach that relying on waiting on a race condition would be nice
-		for (int i = 0; i < 1024; i++) {
-			if (getThreadWithName(abi.getBackgroundThreadName()) != null) {
-				Thread.sleep(1);
+		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(it, "should_finish_read_ahead_when_end_of_stream_reached", 1, 1);
+		for (int i = 0; i < 1024 && (abi.isReadAheadActive() || !it.isClosed); i++) {
+			Thread.sleep(1);
+		}
+		assertFalse(abi.isReadAheadActive());
+		assertTrue(it.isClosed);
+		assertEquals(1, (int)abi.next());
+		assertFalse(abi.hasNext());
+		abi.close();
+	}
+	@Test
+	public void should_not_deadlock_when_nested_on_single_thread_executor() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Semaphore permits = new Semaphore(1024);
+			Iterator<Integer> it = new CIT(10000);
+			for (int i = 0; i < 8; i++) {
+				it = new AsyncBufferedIterator<Integer>(it, "nested" + i, 4, 7, executor, permits);
 			}
+			assertEquals(10000, Iterators.size(it));
+			assertEquals(1024, permits.availablePermits());
+		} finally {
+			executor.shutdown();
 		}
-		assertNull(getThreadWithName(abi.getBackgroundThreadName()));
+	}
+	@Test
+	public void should_limit_total_outstanding_batches() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Semaphore permits = new Semaphore(3);
+			List<CIT> underlying = new ArrayList<>();
+			List<AsyncBufferedIterator<Integer>> list = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				CIT it = new CIT(1000);
+				underlying.add(it);
+				list.add(new AsyncBufferedIterator<Integer>(it, "limit" + i, 8, 10, executor, permits));
+			}
+			Thread.sleep(50);
+			// AbstractIterator reads one record past the end of each batch
+			assertTrue(underlying.stream().mapToInt(it -> 1000 - it.recordsleft).sum() <= 3 * 11);
+			for (AsyncBufferedIterator<Integer> abi : list) {
+				assertEquals(1000, Iterators.size(abi));
+			}
+			for (AsyncBufferedIterator<Integer> abi : list) {
+				abi.close();
+			}
+			assertEquals(3, permits.availablePermits());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	@Test
+	public void should_release_permits_on_close() {
+		Semaphore permits = new Semaphore(16);
+		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(new CIT(1000), "release", 8, 1, Runnable::run, permits);
+		abi.next();
 		abi.close();
+		assertEquals(16, permits.availablePermits());
+	}
+	@Test(expected = IllegalStateException.class)
+	public void should_rethrow_underlying_exception_on_calling_thread() {
+		Iterator<Integer> it = new AbstractIterator<Integer>() {
+			int n = 0;
+			@Override
+			protected Integer computeNext() {
+				if (n++ < 5) return n;
+				throw new IllegalStateException();
+			}
+		};
+		AsyncBufferedIterator<Integer> abi = new AsyncBufferedIterator<Integer>(it, 2, 2);
+		Iterators.size(abi);
 	}
 	public static Thread getThreadWithName(String name) {
 		Thread[] allthreads = new Thread[4096];
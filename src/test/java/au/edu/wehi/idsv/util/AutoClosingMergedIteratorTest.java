@@ -31,17 +31,15 @@ public class AutoClosingMergedIteratorTest extends TestHelper {
 		}
 	}
 	@Test
-	public void should_terminate_async_reader_thread_for_underlying_stream() throws InterruptedException {
+	public void should_terminate_async_read_ahead_for_underlying_stream() {
 		List<SAMRecord> list = ImmutableList.of(Read(0, 1, 1), Read(0, 1, 1), Read(0, 1, 1), Read(0, 1, 1), Read(0, 2, 1));
 		AsyncBufferedIterator<SAMRecord> abi = new AsyncBufferedIterator<SAMRecord>(list.iterator(), 1, 1);
 		AutoClosingMergedIterator<SAMRecord> merged = new AutoClosingMergedIterator<SAMRecord>(ImmutableList.of(
 				abi), new SAMRecordCoordinateComparator());
 		merged.next();
-		Thread.sleep(50);
-		assertNotNull(AsyncBufferedIteratorTest.getThreadWithName(abi.getBackgroundThreadName()));
 		merged.close();
-		Thread.sleep(50);
-		assertNull(AsyncBufferedIteratorTest.getThreadWithName(abi.getBackgroundThreadName()));
+		assertFalse(abi.isReadAheadActive());
+		assertFalse(abi.hasNext());
 	}
 	@Test
 	public void close_should_close_all() {
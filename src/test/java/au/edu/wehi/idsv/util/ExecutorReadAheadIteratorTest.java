@@ -0,0 +1,58 @@
+package au.edu.wehi.idsv.util;
+
+import au.edu.wehi.idsv.util.AsyncBufferedIteratorTest.CIT;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+
+public class ExecutorReadAheadIteratorTest {
+	private final ExecutorService threadpool = Executors.newFixedThreadPool(2);
+	@After
+	public void shutdown() {
+		threadpool.shutdown();
+	}
+	@Test
+	public void should_return_underlying_records() {
+		List<Integer> list = Ints.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+		for (int batchSize = 1; batchSize < 16; batchSize++) {
+			assertArrayEquals(Ints.toArray(list), Ints.toArray(Lists.newArrayList(new ExecutorReadAheadIterator<Integer>(list.iterator(), threadpool, 2, batchSize))));
+		}
+		ExecutorReadAheadIterator<Integer> it = new ExecutorReadAheadIterator<Integer>(new CIT(1024), threadpool, 8, 8);
+		assertEquals(1024, Iterators.size(it));
+		it.close();
+	}
+	@Test
+	public void should_close_underlying() {
+		CIT it = new CIT(5);
+		ExecutorReadAheadIterator<Integer> erai = new ExecutorReadAheadIterator<Integer>(it, threadpool, 1, 1);
+		erai.close();
+		assertTrue(it.isClosed);
+		assertFalse(erai.hasNext());
+	}
+	@Test
+	public void should_share_executor_between_iterators() {
+		List<ExecutorReadAheadIterator<Integer>> list = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			list.add(new ExecutorReadAheadIterator<Integer>(new CIT(100), threadpool, 2, 3));
+		}
+		for (ExecutorReadAheadIterator<Integer> it : list) {
+			assertEquals(100, Iterators.size(it));
+			it.close();
+		}
+	}
+	@Test(expected=RuntimeException.class)
+	public void should_rethrow_underlying_exception() {
+		ExecutorReadAheadIterator<Integer> it = new ExecutorReadAheadIterator<Integer>(new ErrorIterator<Integer>(), threadpool);
+		it.hasNext();
+	}
+}
@@ -0,0 +1,40 @@
+package au.edu.wehi.idsv.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FingerprintSetTest {
+	@Test
+	public void should_assign_ordinals_in_insertion_order() {
+		FingerprintSet set = new FingerprintSet();
+		assertEquals(0, set.add("read1"));
+		assertEquals(1, set.add("read2"));
+		assertEquals(-1, set.add("read1"));
+		assertEquals(2, set.size());
+		assertEquals(0, set.find("read1"));
+		assertEquals(1, set.find("read2"));
+		assertEquals(-1, set.find("read3"));
+		assertFalse(set.contains("read"));
+	}
+	@Test
+	public void should_grow() {
+		FingerprintSet set = new FingerprintSet(1);
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(i, set.add("SRR0000000." + i));
+		}
+		assertEquals(100000, set.size());
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(i, set.find("SRR0000000." + i));
+			assertFalse(set.contains("SRR0000001." + i));
+		}
+	}
+	@Test
+	public void should_distinguish_strings_with_same_hashCode() {
+		// "Aa" and "BB" share the same String.hashCode()
+		FingerprintSet set = new FingerprintSet();
+		set.add("Aa");
+		assertFalse(set.contains("BB"));
+		assertNotEquals(FingerprintSet.fingerprintHigh("Aa"), FingerprintSet.fingerprintHigh("BB"));
+	}
+}
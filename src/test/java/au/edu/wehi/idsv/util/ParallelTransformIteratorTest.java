@@ -11,6 +11,7 @@ import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 
 public class ParallelTransformIteratorTest {
@@ -54,4 +55,57 @@ public class ParallelTransformIteratorTest {
 		for (int i = 32; i > 0; i--) assertEquals(i, (int)it.next());
 		threadpool.shutdown();
 	}
+	@Test
+	public void batch_size_should_determine_records_per_task() {
+		CIT cit = new CIT(16);
+		int[] tasks = new int[1];
+		ParallelTransformIterator<Integer, Integer> it = new ParallelTransformIterator<Integer, Integer>(cit, n -> n, 8, 4, r -> {
+			tasks[0]++;
+			r.run();
+		});
+		it.next();
+		assertEquals(2, tasks[0]);
+		assertEquals(16-8, cit.recordsleft);
+		// next task is not dispatched until a full batch is free
+		for (int i = 1; i < 3; i++) it.next();
+		assertEquals(2, tasks[0]);
+		it.next();
+		assertEquals(3, tasks[0]);
+		while (it.hasNext()) it.next();
+		assertEquals(4, tasks[0]);
+	}
+	@Test
+	public void should_retain_iteration_order_when_batched() {
+		ExecutorService threadpool = Executors.newFixedThreadPool(4);
+		for (int batchSize = 1; batchSize <= 8; batchSize++) {
+			CIT cit = new CIT(64);
+			ParallelTransformIterator<Integer, Integer> it = new ParallelTransformIterator<Integer, Integer>(cit, n -> n * 2, 8, batchSize, threadpool);
+			for (int i = 64; i > 0; i--) assertEquals(2 * i, (int)it.next());
+			assertEquals(false, it.hasNext());
+		}
+		threadpool.shutdown();
+	}
+	@Test
+	public void should_return_null_results() {
+		List<Integer> list = Ints.asList(0, 1, 2, 3);
+		ParallelTransformIterator<Integer, Integer> it = new ParallelTransformIterator<Integer, Integer>(list.iterator(), n -> n % 2 == 0 ? null : n, 2, Runnable::run);
+		assertNull(it.next());
+		assertEquals(1, (int)it.next());
+		assertNull(it.next());
+		assertEquals(3, (int)it.next());
+	}
+	@Test(expected = IllegalStateException.class)
+	public void should_rethrow_transform_exception_on_consumer() {
+		ExecutorService threadpool = Executors.newFixedThreadPool(2);
+		try {
+			CIT cit = new CIT(16);
+			ParallelTransformIterator<Integer, Integer> it = new ParallelTransformIterator<Integer, Integer>(cit, n -> {
+				if (n == 10) throw new IllegalStateException();
+				return n;
+			}, 4, 2, threadpool);
+			while (it.hasNext()) it.next();
+		} finally {
+			threadpool.shutdown();
+		}
+	}
 }
@@ -0,0 +1,49 @@
+package au.edu.wehi.idsv.util;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResidentCacheTest {
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	@After
+	public void disable() {
+		ResidentCache.setEnabled(false);
+	}
+	@Test
+	public void should_load_every_time_when_disabled() throws IOException {
+		File f = testFolder.newFile();
+		AtomicInteger loads = new AtomicInteger();
+		ResidentCache.get("test", f, loads::incrementAndGet);
+		ResidentCache.get("test", f, loads::incrementAndGet);
+		assertEquals(2, loads.get());
+	}
+	@Test
+	public void should_load_once_when_enabled() throws IOException {
+		ResidentCache.setEnabled(true);
+		File f = testFolder.newFile();
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals(1, (int)ResidentCache.get("test", f, loads::incrementAndGet));
+		assertEquals(1, (int)ResidentCache.get("test", f, loads::incrementAndGet));
+		assertEquals(2, (int)ResidentCache.get("other", f, loads::incrementAndGet));
+	}
+	@Test
+	public void should_reload_when_file_changes() throws IOException {
+		ResidentCache.setEnabled(true);
+		File f = testFolder.newFile();
+		AtomicInteger loads = new AtomicInteger();
+		ResidentCache.get("test", f, loads::incrementAndGet);
+		Files.write(f.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+		assertEquals(2, (int)ResidentCache.get("test", f, loads::incrementAndGet));
+	}
+}
@@ -0,0 +1,78 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SlidingWindowBestValueMapTest {
+	private static Integer findBest(RangeMap<Integer, Integer> rm, int start, int end) {
+		Integer best = null;
+		for (Integer v : rm.subRangeMap(Range.closedOpen(start, end + 1)).asMapOfRanges().values()) {
+			if (best == null || v > best) {
+				best = v;
+			}
+		}
+		return best;
+	}
+	@Test
+	public void should_insert_when_best() {
+		SlidingWindowBestValueMap<Integer> m = new SlidingWindowBestValueMap<>();
+		m.putWhereBest(0, 9, 1, Comparator.naturalOrder());
+		m.putWhereBest(1, 4, 1, Comparator.naturalOrder());
+		m.putWhereBest(4, 6, 4, Comparator.naturalOrder());
+		m.putWhereBest(6, 9, 3, Comparator.naturalOrder());
+		m.putWhereBest(8, 8, 5, Comparator.naturalOrder());
+		assertEquals(1, (int)m.findBest(0, 3, Comparator.naturalOrder()));
+		assertEquals(4, (int)m.findBest(0, 6, Comparator.naturalOrder()));
+		assertEquals(3, (int)m.findBest(7, 7, Comparator.naturalOrder()));
+		assertEquals(5, (int)m.findBest(0, 9, Comparator.naturalOrder()));
+		assertEquals(3, (int)m.findBest(9, 20, Comparator.naturalOrder()));
+		assertNull(m.findBest(10, 20, Comparator.naturalOrder()));
+	}
+	@Test
+	public void removeBefore_should_truncate_overlapping_interval() {
+		SlidingWindowBestValueMap<Integer> m = new SlidingWindowBestValueMap<>();
+		m.putWhereBest(0, 9, 1, Comparator.naturalOrder());
+		m.putWhereBest(3, 4, 2, Comparator.naturalOrder());
+		m.removeBefore(4);
+		assertNull(m.findBest(0, 3, Comparator.naturalOrder()));
+		assertEquals(2, (int)m.findBest(0, 4, Comparator.naturalOrder()));
+		assertEquals(1, (int)m.findBest(5, 5, Comparator.naturalOrder()));
+		m.removeBefore(100);
+		assertEquals(0, m.size());
+	}
+	@Test
+	public void should_match_RangeUtil_addWhereBest() {
+		Random rng = new Random(0);
+		// compare only on the tens digit so ties are resolved by insertion order and position
+		Comparator<Integer> cmp = Comparator.comparingInt(x -> x / 10);
+		SlidingWindowBestValueMap<Integer> m = new SlidingWindowBestValueMap<>();
+		RangeMap<Integer, Integer> rm = TreeRangeMap.create();
+		for (int i = 0; i < 5000; i++) {
+			int start = i / 2 + rng.nextInt(20);
+			int end = start + rng.nextInt(rng.nextInt(8) == 0 ? 100 : 5);
+			int value = rng.nextInt(50) * 10000 + i;
+			m.putWhereBest(start, end, value, cmp);
+			RangeUtil.addWhereBest(rm, Range.closedOpen(start, end + 1), value, cmp);
+			if (rng.nextInt(4) == 0) {
+				int position = i / 2 - 10 + rng.nextInt(5);
+				m.removeBefore(position);
+				rm.remove(Range.lessThan(position));
+			}
+			for (int j = 0; j < 3; j++) {
+				int qs = i / 2 + rng.nextInt(40) - 20;
+				int qe = qs + rng.nextInt(10);
+				assertEquals(findBest(rm, qs, qe), m.findBest(qs, qe, Comparator.naturalOrder()));
+				Integer first = rm.subRangeMap(Range.closedOpen(qs, qe + 1)).asMapOfRanges().values().stream().reduce(null, (a, b) -> a == null || cmp.compare(b, a) > 0 ? b : a);
+				assertEquals(first, m.findBest(qs, qe, cmp));
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingWindowIntervalIndexTest {
+	@Test
+	public void should_find_closed_interval_overlaps() {
+		SlidingWindowIntervalIndex<String> index = new SlidingWindowIntervalIndex<>();
+		index.add(1, 10, "a");
+		index.add(5, 6, "b");
+		index.add(8, 8, "c");
+		assertEquals(Lists.newArrayList("a", "b"), Lists.newArrayList(index.findAllOverlapping(6, 7)));
+		assertEquals(Lists.newArrayList("a", "c"), Lists.newArrayList(index.findAllOverlapping(8, 8)));
+		assertEquals(Lists.newArrayList("a"), Lists.newArrayList(index.findAllOverlapping(10, 20)));
+		assertEquals(0, Lists.newArrayList(index.findAllOverlapping(11, 20)).size());
+		assertEquals(0, Lists.newArrayList(index.findAllOverlapping(-5, 0)).size());
+	}
+	@Test
+	public void should_return_overlaps_in_start_end_insertion_order() {
+		SlidingWindowIntervalIndex<String> index = new SlidingWindowIntervalIndex<>();
+		index.add(5, 7, "d");
+		index.add(5, 6, "b");
+		index.add(1, 10, "a");
+		index.add(5, 6, "c");
+		assertEquals(Lists.newArrayList("a", "b", "c", "d"), Lists.newArrayList(index.findAllOverlapping(1, 10)));
+	}
+	@Test
+	public void should_remove_first_matching_value() {
+		SlidingWindowIntervalIndex<String> index = new SlidingWindowIntervalIndex<>();
+		index.add(1, 2, "a");
+		index.add(1, 2, "b");
+		assertFalse(index.remove(1, 3, "a"));
+		assertFalse(index.remove(1, 2, "c"));
+		assertTrue(index.remove(1, 2, "a"));
+		assertEquals(1, index.size());
+		assertTrue(index.remove(1, 2, "b"));
+		assertTrue(index.isEmpty());
+	}
+	@Test
+	public void should_find_best_overlapping_first_on_ties() {
+		SlidingWindowIntervalIndex<String> index = new SlidingWindowIntervalIndex<>();
+		index.add(1, 10, "bb");
+		index.add(2, 3, "a");
+		index.add(3, 3, "cc");
+		Comparator<String> byLength = Comparator.comparing(String::length);
+		assertEquals("bb", index.findBestOverlapping(1, 10, s -> true, byLength));
+		assertEquals("cc", index.findBestOverlapping(3, 10, s -> !s.equals("bb"), byLength));
+		assertEquals("a", index.findBestOverlapping(2, 2, s -> !s.equals("bb"), byLength));
+		assertNull(index.findBestOverlapping(11, 12, s -> true, byLength));
+	}
+	@Test
+	public void should_match_brute_force_overlaps_for_sliding_window() {
+		Random rng = new Random(0);
+		SlidingWindowIntervalIndex<Integer> index = new SlidingWindowIntervalIndex<>();
+		List<int[]> active = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			int start = i / 2 + rng.nextInt(20);
+			int[] interval = new int[] { start, start + rng.nextInt(rng.nextInt(8) == 0 ? 100 : 5), i };
+			index.add(interval[0], interval[1], interval[2]);
+			active.add(interval);
+			while (active.size() > 50 || (active.size() > 0 && rng.nextInt(4) == 0)) {
+				int[] r = active.remove(rng.nextInt(Math.min(active.size(), 3)));
+				assertTrue(index.remove(r[0], r[1], r[2]));
+			}
+			int qs = i / 2 + rng.nextInt(30) - 10;
+			int qe = qs + rng.nextInt(10);
+			List<Integer> expected = new ArrayList<>();
+			active.stream()
+					.filter(x -> x[0] <= qe && x[1] >= qs)
+					.sorted(Comparator.<int[]>comparingInt(x -> x[0]).thenComparingInt(x -> x[1]).thenComparingInt(x -> x[2]))
+					.forEach(x -> expected.add(x[2]));
+			assertEquals(expected, Lists.newArrayList(index.findAllOverlapping(qs, qe)));
+			assertEquals(active.size(), index.size());
+		}
+	}
+}
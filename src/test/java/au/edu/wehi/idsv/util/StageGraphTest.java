@@ -0,0 +1,66 @@
+package au.edu.wehi.idsv.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StageGraphTest {
+	@Test
+	public void should_run_stages_after_dependencies() throws Exception {
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		new StageGraph()
+				.add("a", () -> order.add("a"))
+				.add("b", () -> order.add("b"), "a")
+				.add("c", () -> order.add("c"), "b")
+				.execute();
+		assertEquals("[a, b, c]", order.toString());
+	}
+	@Test
+	public void should_run_independent_stages_concurrently() throws Exception {
+		CountDownLatch latch = new CountDownLatch(2);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		// each stage waits for the other to start
+		StageGraph.Stage stage = () -> {
+			latch.countDown();
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+		};
+		new StageGraph()
+				.add("a", stage)
+				.add("b", stage)
+				.add("c", () -> order.add("c"), "a", "b")
+				.execute();
+		assertEquals("[c]", order.toString());
+	}
+	@Test
+	public void should_not_run_dependents_of_failed_stage() throws Exception {
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		try {
+			new StageGraph()
+					.add("a", () -> { throw new IllegalStateException("a"); })
+					.add("b", () -> order.add("b"))
+					.add("c", () -> order.add("c"), "a")
+					.add("d", () -> order.add("d"), "b")
+					.execute();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		Collections.sort(order);
+		assertEquals("[b, d]", order.toString());
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void should_require_dependencies_to_be_added_first() {
+		new StageGraph().add("a", () -> { }, "b");
+	}
+	@Test(expected = IllegalArgumentException.class)
+	public void should_not_allow_duplicate_stage_names() {
+		new StageGraph().add("a", () -> { }).add("a", () -> { });
+	}
+}
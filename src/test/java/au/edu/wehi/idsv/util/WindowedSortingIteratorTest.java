@@ -0,0 +1,97 @@
+package au.edu.wehi.idsv.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Longs;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class WindowedSortingIteratorTest {
+	private static class Record {
+		public Record(long position, int tiebreak) {
+			this.position = position;
+			this.tiebreak = tiebreak;
+		}
+		public final long position;
+		public final int tiebreak;
+		@Override
+		public String toString() {
+			return String.format("%d:%d", position, tiebreak);
+		}
+	}
+	private static final Comparator<Record> ByPositionTiebreak = Comparator.<Record>comparingLong(r -> r.position).thenComparingInt(r -> r.tiebreak);
+	/**
+	 * Generates a sorted sequence then displaces each record by up to the given window
+	 */
+	private static List<Record> nearlySorted(Random rng, int count, int maxGap, int windowSize) {
+		List<Record> sorted = new ArrayList<>();
+		long position = rng.nextInt(1000);
+		for (int i = 0; i < count; i++) {
+			position += rng.nextInt(maxGap + 1);
+			sorted.add(new Record(position, rng.nextInt(4)));
+		}
+		List<Long> displaced = new ArrayList<>();
+		for (Record r : sorted) {
+			displaced.add(r.position + rng.nextInt(windowSize + 1));
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < count; i++) order.add(i);
+		order.sort(Comparator.comparingLong(displaced::get));
+		List<Record> result = new ArrayList<>();
+		for (int i : order) result.add(sorted.get(i));
+		return result;
+	}
+	private static List<Record> sort(List<Record> input, long windowSize) {
+		return Lists.newArrayList(new WindowedSortingIterator<>(input.iterator(), r -> r.position, windowSize, ByPositionTiebreak));
+	}
+	@Test
+	public void should_sort_within_window() {
+		Random rng = new Random(0);
+		for (int windowSize : new int[] { 0, 1, 5, 100, 1000, 10000, 100000 }) {
+			for (int maxGap : new int[] { 0, 1, 10, 1000, 100000 }) {
+				List<Record> input = nearlySorted(rng, 2000, maxGap, windowSize);
+				List<Record> expected = new ArrayList<>(input);
+				expected.sort(ByPositionTiebreak);
+				List<Record> result = sort(input, windowSize);
+				assertEquals(expected.size(), result.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(0, ByPositionTiebreak.compare(expected.get(i), result.get(i)));
+				}
+			}
+		}
+	}
+	@Test
+	public void should_sort_records_beyond_ring_size_when_still_in_window() {
+		// records ahead of the window are buffered when the buffer is empty
+		List<Record> input = Lists.newArrayList(
+				new Record(0, 0),
+				new Record(1000000, 0),
+				new Record(2, 0),
+				new Record(1000000, 1),
+				new Record(3, 0),
+				new Record(999999, 0));
+		List<Record> result = sort(input, 5);
+		assertEquals("[0:0, 2:0, 3:0, 999999:0, 1000000:0, 1000000:1]", result.toString());
+	}
+	@Test
+	public void should_default_to_coordinate_ordering() {
+		List<Long> input = Longs.asList(3, 1, 2, 6, 4, 5, 10, 9);
+		List<Long> result = Lists.newArrayList(new WindowedSortingIterator<Long>(input.iterator(), x -> x, 3));
+		assertEquals(Ordering.natural().sortedCopy(input), result);
+	}
+	@Test(expected = IllegalStateException.class)
+	public void should_fail_when_records_are_outside_window() {
+		List<Record> input = Lists.newArrayList(
+				new Record(10, 0),
+				new Record(20, 0),
+				new Record(40, 0),
+				new Record(15, 0));
+		sort(input, 5);
+	}
+}
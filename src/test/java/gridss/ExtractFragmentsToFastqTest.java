@@ -72,4 +72,15 @@ public class ExtractFragmentsToFastqTest extends IntermediateFilesTest {
         assertLinesMatch(new File(sam.toString() + ".out.1.fq"), cmd.OUTPUT_FQ1);
         assertLinesMatch(new File(sam.toString() + ".out.2.fq"), cmd.OUTPUT_FQ2);
     }
-}
\ No newline at end of file
+    @Test
+    public void should_write_unpaired_mates_and_ignore_repeated_names() throws IOException {
+        SAMRecord[] r1 = withName("r1", DP(0, 1, "10M", true, 1, 10, "10M", true));
+        SAMRecord r2 = withName("r2", Read(0, 5, "4M"))[0];
+        SAMRecord r3 = withName("r3", Read(0, 6, "4M"))[0];
+        List<List<FastqRecord>> result = go(ImmutableList.of("r1", "r2", "r2"), r1[0], r2, r3);
+        Assert.assertEquals(2, result.get(0).size());
+        Assert.assertEquals("r2", result.get(0).get(0).getReadName());
+        Assert.assertEquals("r1", result.get(0).get(1).getReadName());
+        Assert.assertEquals(0, result.get(1).size());
+    }
+}
@@ -4,6 +4,7 @@ import au.edu.wehi.idsv.Hg19Tests;
 import au.edu.wehi.idsv.IdsvVariantContext;
 import au.edu.wehi.idsv.IntermediateFilesTest;
 import au.edu.wehi.idsv.ProcessingContext;
+import au.edu.wehi.idsv.bed.PanelOfNormalsIndex;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
 import org.apache.commons.math3.util.Pair;
@@ -30,10 +31,12 @@ public class GeneratePonBedpeTest extends IntermediateFilesTest {
     public void should_generate_pon() throws IOException {
         File out_bed = new File(testFolder.getRoot(), "out.bed");
         File out_bedpe = new File(testFolder.getRoot(), "out.bedpe");
+        File out_index = new File(testFolder.getRoot(), "out.ponidx");
         new GeneratePonBedpe().instanceMain(new String[] {
                 "INPUT=" + colo829.getAbsolutePath(),
                 "OUTPUT_BED=" + out_bed.getAbsolutePath(),
                 "OUTPUT_BEDPE=" + out_bedpe.getAbsolutePath(),
+                "OUTPUT_INDEX=" + out_index.getAbsolutePath(),
                 "NORMAL_ORDINAL=1",
                 "R=" + Hg19Tests.findBroadHg19Reference().getAbsolutePath()
         });
@@ -46,6 +49,9 @@ public class GeneratePonBedpeTest extends IntermediateFilesTest {
         assertEquals(vc.stream().filter(v -> v.getAlternateAllele(0).isSingleBreakend()).count(), bed.size());
         // 1 BEDPE per breakend pair
         assertEquals(vc.stream().filter(v -> v.getAlternateAllele(0).isBreakpoint()).count(), 2 * bedpe.size());
+        PanelOfNormalsIndex index = PanelOfNormalsIndex.load(out_index);
+        assertEquals(bed.size(), index.breakendSize());
+        assertEquals(bedpe.size(), index.breakpointSize());
     }
     @Test
     @Category(Hg19Tests.class)
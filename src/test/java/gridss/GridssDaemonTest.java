@@ -0,0 +1,98 @@
+package gridss;
+
+import com.google.common.collect.ImmutableList;
+import org.broadinstitute.barclay.argparser.Argument;
+import org.broadinstitute.barclay.argparser.CommandLineProgramProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import picard.cmdline.CommandLineProgram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GridssDaemonTest {
+	@CommandLineProgramProperties(
+			summary = "Test program",
+			oneLineSummary = "Test program",
+			programGroup = gridss.cmdline.programgroups.DataConversion.class
+	)
+	public static class TestProgram extends CommandLineProgram {
+		public static final AtomicInteger invocations = new AtomicInteger();
+		@Argument(doc="Exit status")
+		public int STATUS;
+		@Override
+		protected int doWork() {
+			invocations.incrementAndGet();
+			return STATUS;
+		}
+	}
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+	private File portFile;
+	private Thread daemon;
+	private final AtomicInteger daemonStatus = new AtomicInteger(-1);
+	private final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+	@Before
+	public void startDaemon() throws InterruptedException {
+		portFile = new File(testFolder.getRoot(), "daemon.port");
+		daemon = new Thread(() -> daemonStatus.set(new GridssDaemon().instanceMain(new String[] { "PORT_FILE=" + portFile.getPath() })));
+		daemon.setDaemon(true);
+		daemon.start();
+		for (int i = 0; i < 1000 && !portFile.exists(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(portFile.exists());
+	}
+	@After
+	public void stopDaemon() throws InterruptedException {
+		if (daemon.isAlive()) {
+			execute(GridssDaemon.SHUTDOWN);
+			daemon.join(10000);
+		}
+	}
+	private int execute(String program, String... args) {
+		return GridssDaemonClient.execute(portFile, program, ImmutableList.copyOf(args), new PrintStream(messages, true));
+	}
+	@Test
+	public void should_execute_program_in_process() {
+		int before = TestProgram.invocations.get();
+		assertEquals(0, execute(TestProgram.class.getName(), "STATUS=0"));
+		assertEquals(3, execute(TestProgram.class.getName(), "STATUS=3"));
+		assertEquals(before + 2, TestProgram.invocations.get());
+	}
+	@Test
+	public void should_reject_unknown_program() {
+		assertEquals(GridssDaemon.STATUS_REJECTED, execute("NotAGridssProgram"));
+		assertTrue(messages.toString().contains("NotAGridssProgram"));
+		assertEquals(GridssDaemon.STATUS_REJECTED, execute("java.lang.String"));
+	}
+	@Test
+	public void should_reject_invalid_token() throws IOException {
+		List<String> lines = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+		File badPortFile = testFolder.newFile("bad.port");
+		Files.write(badPortFile.toPath(), (lines.get(0) + "\nbadtoken\n").getBytes(StandardCharsets.UTF_8));
+		int before = TestProgram.invocations.get();
+		assertEquals(GridssDaemon.STATUS_REJECTED, GridssDaemonClient.execute(badPortFile, TestProgram.class.getName(), ImmutableList.of("STATUS=0"), new PrintStream(messages, true)));
+		assertEquals(before, TestProgram.invocations.get());
+	}
+	@Test
+	public void should_shutdown_on_request() throws InterruptedException {
+		assertEquals(0, execute(GridssDaemon.SHUTDOWN));
+		daemon.join(10000);
+		assertFalse(daemon.isAlive());
+		assertEquals(0, daemonStatus.get());
+		assertFalse(portFile.exists());
+		assertEquals(GridssDaemonClient.STATUS_UNAVAILABLE, execute(TestProgram.class.getName(), "STATUS=0"));
+	}
+}
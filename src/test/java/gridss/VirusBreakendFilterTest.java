@@ -10,6 +10,7 @@ import org.junit.experimental.categories.Category;
 
 import java.io.File;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class VirusBreakendFilterTest extends IntermediateFilesTest {
     @Test
@@ -155,6 +156,36 @@ public class VirusBreakendFilterTest extends IntermediateFilesTest {
         Assert.assertTrue(vcf.stream().filter(vc -> vc.getID().equals("correct_host_taxid_virus")).findFirst().get().getFilters().contains("LOW_MAPQ"));
     }
     @Test
+    public void should_sort_output_when_spilling_to_disk() {
+        VirusBreakendFilter cmd = new VirusBreakendFilter();
+        File output = new File(testFolder.getRoot(), "out.vcf");
+        cmd.INPUT = new File("src/test/resources/virusbreakend/candidates.vcf");
+        cmd.OUTPUT = output;
+        cmd.setReference(SMALL_FA_FILE);
+        cmd.doWork();
+        List<VariantContext> expected = getRawVcf(output);
+
+        VirusBreakendFilter spillCmd = new VirusBreakendFilter();
+        File spillOutput = new File(testFolder.getRoot(), "spill.vcf");
+        spillCmd.INPUT = new File("src/test/resources/virusbreakend/candidates.vcf");
+        spillCmd.OUTPUT = spillOutput;
+        spillCmd.MAX_RECORDS_IN_RAM = 2;
+        spillCmd.TMP_DIR = ImmutableList.of(testFolder.getRoot());
+        spillCmd.WORKER_THREADS = 2;
+        spillCmd.setReference(SMALL_FA_FILE);
+        spillCmd.doWork();
+        List<VariantContext> result = getRawVcf(spillOutput);
+        Assert.assertTrue(expected.size() > 2);
+        Assert.assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getContig(), result.get(i).getContig());
+            Assert.assertEquals(expected.get(i).getStart(), result.get(i).getStart());
+        }
+        Assert.assertEquals(
+                expected.stream().map(VariantContext::getID).sorted().collect(Collectors.toList()),
+                result.stream().map(VariantContext::getID).sorted().collect(Collectors.toList()));
+    }
+    @Test
     @Category(Hg19Tests.class)
     public void regression_should_not_crash_when_viral_contig_contains_period() {
         VirusBreakendFilter cmd = new VirusBreakendFilter();